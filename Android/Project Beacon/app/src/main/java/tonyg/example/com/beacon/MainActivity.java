@@ -8,12 +8,13 @@ import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothProfile;
-import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.util.Log;
@@ -22,18 +23,43 @@ import android.view.MenuItem;
 import android.widget.ListView;
 import android.widget.TextView;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import tonyg.example.com.beacon.ble.BeaconAdvertisement;
+import tonyg.example.com.beacon.ble.BeaconMetadataCache;
+import tonyg.example.com.beacon.ble.BeaconTable;
 import tonyg.example.com.beacon.ble.BleBeacon;
+import tonyg.example.com.beacon.ble.BleBeaconRegistry;
 import tonyg.example.com.beacon.ble.BleCommManager;
-import tonyg.example.com.beacon.ble.callbacks.BleScanCallbackv21;
-import tonyg.example.com.beacon.utilities.BeaconLocator;
+import tonyg.example.com.beacon.ble.GattJobScheduler;
+import tonyg.example.com.beacon.ble.ScanProfile;
+import tonyg.example.com.beacon.ble.radio.AdvertisementListener;
+import tonyg.example.com.beacon.ble.radio.AdvertisementRecorder;
+import tonyg.example.com.beacon.ble.radio.AndroidBleRadio;
+import tonyg.example.com.beacon.ble.radio.BleRadio;
+import tonyg.example.com.beacon.sensors.AndroidMotionSensor;
+import tonyg.example.com.beacon.sensors.MotionListener;
+import tonyg.example.com.beacon.sensors.MotionSensor;
+import tonyg.example.com.beacon.utilities.AdvertisementRingBuffer;
+import tonyg.example.com.beacon.utilities.KalmanTracker;
+import tonyg.example.com.beacon.utilities.PathLossCalibrator;
+import tonyg.example.com.beacon.utilities.PdrFusionTracker;
+import tonyg.example.com.beacon.utilities.PositionSnapshot;
+import tonyg.example.com.beacon.utilities.PositionTracker;
+import tonyg.example.com.beacon.utilities.PositioningPipeline;
+import tonyg.example.com.beacon.utilities.PositioningWorker;
+import tonyg.example.com.beacon.utilities.RadioMap;
+import tonyg.example.com.beacon.utilities.RssiFilter;
 import tonyg.example.com.beacon.models.BeaconMapLayout;
 import tonyg.example.com.beacon.adapters.BleBeaconListAdapter;
-import tonyg.example.com.beacon.ble.callbacks.BleScanCallbackv18;
 
 /**
  * Connect to a BLE Device, list its GATT services
@@ -48,10 +74,24 @@ public class MainActivity extends AppCompatActivity {
 
     /** Bluetooth Stuff **/
     private BleCommManager mBleCommManager;
-    private ArrayList<BleBeacon> mBeaconList = new ArrayList<>();
-    private int mNumUsableBeacons = 0;
-    private int mBeaconIndex = 0;
-    private static final int MAX_BEACONS = 3;
+    private BleRadio mBleRadio; // source of advertisements
+    private BleBeaconRegistry mBeaconRegistry = new BleBeaconRegistry(); // connection handles
+    private BeaconTable mBeaconTable = new BeaconTable(); // beacon state, owned by the PositioningWorker
+    private GattJobScheduler mGattJobScheduler;
+    private BeaconMetadataCache mBeaconMetadataCache; // beacon data retrieved in earlier sessions
+    private static final String TRACE_DIRECTORY = "traces";
+    private boolean mIsRecordingTrace = false; // save raw advertisements for replay
+    private AdvertisementRecorder mAdvertisementRecorder;
+
+    /** Positioning **/
+    private PositioningPipeline mPositioningPipeline; // only touched on the PositioningWorker thread
+    private PositioningWorker mPositioningWorker;
+    private MotionSensor mMotionSensor; // steps and turns between fixes, null without a gyroscope
+    private volatile PositionSnapshot mPositionSnapshot; // latest snapshot for the UI
+    private final AtomicBoolean mIsSnapshotPosted = new AtomicBoolean(false);
+    private PositionSnapshot mListedSnapshot; // last snapshot the Beacon list was refreshed from, UI thread only
+    private boolean mIsScanningContinuously = true; // locate while scanning instead of after a scan burst
+    private ScanProfile mScanProfile = ScanProfile.forBeacons(ScanSettings.SCAN_MODE_BALANCED, ScanProfile.DEFAULT_BEACON_REPORT_DELAY_MS);
 
     /** UI Stuff **/
     private MenuItem mProgressSpinner;
@@ -73,6 +113,33 @@ public class MainActivity extends AppCompatActivity {
         setSupportActionBar(toolbar);
 
         loadUI();
+        AndroidMotionSensor motionSensor = new AndroidMotionSensor(this);
+        PositionTracker positionTracker;
+        if (motionSensor.isSupported()) {
+            mMotionSensor = motionSensor;
+            positionTracker = new PdrFusionTracker(); // dead reckons between fixes
+        } else {
+            positionTracker = new KalmanTracker(PositionTracker.MOTION_CONSTANT_VELOCITY); // smooths successive fixes
+        }
+        mPositioningPipeline = new PositioningPipeline(
+                mBeaconTable,
+                new RssiFilter(RssiFilter.MODE_KALMAN), // per beacon RSSI smoothing
+                positionTracker,
+                mPipelineListener
+        );
+        mPositioningWorker = new PositioningWorker(mPositioningPipeline, new AdvertisementRingBuffer(), mPositionSnapshotListener);
+        mPositioningWorker.start();
+        loadRadioMap();
+        mGattJobScheduler = new GattJobScheduler(mGattCallback, mBeaconRegistry, mGattJobListener);
+        try {
+            mBeaconMetadataCache = new BeaconMetadataCache(
+                    new File(getFilesDir(), BeaconMetadataCache.FILE_NAME),
+                    BeaconMetadataCache.DEFAULT_CAPACITY,
+                    BeaconMetadataCache.DEFAULT_TIME_TO_LIVE_MS
+            );
+        } catch (IOException e) {
+            Log.d(TAG, "Could not open beacon metadata cache: " + e.getMessage());
+        }
     }
 
     @Override
@@ -83,12 +150,22 @@ public class MainActivity extends AppCompatActivity {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        mGattJobScheduler.cancelAll();
+        mPositioningWorker.shutdown();
+        stopTraceRecording();
+        if (mBeaconMetadataCache != null) {
+            try {
+                mBeaconMetadataCache.close();
+            } catch (IOException e) {
+                Log.d(TAG, "Could not save beacon metadata cache: " + e.getMessage());
+            }
+        }
     }
 
 
     public void loadUI() {
         mCentralPosition = (TextView) findViewById(R.id.central_position);
-        mBeaconListAdapter = new BleBeaconListAdapter(this, mBeaconList);
+        mBeaconListAdapter = new BleBeaconListAdapter(this);
         mBeaconsList = (ListView) findViewById(R.id.beacons_list);
         mBeaconsList.setAdapter(mBeaconListAdapter);
 
@@ -147,6 +224,8 @@ public class MainActivity extends AppCompatActivity {
     public void initializeBluetooth() {
         try {
             mBleCommManager = new BleCommManager(this);
+            mBleCommManager.setScanProfile(mScanProfile);
+            mBleRadio = new AndroidBleRadio(mBleCommManager);
         } catch (Exception e) {
             Log.d(TAG, "Could not initialize bluetooth");
             Log.d(TAG, e.getMessage());
@@ -169,218 +248,373 @@ public class MainActivity extends AppCompatActivity {
         mStartScanItem.setVisible(false);
         mStopScanItem.setVisible(true);
         mProgressSpinner.setVisible(true);
-        mBeaconList.clear();
+        mGattJobScheduler.cancelAll();
+        mBeaconRegistry.clear();
+        mPositioningWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                mPositioningPipeline.clear();
+            }
+        });
+        mPositioningWorker.setLocating(mIsScanningContinuously);
         mBeaconListAdapter.clear();
+        mListedSnapshot = null;
+
+        AdvertisementListener listener = mAdvertisementListener;
+        if (mIsRecordingTrace) {
+            listener = startTraceRecording();
+        }
 
+        long scanPeriod = mIsScanningContinuously ? BleCommManager.SCAN_PERIOD_CONTINUOUS : BleCommManager.SCAN_PERIOD;
         try {
-            mBleCommManager.scanForPeripherals(mScanCallbackv18, mScanCallbackv21);
+            mBleRadio.startScan(listener, scanPeriod);
         } catch (Exception e) {
             Log.d(TAG, "Can't create Ble Device Scanner");
         }
+        if (mMotionSensor != null && !mMotionSensor.isRunning()) {
+            try {
+                mMotionSensor.start(mMotionListener);
+            } catch (Exception e) {
+                Log.d(TAG, "Could not start motion sensors: " + e.getMessage());
+            }
+        }
 
     }
 
     /**
-     *  Stop Scanning for Beacons
+     * Record the raw advertisements of the next scans, to reproduce positioning problems later
+     *
+     * @param isRecordingTrace <b>true</b> to record
      */
-    public void stopScan() {
-        mBleCommManager.stopScanning(mScanCallbackv18, mScanCallbackv21);
+    public void setTraceRecording(boolean isRecordingTrace) {
+        mIsRecordingTrace = isRecordingTrace;
     }
 
     /**
-     * Bluetooth scanning has stopped
+     * Open a new trace file for this scan
+     *
+     * @return the listener to give the radio
      */
-    public void onBleScanStopped() {
-        Log.v(TAG, "Scan complete");
-
-        // we need 3 beacons to triangulate.
-        // if we don't have 3 available, that's ok
-        mNumUsableBeacons = mBeaconList.size();
-        if (mBeaconList.size() > MAX_BEACONS) {
-            mNumUsableBeacons = MAX_BEACONS;
+    private AdvertisementListener startTraceRecording() {
+        stopTraceRecording();
+        File directory = new File(getFilesDir(), TRACE_DIRECTORY);
+        directory.mkdirs();
+        File file = new File(directory, "scan-" + System.currentTimeMillis() + ".trace");
+        try {
+            mAdvertisementRecorder = new AdvertisementRecorder(file, mAdvertisementListener);
+            Log.d(TAG, "Recording advertisements to " + file);
+            return mAdvertisementRecorder;
+        } catch (IOException e) {
+            Log.d(TAG, "Could not record advertisements: " + e.getMessage());
+            return mAdvertisementListener;
         }
-        getBeaconData(mBeaconIndex);
-
     }
 
-    /**
-     * Retrieve beacon data from a beacon in a populated beacon list
-     * @param index
-     */
-    private void getBeaconData(int index) {;
-        if (index < mNumUsableBeacons) {
-            BleBeacon beacon = mBeaconList.get(index);
-            Log.v(TAG, "Asking beacon "+beacon.getAddress()+" for data");
-            if (!beacon.isFake) {
-                try {
-                    beacon.connect(beacon.getBluetoothDevice(), mGattCallback);
-                } catch (Exception e) {
-                    Log.d(TAG, "Could not connect to beacon: " + beacon.getAddress());
-                }
+    private void stopTraceRecording() {
+        if (mAdvertisementRecorder != null) {
+            try {
+                mAdvertisementRecorder.close();
+            } catch (IOException e) {
+                Log.d(TAG, "Could not save advertisement trace: " + e.getMessage());
             }
+            mAdvertisementRecorder = null;
         }
     }
 
     /**
-     * Beacon Data has been retrieved.
-     *
-     * @param beacon
+     *  Stop Scanning for Beacons
      */
-    // done getting beacon data.  Ask the next one for data
-    private void onBeaconUpdateComplete(BleBeacon beacon) {
-
-        mStopScanItem.setVisible(false);
-        mProgressSpinner.setVisible(false);
-        mStartScanItem.setVisible(true);
-
-        mBeaconListAdapter.notifyDataSetChanged();
-        mBeaconMap.addBeacon(beacon);
-        mBeaconMap.draw();
+    public void stopScan() {
+        if (mBleRadio != null) {
+            mBleRadio.stopScan();
+        }
+        stopMotionSensor();
     }
 
+    private void stopMotionSensor() {
+        if (mMotionSensor != null) {
+            mMotionSensor.stop();
+        }
+    }
 
     /**
-     * Event trigger when new Peripheral is discovered
+     * Locate by fingerprinting if the venue has been surveyed.  The map is read on the
+     * PositioningWorker thread
      */
-    public void onBlePeripheralDiscovered(BluetoothDevice bluetoothDevice, int rssi) {
-        boolean addBeacon = false;
-        //mNumBeaconsIsolated = 3;
-        // add first three found beacons.
-        if (mBeaconList.size() < 3) {
-            if (bluetoothDevice.getName() != null) {
-                Log.d(TAG, "found a beacon: "+bluetoothDevice.getName());
-                // only if they match myBeaconName
-                if (bluetoothDevice.getName().equals(BleBeacon.BROADCAST_NAME)) {
-                    addBeacon = true;
-                    // Don't add if we already have this beacon in our list
-                    for (BleBeacon beacon : mBeaconList) {
-                        if (beacon.getAddress().equals(bluetoothDevice.getAddress())) {
-                            addBeacon = false;
+    private void loadRadioMap() {
+        final File radioMapFile = new File(getFilesDir(), RadioMap.FILE_NAME);
+        if (!radioMapFile.isFile()) {
+            return;
+        }
+        mPositioningWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                DataInputStream input = null;
+                try {
+                    input = new DataInputStream(new BufferedInputStream(new FileInputStream(radioMapFile)));
+                    mPositioningPipeline.setRadioMap(RadioMap.read(input));
+                } catch (IOException e) {
+                    Log.d(TAG, "Could not read radio map: " + e.getMessage());
+                } finally {
+                    if (input != null) {
+                        try {
+                            input.close();
+                        } catch (IOException e) {
+                            Log.d(TAG, "Could not close radio map: " + e.getMessage());
                         }
                     }
                 }
             }
-        }
-        if (addBeacon) {
-            BleBeacon newBeacon = new BleBeacon(getApplicationContext(), bluetoothDevice, rssi);
-            mBeaconList.add(newBeacon);
-
+        });
+    }
 
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    mBeaconListAdapter.notifyDataSetChanged();
-                }
-            });
+    /**
+     * Remember the path loss calibration of every Beacon heard during the scan
+     */
+    private void saveCalibration() {
+        if (mBeaconMetadataCache == null) {
+            return;
         }
+        mPositioningWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                PathLossCalibrator pathLossCalibrator = mPositioningPipeline.getPathLossCalibrator();
+                long now_ms = System.currentTimeMillis();
+                for (int row = 0; row < mBeaconTable.size(); row++) {
+                    if (pathLossCalibrator.getSampleWeight(row) > 0) {
+                        mBeaconMetadataCache.storeCalibration(mBeaconTable.getMacAddress(row), pathLossCalibrator, row, now_ms);
+                    }
+                }
+            }
+        });
     }
 
+    /**
+     * Bluetooth scanning has stopped
+     */
+    public void onBleScanStopped() {
+        Log.v(TAG, "Scan complete");
+        stopTraceRecording();
+        saveCalibration();
+
+        // beacons were already queried while scanning
+        if (mIsScanningContinuously) {
+            stopMotionSensor();
+            mStopScanItem.setVisible(false);
+            mProgressSpinner.setVisible(false);
+            mStartScanItem.setVisible(true);
+            return;
+        }
 
+        // ask every beacon found during the scan for its data
+        for (int index = 0; index < mBeaconRegistry.size(); index++) {
+            mGattJobScheduler.enqueue(mBeaconRegistry.get(index));
+        }
+        if (mGattJobScheduler.isIdle()) {
+            mGattJobListener.onAllJobsComplete();
+        }
 
+    }
 
     /**
-     * Use this callback for Android API 21 (Lollipop) or greater
+     * Beacon data requests finish here, on the UI thread
      */
-    private final BleScanCallbackv21 mScanCallbackv21 = new BleScanCallbackv21() {
+    private final GattJobScheduler.Listener mGattJobListener = new GattJobScheduler.Listener() {
         /**
-         * New Peripheral discovered
+         * Beacon Data has been retrieved.
          *
-         * @param callbackType int: Determines how this callback was triggered. Could be one of CALLBACK_TYPE_ALL_MATCHES, CALLBACK_TYPE_FIRST_MATCH or CALLBACK_TYPE_MATCH_LOST
-         * @param result a Bluetooth Low Energy Scan Result, containing the Bluetooth Device, RSSI, and other information
+         * @param beacon
          */
         @Override
-        public void onScanResult(int callbackType, ScanResult result) {
-            BluetoothDevice bluetoothDevice = result.getDevice();
-            int rssi = result.getRssi();
-
-            onBlePeripheralDiscovered(bluetoothDevice, rssi);
+        public void onBeaconDataRetrieved(BleBeacon beacon) {
+            // remember the beacon so it doesn't need to be asked again.  Runs after the
+            // commands that wrote its data to the BeaconTable
+            final long macAddress = BeaconTable.parseMacAddress(beacon.getAddress());
+            if (mBeaconMetadataCache != null) {
+                mPositioningWorker.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // the scan may have restarted and handed the row to another beacon
+                        int row = mBeaconTable.indexOf(macAddress);
+                        if (row != BeaconTable.NOT_FOUND && mBeaconTable.isLocated(row)) {
+                            mBeaconMetadataCache.store(
+                                    macAddress,
+                                    mBeaconTable,
+                                    row,
+                                    System.currentTimeMillis()
+                            );
+                        }
+                    }
+                });
+            }
         }
 
         /**
-         * Several peripherals discovered when scanning in low power mode
+         * Beacon could not be reached
          *
-         * @param results List: List of scan results that are previously scanned.
+         * @param beacon
          */
         @Override
-        public void onBatchScanResults(List<ScanResult> results) {
-            for (ScanResult result : results) {
-                BluetoothDevice bluetoothDevice = result.getDevice();
-                int rssi = result.getRssi();
-
-                onBlePeripheralDiscovered(bluetoothDevice, rssi);
-            }
+        public void onBeaconDataFailed(BleBeacon beacon) {
+            Log.d(TAG, "Could not retrieve data from beacon: " + beacon.getAddress());
         }
 
         /**
-         * Scan failed to initialize
-         *
-         * @param errorCode	int: Error code (one of SCAN_FAILED_*) for scan failure.
+         * Every beacon has answered or given up
          */
         @Override
-        public void onScanFailed(int errorCode) {
-            switch (errorCode) {
-                case SCAN_FAILED_ALREADY_STARTED:
-                    Log.e(TAG, "Fails to start scan as BLE scan with the same settings is already started by the app.");
-                    break;
-                case SCAN_FAILED_APPLICATION_REGISTRATION_FAILED:
-                    Log.e(TAG, "Fails to start scan as app cannot be registered.");
-                    break;
-                case SCAN_FAILED_FEATURE_UNSUPPORTED:
-                    Log.e(TAG, "Fails to start power optimized scan as this feature is not supported.");
-                    break;
-                default: // SCAN_FAILED_INTERNAL_ERROR
-                    Log.e(TAG, "Fails to start scan due an internal error");
-
+        public void onAllJobsComplete() {
+            if (!mIsScanningContinuously) {
+                mStopScanItem.setVisible(false);
+                mProgressSpinner.setVisible(false);
+                mStartScanItem.setVisible(true);
             }
+            Log.d(TAG, "Triangulating Central...");
+            mPositioningWorker.requestPositionUpdate(SystemClock.elapsedRealtimeNanos());
+            if (!mIsScanningContinuously) {
+                stopMotionSensor();
+            }
+        }
+    };
 
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    onBleScanStopped();
-                }
-            });
+
+    /**
+     * Advertisements arrive here, on the radio's thread, and are handed to the PositioningWorker
+     */
+    private final AdvertisementListener mAdvertisementListener = new AdvertisementListener() {
+        @Override
+        public void onAdvertisement(long macAddress, int rssi, byte[] scanRecord, long timestamp_ns) {
+            mPositioningWorker.offer(macAddress, rssi, scanRecord, timestamp_ns);
         }
 
-        /**
-         * Scan completed
-         */
-        public void onScanComplete() {
+        @Override
+        public void onBatchComplete(long timestamp_ns) {
+            mPositioningWorker.wakeUp();
+        }
+
+        @Override
+        public void onScanStopped() {
             runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
                     onBleScanStopped();
                 }
             });
-
         }
     };
 
+    /**
+     * Decides which Peripherals are Beacons and finds the location of new ones, on the
+     * PositioningWorker thread
+     */
+    private final PositioningPipeline.Listener mPipelineListener = new PositioningPipeline.Listener() {
+        @Override
+        public boolean isBeacon(long macAddress, byte[] scanRecord) {
+            // only if they match myBeaconName
+            return BeaconAdvertisement.hasLocalName(scanRecord, BleBeacon.BROADCAST_NAME);
+        }
+
+        @Override
+        public void onBeaconAdded(int row, long macAddress, boolean isLocated) {
+            String address = BeaconTable.formatMacAddress(macAddress);
+            Log.d(TAG, "found a beacon: "+address);
+
+            // pick up the path loss calibration from earlier sessions
+            if (mBeaconMetadataCache != null) {
+                mBeaconMetadataCache.loadCalibration(macAddress, mPositioningPipeline.getPathLossCalibrator(), row, System.currentTimeMillis());
+            }
+            if (isLocated) {
+                return;
+            }
 
+            // we may have asked this beacon for its data in an earlier session
+            if (mBeaconMetadataCache != null && mBeaconMetadataCache.load(macAddress, mBeaconTable, row, System.currentTimeMillis())) {
+                Log.d(TAG, "beacon data found in cache: "+address);
+                return;
+            }
+
+            BluetoothDevice bluetoothDevice = mBleCommManager.getBluetoothAdapter().getRemoteDevice(address);
+            final BleBeacon newBeacon = new BleBeacon(getApplicationContext(), bluetoothDevice, mBeaconTable.getRssi(row));
+            newBeacon.setItemId(row);
+            mBeaconRegistry.add(macAddress, newBeacon);
+
+            // ask the new beacon for its data without waiting for the scan to end
+            if (mIsScanningContinuously) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        mGattJobScheduler.enqueue(newBeacon);
+                    }
+                });
+            }
+        }
+    };
 
     /**
-     * Use this callback for Android API 18, 19, and 20 (before Lollipop)
+     * Motion samples arrive here, on the sensor's thread, and are handed to the PositioningWorker
      */
-    private BleScanCallbackv18 mScanCallbackv18 = new BleScanCallbackv18() {
-        /**
-         *  Bluetooth LE Scan complete - timer expired out while searching for bluetooth devices
-         */
+    private final MotionListener mMotionListener = new MotionListener() {
         @Override
-        public void onLeScan(final BluetoothDevice bluetoothDevice, int rssi, byte[] scanRecord) {
+        public void onMotionSample(int sensor, long timestamp_ns, float x, float y, float z) {
+            mPositioningWorker.offerMotion(sensor, timestamp_ns, x, y, z);
+        }
 
-            onBlePeripheralDiscovered(bluetoothDevice, rssi);
+        @Override
+        public void onSensorStopped() {
         }
+    };
 
+    /**
+     * Snapshots arrive here, on the PositioningWorker thread.  Only the newest one is drawn,
+     * so a busy UI thread skips snapshots instead of falling behind
+     */
+    private final PositioningWorker.Listener mPositionSnapshotListener = new PositioningWorker.Listener() {
         @Override
-        public void onScanComplete() {
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    onBleScanStopped();
-                }
-            });
+        public void onPositionSnapshot(PositionSnapshot snapshot) {
+            mPositionSnapshot = snapshot;
+            if (mIsSnapshotPosted.compareAndSet(false, true)) {
+                runOnUiThread(mPositionSnapshotRunnable);
+            }
+        }
+    };
+
+    /**
+     * Draws the latest snapshot on the UI thread.  Reused so that position updates do not allocate
+     */
+    private final Runnable mPositionSnapshotRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mIsSnapshotPosted.set(false);
+            showPositionSnapshot(mPositionSnapshot);
         }
     };
 
+    /**
+     * Set how the controller filters and batches advertisements.  Takes effect on the next scan
+     *
+     * @param scanProfile the ScanProfile
+     */
+    public void setScanProfile(ScanProfile scanProfile) {
+        mScanProfile = scanProfile;
+        if (mBleCommManager != null) {
+            mBleCommManager.setScanProfile(scanProfile);
+        }
+    }
+
+    /**
+     * Set how often a continuous scan recalculates the position of the Central
+     *
+     * @param positionUpdateInterval_ms minimum time between position updates, in milliseconds
+     */
+    public void setPositionUpdateInterval(final long positionUpdateInterval_ms) {
+        mPositioningWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                mPositioningPipeline.setPositionUpdateInterval(positionUpdateInterval_ms);
+            }
+        });
+    }
+
     /**
      * Each Beacon in a set has the same name.  This function matches a beacon against the one
      * currently connected
@@ -390,38 +624,39 @@ public class MainActivity extends AppCompatActivity {
      * @throws Exception
      */
     public BleBeacon getBeaconFromGatt(BluetoothGatt gatt) throws Exception {
-        for (BleBeacon beacon:mBeaconList) {
-            if (beacon.getGatt().equals(gatt)) {
-                return beacon;
-            }
+        BleBeacon beacon = mBeaconRegistry.getByGatt(gatt);
+        if (beacon == null) {
+            throw new Exception("Matching Gatt could not be found");
         }
-        throw new Exception("Matching Gatt could not be found");
+        return beacon;
     }
 
     /**
-     * Locate the Central
+     * Show the Beacons and the Central
+     *
+     * @param snapshot the latest PositionSnapshot
      */
-    public void triangulateCentral() {
-        try {
-            double[] centralPosition = BeaconLocator.trilaterate(mBeaconList);
-            Log.d(TAG, "Central at "+centralPosition[0]+", "+centralPosition[1]);
-
+    public void showPositionSnapshot(PositionSnapshot snapshot) {
+        // snapshots of the Central moving between fixes share the Beacons of the last fix,
+        // so the list only needs refreshing when the Beacons change
+        if (!snapshot.hasSameBeacons(mListedSnapshot)) {
+            mBeaconListAdapter.setPositionSnapshot(snapshot);
+            mListedSnapshot = snapshot;
+        }
+        mBeaconMap.setPositionSnapshot(snapshot);
 
+        if (snapshot.isCentralLocated()) {
             String centralPositionString = "";
             try {
-                String xPosition = String.format("%.1f", centralPosition[0]);
-                String yPosition = String.format("%.1f", centralPosition[1]);
+                String xPosition = String.format("%.1f", snapshot.getCentralX());
+                String yPosition = String.format("%.1f", snapshot.getCentralY());
                 centralPositionString = String.format( getResources().getString(R.string.central_position), xPosition, yPosition);
             } catch (Exception e) {
                 Log.d(TAG, "Could not convert central location to string");
             }
             mCentralPosition.setText(centralPositionString);
-
-            mBeaconMap.setCentralPosition(centralPosition[0], centralPosition[1]);
-            mBeaconMap.draw();
-        } catch (Exception e) {
-            Log.d(TAG, "Not enough Beacons to perform a triangulation.  Found " + mBeaconList.size());
         }
+        mBeaconMap.draw();
     }
 
     /**
@@ -461,30 +696,92 @@ public class MainActivity extends AppCompatActivity {
                         beacon.setReferenceRssi(value);
                         beacon.setDistance(BleBeacon.getDistanceFromRSSI(value, BleBeacon.RADIO_PROPAGATION_CONSTANT, beacon.getRssi()));
                         Log.d(TAG, "distance: " + beacon.getDistance());
+                        final long macAddress = BeaconTable.parseMacAddress(beacon.getAddress());
+                        final int referenceRssi = value;
+                        mPositioningWorker.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                int row = mBeaconTable.indexOf(macAddress);
+                                if (row == BeaconTable.NOT_FOUND) {
+                                    return; // the scan restarted since this was read
+                                }
+                                mBeaconTable.setReferenceRssi(row, referenceRssi);
+                                mPositioningPipeline.updateDistance(row);
+                            }
+                        });
                         BluetoothGattCharacteristic xCharacteristic = gatt.getService(BleBeacon.SERVICE_UUID).getCharacteristic(BleBeacon.X_CHARACTERISTIC_UUID);
                         gatt.readCharacteristic(xCharacteristic);
 
                     }
                     if (characteristic.getUuid().equals(BleBeacon.X_CHARACTERISTIC_UUID)) {
-                        double xLocation = value / 100.0; // centimeters to meters
+                        final double xLocation = value / 100.0; // centimeters to meters
                         Log.d(TAG, "x Location of " + xLocation + " cm found");
                         beacon.setXLocation(xLocation);
+                        final long macAddress = BeaconTable.parseMacAddress(beacon.getAddress());
+                        mPositioningWorker.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                int row = mBeaconTable.indexOf(macAddress);
+                                if (row == BeaconTable.NOT_FOUND) {
+                                    return; // the scan restarted since this was read
+                                }
+                                mBeaconTable.setXLocation(row, xLocation);
+                            }
+                        });
 
                         BluetoothGattCharacteristic yCharacteristic = gatt.getService(BleBeacon.SERVICE_UUID).getCharacteristic(BleBeacon.Y_CHARACTERISTIC_UUID);
                         gatt.readCharacteristic(yCharacteristic);
                     }
                     if (characteristic.getUuid().equals(BleBeacon.Y_CHARACTERISTIC_UUID)) {
-                        double yLocation = value / 100.0; // centimeters to meters
+                        final double yLocation = value / 100.0; // centimeters to meters
                         Log.d(TAG, "y Location of " + yLocation + " meters found");
                         beacon.setYLocation(yLocation);
-                        beacon.disconnect();
-                        final BleBeacon finalBeacon = beacon;
-                        runOnUiThread(new Runnable() {
+                        final long macAddress = BeaconTable.parseMacAddress(beacon.getAddress());
+                        mPositioningWorker.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                int row = mBeaconTable.indexOf(macAddress);
+                                if (row == BeaconTable.NOT_FOUND) {
+                                    return; // the scan restarted since this was read
+                                }
+                                mBeaconTable.setYLocation(row, yLocation);
+                            }
+                        });
+                        readNextCharacteristic(gatt, beacon, BleBeacon.Z_CHARACTERISTIC_UUID);
+                    }
+                    if (characteristic.getUuid().equals(BleBeacon.Z_CHARACTERISTIC_UUID)) {
+                        final double zLocation = value / 100.0; // centimeters to meters
+                        Log.d(TAG, "z Location of " + zLocation + " meters found");
+                        beacon.setZLocation(zLocation);
+                        final long macAddress = BeaconTable.parseMacAddress(beacon.getAddress());
+                        mPositioningWorker.post(new Runnable() {
                             @Override
                             public void run() {
-                                onBeaconUpdateComplete(finalBeacon);
+                                int row = mBeaconTable.indexOf(macAddress);
+                                if (row == BeaconTable.NOT_FOUND) {
+                                    return; // the scan restarted since this was read
+                                }
+                                mBeaconTable.setZLocation(row, zLocation);
                             }
                         });
+                        readNextCharacteristic(gatt, beacon, BleBeacon.FLOOR_CHARACTERISTIC_UUID);
+                    }
+                    if (characteristic.getUuid().equals(BleBeacon.FLOOR_CHARACTERISTIC_UUID)) {
+                        final int floor = value;
+                        Log.d(TAG, "floor " + floor + " found");
+                        beacon.setFloor(floor);
+                        final long macAddress = BeaconTable.parseMacAddress(beacon.getAddress());
+                        mPositioningWorker.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                int row = mBeaconTable.indexOf(macAddress);
+                                if (row == BeaconTable.NOT_FOUND) {
+                                    return; // the scan restarted since this was read
+                                }
+                                mBeaconTable.setFloor(row, floor);
+                            }
+                        });
+                        readNextCharacteristic(gatt, beacon, null);
                     }
 
 
@@ -498,6 +795,30 @@ public class MainActivity extends AppCompatActivity {
 
         }
 
+        /**
+         * Read the next characteristic from a Beacon, or finish with the Beacon if it does not
+         * have it.  Beacons flashed before heights were added stop after the y location
+         *
+         * @param gatt connection to GATT
+         * @param beacon the Beacon being read
+         * @param characteristicUuid the characteristic to read next, or <b>null</b> if there are no more
+         */
+        private void readNextCharacteristic(BluetoothGatt gatt, final BleBeacon beacon, UUID characteristicUuid) {
+            BluetoothGattCharacteristic characteristic = characteristicUuid == null
+                    ? null
+                    : gatt.getService(BleBeacon.SERVICE_UUID).getCharacteristic(characteristicUuid);
+            if (characteristic != null) {
+                gatt.readCharacteristic(characteristic);
+                return;
+            }
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    mGattJobScheduler.onJobComplete(beacon);
+                }
+            });
+        }
+
         /**
          * Characteristic was written successfully.  update the UI
          *
@@ -533,6 +854,8 @@ public class MainActivity extends AppCompatActivity {
                 bluetoothGatt.discoverServices();
             } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
 
+                final BleBeacon beacon = mBeaconRegistry.getByGatt(bluetoothGatt);
+                mBeaconRegistry.unregisterGatt(bluetoothGatt);
                 try {
                     bluetoothGatt.close();
                 } catch (Exception e) {
@@ -540,13 +863,14 @@ public class MainActivity extends AppCompatActivity {
                 }
 
                 Log.d(TAG, "Disconnected from device");
-                mBeaconIndex++;
-                Log.d(TAG, "beaconIndex: "+mBeaconIndex+"/"+mNumUsableBeacons);
-                if (mBeaconIndex < mNumUsableBeacons) {
-                    getBeaconData(mBeaconIndex);
-                } else {
-                    Log.d(TAG, "Triangulating Central...");
-                    triangulateCentral();
+                // retry the beacon if it dropped before sending all of its data
+                if (beacon != null) {
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            mGattJobScheduler.onConnectionClosed(beacon);
+                        }
+                    });
                 }
 
             }
@@ -561,7 +885,7 @@ public class MainActivity extends AppCompatActivity {
         public void onServicesDiscovered(BluetoothGatt gatt, int status) {
 
             // if services were discovered, We need to read them and record the values
-            if (status == BluetoothGatt.GATT_SUCCESS) {
+            if (status == BluetoothGatt.GATT_SUCCESS && gatt.getService(BleBeacon.SERVICE_UUID) != null) {
 
                 BluetoothGattCharacteristic rssiCharacteristic = gatt.getService(BleBeacon.SERVICE_UUID).getCharacteristic(BleBeacon.RSSI_CHARACTERISTIC_UUID);
                 if (!BleBeacon.isCharacteristicReadable(rssiCharacteristic)) {
@@ -584,6 +908,8 @@ public class MainActivity extends AppCompatActivity {
                 }
             } else {
                 Log.d(TAG, "Something went wrong while discovering GATT services from this device");
+                // disconnecting lets the GattJobScheduler retry
+                gatt.disconnect();
             }
 
         }
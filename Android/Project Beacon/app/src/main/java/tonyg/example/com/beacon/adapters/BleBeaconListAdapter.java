@@ -9,11 +9,9 @@ import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 import android.widget.TextView;
 
-
-import java.util.ArrayList;
-
-import tonyg.example.com.beacon.ble.BleBeacon;
+import tonyg.example.com.beacon.ble.BeaconTable;
 import tonyg.example.com.beacon.R;
+import tonyg.example.com.beacon.utilities.PositionSnapshot;
 
 /**
  * Manages the BLEDeviceListItems so that we can populate the list
@@ -26,24 +24,41 @@ public class BleBeaconListAdapter extends BaseAdapter {
     private static final String TAG = BleBeaconListAdapter.class.getSimpleName();
 
     private Context mContext;
-    private ArrayList<BleBeacon> mBeaconList;
+    private PositionSnapshot mSnapshot; // the Beacons to list, or null before the first snapshot
 
-    public BleBeaconListAdapter(Context context, ArrayList<BleBeacon> beaconList) {
+    public BleBeaconListAdapter(Context context) {
         this.mContext = context;
-        this.mBeaconList = beaconList;
+    }
+
+    /**
+     * List the Beacons in a snapshot
+     *
+     * @param snapshot the latest PositionSnapshot
+     */
+    public void setPositionSnapshot(PositionSnapshot snapshot) {
+        mSnapshot = snapshot;
+        notifyDataSetChanged();
+    }
+
+    private int getBeaconCount() {
+        return mSnapshot != null ? mSnapshot.getBeaconCount() : 0;
     }
 
     public int getCount() {
-        if (mBeaconList.size()<=0)  return 1;
-        return mBeaconList.size();
+        if (getBeaconCount()<=0)  return 1;
+        return getBeaconCount();
     }
 
     public void clear() {
-        this.mBeaconList.clear();
+        mSnapshot = null;
+        notifyDataSetChanged();
     }
 
-    public BleBeacon getItem(int position) {
-        return mBeaconList.get(position);
+    /**
+     * Get the MAC address of the Beacon in a row
+     */
+    public Long getItem(int position) {
+        return mSnapshot.getMacAddress(position);
     }
 
     public long getItemId(int position) {
@@ -83,20 +98,21 @@ public class BleBeaconListAdapter extends BaseAdapter {
             holder = (ViewHolder) v.getTag();
         }
 
-        if (mBeaconList.size() <= 0) {
+        if (getBeaconCount() <= 0) {
             holder.mAddress.setText(R.string.no_data);
         } else {
-            BleBeacon item = (BleBeacon) mBeaconList.get(position);
+            int row = position;
+            PositionSnapshot snapshot = mSnapshot;
 
             Resources resources = mContext.getResources();
 
-            holder.mAddress.setText(item.getAddress());
-            holder.mRssi.setText(String.format(resources.getString(R.string.rssi), item.getRssi()));
+            holder.mAddress.setText(BeaconTable.formatMacAddress(snapshot.getMacAddress(row)));
+            holder.mRssi.setText(String.format(resources.getString(R.string.rssi), snapshot.getRssi(row)));
 
 
             String distance_m = "";
             try {
-                distance_m = String.format(resources.getString(R.string.distance), String.format("%.1f",item.getDistance()));
+                distance_m = String.format(resources.getString(R.string.distance), String.format("%.1f",snapshot.getDistance(row)));
             } catch (Exception e) {
                 Log.d(TAG, "Could not convert distance to string");
             }
@@ -105,8 +121,8 @@ public class BleBeaconListAdapter extends BaseAdapter {
 
             String location = "";
             try {
-                String xLocation = String.format("%.1f", item.getXLocation());
-                String yLocation = String.format("%.1f", item.getYLocation());
+                String xLocation = String.format("%.1f", snapshot.getXLocation(row));
+                String yLocation = String.format("%.1f", snapshot.getYLocation(row));
                 location = String.format( resources.getString(R.string.location), xLocation, yLocation);
             } catch (Exception e) {
                 Log.d(TAG, "Could not convert location to string");
@@ -116,7 +132,7 @@ public class BleBeaconListAdapter extends BaseAdapter {
 
             String referenceRssi = "";
             try {
-                referenceRssi = String.format(resources.getString(R.string.reference_rssi), item.getReferenceRssi());
+                referenceRssi = String.format(resources.getString(R.string.reference_rssi), snapshot.getReferenceRssi(row));
 
             } catch (Exception e) {
                 Log.d(TAG, "Could not convert reference rssi to string");
@@ -0,0 +1,250 @@
+package tonyg.example.com.beacon.ble;
+
+/**
+ * Reads the Beacon information that ble_beacon.ino broadcasts as manufacturer data.
+ *
+ * The values are read in place from the raw scan record, without copying it.  The payload
+ * after the manufacturer id is laid out as:
+ *
+ *   byte 0    format version
+ *   byte 1    reference RSSI, signed
+ *   byte 2-3  x location in centimeters, signed little-endian
+ *   byte 4-5  y location in centimeters, signed little-endian
+ *   byte 6-7  z location in centimeters, signed little-endian (version 2)
+ *   byte 8    floor number, signed (version 2)
+ *
+ * Version 1 Beacons, which stop after the y location, are still read.  They are taken to be
+ * on floor 0 at an unknown height.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class BeaconAdvertisement {
+    public static final int NOT_FOUND = -1;
+
+    public static final int MANUFACTURER_ID = 0xFFFF; // reserved for testing
+    public static final int FORMAT_VERSION = 2;
+    public static final int FORMAT_VERSION_2D = 1; // no height or floor
+
+    private static final int AD_TYPE_SHORTENED_LOCAL_NAME = 0x08;
+    private static final int AD_TYPE_COMPLETE_LOCAL_NAME = 0x09;
+    private static final int AD_TYPE_MANUFACTURER_DATA = 0xFF;
+    private static final int MANUFACTURER_ID_LENGTH = 2;
+    public static final int PAYLOAD_LENGTH = 9;
+    private static final int PAYLOAD_LENGTH_2D = 6;
+    public static final int STRUCTURE_LENGTH = 2 + MANUFACTURER_ID_LENGTH + PAYLOAD_LENGTH; // most bytes written by write()
+
+    /** Payload field offsets **/
+    private static final int VERSION_OFFSET = 0;
+    private static final int REFERENCE_RSSI_OFFSET = 1;
+    private static final int X_LOCATION_OFFSET = 2;
+    private static final int Y_LOCATION_OFFSET = 4;
+    private static final int Z_LOCATION_OFFSET = 6;
+    private static final int FLOOR_OFFSET = 8;
+
+    /**
+     * Find the Beacon payload in a scan record
+     *
+     * @param scanRecord the advertisement data structures
+     * @return the offset of the payload in the scan record, or NOT_FOUND
+     */
+    public static int findPayload(byte[] scanRecord) {
+        if (scanRecord == null) {
+            return NOT_FOUND;
+        }
+        int index = 0;
+        // each AD structure is a length byte followed by a type byte and length - 1 data bytes
+        while (index < scanRecord.length) {
+            int length = scanRecord[index] & 0xff;
+            if (length == 0 || index + length >= scanRecord.length) {
+                break;
+            }
+            int type = scanRecord[index + 1] & 0xff;
+            if (type == AD_TYPE_MANUFACTURER_DATA && length - 1 >= MANUFACTURER_ID_LENGTH + PAYLOAD_LENGTH_2D) {
+                int data = index + 2;
+                int manufacturerId = readUnsignedShort(scanRecord, data);
+                int version = scanRecord[data + MANUFACTURER_ID_LENGTH + VERSION_OFFSET] & 0xff;
+                int payloadLength = length - 1 - MANUFACTURER_ID_LENGTH;
+                if (manufacturerId == MANUFACTURER_ID
+                        && ((version == FORMAT_VERSION && payloadLength >= PAYLOAD_LENGTH)
+                        || version == FORMAT_VERSION_2D)) {
+                    return data + MANUFACTURER_ID_LENGTH;
+                }
+            }
+            index += length + 1;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Check the local name in a scan record without decoding it into a String
+     *
+     * @param scanRecord the advertisement data structures
+     * @param name the ASCII name to look for
+     * @return <b>true</b> if the complete or shortened local name matches
+     */
+    public static boolean hasLocalName(byte[] scanRecord, String name) {
+        if (scanRecord == null) {
+            return false;
+        }
+        int index = 0;
+        while (index < scanRecord.length) {
+            int length = scanRecord[index] & 0xff;
+            if (length == 0 || index + length >= scanRecord.length) {
+                break;
+            }
+            int type = scanRecord[index + 1] & 0xff;
+            if ((type == AD_TYPE_COMPLETE_LOCAL_NAME || type == AD_TYPE_SHORTENED_LOCAL_NAME) && length - 1 == name.length()) {
+                int data = index + 2;
+                boolean matches = true;
+                for (int character = 0; character < name.length() && matches; character++) {
+                    matches = (scanRecord[data + character] & 0xff) == name.charAt(character);
+                }
+                if (matches) {
+                    return true;
+                }
+            }
+            index += length + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Get the reference RSSI at 1 meter
+     *
+     * @param scanRecord the scan record
+     * @param payload the payload offset returned by findPayload
+     * @return reference RSSI
+     */
+    public static int getReferenceRssi(byte[] scanRecord, int payload) {
+        return scanRecord[payload + REFERENCE_RSSI_OFFSET];
+    }
+
+    /**
+     * Get the x location
+     *
+     * @param scanRecord the scan record
+     * @param payload the payload offset returned by findPayload
+     * @return x location in centimeters
+     */
+    public static int getXLocationCentimeters(byte[] scanRecord, int payload) {
+        return (short) readUnsignedShort(scanRecord, payload + X_LOCATION_OFFSET);
+    }
+
+    /**
+     * Get the y location
+     *
+     * @param scanRecord the scan record
+     * @param payload the payload offset returned by findPayload
+     * @return y location in centimeters
+     */
+    public static int getYLocationCentimeters(byte[] scanRecord, int payload) {
+        return (short) readUnsignedShort(scanRecord, payload + Y_LOCATION_OFFSET);
+    }
+
+    /**
+     * The Beacon broadcasts its height and floor
+     *
+     * @param scanRecord the scan record
+     * @param payload the payload offset returned by findPayload
+     * @return <b>true</b> for a version 2 payload
+     */
+    public static boolean hasZLocation(byte[] scanRecord, int payload) {
+        return (scanRecord[payload + VERSION_OFFSET] & 0xff) >= FORMAT_VERSION;
+    }
+
+    /**
+     * Get the z location
+     *
+     * @param scanRecord the scan record
+     * @param payload the payload offset returned by findPayload
+     * @return z location in centimeters, or 0 if the Beacon does not broadcast it
+     */
+    public static int getZLocationCentimeters(byte[] scanRecord, int payload) {
+        if (!hasZLocation(scanRecord, payload)) {
+            return 0;
+        }
+        return (short) readUnsignedShort(scanRecord, payload + Z_LOCATION_OFFSET);
+    }
+
+    /**
+     * Get the floor number
+     *
+     * @param scanRecord the scan record
+     * @param payload the payload offset returned by findPayload
+     * @return floor number, or 0 if the Beacon does not broadcast it
+     */
+    public static int getFloor(byte[] scanRecord, int payload) {
+        if (!hasZLocation(scanRecord, payload)) {
+            return 0;
+        }
+        return scanRecord[payload + FLOOR_OFFSET];
+    }
+
+    /**
+     * Write a version 1 manufacturer data AD structure, for a Beacon that does not know its
+     * height or floor
+     *
+     * @param scanRecord the buffer to write into
+     * @param offset where to start writing
+     * @param referenceRssi reference RSSI at 1 meter
+     * @param xLocationCentimeters x location in centimeters
+     * @param yLocationCentimeters y location in centimeters
+     * @return the offset after the written AD structure
+     */
+    public static int write(byte[] scanRecord, int offset, int referenceRssi, int xLocationCentimeters, int yLocationCentimeters) {
+        int payload = writeHeader(scanRecord, offset, FORMAT_VERSION_2D, PAYLOAD_LENGTH_2D);
+        scanRecord[payload + REFERENCE_RSSI_OFFSET] = (byte) referenceRssi;
+        writeShort(scanRecord, payload + X_LOCATION_OFFSET, xLocationCentimeters);
+        writeShort(scanRecord, payload + Y_LOCATION_OFFSET, yLocationCentimeters);
+        return payload + PAYLOAD_LENGTH_2D;
+    }
+
+    /**
+     * Write a manufacturer data AD structure containing Beacon information, the way
+     * ble_beacon.ino broadcasts it
+     *
+     * @param scanRecord the buffer to write into
+     * @param offset where to start writing
+     * @param referenceRssi reference RSSI at 1 meter
+     * @param xLocationCentimeters x location in centimeters
+     * @param yLocationCentimeters y location in centimeters
+     * @param zLocationCentimeters z location in centimeters
+     * @param floor floor number
+     * @return the offset after the written AD structure
+     */
+    public static int write(byte[] scanRecord, int offset, int referenceRssi,
+                            int xLocationCentimeters, int yLocationCentimeters, int zLocationCentimeters, int floor) {
+        int payload = writeHeader(scanRecord, offset, FORMAT_VERSION, PAYLOAD_LENGTH);
+        scanRecord[payload + REFERENCE_RSSI_OFFSET] = (byte) referenceRssi;
+        writeShort(scanRecord, payload + X_LOCATION_OFFSET, xLocationCentimeters);
+        writeShort(scanRecord, payload + Y_LOCATION_OFFSET, yLocationCentimeters);
+        writeShort(scanRecord, payload + Z_LOCATION_OFFSET, zLocationCentimeters);
+        scanRecord[payload + FLOOR_OFFSET] = (byte) floor;
+        return payload + PAYLOAD_LENGTH;
+    }
+
+    /**
+     * Write the AD structure header, manufacturer id and format version
+     *
+     * @return the offset of the payload
+     */
+    private static int writeHeader(byte[] scanRecord, int offset, int version, int payloadLength) {
+        scanRecord[offset] = (byte) (1 + MANUFACTURER_ID_LENGTH + payloadLength);
+        scanRecord[offset + 1] = (byte) AD_TYPE_MANUFACTURER_DATA;
+        int data = offset + 2;
+        writeShort(scanRecord, data, MANUFACTURER_ID);
+        int payload = data + MANUFACTURER_ID_LENGTH;
+        scanRecord[payload + VERSION_OFFSET] = (byte) version;
+        return payload;
+    }
+
+    private static int readUnsignedShort(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8);
+    }
+
+    private static void writeShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+    }
+}
@@ -0,0 +1,306 @@
+package tonyg.example.com.beacon.ble;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import tonyg.example.com.beacon.utilities.LongIntMap;
+import tonyg.example.com.beacon.utilities.PathLossCalibrator;
+
+/**
+ * Remembers the reference RSSI, location and floor of Beacons between sessions, so that a Beacon
+ * only has to be asked for its data over GATT once.  It also remembers the path loss
+ * calibration of each Beacon, so calibration carries on where the last session left it.
+ *
+ * Entries are fixed-size records in a memory-mapped file.  Reference RSSI and location expire
+ * after a time to live, and when the file is full the least recently used entry is replaced.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class BeaconMetadataCache {
+    public static final String FILE_NAME = "beacon_metadata.bin";
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final long DEFAULT_TIME_TO_LIVE_MS = 7L * 24 * 60 * 60 * 1000; // one week
+
+    /** File layout **/
+    private static final int MAGIC = 0x42434e4d; // "BCNM"
+    private static final int FORMAT_VERSION = 3;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_CAPACITY = 8;
+    private static final int HEADER_SIZE = 16;
+
+    /** Record layout **/
+    private static final int RECORD_MAC_ADDRESS = 0; // long
+    private static final int RECORD_UPDATED = 8; // long, when the values were retrieved
+    private static final int RECORD_LAST_USED = 16; // long, for least recently used eviction
+    private static final int RECORD_REFERENCE_RSSI = 24; // int
+    private static final int RECORD_X_LOCATION = 28; // int, centimeters
+    private static final int RECORD_Y_LOCATION = 32; // int, centimeters
+    private static final int RECORD_FLAGS = 36; // int
+    private static final int RECORD_Z_LOCATION = 40; // int, centimeters
+    private static final int RECORD_FLOOR = 44; // int
+    private static final int RECORD_CALIBRATION = 48; // PathLossCalibrator.STATISTIC_LENGTH doubles
+    private static final int RECORD_SIZE = RECORD_CALIBRATION + 8 * PathLossCalibrator.STATISTIC_LENGTH;
+
+    private static final int FLAG_IN_USE = 1;
+    private static final int FLAG_METADATA = 1 << 1; // reference RSSI and location are valid
+    private static final int FLAG_CALIBRATION = 1 << 2; // path loss statistics are valid
+    private static final int FLAG_Z_LOCATION = 1 << 3; // the Beacon knows its height
+    private static final int FLAG_FLOOR = 1 << 4; // the Beacon knows its floor
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final MappedByteBuffer mBuffer;
+    private final int mCapacity;
+    private final long mTimeToLive_ms;
+    private final LongIntMap mIndex; // MAC address -> record slot
+    private int mFreeSlot = 0; // slots below this may be in use
+    private final double[] mStatistics = new double[PathLossCalibrator.STATISTIC_LENGTH];
+
+    /**
+     * Open a BeaconMetadataCache, creating the file if it does not exist.  A file written in
+     * another format or capacity is discarded.
+     *
+     * @param file the cache file
+     * @param capacity maximum number of Beacons
+     * @param timeToLive_ms how long an entry stays valid, in milliseconds
+     * @throws IOException if the file can not be opened
+     */
+    public BeaconMetadataCache(File file, int capacity, long timeToLive_ms) throws IOException {
+        mCapacity = capacity;
+        mTimeToLive_ms = timeToLive_ms;
+        mIndex = new LongIntMap(capacity);
+
+        mFile = new RandomAccessFile(file, "rw");
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        boolean isNew = mFile.length() != size;
+        mFile.setLength(size);
+        mChannel = mFile.getChannel();
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (isNew
+                || mBuffer.getInt(HEADER_MAGIC) != MAGIC
+                || mBuffer.getInt(HEADER_VERSION) != FORMAT_VERSION
+                || mBuffer.getInt(HEADER_CAPACITY) != capacity) {
+            initialize();
+        } else {
+            buildIndex();
+        }
+    }
+
+    /**
+     * Copy the cached data of a Beacon into its BeaconTable row
+     *
+     * @param macAddress the packed MAC address
+     * @param beaconTable the BeaconTable
+     * @param row the Beacon row
+     * @param now_ms the current time in milliseconds since the epoch
+     * @return <b>true</b> if a valid entry was found
+     */
+    public synchronized boolean load(long macAddress, BeaconTable beaconTable, int row, long now_ms) {
+        int slot = mIndex.get(macAddress);
+        if (slot == LongIntMap.NOT_FOUND) {
+            return false;
+        }
+        int record = recordOffset(slot);
+        int flags = mBuffer.getInt(record + RECORD_FLAGS);
+        if ((flags & FLAG_METADATA) == 0) {
+            return false;
+        }
+        if (now_ms - mBuffer.getLong(record + RECORD_UPDATED) > mTimeToLive_ms) {
+            // expired, so the Beacon is asked again.  The calibration is still good
+            flags &= ~(FLAG_METADATA | FLAG_Z_LOCATION | FLAG_FLOOR);
+            if ((flags & FLAG_CALIBRATION) == 0) {
+                flags = 0;
+                mIndex.remove(macAddress);
+            }
+            mBuffer.putInt(record + RECORD_FLAGS, flags);
+            return false;
+        }
+        mBuffer.putLong(record + RECORD_LAST_USED, now_ms);
+        beaconTable.setReferenceRssi(row, mBuffer.getInt(record + RECORD_REFERENCE_RSSI));
+        beaconTable.setXLocation(row, mBuffer.getInt(record + RECORD_X_LOCATION) / 100.0); // centimeters to meters
+        beaconTable.setYLocation(row, mBuffer.getInt(record + RECORD_Y_LOCATION) / 100.0);
+        if ((flags & FLAG_Z_LOCATION) != 0) {
+            beaconTable.setZLocation(row, mBuffer.getInt(record + RECORD_Z_LOCATION) / 100.0);
+        }
+        if ((flags & FLAG_FLOOR) != 0) {
+            beaconTable.setFloor(row, mBuffer.getInt(record + RECORD_FLOOR));
+        }
+        return true;
+    }
+
+    /**
+     * Remember the data of a Beacon
+     *
+     * @param macAddress the packed MAC address
+     * @param beaconTable the BeaconTable holding the reference RSSI, location and floor
+     * @param row the Beacon row
+     * @param now_ms the current time in milliseconds since the epoch
+     */
+    public synchronized void store(long macAddress, BeaconTable beaconTable, int row, long now_ms) {
+        int record = findOrAllocateRecord(macAddress, now_ms);
+        int flags = mBuffer.getInt(record + RECORD_FLAGS) & ~(FLAG_Z_LOCATION | FLAG_FLOOR);
+        mBuffer.putLong(record + RECORD_UPDATED, now_ms);
+        mBuffer.putInt(record + RECORD_REFERENCE_RSSI, beaconTable.getReferenceRssi(row));
+        mBuffer.putInt(record + RECORD_X_LOCATION, (int) Math.round(beaconTable.getXLocation(row) * 100)); // meters to centimeters
+        mBuffer.putInt(record + RECORD_Y_LOCATION, (int) Math.round(beaconTable.getYLocation(row) * 100));
+        if (beaconTable.hasZLocation(row)) {
+            mBuffer.putInt(record + RECORD_Z_LOCATION, (int) Math.round(beaconTable.getZLocation(row) * 100));
+            flags |= FLAG_Z_LOCATION;
+        }
+        if ((beaconTable.getFlags(row) & BeaconTable.FLAG_FLOOR) != 0) {
+            mBuffer.putInt(record + RECORD_FLOOR, beaconTable.getFloor(row));
+            flags |= FLAG_FLOOR;
+        }
+        mBuffer.putInt(record + RECORD_FLAGS, flags | FLAG_METADATA);
+    }
+
+    /**
+     * Copy the saved path loss calibration of a Beacon into a PathLossCalibrator
+     *
+     * @param macAddress the packed MAC address
+     * @param pathLossCalibrator the PathLossCalibrator
+     * @param row the Beacon row
+     * @param now_ms the current time in milliseconds since the epoch
+     * @return <b>true</b> if a calibration was found
+     */
+    public synchronized boolean loadCalibration(long macAddress, PathLossCalibrator pathLossCalibrator, int row, long now_ms) {
+        int slot = mIndex.get(macAddress);
+        if (slot == LongIntMap.NOT_FOUND) {
+            return false;
+        }
+        int record = recordOffset(slot);
+        if ((mBuffer.getInt(record + RECORD_FLAGS) & FLAG_CALIBRATION) == 0) {
+            return false;
+        }
+        mBuffer.putLong(record + RECORD_LAST_USED, now_ms);
+        for (int index = 0; index < PathLossCalibrator.STATISTIC_LENGTH; index++) {
+            mStatistics[index] = mBuffer.getDouble(record + RECORD_CALIBRATION + 8 * index);
+        }
+        pathLossCalibrator.setStatistics(row, mStatistics);
+        return true;
+    }
+
+    /**
+     * Remember the path loss calibration of a Beacon.  Calibrations do not expire
+     *
+     * @param macAddress the packed MAC address
+     * @param pathLossCalibrator the PathLossCalibrator
+     * @param row the Beacon row
+     * @param now_ms the current time in milliseconds since the epoch
+     */
+    public synchronized void storeCalibration(long macAddress, PathLossCalibrator pathLossCalibrator, int row, long now_ms) {
+        int record = findOrAllocateRecord(macAddress, now_ms);
+        pathLossCalibrator.getStatistics(row, mStatistics);
+        for (int index = 0; index < PathLossCalibrator.STATISTIC_LENGTH; index++) {
+            mBuffer.putDouble(record + RECORD_CALIBRATION + 8 * index, mStatistics[index]);
+        }
+        mBuffer.putInt(record + RECORD_FLAGS, mBuffer.getInt(record + RECORD_FLAGS) | FLAG_CALIBRATION);
+    }
+
+    /**
+     * Forget a Beacon
+     *
+     * @param macAddress the packed MAC address
+     */
+    public synchronized void remove(long macAddress) {
+        int slot = mIndex.remove(macAddress);
+        if (slot != LongIntMap.NOT_FOUND) {
+            mBuffer.putInt(recordOffset(slot) + RECORD_FLAGS, 0);
+        }
+    }
+
+    /**
+     * Number of cached Beacons
+     *
+     * @return the size
+     */
+    public synchronized int size() {
+        return mIndex.size();
+    }
+
+    /**
+     * Write pending changes to storage and close the file
+     *
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void close() throws IOException {
+        mBuffer.force();
+        mChannel.close();
+        mFile.close();
+    }
+
+    /**
+     * Find the record of a Beacon, or start an empty one, and mark it as used now
+     */
+    private int findOrAllocateRecord(long macAddress, long now_ms) {
+        int slot = mIndex.get(macAddress);
+        int record;
+        if (slot == LongIntMap.NOT_FOUND) {
+            slot = allocateSlot();
+            mIndex.put(macAddress, slot);
+            record = recordOffset(slot);
+            mBuffer.putLong(record + RECORD_MAC_ADDRESS, macAddress);
+            mBuffer.putInt(record + RECORD_FLAGS, FLAG_IN_USE);
+        } else {
+            record = recordOffset(slot);
+        }
+        mBuffer.putLong(record + RECORD_LAST_USED, now_ms);
+        return record;
+    }
+
+    /**
+     * Find a free slot, or the least recently used one if the cache is full
+     */
+    private int allocateSlot() {
+        if (mFreeSlot < mCapacity) {
+            return mFreeSlot++;
+        }
+        int oldestSlot = 0;
+        long oldestUse = Long.MAX_VALUE;
+        for (int slot = 0; slot < mCapacity; slot++) {
+            int record = recordOffset(slot);
+            if ((mBuffer.getInt(record + RECORD_FLAGS) & FLAG_IN_USE) == 0) {
+                return slot;
+            }
+            long lastUsed = mBuffer.getLong(record + RECORD_LAST_USED);
+            if (lastUsed < oldestUse) {
+                oldestUse = lastUsed;
+                oldestSlot = slot;
+            }
+        }
+        mIndex.remove(mBuffer.getLong(recordOffset(oldestSlot) + RECORD_MAC_ADDRESS));
+        return oldestSlot;
+    }
+
+    private void initialize() {
+        for (int offset = 0; offset < mBuffer.capacity(); offset += 4) {
+            mBuffer.putInt(offset, 0);
+        }
+        mBuffer.putInt(HEADER_MAGIC, MAGIC);
+        mBuffer.putInt(HEADER_VERSION, FORMAT_VERSION);
+        mBuffer.putInt(HEADER_CAPACITY, mCapacity);
+        mFreeSlot = 0;
+    }
+
+    private void buildIndex() {
+        for (int slot = 0; slot < mCapacity; slot++) {
+            int record = recordOffset(slot);
+            if ((mBuffer.getInt(record + RECORD_FLAGS) & FLAG_IN_USE) != 0) {
+                mIndex.put(mBuffer.getLong(record + RECORD_MAC_ADDRESS), slot);
+                mFreeSlot = slot + 1;
+            }
+        }
+    }
+
+    private static int recordOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,506 @@
+package tonyg.example.com.beacon.ble;
+
+import java.util.Arrays;
+
+import tonyg.example.com.beacon.utilities.BeaconGrid;
+import tonyg.example.com.beacon.utilities.LongIntMap;
+
+/**
+ * Stores the state of every Beacon in parallel primitive arrays.
+ *
+ * Each Beacon occupies one row, found through its MAC address packed into a long.
+ * Updating a Beacon on every advertisement touches only primitive arrays, so the scan
+ * path does not create objects.  Rows never move, so a row number can be kept as a handle.
+ *
+ * Located Beacons are also kept in a BeaconGrid, so the Beacons around the Central can be
+ * selected without visiting every row.  Each floor has a grid of its own as well, so a
+ * selection can be kept to the floor the Central is on.  Beacons that do not know their
+ * floor are on floor 0.
+ *
+ * A Beacon keeps its last distance after it goes out of range.  Give the table a cutoff with
+ * setHeardSince() and selections skip Beacons that have not been heard since, so a Beacon
+ * left behind does not go on pulling the Central towards its old range.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class BeaconTable {
+    public static final int NOT_FOUND = LongIntMap.NOT_FOUND;
+
+    /** Row flags **/
+    public static final int FLAG_REFERENCE_RSSI = 1;
+    public static final int FLAG_X_LOCATION = 1 << 1;
+    public static final int FLAG_Y_LOCATION = 1 << 2;
+    public static final int FLAG_LOCATED = FLAG_REFERENCE_RSSI | FLAG_X_LOCATION | FLAG_Y_LOCATION;
+    public static final int FLAG_Z_LOCATION = 1 << 3;
+    public static final int FLAG_FLOOR = 1 << 4;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final double MIN_DISTANCE_VARIANCE = 1e-4; // meters^2, keeps solver weights finite
+
+    private final LongIntMap mIndex; // MAC address -> row
+    private final BeaconGrid mGrid = new BeaconGrid(); // located rows by location
+    private final LongIntMap mFloorIndex = new LongIntMap(); // floor -> index into mFloorGrids
+    private BeaconGrid[] mFloorGrids = new BeaconGrid[1];
+    private int mFloorCount = 0;
+    private int mSize = 0;
+    private long mHeardSince_ns = Long.MIN_VALUE; // rows last heard before this are not selected
+
+    /** Columns **/
+    private long[] mMacAddress;
+    private int[] mFlags;
+    private int[] mRssi;
+    private int[] mReferenceRssi;
+    private double[] mX;
+    private double[] mY;
+    private double[] mZ;
+    private int[] mFloor;
+    private double[] mDistance;
+    private double[] mDistanceVariance;
+    private long[] mLastHeard_ns;
+
+    /** Beacons selected for the next position solve **/
+    private int mSelectedCount = 0;
+    private int[] mSelectedRow;
+    private double[] mSelectedX;
+    private double[] mSelectedY;
+    private double[] mSelectedZ;
+    private int mSelectedZCount = 0;
+    private double[] mSelectedDistance;
+    private double[] mSelectedWeight;
+    private double[] mSelectedVariance;
+
+    /**
+     * Create a BeaconTable
+     */
+    public BeaconTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a BeaconTable
+     *
+     * @param capacity number of Beacons to hold before the table needs to grow
+     */
+    public BeaconTable(int capacity) {
+        if (capacity < 1) capacity = 1;
+        mIndex = new LongIntMap(capacity);
+        mMacAddress = new long[capacity];
+        mFlags = new int[capacity];
+        mRssi = new int[capacity];
+        mReferenceRssi = new int[capacity];
+        mX = new double[capacity];
+        mY = new double[capacity];
+        mZ = new double[capacity];
+        mFloor = new int[capacity];
+        mDistance = new double[capacity];
+        mDistanceVariance = new double[capacity];
+        mLastHeard_ns = new long[capacity];
+        mSelectedRow = new int[capacity];
+        mSelectedX = new double[capacity];
+        mSelectedY = new double[capacity];
+        mSelectedZ = new double[capacity];
+        mSelectedDistance = new double[capacity];
+        mSelectedWeight = new double[capacity];
+        mSelectedVariance = new double[capacity];
+    }
+
+    /**
+     * Pack a MAC address such as "AA:BB:CC:DD:EE:FF" into the low 48 bits of a long
+     *
+     * @param macAddress the MAC address
+     * @return the packed MAC address
+     * @throws IllegalArgumentException if the MAC address is not hexadecimal
+     */
+    public static long parseMacAddress(String macAddress) {
+        long packed = 0;
+        int length = macAddress.length();
+        for (int index = 0; index < length; index++) {
+            char c = macAddress.charAt(index);
+            if (c == ':') continue;
+            int nibble = Character.digit(c, 16);
+            if (nibble < 0) {
+                throw new IllegalArgumentException("Invalid MAC address: " + macAddress);
+            }
+            packed = (packed << 4) | nibble;
+        }
+        return packed;
+    }
+
+    /**
+     * Format a packed MAC address as "AA:BB:CC:DD:EE:FF"
+     *
+     * @param macAddress the packed MAC address
+     * @return the MAC address string
+     */
+    public static String formatMacAddress(long macAddress) {
+        char[] chars = new char[17];
+        for (int octet = 0; octet < 6; octet++) {
+            int value = (int) (macAddress >>> (8 * (5 - octet))) & 0xff;
+            chars[octet * 3] = Character.toUpperCase(Character.forDigit(value >>> 4, 16));
+            chars[octet * 3 + 1] = Character.toUpperCase(Character.forDigit(value & 0xf, 16));
+            if (octet < 5) chars[octet * 3 + 2] = ':';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Find the row of a Beacon
+     *
+     * @param macAddress the packed MAC address
+     * @return the row, or NOT_FOUND
+     */
+    public int indexOf(long macAddress) {
+        return mIndex.get(macAddress);
+    }
+
+    /**
+     * Add a Beacon, or find it if it is already in the table
+     *
+     * @param macAddress the packed MAC address
+     * @return the row of the Beacon
+     */
+    public int add(long macAddress) {
+        int row = mIndex.get(macAddress);
+        if (row != NOT_FOUND) {
+            return row;
+        }
+        if (mSize == mMacAddress.length) {
+            grow(mSize * 2);
+        }
+        row = mSize++;
+        mMacAddress[row] = macAddress;
+        mFlags[row] = 0;
+        mRssi[row] = 0;
+        mReferenceRssi[row] = 0;
+        mX[row] = 0;
+        mY[row] = 0;
+        mZ[row] = 0;
+        mFloor[row] = 0;
+        mDistance[row] = 0;
+        mDistanceVariance[row] = 0;
+        mLastHeard_ns[row] = 0;
+        mIndex.put(macAddress, row);
+        return row;
+    }
+
+    /**
+     * Number of Beacons in the table
+     *
+     * @return the size
+     */
+    public int size() { return mSize; }
+
+    /**
+     * Remove every Beacon, keeping the allocated memory
+     */
+    public void clear() {
+        mIndex.clear();
+        mGrid.clear();
+        for (int index = 0; index < mFloorCount; index++) {
+            mFloorGrids[index].clear();
+        }
+        mSize = 0;
+        mSelectedCount = 0;
+        mSelectedZCount = 0;
+    }
+
+    public long getMacAddress(int row) { return mMacAddress[row]; }
+
+    public int getFlags(int row) { return mFlags[row]; }
+
+    /**
+     * The reference RSSI and location of the Beacon are known
+     *
+     * @param row the Beacon row
+     * @return <b>true</b> if the Beacon can be used to locate the Central
+     */
+    public boolean isLocated(int row) { return (mFlags[row] & FLAG_LOCATED) == FLAG_LOCATED; }
+
+    public int getRssi(int row) { return mRssi[row]; }
+
+    public void setRssi(int row, int rssi) { mRssi[row] = rssi; }
+
+    public int getReferenceRssi(int row) { return mReferenceRssi[row]; }
+
+    public void setReferenceRssi(int row, int referenceRssi) {
+        mReferenceRssi[row] = referenceRssi;
+        mFlags[row] |= FLAG_REFERENCE_RSSI;
+        updateGrid(row);
+    }
+
+    public double getXLocation(int row) { return mX[row]; }
+
+    public void setXLocation(int row, double x) {
+        mX[row] = x;
+        mFlags[row] |= FLAG_X_LOCATION;
+        updateGrid(row);
+    }
+
+    public double getYLocation(int row) { return mY[row]; }
+
+    public void setYLocation(int row, double y) {
+        mY[row] = y;
+        mFlags[row] |= FLAG_Y_LOCATION;
+        updateGrid(row);
+    }
+
+    /**
+     * Get the height of a Beacon
+     *
+     * @param row the Beacon row
+     * @return z location in meters, valid if FLAG_Z_LOCATION is set
+     */
+    public double getZLocation(int row) { return mZ[row]; }
+
+    public void setZLocation(int row, double z) {
+        mZ[row] = z;
+        mFlags[row] |= FLAG_Z_LOCATION;
+    }
+
+    public boolean hasZLocation(int row) { return (mFlags[row] & FLAG_Z_LOCATION) != 0; }
+
+    /**
+     * Get the floor of a Beacon
+     *
+     * @param row the Beacon row
+     * @return floor number, 0 unless FLAG_FLOOR is set
+     */
+    public int getFloor(int row) { return mFloor[row]; }
+
+    public void setFloor(int row, int floor) {
+        if (mFloor[row] != floor && isLocated(row)) {
+            getFloorGrid(mFloor[row]).remove(row);
+        }
+        mFloor[row] = floor;
+        mFlags[row] |= FLAG_FLOOR;
+        updateGrid(row);
+    }
+
+    public double getDistance(int row) { return mDistance[row]; }
+
+    public void setDistance(int row, double distance_m) { mDistance[row] = distance_m; }
+
+    /**
+     * Get the uncertainty of the distance to a Beacon
+     *
+     * @param row the Beacon row
+     * @return distance variance in meters^2, or 0 if unknown
+     */
+    public double getDistanceVariance(int row) { return mDistanceVariance[row]; }
+
+    public void setDistanceVariance(int row, double variance_m2) { mDistanceVariance[row] = variance_m2; }
+
+    /**
+     * Get when a Beacon was last heard
+     *
+     * @param row the Beacon row
+     * @return timestamp of the last advertisement in nanoseconds, or 0 if it has not been heard
+     */
+    public long getLastHeardNanos(int row) { return mLastHeard_ns[row]; }
+
+    public void setLastHeardNanos(int row, long timestamp_ns) { mLastHeard_ns[row] = timestamp_ns; }
+
+    /**
+     * Only select Beacons heard at or after a time
+     *
+     * @param timestamp_ns the cutoff in nanoseconds, or Long.MIN_VALUE to select Beacons however long ago they were heard
+     */
+    public void setHeardSince(long timestamp_ns) { mHeardSince_ns = timestamp_ns; }
+
+    /**
+     * @param row the Beacon row
+     * @return <b>true</b> if the Beacon was heard at or after the setHeardSince() cutoff
+     */
+    public boolean isHeardSince(int row) { return mLastHeard_ns[row] >= mHeardSince_ns; }
+
+    /**
+     * Select every located Beacon heard since the cutoff for the next position solve
+     *
+     * @return the number of selected Beacons
+     */
+    public int selectLocated() {
+        clearSelection();
+        for (int row = 0; row < mSize; row++) {
+            if (isLocated(row) && isHeardSince(row)) {
+                select(row);
+            }
+        }
+        return mSelectedCount;
+    }
+
+    /**
+     * Select every located Beacon on one floor heard since the cutoff for the next position solve
+     *
+     * @param floor the floor number
+     * @return the number of selected Beacons
+     */
+    public int selectLocated(int floor) {
+        clearSelection();
+        for (int row = 0; row < mSize; row++) {
+            if (mFloor[row] == floor && isLocated(row) && isHeardSince(row)) {
+                select(row);
+            }
+        }
+        return mSelectedCount;
+    }
+
+    /**
+     * Number of located Beacons
+     *
+     * @return how many Beacons selectLocated() would select, before the heard since cutoff
+     */
+    public int getLocatedCount() { return mGrid.size(); }
+
+    /**
+     * Number of located Beacons on one floor
+     *
+     * @param floor the floor number
+     * @return how many Beacons selectLocated(floor) would select, before the heard since cutoff
+     */
+    public int getLocatedCount(int floor) {
+        int index = mFloorIndex.get(floor);
+        return index == NOT_FOUND ? 0 : mFloorGrids[index].size();
+    }
+
+    /**
+     * Select the located Beacons heard since the cutoff nearest a point for the next position solve
+     *
+     * @param x the x location of the point, in meters
+     * @param y the y location of the point, in meters
+     * @param count how many Beacons to select
+     * @return the number of selected Beacons, which is less than count if fewer Beacons are located
+     */
+    public int selectNearest(double x, double y, int count) {
+        return selectNearest(mGrid, x, y, count);
+    }
+
+    /**
+     * Select the located Beacons on one floor heard since the cutoff nearest a point for the next position solve
+     *
+     * @param x the x location of the point, in meters
+     * @param y the y location of the point, in meters
+     * @param floor the floor number
+     * @param count how many Beacons to select
+     * @return the number of selected Beacons, which is less than count if fewer Beacons are located on the floor
+     */
+    public int selectNearest(double x, double y, int floor, int count) {
+        int index = mFloorIndex.get(floor);
+        if (index == NOT_FOUND) {
+            clearSelection();
+            return 0;
+        }
+        return selectNearest(mFloorGrids[index], x, y, count);
+    }
+
+    /**
+     * Empty the selection
+     */
+    public void clearSelection() {
+        mSelectedCount = 0;
+        mSelectedZCount = 0;
+    }
+
+    /**
+     * Copy a Beacon into the selection
+     *
+     * @param row the Beacon row
+     */
+    public void select(int row) {
+        int index = mSelectedCount++;
+        mSelectedRow[index] = row;
+        mSelectedX[index] = mX[row];
+        mSelectedY[index] = mY[row];
+        mSelectedZ[index] = mZ[row];
+        if (hasZLocation(row)) mSelectedZCount++;
+        mSelectedDistance[index] = mDistance[row];
+        // trust each distance in proportion to its precision
+        mSelectedWeight[index] = mDistanceVariance[row] > 0 ? 1 / Math.max(mDistanceVariance[row], MIN_DISTANCE_VARIANCE) : 1;
+        mSelectedVariance[index] = 1 / mSelectedWeight[index];
+    }
+
+    /** The selection is stored densely so it can be handed straight to a solver **/
+    public int getSelectedCount() { return mSelectedCount; }
+
+    public int[] getSelectedRows() { return mSelectedRow; }
+
+    public double[] getSelectedX() { return mSelectedX; }
+
+    public double[] getSelectedY() { return mSelectedY; }
+
+    public double[] getSelectedZ() { return mSelectedZ; }
+
+    /**
+     * @return how many of the selected Beacons know their height
+     */
+    public int getSelectedZCount() { return mSelectedZCount; }
+
+    public double[] getSelectedDistance() { return mSelectedDistance; }
+
+    public double[] getSelectedWeight() { return mSelectedWeight; }
+
+    public double[] getSelectedVariance() { return mSelectedVariance; }
+
+    private int selectNearest(BeaconGrid grid, double x, double y, int count) {
+        int searchCount = count;
+        while (true) {
+            clearSelection();
+            int nearestCount = grid.findNearest(x, y, searchCount);
+            int[] nearestRows = grid.getNearestRows();
+            for (int index = 0; index < nearestCount && mSelectedCount < count; index++) {
+                if (isHeardSince(nearestRows[index])) {
+                    select(nearestRows[index]);
+                }
+            }
+            // Beacons that were not heard took some of the places, so look further out
+            if (mSelectedCount == count || nearestCount < searchCount) {
+                return mSelectedCount;
+            }
+            searchCount *= 2;
+        }
+    }
+
+    private void updateGrid(int row) {
+        if (isLocated(row)) {
+            mGrid.put(row, mX[row], mY[row]);
+            getFloorGrid(mFloor[row]).put(row, mX[row], mY[row]);
+        }
+    }
+
+    /**
+     * Find the grid of a floor, or start one
+     */
+    private BeaconGrid getFloorGrid(int floor) {
+        int index = mFloorIndex.get(floor);
+        if (index == NOT_FOUND) {
+            if (mFloorCount == mFloorGrids.length) {
+                mFloorGrids = Arrays.copyOf(mFloorGrids, mFloorCount * 2);
+            }
+            index = mFloorCount++;
+            mFloorGrids[index] = new BeaconGrid();
+            mFloorIndex.put(floor, index);
+        }
+        return mFloorGrids[index];
+    }
+
+    private void grow(int capacity) {
+        mMacAddress = Arrays.copyOf(mMacAddress, capacity);
+        mFlags = Arrays.copyOf(mFlags, capacity);
+        mRssi = Arrays.copyOf(mRssi, capacity);
+        mReferenceRssi = Arrays.copyOf(mReferenceRssi, capacity);
+        mX = Arrays.copyOf(mX, capacity);
+        mY = Arrays.copyOf(mY, capacity);
+        mZ = Arrays.copyOf(mZ, capacity);
+        mFloor = Arrays.copyOf(mFloor, capacity);
+        mDistance = Arrays.copyOf(mDistance, capacity);
+        mDistanceVariance = Arrays.copyOf(mDistanceVariance, capacity);
+        mLastHeard_ns = Arrays.copyOf(mLastHeard_ns, capacity);
+        mSelectedRow = Arrays.copyOf(mSelectedRow, capacity);
+        mSelectedX = Arrays.copyOf(mSelectedX, capacity);
+        mSelectedY = Arrays.copyOf(mSelectedY, capacity);
+        mSelectedZ = Arrays.copyOf(mSelectedZ, capacity);
+        mSelectedDistance = Arrays.copyOf(mSelectedDistance, capacity);
+        mSelectedWeight = Arrays.copyOf(mSelectedWeight, capacity);
+        mSelectedVariance = Arrays.copyOf(mSelectedVariance, capacity);
+    }
+}
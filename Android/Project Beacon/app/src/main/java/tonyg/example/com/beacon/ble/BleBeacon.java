@@ -30,6 +30,8 @@ public class BleBeacon {
     public static final UUID RSSI_CHARACTERISTIC_UUID = UUID.fromString("00002a56-0000-1000-8000-00805f9b34fa");
     public static final UUID X_CHARACTERISTIC_UUID = UUID.fromString("00002a56-0000-1000-8000-00805f9b34fb");
     public static final UUID Y_CHARACTERISTIC_UUID = UUID.fromString("00002a56-0000-1000-8000-00805f9b34fc");
+    public static final UUID Z_CHARACTERISTIC_UUID = UUID.fromString("00002a56-0000-1000-8000-00805f9b34fd");
+    public static final UUID FLOOR_CHARACTERISTIC_UUID = UUID.fromString("00002a56-0000-1000-8000-00805f9b34fe");
 
     private Context mContext;
     private int mItemId;
@@ -38,6 +40,8 @@ public class BleBeacon {
     private double mDistance_m;
     private double mX = 0;
     private double mY = 0;
+    private double mZ = 0;
+    private int mFloor = 0;
 
     private boolean mReferenceRssiRead = false;
     private boolean mXLocationRead = false;
@@ -81,9 +85,20 @@ public class BleBeacon {
      * @return
      */
     public static double getDistanceFromRSSI(int referenceRssi, double propagationConstant, int rssi) {
+        return getDistanceFromRSSI(referenceRssi, propagationConstant, (double) rssi);
+    }
+
+    /**
+     * Calculate the distance to the BleBeacon from a filtered, fractional RSSI
+     *
+     * @param referenceRssi the reference RSSI at 1 meter
+     * @param propagationConstant the radio propagation constant for the physical location
+     * @param rssi the filtered RSSI from the Ble Beacon
+     * @return
+     */
+    public static double getDistanceFromRSSI(int referenceRssi, double propagationConstant, double rssi) {
         double exponent = (referenceRssi - rssi)/(10*propagationConstant);
-        double distance = Math.pow(10, exponent);
-        return distance;
+        return Math.pow(10, exponent);
     }
 
     /**
@@ -153,6 +168,42 @@ public class BleBeacon {
         return mY;
     }
 
+    /**
+     * Set the Z location of the BleBeacon, its height above the site's zero
+     *
+     * @param z z location
+     */
+    public void setZLocation(double z) {
+        mZ = z;
+    }
+
+    /**
+     * Get the Z location
+     *
+     * @return z location
+     */
+    public double getZLocation() {
+        return mZ;
+    }
+
+    /**
+     * Set the floor the BleBeacon is on
+     *
+     * @param floor floor number, 0 for the ground floor
+     */
+    public void setFloor(int floor) {
+        mFloor = floor;
+    }
+
+    /**
+     * Get the floor the BleBeacon is on
+     *
+     * @return floor number
+     */
+    public int getFloor() {
+        return mFloor;
+    }
+
     /**
      * The BleBeacon is done reading variables variables
      *
@@ -245,7 +296,9 @@ public class BleBeacon {
         }
         mBluetoothDevice = bluetoothDevice;
         mBluetoothGatt = bluetoothDevice.connectGatt(mContext, false, callback);
-        refreshDeviceCache();
+        if (mBluetoothGatt == null) {
+            throw new Exception("Could not connect to bluetooth device");
+        }
         return mBluetoothGatt;
     }
 
@@ -258,6 +311,17 @@ public class BleBeacon {
         }
     }
 
+    /**
+     * Disconnect from a Peripheral and release the connection, even if it is still being opened
+     */
+    public void close() {
+        if (mBluetoothGatt != null) {
+            mBluetoothGatt.disconnect();
+            mBluetoothGatt.close();
+            mBluetoothGatt = null;
+        }
+    }
+
 
 
     /**
@@ -0,0 +1,139 @@
+package tonyg.example.com.beacon.ble;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import tonyg.example.com.beacon.utilities.LongIntMap;
+
+/**
+ * Keeps track of the BleBeacons we can connect to.
+ *
+ * BleBeacons can be found in constant time by their MAC address, packed into a long, or by
+ * the BluetoothGatt connection that a GATT callback was raised for.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class BleBeaconRegistry {
+    private final ArrayList<BleBeacon> mBeacons = new ArrayList<>();
+    private final LongIntMap mMacAddressIndex = new LongIntMap(); // MAC address -> mBeacons index
+    private final IdentityHashMap<BluetoothGatt, BleBeacon> mGattIndex = new IdentityHashMap<>();
+
+    /**
+     * Register a BleBeacon
+     *
+     * @param macAddress the packed MAC address of the BleBeacon
+     * @param beacon the BleBeacon
+     */
+    public synchronized void add(long macAddress, BleBeacon beacon) {
+        int index = mMacAddressIndex.get(macAddress);
+        if (index != LongIntMap.NOT_FOUND) {
+            mBeacons.set(index, beacon);
+        } else {
+            mMacAddressIndex.put(macAddress, mBeacons.size());
+            mBeacons.add(beacon);
+        }
+        if (beacon.getGatt() != null) {
+            mGattIndex.put(beacon.getGatt(), beacon);
+        }
+    }
+
+    /**
+     * Check if a MAC address belongs to a registered BleBeacon
+     *
+     * @param macAddress the packed MAC address
+     * @return <b>true</b> if the BleBeacon is registered
+     */
+    public synchronized boolean contains(long macAddress) {
+        return mMacAddressIndex.containsKey(macAddress);
+    }
+
+    /**
+     * Find a BleBeacon by MAC address
+     *
+     * @param macAddress the packed MAC address
+     * @return the BleBeacon, or <b>null</b> if it is not registered
+     */
+    public synchronized BleBeacon get(long macAddress) {
+        int index = mMacAddressIndex.get(macAddress);
+        if (index == LongIntMap.NOT_FOUND) {
+            return null;
+        }
+        return mBeacons.get(index);
+    }
+
+    /**
+     * Get a BleBeacon in the order it was registered
+     *
+     * @param index the registration order
+     * @return the BleBeacon
+     */
+    public synchronized BleBeacon get(int index) {
+        return mBeacons.get(index);
+    }
+
+    /**
+     * Find the BleBeacon that owns a GATT connection
+     *
+     * The connection is remembered after the first lookup.  A connection we have not seen yet,
+     * for example because its callback arrived before connect() returned, is matched by the
+     * MAC address of its device.
+     *
+     * @param gatt the GATT connection
+     * @return the BleBeacon, or <b>null</b> if no registered BleBeacon owns the connection
+     */
+    public synchronized BleBeacon getByGatt(BluetoothGatt gatt) {
+        BleBeacon beacon = mGattIndex.get(gatt);
+        if (beacon == null) {
+            BluetoothDevice bluetoothDevice = gatt.getDevice();
+            if (bluetoothDevice != null) {
+                beacon = get(BeaconTable.parseMacAddress(bluetoothDevice.getAddress()));
+                if (beacon != null) {
+                    mGattIndex.put(gatt, beacon);
+                }
+            }
+        }
+        return beacon;
+    }
+
+    /**
+     * Remember the GATT connection of a BleBeacon after connecting
+     *
+     * @param beacon the connected BleBeacon
+     */
+    public synchronized void registerGatt(BleBeacon beacon) {
+        if (beacon.getGatt() != null) {
+            mGattIndex.put(beacon.getGatt(), beacon);
+        }
+    }
+
+    /**
+     * Forget a GATT connection once it is closed
+     *
+     * @param gatt the closed GATT connection
+     */
+    public synchronized void unregisterGatt(BluetoothGatt gatt) {
+        mGattIndex.remove(gatt);
+    }
+
+    /**
+     * Number of registered BleBeacons
+     *
+     * @return the size
+     */
+    public synchronized int size() {
+        return mBeacons.size();
+    }
+
+    /**
+     * Forget every BleBeacon
+     */
+    public synchronized void clear() {
+        mBeacons.clear();
+        mMacAddressIndex.clear();
+        mGattIndex.clear();
+    }
+}
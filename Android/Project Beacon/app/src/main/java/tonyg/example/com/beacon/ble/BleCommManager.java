@@ -8,11 +8,17 @@ import android.bluetooth.le.ScanSettings;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.ParcelUuid;
+import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import tonyg.example.com.beacon.ble.callbacks.BleScanCallbackv21;
 import tonyg.example.com.beacon.ble.callbacks.BleScanCallbackv18;
@@ -21,18 +27,35 @@ import tonyg.example.com.beacon.ble.callbacks.BleScanCallbackv18;
 /**
  * This class helps us manage Bluetooth Low Energy scanning functions.
  *
+ * A scan goes from STATE_IDLE to STATE_SCANNING, and when it is stopped or its scan period
+ * runs out, through STATE_STOPPING back to STATE_IDLE.  Timed scans end on a shared scheduler,
+ * so scanning never blocks a thread.
+ *
  * @author Tony Gaitatzis backupbrain@gmail.com
  * @date 2015-12-12
  */
 public class BleCommManager {
     private static final String TAG = BleCommManager.class.getSimpleName();
-    private static final long SCAN_PERIOD = 5000; // 5 seconds of scanning time
+    public static final long SCAN_PERIOD = 5000; // 5 seconds of scanning time
+    public static final long SCAN_PERIOD_CONTINUOUS = 0; // scan until stopScanning() is called
+
+    /** Scan states **/
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_SCANNING = 1;
+    public static final int STATE_STOPPING = 2; // scanner is off, callbacks are being told
+
+    private static ScheduledExecutorService sScheduler; // ends timed scans, shared by all managers
 
     private BluetoothAdapter mBluetoothAdapter; // Andrdoid's Bluetooth Adapter
     private BluetoothLeScanner bluetoothLeScanner; // Ble scanner - API >= 21
 
 
-    private Timer mTimer = new Timer(); // scan timer
+    private ScanProfile mScanProfile = new ScanProfile(); // filters, scan mode and report delay
+    private int mState = STATE_IDLE;
+    private long mScanGeneration = 0; // so that a stale scheduled stop can't end a newer scan
+    private ScheduledFuture<?> mScheduledStop; // end of a timed scan
+    private BleScanCallbackv18 mScanCallbackv18; // callbacks of the current or last scan
+    private BleScanCallbackv21 mScanCallbackv21;
 
     /**
      * Initialize the BleCommManager
@@ -64,95 +87,231 @@ public class BleCommManager {
 
 
     /**
-     * Scan for Peripherals
+     * Set how the next scans ask the controller to filter and deliver advertisements
+     *
+     * @param scanProfile the ScanProfile
+     */
+    public void setScanProfile(ScanProfile scanProfile) {
+        mScanProfile = scanProfile;
+    }
+
+    public ScanProfile getScanProfile() {
+        return mScanProfile;
+    }
+
+    /**
+     * @return one of STATE_IDLE, STATE_SCANNING or STATE_STOPPING
+     */
+    public synchronized int getState() {
+        return mState;
+    }
+
+    /**
+     * Scan for Peripherals for SCAN_PERIOD milliseconds
      *
      * @param bleScanCallbackv18 APIv18 compatible ScanCallback
      * @param bleScanCallbackv21 APIv21 compatible ScanCallback
      * @throws Exception
      */
     public void scanForPeripherals(final BleScanCallbackv18 bleScanCallbackv18, final BleScanCallbackv21 bleScanCallbackv21) throws Exception {
-        // Don't proceed if there is already a scan in progress
-        mTimer.cancel();
-
-        // Use BluetoothAdapter.startLeScan() for Android API 18, 19, and 20
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
-            // Scan for SCAN_PERIOD milliseconds.
-            // at the end of that time, stop the scan.
-            new Thread() {
-                @Override
-                public void run() {
-                    mBluetoothAdapter.startLeScan(bleScanCallbackv18);
+        scanForPeripherals(bleScanCallbackv18, bleScanCallbackv21, SCAN_PERIOD);
+    }
 
-                    try {
-                        Thread.sleep(SCAN_PERIOD);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
+    /**
+     * Scan for Peripherals.  A scan that is already running is replaced by this one
+     *
+     * @param bleScanCallbackv18 APIv18 compatible ScanCallback
+     * @param bleScanCallbackv21 APIv21 compatible ScanCallback
+     * @param scanPeriod how long to scan in milliseconds, or SCAN_PERIOD_CONTINUOUS to deliver
+     *                   advertisements until stopScanning() is called
+     * @throws Exception
+     */
+    public void scanForPeripherals(final BleScanCallbackv18 bleScanCallbackv18, final BleScanCallbackv21 bleScanCallbackv21, final long scanPeriod) throws Exception {
+        BleScanCallbackv18 replacedCallbackv18 = null;
+        BleScanCallbackv21 replacedCallbackv21 = null;
+        try {
+            synchronized (this) {
+                if (mState == STATE_SCANNING) {
+                    // the replaced scan's callbacks are told it ended, unless they belong to the new scan
+                    if (mScanCallbackv18 != bleScanCallbackv18 || mScanCallbackv21 != bleScanCallbackv21) {
+                        replacedCallbackv18 = mScanCallbackv18;
+                        replacedCallbackv21 = mScanCallbackv21;
                     }
-
-                    mBluetoothAdapter.stopLeScan(bleScanCallbackv18);
+                    turnOffScanner();
+                    mState = STATE_IDLE;
                 }
-            }.start();
-            // alert the system that BLE scanning has stopped after SCAN_PERIOD milliseconds
-            mTimer = new Timer();
-            mTimer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    stopScanning(bleScanCallbackv18, bleScanCallbackv21);
+
+                mScanCallbackv18 = bleScanCallbackv18;
+                mScanCallbackv21 = bleScanCallbackv21;
+                mScanGeneration++;
+                turnOnScanner();
+                mState = STATE_SCANNING;
+
+                if (scanPeriod != SCAN_PERIOD_CONTINUOUS) {
+                    final long scanGeneration = mScanGeneration;
+                    mScheduledStop = getScheduler().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            stopScanning(scanGeneration);
+                        }
+                    }, scanPeriod, TimeUnit.MILLISECONDS);
                 }
-            }, SCAN_PERIOD);
+            }
+        } finally {
+            if (replacedCallbackv18 != null || replacedCallbackv21 != null) {
+                onScanComplete(replacedCallbackv18, replacedCallbackv21);
+            }
+        }
+    }
 
+    /**
+     * Stop Scanning.  Does nothing if no scan is running
+     *
+     * @param bleScanCallbackv18 APIv18 compatible ScanCallback
+     * @param bleScanCallbackv21 APIv21 compatible ScanCallback
+     */
+    public void stopScanning(final BleScanCallbackv18 bleScanCallbackv18, final BleScanCallbackv21 bleScanCallbackv21) {
+        long scanGeneration;
+        synchronized (this) {
+            if (mScanCallbackv18 != bleScanCallbackv18 || mScanCallbackv21 != bleScanCallbackv21) {
+                return;
+            }
+            scanGeneration = mScanGeneration;
+        }
+        stopScanning(scanGeneration);
+    }
+
+    /**
+     * Stop a scan, unless it has already stopped or been replaced by a newer scan
+     *
+     * @param scanGeneration the scan to stop
+     */
+    private void stopScanning(long scanGeneration) {
+        BleScanCallbackv18 bleScanCallbackv18;
+        BleScanCallbackv21 bleScanCallbackv21;
+        synchronized (this) {
+            if (mState != STATE_SCANNING || scanGeneration != mScanGeneration) {
+                return;
+            }
+            mState = STATE_STOPPING;
+            turnOffScanner();
+            bleScanCallbackv18 = mScanCallbackv18;
+            bleScanCallbackv21 = mScanCallbackv21;
+        }
 
+        // propagate the onScanComplete through the system.  A new scan may be started from it
+        onScanComplete(bleScanCallbackv18, bleScanCallbackv21);
+
+        synchronized (this) {
+            if (mState == STATE_STOPPING && scanGeneration == mScanGeneration) {
+                mState = STATE_IDLE;
+            }
+        }
+    }
+
+    /**
+     * Turn on the scanner for the current callbacks and ScanProfile
+     */
+    private void turnOnScanner() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            startLeScan(mScanCallbackv18);
         } else { // use BluetoothLeScanner.startScan() for API 21 (Lollipop) or greater
-            final ScanSettings settings = new ScanSettings.Builder()
-                    .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
-                    .build();
-            final List<ScanFilter> filters = new ArrayList<ScanFilter>();
             bluetoothLeScanner = mBluetoothAdapter.getBluetoothLeScanner();
+            bluetoothLeScanner.startScan(buildScanFilters(), buildScanSettings(), mScanCallbackv21);
+        }
+    }
 
+    /**
+     * Turn off the scanner and cancel the scheduled end of the scan
+     */
+    private void turnOffScanner() {
+        if (mScheduledStop != null) {
+            mScheduledStop.cancel(false);
+            mScheduledStop = null;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            mBluetoothAdapter.stopLeScan(mScanCallbackv18);
+        } else if (bluetoothLeScanner != null) {
+            bluetoothLeScanner.stopScan(mScanCallbackv21);
+        }
+    }
 
-            new Thread() {
-                @Override
-                public void run() {
-                    bluetoothLeScanner.startScan(filters, settings, bleScanCallbackv21);
+    private static void onScanComplete(BleScanCallbackv18 bleScanCallbackv18, BleScanCallbackv21 bleScanCallbackv21) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            if (bleScanCallbackv18 != null) bleScanCallbackv18.onScanComplete();
+        } else {
+            if (bleScanCallbackv21 != null) bleScanCallbackv21.onScanComplete();
+        }
+    }
 
-                    try {
-                        Thread.sleep(SCAN_PERIOD);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    bluetoothLeScanner.stopScan(bleScanCallbackv21);
-                }
-            }.start();
-            // alert the system that BLE scanning has stopped after SCAN_PERIOD milliseconds
-            mTimer = new Timer();
-            mTimer.schedule(new TimerTask() {
+    /**
+     * Every BleCommManager schedules the end of its scans on one daemon thread
+     *
+     * @return the shared scheduler
+     */
+    private static synchronized ScheduledExecutorService getScheduler() {
+        if (sScheduler == null) {
+            sScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
                 @Override
-                public void run() {
-                    stopScanning(bleScanCallbackv18, bleScanCallbackv21);
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "BleCommManager");
+                    thread.setDaemon(true);
+                    return thread;
                 }
-            }, SCAN_PERIOD);
+            });
         }
-
+        return sScheduler;
     }
 
-
     /**
-     * Stop Scanning
+     * Start an APIv18 scan.  Only a profile with nothing but service UUIDs can be filtered here
      *
      * @param bleScanCallbackv18 APIv18 compatible ScanCallback
-     * @param bleScanCallbackv21 APIv21 compatible ScanCallback
      */
-    public void stopScanning(final BleScanCallbackv18 bleScanCallbackv18, final BleScanCallbackv21 bleScanCallbackv21) {
-        mTimer.cancel();
-        // propagate the onScanComplete through the system
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
-            bleScanCallbackv18.onScanComplete();
+    private void startLeScan(BleScanCallbackv18 bleScanCallbackv18) {
+        ScanProfile scanProfile = mScanProfile;
+        if (scanProfile.getDeviceNames().isEmpty() && !scanProfile.getServiceUuids().isEmpty()) {
+            List<UUID> serviceUuids = scanProfile.getServiceUuids();
+            mBluetoothAdapter.startLeScan(serviceUuids.toArray(new UUID[serviceUuids.size()]), bleScanCallbackv18);
         } else {
-            bleScanCallbackv21.onScanComplete();
+            mBluetoothAdapter.startLeScan(bleScanCallbackv18);
         }
+    }
 
+    /**
+     * Build APIv21 ScanSettings from the ScanProfile
+     *
+     * @return the ScanSettings
+     */
+    private ScanSettings buildScanSettings() {
+        ScanSettings.Builder builder = new ScanSettings.Builder()
+                .setScanMode(mScanProfile.getScanMode());
+        long reportDelay = mScanProfile.getReportDelay();
+        if (reportDelay > ScanProfile.REPORT_DELAY_NONE) {
+            // asking for a delay the controller can't queue fails the scan with SCAN_FAILED_FEATURE_UNSUPPORTED
+            if (mBluetoothAdapter.isOffloadedScanBatchingSupported()) {
+                builder.setReportDelay(reportDelay);
+            } else {
+                Log.d(TAG, "Batched scan results not supported.  Reporting each advertisement");
+            }
+        }
+        return builder.build();
     }
 
+    /**
+     * Build APIv21 ScanFilters from the ScanProfile.  An empty list reports every Peripheral
+     *
+     * @return the ScanFilters
+     */
+    private List<ScanFilter> buildScanFilters() {
+        final List<ScanFilter> filters = new ArrayList<ScanFilter>();
+        for (UUID serviceUuid : mScanProfile.getServiceUuids()) {
+            filters.add(new ScanFilter.Builder().setServiceUuid(new ParcelUuid(serviceUuid)).build());
+        }
+        for (String deviceName : mScanProfile.getDeviceNames()) {
+            filters.add(new ScanFilter.Builder().setDeviceName(deviceName).build());
+        }
+        return filters;
+    }
 
 }
-
@@ -0,0 +1,282 @@
+package tonyg.example.com.beacon.ble;
+
+import android.bluetooth.BluetoothGattCallback;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+
+/**
+ * Retrieves data from several BleBeacons at once over GATT.
+ *
+ * Up to a fixed number of connections are open at the same time.  A connection that does not
+ * finish within its timeout, or that drops before finishing, is retried after an exponentially
+ * growing delay until it runs out of attempts.
+ *
+ * Every method must be called from the main thread.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class GattJobScheduler {
+    private static final String TAG = GattJobScheduler.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final long DEFAULT_TIMEOUT_MS = 5000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_RETRY_DELAY_MS = 250; // doubled on every retry
+
+    /**
+     * Notified as BleBeacon data is retrieved
+     */
+    public interface Listener {
+        /**
+         * A BleBeacon finished sending its data
+         *
+         * @param beacon the BleBeacon
+         */
+        void onBeaconDataRetrieved(BleBeacon beacon);
+
+        /**
+         * A BleBeacon could not be reached after every attempt
+         *
+         * @param beacon the BleBeacon
+         */
+        void onBeaconDataFailed(BleBeacon beacon);
+
+        /**
+         * There are no more jobs running or waiting
+         */
+        void onAllJobsComplete();
+    }
+
+    /**
+     * Retrieving data from one BleBeacon
+     */
+    private class GattJob implements Runnable {
+        final BleBeacon mBeacon;
+        int mAttempts = 0;
+
+        GattJob(BleBeacon beacon) {
+            mBeacon = beacon;
+        }
+
+        /**
+         * The connection timed out
+         */
+        @Override
+        public void run() {
+            Log.d(TAG, "Timed out waiting for beacon " + mBeacon.getAddress());
+            fail(this);
+        }
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final BluetoothGattCallback mGattCallback;
+    private final BleBeaconRegistry mBeaconRegistry;
+    private final Listener mListener;
+
+    private int mMaxConnections = DEFAULT_MAX_CONNECTIONS;
+    private long mTimeout_ms = DEFAULT_TIMEOUT_MS;
+    private int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long mRetryDelay_ms = DEFAULT_RETRY_DELAY_MS;
+
+    private final ArrayDeque<GattJob> mPendingJobs = new ArrayDeque<>();
+    private final IdentityHashMap<BleBeacon, GattJob> mActiveJobs = new IdentityHashMap<>();
+    private final IdentityHashMap<BleBeacon, GattJob> mWaitingJobs = new IdentityHashMap<>(); // waiting to retry
+
+    /**
+     * Create a GattJobScheduler
+     *
+     * @param gattCallback receives the events of every connection
+     * @param beaconRegistry the registry that matches GATT connections to BleBeacons
+     * @param listener notified as jobs finish
+     */
+    public GattJobScheduler(BluetoothGattCallback gattCallback, BleBeaconRegistry beaconRegistry, Listener listener) {
+        mGattCallback = gattCallback;
+        mBeaconRegistry = beaconRegistry;
+        mListener = listener;
+    }
+
+    /**
+     * Set how many connections may be open at once
+     *
+     * @param maxConnections maximum number of simultaneous connections
+     */
+    public void setMaxConnections(int maxConnections) { mMaxConnections = Math.max(1, maxConnections); }
+
+    /**
+     * Set how long a single attempt may take
+     *
+     * @param timeout_ms timeout in milliseconds
+     */
+    public void setTimeout(long timeout_ms) { mTimeout_ms = timeout_ms; }
+
+    /**
+     * Set how many times a BleBeacon is tried before giving up
+     *
+     * @param maxAttempts number of attempts
+     */
+    public void setMaxAttempts(int maxAttempts) { mMaxAttempts = Math.max(1, maxAttempts); }
+
+    /**
+     * Set the delay before the first retry.  Later retries wait twice as long as the one before
+     *
+     * @param retryDelay_ms delay in milliseconds
+     */
+    public void setRetryDelay(long retryDelay_ms) { mRetryDelay_ms = retryDelay_ms; }
+
+    /**
+     * Queue up a BleBeacon to be asked for its data
+     *
+     * @param beacon the BleBeacon
+     */
+    public void enqueue(BleBeacon beacon) {
+        if (beacon.isFake || isScheduled(beacon)) {
+            return;
+        }
+        mPendingJobs.add(new GattJob(beacon));
+        startJobs();
+        notifyIfIdle();
+    }
+
+    /**
+     * Check if a BleBeacon is waiting, connecting or retrying
+     *
+     * @param beacon the BleBeacon
+     * @return <b>true</b> if the BleBeacon has a job
+     */
+    public boolean isScheduled(BleBeacon beacon) {
+        if (mActiveJobs.containsKey(beacon) || mWaitingJobs.containsKey(beacon)) {
+            return true;
+        }
+        for (GattJob job : mPendingJobs) {
+            if (job.mBeacon == beacon) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if any job is waiting or running
+     *
+     * @return <b>true</b> if there is nothing left to do
+     */
+    public boolean isIdle() {
+        return mPendingJobs.isEmpty() && mActiveJobs.isEmpty() && mWaitingJobs.isEmpty();
+    }
+
+    /**
+     * A BleBeacon sent all of its data.  Disconnect from it and start the next job
+     *
+     * @param beacon the BleBeacon
+     */
+    public void onJobComplete(BleBeacon beacon) {
+        GattJob job = mActiveJobs.remove(beacon);
+        if (job == null) {
+            return;
+        }
+        mHandler.removeCallbacks(job);
+        beacon.disconnect();
+        mListener.onBeaconDataRetrieved(beacon);
+        startJobs();
+        notifyIfIdle();
+    }
+
+    /**
+     * The connection to a BleBeacon closed.  Retry it if it had not finished
+     *
+     * @param beacon the BleBeacon
+     */
+    public void onConnectionClosed(BleBeacon beacon) {
+        GattJob job = mActiveJobs.get(beacon);
+        if (job != null) {
+            Log.d(TAG, "Lost connection to beacon " + beacon.getAddress());
+            fail(job);
+        }
+    }
+
+    /**
+     * Stop every job and close every connection
+     */
+    public void cancelAll() {
+        mHandler.removeCallbacksAndMessages(null);
+        for (BleBeacon beacon : mActiveJobs.keySet()) {
+            mBeaconRegistry.unregisterGatt(beacon.getGatt());
+            beacon.close();
+        }
+        mActiveJobs.clear();
+        mWaitingJobs.clear();
+        mPendingJobs.clear();
+    }
+
+    /**
+     * Open connections until the connection limit is reached.  Callers notify the Listener once
+     * afterwards, since a connection that fails to open here may have been the last job
+     */
+    private void startJobs() {
+        while (mActiveJobs.size() < mMaxConnections && !mPendingJobs.isEmpty()) {
+            GattJob job = mPendingJobs.poll();
+            job.mAttempts++;
+            mActiveJobs.put(job.mBeacon, job);
+            Log.v(TAG, "Asking beacon " + job.mBeacon.getAddress() + " for data, attempt " + job.mAttempts);
+            try {
+                job.mBeacon.connect(job.mBeacon.getBluetoothDevice(), mGattCallback);
+                mBeaconRegistry.registerGatt(job.mBeacon);
+                mHandler.postDelayed(job, mTimeout_ms);
+            } catch (Exception e) {
+                Log.d(TAG, "Could not connect to beacon: " + job.mBeacon.getAddress());
+                abandon(job);
+            }
+        }
+    }
+
+    /**
+     * Give up on an attempt, and retry later if there are attempts left
+     *
+     * @param job the failed job
+     */
+    private void fail(GattJob job) {
+        abandon(job);
+        startJobs();
+        notifyIfIdle();
+    }
+
+    /**
+     * Close the connection of a failed attempt and schedule its retry, without starting other
+     * jobs or notifying that the scheduler is idle
+     *
+     * @param job the failed job
+     */
+    private void abandon(final GattJob job) {
+        mHandler.removeCallbacks(job);
+        mActiveJobs.remove(job.mBeacon);
+        mBeaconRegistry.unregisterGatt(job.mBeacon.getGatt());
+        job.mBeacon.close();
+
+        if (job.mAttempts < mMaxAttempts) {
+            long delay_ms = mRetryDelay_ms << (job.mAttempts - 1);
+            mWaitingJobs.put(job.mBeacon, job);
+            mHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    if (mWaitingJobs.remove(job.mBeacon) != null) {
+                        mPendingJobs.add(job);
+                        startJobs();
+                        notifyIfIdle();
+                    }
+                }
+            }, delay_ms);
+        } else {
+            Log.d(TAG, "Giving up on beacon " + job.mBeacon.getAddress());
+            mListener.onBeaconDataFailed(job.mBeacon);
+        }
+    }
+
+    private void notifyIfIdle() {
+        if (isIdle()) {
+            mListener.onAllJobsComplete();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package tonyg.example.com.beacon.ble;
+
+import android.bluetooth.le.ScanSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * How BleCommManager asks the Bluetooth controller to scan.
+ *
+ * Filters are matched by the controller, so advertisements from other devices do not wake the
+ * app.  A Peripheral is reported if it matches any one filter.  With a report delay, the
+ * controller queues results and delivers them together through onBatchScanResults.
+ *
+ * Filters and report delays need Android API 21 (Lollipop).  Earlier versions only filter by
+ * service UUID, and report every advertisement as it arrives.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class ScanProfile {
+    public static final long REPORT_DELAY_NONE = 0; // report each advertisement as it arrives
+    public static final long DEFAULT_BEACON_REPORT_DELAY_MS = 500;
+
+    private final int mScanMode;
+    private final long mReportDelay_ms;
+    private final List<UUID> mServiceUuids = new ArrayList<UUID>();
+    private final List<String> mDeviceNames = new ArrayList<String>();
+
+    /**
+     * Create a ScanProfile that reports every Peripheral as soon as it is heard.  This is how
+     * BleCommManager scans when it has no profile
+     */
+    public ScanProfile() {
+        this(ScanSettings.SCAN_MODE_LOW_LATENCY, REPORT_DELAY_NONE);
+    }
+
+    /**
+     * Create a ScanProfile
+     *
+     * @param scanMode one of ScanSettings.SCAN_MODE_LOW_POWER, SCAN_MODE_BALANCED or SCAN_MODE_LOW_LATENCY
+     * @param reportDelay_ms how long the controller may queue results, in milliseconds, or REPORT_DELAY_NONE
+     */
+    public ScanProfile(int scanMode, long reportDelay_ms) {
+        mScanMode = scanMode;
+        mReportDelay_ms = reportDelay_ms;
+    }
+
+    /**
+     * Create a ScanProfile that only reports Beacons, by their service UUID or broadcast name
+     *
+     * @param scanMode one of ScanSettings.SCAN_MODE_LOW_POWER, SCAN_MODE_BALANCED or SCAN_MODE_LOW_LATENCY
+     * @param reportDelay_ms how long the controller may queue results, in milliseconds, or REPORT_DELAY_NONE
+     * @return the ScanProfile
+     */
+    public static ScanProfile forBeacons(int scanMode, long reportDelay_ms) {
+        ScanProfile scanProfile = new ScanProfile(scanMode, reportDelay_ms);
+        scanProfile.addServiceUuid(BleBeacon.SERVICE_UUID);
+        scanProfile.addDeviceName(BleBeacon.BROADCAST_NAME);
+        return scanProfile;
+    }
+
+    /**
+     * Report Peripherals that advertise a service
+     *
+     * @param serviceUuid the service UUID
+     * @return this ScanProfile
+     */
+    public ScanProfile addServiceUuid(UUID serviceUuid) {
+        mServiceUuids.add(serviceUuid);
+        return this;
+    }
+
+    /**
+     * Report Peripherals that broadcast a name
+     *
+     * @param deviceName the exact broadcast name
+     * @return this ScanProfile
+     */
+    public ScanProfile addDeviceName(String deviceName) {
+        mDeviceNames.add(deviceName);
+        return this;
+    }
+
+    public int getScanMode() {
+        return mScanMode;
+    }
+
+    public long getReportDelay() {
+        return mReportDelay_ms;
+    }
+
+    public List<UUID> getServiceUuids() {
+        return mServiceUuids;
+    }
+
+    public List<String> getDeviceNames() {
+        return mDeviceNames;
+    }
+
+    /**
+     * @return <b>true</b> if the profile reports every Peripheral
+     */
+    public boolean isUnfiltered() {
+        return mServiceUuids.isEmpty() && mDeviceNames.isEmpty();
+    }
+}
@@ -0,0 +1,33 @@
+package tonyg.example.com.beacon.ble.radio;
+
+/**
+ * Receives advertisements from a BleRadio
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public interface AdvertisementListener {
+    /**
+     * An advertisement was received
+     *
+     * @param macAddress the packed MAC address of the Peripheral
+     * @param rssi the RSSI of the advertisement
+     * @param scanRecord the raw advertisement data, or <b>null</b>.  Only valid during the call
+     * @param timestamp_ns when the advertisement was received, in nanoseconds
+     */
+    void onAdvertisement(long macAddress, int rssi, byte[] scanRecord, long timestamp_ns);
+
+    /**
+     * The advertisements delivered since the last call were one batch.  Radios that report
+     * each advertisement as it arrives call this after every advertisement, so work that only
+     * needs doing once per batch, such as locating the Central, can always be done here
+     *
+     * @param timestamp_ns when the last advertisement of the batch was received, in nanoseconds
+     */
+    void onBatchComplete(long timestamp_ns);
+
+    /**
+     * The scan ended, because its scan period ran out, it was stopped or it failed
+     */
+    void onScanStopped();
+}
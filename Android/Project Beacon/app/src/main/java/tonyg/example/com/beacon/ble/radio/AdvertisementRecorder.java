@@ -0,0 +1,187 @@
+package tonyg.example.com.beacon.ble.radio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records raw advertisements to a compact binary trace, so that a scan can be replayed later
+ * with AdvertisementTraceReader and SimulatedBleRadio.
+ *
+ * The recorder sits between a BleRadio and its listener and passes every advertisement on.
+ * Records are appended to a preallocated direct ByteBuffer, which is written to the file when
+ * it fills up, so recording does not allocate.
+ *
+ * The file starts with a header:
+ *
+ *   int    magic "BTRC"
+ *   short  format version
+ *   short  reserved
+ *
+ * followed by length-prefixed records, little-endian:
+ *
+ *   short  record length, not counting this field
+ *   long   timestamp in nanoseconds
+ *   6      MAC address, most significant byte first
+ *   byte   RSSI, signed
+ *   n      scan record, without its trailing zero padding
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class AdvertisementRecorder implements AdvertisementListener, Closeable {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** File layout, shared with AdvertisementTraceReader **/
+    static final int MAGIC = 0x43525442; // "BTRC"
+    static final short FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_LENGTH_SIZE = 2;
+    static final int RECORD_FIXED_SIZE = 8 + 6 + 1; // timestamp, MAC address, RSSI
+    static final int MAX_SCAN_RECORD_LENGTH = 255; // longer scan records are cut short
+
+    private final AdvertisementListener mListener;
+    private final FileOutputStream mOutputStream;
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer;
+    private boolean mIsClosed = false;
+
+    /**
+     * Create an AdvertisementRecorder, replacing the file if it exists
+     *
+     * @param file the trace file
+     * @param listener receives every advertisement after it is recorded, or <b>null</b>
+     * @throws IOException if the file can not be created
+     */
+    public AdvertisementRecorder(File file, AdvertisementListener listener) throws IOException {
+        this(file, listener, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create an AdvertisementRecorder, replacing the file if it exists
+     *
+     * @param file the trace file
+     * @param listener receives every advertisement after it is recorded, or <b>null</b>
+     * @param bufferSize bytes held in memory between writes to the file
+     * @throws IOException if the file can not be created
+     */
+    public AdvertisementRecorder(File file, AdvertisementListener listener, int bufferSize) throws IOException {
+        mListener = listener;
+        mOutputStream = new FileOutputStream(file);
+        mChannel = mOutputStream.getChannel();
+        mBuffer = ByteBuffer.allocateDirect(Math.max(bufferSize, HEADER_SIZE + RECORD_LENGTH_SIZE + RECORD_FIXED_SIZE + MAX_SCAN_RECORD_LENGTH));
+        mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        mBuffer.putInt(MAGIC);
+        mBuffer.putShort(FORMAT_VERSION);
+        mBuffer.putShort((short) 0);
+    }
+
+    @Override
+    public void onAdvertisement(long macAddress, int rssi, byte[] scanRecord, long timestamp_ns) {
+        record(macAddress, rssi, scanRecord, timestamp_ns);
+        if (mListener != null) {
+            mListener.onAdvertisement(macAddress, rssi, scanRecord, timestamp_ns);
+        }
+    }
+
+    @Override
+    public void onBatchComplete(long timestamp_ns) {
+        if (mListener != null) {
+            mListener.onBatchComplete(timestamp_ns);
+        }
+    }
+
+    @Override
+    public void onScanStopped() {
+        try {
+            flush();
+        } catch (IOException e) {
+            // the trace is incomplete, but the scan itself is fine
+        }
+        if (mListener != null) {
+            mListener.onScanStopped();
+        }
+    }
+
+    /**
+     * Append an advertisement to the trace
+     *
+     * @param macAddress the packed MAC address
+     * @param rssi the RSSI
+     * @param scanRecord the raw advertisement data, or <b>null</b>
+     * @param timestamp_ns when the advertisement was received, in nanoseconds
+     */
+    public synchronized void record(long macAddress, int rssi, byte[] scanRecord, long timestamp_ns) {
+        if (mIsClosed) {
+            return;
+        }
+        int scanRecordLength = 0;
+        if (scanRecord != null) {
+            // everything after the last non-zero byte is padding
+            scanRecordLength = Math.min(scanRecord.length, MAX_SCAN_RECORD_LENGTH);
+            while (scanRecordLength > 0 && scanRecord[scanRecordLength - 1] == 0) {
+                scanRecordLength--;
+            }
+        }
+        int recordLength = RECORD_FIXED_SIZE + scanRecordLength;
+        if (mBuffer.remaining() < RECORD_LENGTH_SIZE + recordLength) {
+            try {
+                flush();
+            } catch (IOException e) {
+                mBuffer.clear(); // drop what could not be written rather than stop recording
+            }
+        }
+
+        mBuffer.putShort((short) recordLength);
+        mBuffer.putLong(timestamp_ns);
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            mBuffer.put((byte) (macAddress >>> shift));
+        }
+        mBuffer.put((byte) rssi);
+        if (scanRecordLength > 0) {
+            mBuffer.put(scanRecord, 0, scanRecordLength);
+        }
+    }
+
+    /**
+     * Write the buffered records to the file
+     *
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void flush() throws IOException {
+        if (mIsClosed) {
+            return;
+        }
+        mBuffer.flip();
+        try {
+            while (mBuffer.hasRemaining()) {
+                mChannel.write(mBuffer);
+            }
+        } finally {
+            mBuffer.clear();
+        }
+    }
+
+    /**
+     * Write the buffered records and close the file
+     *
+     * @throws IOException if the file can not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mIsClosed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            mIsClosed = true;
+            mOutputStream.close();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package tonyg.example.com.beacon.ble.radio;
+
+import java.io.Closeable;
+
+/**
+ * A sequence of advertisements in the order they were received.
+ *
+ * A trace is read like a cursor: next() moves to the following advertisement, and the getters
+ * describe the current one.  The scan record array may be reused, so it is only valid until
+ * the next call to next().
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public interface AdvertisementTrace extends Closeable {
+    /**
+     * Move to the next advertisement
+     *
+     * @return <b>false</b> at the end of the trace
+     */
+    boolean next();
+
+    long getTimestampNanos();
+
+    long getMacAddress();
+
+    int getRssi();
+
+    /**
+     * @return the raw advertisement data, or <b>null</b>
+     */
+    byte[] getScanRecord();
+}
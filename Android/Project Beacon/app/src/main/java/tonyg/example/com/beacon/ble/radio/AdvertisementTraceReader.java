@@ -0,0 +1,123 @@
+package tonyg.example.com.beacon.ble.radio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads a trace written by AdvertisementRecorder.
+ *
+ * The file is memory-mapped and each field is read in place, so replay is limited by the
+ * listener rather than by file access.  Play it through a SimulatedBleRadio to feed the
+ * recorded advertisements to the same listeners a live scan would, at any speed.
+ *
+ * The scan record array is reused for every advertisement.  Unused bytes at its end are zero,
+ * which ends the list of AD structures just as the padding of a live scan record does.
+ * A record cut short by a crash while recording ends the trace.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class AdvertisementTraceReader implements AdvertisementTrace {
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuffer;
+    private final int mEnd;
+    private final byte[] mScanRecord = new byte[AdvertisementRecorder.MAX_SCAN_RECORD_LENGTH];
+    private int mScanRecordLength = 0;
+    private boolean mHasScanRecord = false;
+
+    /** Current advertisement **/
+    private int mPosition = AdvertisementRecorder.HEADER_SIZE;
+    private long mTimestamp_ns;
+    private long mMacAddress;
+    private int mRssi;
+
+    /**
+     * Open a trace
+     *
+     * @param file the trace file
+     * @throws IOException if the file can not be read or is not a trace
+     */
+    public AdvertisementTraceReader(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        long size = mFile.length();
+        if (size > Integer.MAX_VALUE) {
+            mFile.close();
+            throw new IOException("Trace is too large to map: " + file);
+        }
+        mEnd = (int) size;
+        mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (mEnd < AdvertisementRecorder.HEADER_SIZE
+                || mBuffer.getInt(0) != AdvertisementRecorder.MAGIC
+                || mBuffer.getShort(4) != AdvertisementRecorder.FORMAT_VERSION) {
+            mFile.close();
+            throw new IOException("Not an advertisement trace: " + file);
+        }
+    }
+
+    @Override
+    public boolean next() {
+        int position = mPosition;
+        if (position + AdvertisementRecorder.RECORD_LENGTH_SIZE > mEnd) {
+            return false;
+        }
+        int recordLength = mBuffer.getShort(position) & 0xffff;
+        int record = position + AdvertisementRecorder.RECORD_LENGTH_SIZE;
+        int scanRecordLength = recordLength - AdvertisementRecorder.RECORD_FIXED_SIZE;
+        if (scanRecordLength < 0
+                || scanRecordLength > AdvertisementRecorder.MAX_SCAN_RECORD_LENGTH
+                || record + recordLength > mEnd) {
+            return false;
+        }
+
+        mTimestamp_ns = mBuffer.getLong(record);
+        long macAddress = 0;
+        for (int index = 0; index < 6; index++) {
+            macAddress = (macAddress << 8) | (mBuffer.get(record + 8 + index) & 0xff);
+        }
+        mMacAddress = macAddress;
+        mRssi = mBuffer.get(record + 14);
+
+        // absolute bulk reads need API 24+, so move the position for this one
+        mBuffer.position(record + AdvertisementRecorder.RECORD_FIXED_SIZE);
+        mBuffer.get(mScanRecord, 0, scanRecordLength);
+        if (scanRecordLength < mScanRecordLength) {
+            Arrays.fill(mScanRecord, scanRecordLength, mScanRecordLength, (byte) 0);
+        }
+        mScanRecordLength = scanRecordLength;
+        mHasScanRecord = scanRecordLength > 0;
+
+        mPosition = record + recordLength;
+        return true;
+    }
+
+    @Override
+    public long getTimestampNanos() { return mTimestamp_ns; }
+
+    @Override
+    public long getMacAddress() { return mMacAddress; }
+
+    @Override
+    public int getRssi() { return mRssi; }
+
+    @Override
+    public byte[] getScanRecord() { return mHasScanRecord ? mScanRecord : null; }
+
+    /**
+     * Go back to the first advertisement
+     */
+    public void rewind() {
+        mPosition = AdvertisementRecorder.HEADER_SIZE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+}
@@ -0,0 +1,175 @@
+package tonyg.example.com.beacon.ble.radio;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+import tonyg.example.com.beacon.ble.BleCommManager;
+import tonyg.example.com.beacon.ble.callbacks.BleScanCallbackv18;
+import tonyg.example.com.beacon.ble.callbacks.BleScanCallbackv21;
+
+/**
+ * A BleRadio that scans with the Android Bluetooth stack through BleCommManager
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class AndroidBleRadio implements BleRadio {
+    private static final String TAG = AndroidBleRadio.class.getSimpleName();
+
+    private final BleCommManager mBleCommManager;
+    private volatile AdvertisementListener mListener;
+    private volatile boolean mIsScanning = false;
+
+    /**
+     * Create an AndroidBleRadio
+     *
+     * @param bleCommManager the initialized BleCommManager
+     */
+    public AndroidBleRadio(BleCommManager bleCommManager) {
+        mBleCommManager = bleCommManager;
+    }
+
+    @Override
+    public void startScan(AdvertisementListener listener, long scanPeriod_ms) throws Exception {
+        mListener = listener;
+        mIsScanning = true;
+        try {
+            mBleCommManager.scanForPeripherals(mScanCallbackv18, mScanCallbackv21, scanPeriod_ms);
+        } catch (Exception e) {
+            mIsScanning = false;
+            throw e;
+        }
+    }
+
+    @Override
+    public void stopScan() {
+        mBleCommManager.stopScanning(mScanCallbackv18, mScanCallbackv21);
+    }
+
+    @Override
+    public boolean isScanning() {
+        return mIsScanning;
+    }
+
+    private void onAdvertisement(AdvertisementListener listener, BluetoothDevice bluetoothDevice, int rssi, byte[] scanRecord, long timestamp_ns) {
+        listener.onAdvertisement(BeaconTable.parseMacAddress(bluetoothDevice.getAddress()), rssi, scanRecord, timestamp_ns);
+    }
+
+    private void onAdvertisement(ScanResult result, AdvertisementListener listener) {
+        ScanRecord scanRecord = result.getScanRecord();
+        onAdvertisement(listener, result.getDevice(), result.getRssi(), scanRecord != null ? scanRecord.getBytes() : null, result.getTimestampNanos());
+    }
+
+    private void onScanStopped() {
+        mIsScanning = false;
+        AdvertisementListener listener = mListener;
+        if (listener != null) {
+            listener.onScanStopped();
+        }
+    }
+
+    /**
+     * Use this callback for Android API 21 (Lollipop) or greater
+     */
+    private final BleScanCallbackv21 mScanCallbackv21 = new BleScanCallbackv21() {
+        /**
+         * New Peripheral discovered
+         *
+         * @param callbackType int: Determines how this callback was triggered. Could be one of CALLBACK_TYPE_ALL_MATCHES, CALLBACK_TYPE_FIRST_MATCH or CALLBACK_TYPE_MATCH_LOST
+         * @param result a Bluetooth Low Energy Scan Result, containing the Bluetooth Device, RSSI, and other information
+         */
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            AdvertisementListener listener = mListener;
+            if (listener != null) {
+                onAdvertisement(result, listener);
+                listener.onBatchComplete(result.getTimestampNanos());
+            }
+        }
+
+        /**
+         * Several peripherals discovered, queued by the controller for the ScanProfile's report delay
+         *
+         * @param results List: List of scan results that are previously scanned.
+         */
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            AdvertisementListener listener = mListener;
+            if (listener == null || results.isEmpty()) {
+                return;
+            }
+            long lastTimestamp_ns = Long.MIN_VALUE;
+            for (int index = 0; index < results.size(); index++) {
+                ScanResult result = results.get(index);
+                onAdvertisement(result, listener);
+                lastTimestamp_ns = Math.max(lastTimestamp_ns, result.getTimestampNanos());
+            }
+            listener.onBatchComplete(lastTimestamp_ns);
+        }
+
+        /**
+         * Scan failed to initialize
+         *
+         * @param errorCode	int: Error code (one of SCAN_FAILED_*) for scan failure.
+         */
+        @Override
+        public void onScanFailed(int errorCode) {
+            switch (errorCode) {
+                case SCAN_FAILED_ALREADY_STARTED:
+                    Log.e(TAG, "Fails to start scan as BLE scan with the same settings is already started by the app.");
+                    break;
+                case SCAN_FAILED_APPLICATION_REGISTRATION_FAILED:
+                    Log.e(TAG, "Fails to start scan as app cannot be registered.");
+                    break;
+                case SCAN_FAILED_FEATURE_UNSUPPORTED:
+                    Log.e(TAG, "Fails to start power optimized scan as this feature is not supported.");
+                    break;
+                default: // SCAN_FAILED_INTERNAL_ERROR
+                    Log.e(TAG, "Fails to start scan due an internal error");
+
+            }
+            onScanStopped();
+        }
+
+        /**
+         * Scan completed
+         */
+        @Override
+        public void onScanComplete() {
+            onScanStopped();
+        }
+    };
+
+    /**
+     * Use this callback for Android API 18, 19, and 20 (before Lollipop)
+     */
+    private final BleScanCallbackv18 mScanCallbackv18 = new BleScanCallbackv18() {
+        /**
+         * New Peripheral discovered
+         *
+         * @param bluetoothDevice The Peripheral Device
+         * @param rssi The Peripheral's RSSI indicating how strong the radio signal is
+         * @param scanRecord Other information about the scan result
+         */
+        @Override
+        public void onLeScan(final BluetoothDevice bluetoothDevice, int rssi, byte[] scanRecord) {
+            AdvertisementListener listener = mListener;
+            if (listener != null) {
+                long timestamp_ns = SystemClock.elapsedRealtimeNanos();
+                onAdvertisement(listener, bluetoothDevice, rssi, scanRecord, timestamp_ns);
+                listener.onBatchComplete(timestamp_ns);
+            }
+        }
+
+        @Override
+        public void onScanComplete() {
+            onScanStopped();
+        }
+    };
+}
@@ -0,0 +1,33 @@
+package tonyg.example.com.beacon.ble.radio;
+
+/**
+ * A source of BLE advertisements.
+ *
+ * The app scans through the Android Bluetooth stack with AndroidBleRadio.  Tests and load tests
+ * use SimulatedBleRadio, which needs no hardware.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public interface BleRadio {
+    long SCAN_PERIOD_CONTINUOUS = 0; // scan until stopScan() is called
+
+    /**
+     * Start scanning
+     *
+     * @param listener receives the advertisements, on the radio's own thread
+     * @param scanPeriod_ms how long to scan in milliseconds, or SCAN_PERIOD_CONTINUOUS
+     * @throws Exception if the scan could not be started
+     */
+    void startScan(AdvertisementListener listener, long scanPeriod_ms) throws Exception;
+
+    /**
+     * Stop scanning.  The listener is told through onScanStopped()
+     */
+    void stopScan();
+
+    /**
+     * @return <b>true</b> while a scan is running
+     */
+    boolean isScanning();
+}
@@ -0,0 +1,188 @@
+package tonyg.example.com.beacon.ble.radio;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A BleRadio that plays back an AdvertisementTrace instead of listening to Bluetooth.
+ *
+ * The trace can be synthetic or recorded.  It is played on a background thread, either at
+ * the pace it was recorded, faster, or as fast as the listener can take it.  Listeners receive
+ * the timestamps from the trace, so a replay produces the same results regardless of speed.
+ * Like a Bluetooth controller with a report delay, it can hold advertisements back and deliver
+ * them in batches.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class SimulatedBleRadio implements BleRadio {
+    public static final double SPEED_REAL_TIME = 1;
+    public static final double SPEED_UNLIMITED = 0; // no pauses between advertisements
+
+    private static final long NANOS_PER_MS = 1000000L;
+
+    private final AdvertisementTrace mTrace;
+    private volatile double mSpeed = SPEED_REAL_TIME;
+    private volatile long mReportDelay_ms = 0;
+    private volatile boolean mIsScanning = false;
+    private volatile int mGeneration = 0; // of the current scan, so an earlier playback thread can not end it
+    private Thread mThread;
+    private boolean mIsHeld = false; // the trace's current advertisement was read but not delivered, playback thread only
+
+    /**
+     * Create a SimulatedBleRadio.  The trace continues from where it left off on each scan,
+     * starting with the advertisement that ended the scan before
+     *
+     * @param trace the advertisements to play back
+     */
+    public SimulatedBleRadio(AdvertisementTrace trace) {
+        mTrace = trace;
+    }
+
+    /**
+     * Set the playback speed
+     *
+     * @param speed multiple of real time, or SPEED_UNLIMITED
+     */
+    public void setSpeed(double speed) {
+        mSpeed = speed;
+    }
+
+    /**
+     * Deliver advertisements in batches, as a controller does with ScanProfile's report delay
+     *
+     * @param reportDelay_ms length of each batch, in trace milliseconds, or 0 to deliver each
+     *                       advertisement as its own batch
+     */
+    public void setReportDelay(long reportDelay_ms) {
+        mReportDelay_ms = reportDelay_ms;
+    }
+
+    @Override
+    public synchronized void startScan(final AdvertisementListener listener, final long scanPeriod_ms) throws Exception {
+        if (mIsScanning) {
+            throw new Exception("Already scanning");
+        }
+        mIsScanning = true;
+        final int generation = ++mGeneration;
+        final Thread previous = mThread;
+        mThread = new Thread("SimulatedBleRadio") {
+            @Override
+            public void run() {
+                // a scan stopped just before may still be playing.  Let it finish before
+                // reading the trace
+                if (previous != null) {
+                    try {
+                        previous.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                play(listener, scanPeriod_ms, generation);
+            }
+        };
+        mThread.start();
+    }
+
+    @Override
+    public synchronized void stopScan() {
+        mIsScanning = false;
+        if (mThread != null) {
+            LockSupport.unpark(mThread);
+        }
+    }
+
+    @Override
+    public boolean isScanning() {
+        return mIsScanning;
+    }
+
+    /**
+     * Wait for the playback thread to finish
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void join() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    private void play(AdvertisementListener listener, long scanPeriod_ms, int generation) {
+        long startTime_ns = System.nanoTime();
+        long firstTimestamp_ns = 0;
+        boolean isFirst = true;
+        long scanPeriod_ns = scanPeriod_ms * NANOS_PER_MS;
+        long reportDelay_ns = mReportDelay_ms * NANOS_PER_MS;
+        long batch = 0;
+        long lastTimestamp_ns = 0;
+        boolean isBatchPending = false;
+
+        while (isCurrent(generation) && (mIsHeld || mTrace.next())) {
+            mIsHeld = false;
+            long timestamp_ns = mTrace.getTimestampNanos();
+            if (isFirst) {
+                firstTimestamp_ns = timestamp_ns;
+                isFirst = false;
+            }
+            long elapsed_ns = timestamp_ns - firstTimestamp_ns;
+            if (scanPeriod_ms != SCAN_PERIOD_CONTINUOUS && elapsed_ns >= scanPeriod_ns) {
+                mIsHeld = true; // it belongs to the next scan
+                break;
+            }
+
+            // a batch is delivered when its report delay runs out
+            long deliveredAt_ns = elapsed_ns;
+            if (reportDelay_ns > 0) {
+                long advertisementBatch = elapsed_ns / reportDelay_ns;
+                if (isBatchPending && advertisementBatch != batch) {
+                    listener.onBatchComplete(lastTimestamp_ns);
+                    isBatchPending = false;
+                }
+                batch = advertisementBatch;
+                deliveredAt_ns = (advertisementBatch + 1) * reportDelay_ns;
+            }
+
+            double speed = mSpeed;
+            if (speed > 0) {
+                long due_ns = startTime_ns + (long) (deliveredAt_ns / speed);
+                long wait_ns;
+                while (isCurrent(generation) && (wait_ns = due_ns - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(this, wait_ns);
+                }
+                if (!isCurrent(generation)) {
+                    mIsHeld = true;
+                    break;
+                }
+            }
+
+            listener.onAdvertisement(mTrace.getMacAddress(), mTrace.getRssi(), mTrace.getScanRecord(), timestamp_ns);
+            lastTimestamp_ns = timestamp_ns;
+            if (reportDelay_ns > 0) {
+                isBatchPending = true;
+            } else {
+                listener.onBatchComplete(timestamp_ns);
+            }
+        }
+
+        if (isBatchPending) {
+            listener.onBatchComplete(lastTimestamp_ns);
+        }
+        synchronized (this) {
+            if (mGeneration == generation) {
+                mIsScanning = false;
+            }
+        }
+        listener.onScanStopped();
+    }
+
+    /**
+     * @return <b>true</b> if the scan a playback thread was started for is still going
+     */
+    private boolean isCurrent(int generation) {
+        return mIsScanning && mGeneration == generation;
+    }
+}
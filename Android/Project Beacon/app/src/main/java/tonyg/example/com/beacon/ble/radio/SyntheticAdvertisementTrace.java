@@ -0,0 +1,257 @@
+package tonyg.example.com.beacon.ble.radio;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import tonyg.example.com.beacon.ble.BeaconAdvertisement;
+
+/**
+ * Generates the advertisements a Central would hear from a room full of virtual Beacons.
+ *
+ * Each Beacon advertises its location the way ble_beacon.ino does, every advertising interval
+ * plus the random 0-10 ms delay the BLE specification adds to avoid collisions.  The RSSI
+ * follows the log-distance path loss model with Gaussian shadowing:
+ *
+ *   rssi = referenceRssi - 10 * n * log10(distance) + N(0, sigma^2)
+ *
+ * Advertisements weaker than the receiver sensitivity are dropped, and some are lost at random.
+ * Given the same seed and Beacons, the trace is identical on every run.
+ *
+ * Pending advertisements are kept in a binary heap over primitive arrays, so thousands of
+ * Beacons cost O(log n) per advertisement and nothing is allocated while the trace runs.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class SyntheticAdvertisementTrace implements AdvertisementTrace {
+    public static final double DEFAULT_PROPAGATION_CONSTANT = 3.5;
+    public static final double DEFAULT_SHADOWING_DBM = 4;
+    public static final int DEFAULT_SENSITIVITY_DBM = -100;
+    public static final long DEFAULT_ADVERTISING_INTERVAL_MS = 100;
+
+    private static final long NANOS_PER_MS = 1000000L;
+    private static final long MAX_ADVERTISING_DELAY_NS = 10 * NANOS_PER_MS; // advDelay, from the BLE specification
+    private static final double MIN_DISTANCE_M = 0.1;
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final byte[] FLAGS_AD = { 0x02, 0x01, 0x06 }; // LE General Discoverable, BR/EDR not supported
+
+    private final Random mRandom;
+    private double mPropagationConstant = DEFAULT_PROPAGATION_CONSTANT;
+    private double mShadowing_dbm = DEFAULT_SHADOWING_DBM;
+    private int mSensitivity_dbm = DEFAULT_SENSITIVITY_DBM;
+    private double mLossRate = 0;
+    private long mDuration_ns = Long.MAX_VALUE;
+    private double mCentralX = 0;
+    private double mCentralY = 0;
+
+    /** Beacons **/
+    private int mBeaconCount = 0;
+    private long[] mMacAddress = new long[DEFAULT_CAPACITY];
+    private double[] mX = new double[DEFAULT_CAPACITY];
+    private double[] mY = new double[DEFAULT_CAPACITY];
+    private int[] mReferenceRssi = new int[DEFAULT_CAPACITY];
+    private long[] mInterval_ns = new long[DEFAULT_CAPACITY];
+    private byte[][] mScanRecord = new byte[DEFAULT_CAPACITY][];
+
+    /** Min heap of Beacons ordered by their next advertisement time **/
+    private int[] mHeap;
+    private long[] mNextTimestamp_ns;
+    private boolean mIsStarted = false;
+
+    /** Current advertisement **/
+    private long mTimestamp_ns;
+    private int mBeacon;
+    private int mRssi;
+
+    /**
+     * Create a SyntheticAdvertisementTrace
+     *
+     * @param seed random seed.  The same seed replays the same trace
+     */
+    public SyntheticAdvertisementTrace(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Set the radio environment
+     *
+     * @param propagationConstant the radio propagation constant n
+     * @param shadowing_dbm standard deviation of the RSSI noise, in dBm
+     * @param sensitivity_dbm advertisements weaker than this are not received
+     * @param lossRate fraction of advertisements lost to collisions and interference, 0 to 1
+     */
+    public void setChannel(double propagationConstant, double shadowing_dbm, int sensitivity_dbm, double lossRate) {
+        mPropagationConstant = propagationConstant;
+        mShadowing_dbm = shadowing_dbm;
+        mSensitivity_dbm = sensitivity_dbm;
+        mLossRate = lossRate;
+    }
+
+    /**
+     * Place the Central.  May be called between advertisements to move it
+     *
+     * @param x x location in meters
+     * @param y y location in meters
+     */
+    public void setCentralPosition(double x, double y) {
+        mCentralX = x;
+        mCentralY = y;
+    }
+
+    /**
+     * End the trace after a length of time
+     *
+     * @param duration_ms length of the trace in milliseconds
+     */
+    public void setDuration(long duration_ms) {
+        mDuration_ns = duration_ms * NANOS_PER_MS;
+    }
+
+    /**
+     * Add a Beacon.  Beacons can only be added before the trace is read
+     *
+     * @param macAddress the packed MAC address
+     * @param x x location in meters
+     * @param y y location in meters
+     * @param referenceRssi RSSI at 1 meter
+     * @param advertisingInterval_ms time between advertisements in milliseconds
+     */
+    public void addBeacon(long macAddress, double x, double y, int referenceRssi, long advertisingInterval_ms) {
+        if (mIsStarted) {
+            throw new IllegalStateException("Beacons must be added before the trace is read");
+        }
+        if (mBeaconCount == mMacAddress.length) {
+            int capacity = mBeaconCount * 2;
+            mMacAddress = Arrays.copyOf(mMacAddress, capacity);
+            mX = Arrays.copyOf(mX, capacity);
+            mY = Arrays.copyOf(mY, capacity);
+            mReferenceRssi = Arrays.copyOf(mReferenceRssi, capacity);
+            mInterval_ns = Arrays.copyOf(mInterval_ns, capacity);
+            mScanRecord = Arrays.copyOf(mScanRecord, capacity);
+        }
+        int beacon = mBeaconCount++;
+        mMacAddress[beacon] = macAddress;
+        mX[beacon] = x;
+        mY[beacon] = y;
+        mReferenceRssi[beacon] = referenceRssi;
+        mInterval_ns[beacon] = Math.max(1, advertisingInterval_ms) * NANOS_PER_MS;
+
+        byte[] scanRecord = new byte[FLAGS_AD.length + BeaconAdvertisement.STRUCTURE_LENGTH];
+        System.arraycopy(FLAGS_AD, 0, scanRecord, 0, FLAGS_AD.length);
+        BeaconAdvertisement.write(scanRecord, FLAGS_AD.length, referenceRssi,
+                (int) Math.round(x * 100), (int) Math.round(y * 100)); // meters to centimeters
+        mScanRecord[beacon] = scanRecord;
+    }
+
+    /**
+     * Scatter Beacons at random over a rectangular floor
+     *
+     * @param count number of Beacons
+     * @param width_m width of the floor in meters
+     * @param height_m height of the floor in meters
+     * @param referenceRssi RSSI at 1 meter
+     * @param advertisingInterval_ms time between advertisements in milliseconds
+     */
+    public void addRandomBeacons(int count, double width_m, double height_m, int referenceRssi, long advertisingInterval_ms) {
+        for (int index = 0; index < count; index++) {
+            long macAddress = 0xC0FFEE000000L | (mBeaconCount & 0xFFFFFF);
+            addBeacon(macAddress, mRandom.nextDouble() * width_m, mRandom.nextDouble() * height_m, referenceRssi, advertisingInterval_ms);
+        }
+    }
+
+    public int getBeaconCount() { return mBeaconCount; }
+
+    @Override
+    public boolean next() {
+        if (!mIsStarted) {
+            start();
+        }
+        while (mBeaconCount > 0) {
+            int beacon = mHeap[0];
+            long timestamp_ns = mNextTimestamp_ns[beacon];
+            if (timestamp_ns >= mDuration_ns) {
+                return false;
+            }
+            // schedule the Beacon's next advertisement before deciding if this one is heard
+            mNextTimestamp_ns[beacon] = timestamp_ns + mInterval_ns[beacon] + advertisingDelay();
+            siftDown(0);
+
+            if (mLossRate > 0 && mRandom.nextDouble() < mLossRate) {
+                continue;
+            }
+            int rssi = receivedRssi(beacon);
+            if (rssi < mSensitivity_dbm) {
+                continue;
+            }
+            mTimestamp_ns = timestamp_ns;
+            mBeacon = beacon;
+            mRssi = rssi;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public long getTimestampNanos() { return mTimestamp_ns; }
+
+    @Override
+    public long getMacAddress() { return mMacAddress[mBeacon]; }
+
+    @Override
+    public int getRssi() { return mRssi; }
+
+    @Override
+    public byte[] getScanRecord() { return mScanRecord[mBeacon]; }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Each Beacon starts at a random point in its first interval, as if they were powered on at different times
+     */
+    private void start() {
+        mIsStarted = true;
+        mHeap = new int[mBeaconCount];
+        mNextTimestamp_ns = new long[mBeaconCount];
+        for (int beacon = 0; beacon < mBeaconCount; beacon++) {
+            mHeap[beacon] = beacon;
+            mNextTimestamp_ns[beacon] = (long) (mRandom.nextDouble() * mInterval_ns[beacon]);
+        }
+        for (int index = mBeaconCount / 2 - 1; index >= 0; index--) {
+            siftDown(index);
+        }
+    }
+
+    private long advertisingDelay() {
+        return (long) (mRandom.nextDouble() * MAX_ADVERTISING_DELAY_NS);
+    }
+
+    private int receivedRssi(int beacon) {
+        double dx = mX[beacon] - mCentralX;
+        double dy = mY[beacon] - mCentralY;
+        double distance = Math.max(Math.sqrt(dx * dx + dy * dy), MIN_DISTANCE_M);
+        double rssi = mReferenceRssi[beacon] - 10 * mPropagationConstant * Math.log10(distance)
+                + mShadowing_dbm * mRandom.nextGaussian();
+        return (int) Math.round(rssi);
+    }
+
+    private void siftDown(int index) {
+        int beacon = mHeap[index];
+        long timestamp_ns = mNextTimestamp_ns[beacon];
+        int half = mBeaconCount / 2;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < mBeaconCount && mNextTimestamp_ns[mHeap[right]] < mNextTimestamp_ns[mHeap[child]]) {
+                child = right;
+            }
+            if (timestamp_ns <= mNextTimestamp_ns[mHeap[child]]) {
+                break;
+            }
+            mHeap[index] = mHeap[child];
+            index = child;
+        }
+        mHeap[index] = beacon;
+    }
+}
@@ -7,19 +7,32 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.drawable.BitmapDrawable;
+import android.graphics.RectF;
 import android.util.AttributeSet;
-import android.util.Log;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.widget.LinearLayout;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 import tonyg.example.com.beacon.R;
-import tonyg.example.com.beacon.ble.BleBeacon;
+import tonyg.example.com.beacon.utilities.PositionSnapshot;
 
 /**
  * This class represents a the visual Beacon Map
  *
+ * The floor is drawn from square tiles, at the level of detail nearest the zoom, and tiles
+ * are kept in a MapTileCache sized to hold the tiles of a screen.  A tile is only redrawn when a
+ * Beacon on it moves or appears, so venues of any size use the same bitmap memory.  The zoom
+ * stops at the scale of the coarsest tiles, so a screen never needs more tiles than the cache
+ * was sized for.  Tiles show the Beacons;
+ * the range circles and the Central are drawn over them in onDraw(), and only for Beacons in
+ * the viewport.  Drag to pan and pinch to zoom.
+ *
+ * A new snapshot only invalidates the parts of the map that changed: the old and new Central
+ * and any range circle whose radius changed.  Until the user pans or zooms, the map is fitted
+ * again when the Beacons change or the Central leaves the view.
+ *
  * @author Tony Gaitatzis backupbrain@gmail.com
  * @date 2016-03-06
  */
@@ -27,23 +40,61 @@ public class BeaconMapLayout extends LinearLayout {
     private static final String TAG = BeaconMapLayout.class.getSimpleName();
 
     /** Graphic properties **/
-    private static final int BITMAP_WIDTH = 1000;
-    private static final int BITMAP_HEIGHT = 800;
     private static final String PAINT_COLOR = "#CD5C5C";
     private static final int STROKE_COLOR = 5;
+    private static final int BEACON_ICON_SIZE = 48; // pixels
+    private static final int BEACON_DOT_RADIUS = 3; // pixels, for Beacons on zoomed out tiles
+    private static final int CENTRAL_ICON_HEIGHT = 72; // pixels
+    private static final float MIN_CIRCLE_RADIUS = 2; // pixels.  Smaller range circles are not drawn
+    private static final float MIN_RADIUS_CHANGE = 0.5f; // pixels
 
-    private static final int X_OFFSET = 50;
-    private static final int Y_OFFSET = 50;
-    private static final int M_PX_MULTIPLIER = 400;
+    /** Tiles and zoom **/
+    private static final int TILE_SIZE = 256; // pixels
+    private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 2; // RGB_565
+    private static final int MIN_TILE_SIZE = TILE_SIZE / 2; // pixels onscreen, just above a level's scale
+    private static final int CACHED_TILE_MARGIN = 3; // columns and rows beyond the screen, for partial tiles and panning
+    private static final float BASE_PIXELS_PER_METER = 4; // level 0 tiles cover 64 meters
+    private static final int MAX_LEVEL = 7; // level 7 tiles cover half a meter
+    private static final float DETAIL_PIXELS_PER_METER = 16; // tiles draw Beacon icons from here up, dots below
+    private static final float MIN_PIXELS_PER_METER = BASE_PIXELS_PER_METER; // never shrink level 0 tiles
+    private static final float MAX_PIXELS_PER_METER = 1000;
+    private static final float DEFAULT_PIXELS_PER_METER = 100;
+    private static final float FIT_MARGIN = 0.1f; // space around the Beacons when fitting them in view
 
     private Bitmap mBeaconIcon, mCentralIcon; // icons
-    private Canvas mCanvas = new Canvas();
+    private Rect mBeaconIconRect, mCentralIconRect; // whole icons
     private Paint mPaint = new Paint(); // paint properties
-    private Bitmap mMapBitmap; // rendered map
+    private Paint mDotPaint = new Paint();
+    private MapTileCache mTileCache = new MapTileCache(MapTileCache.DEFAULT_MAX_BYTES);
+    private final Canvas mTileCanvas = new Canvas();
+
+    /** Preallocated drawing rectangles **/
+    private final Rect mTileRect = new Rect(0, 0, TILE_SIZE, TILE_SIZE);
+    private final Rect mDestRect = new Rect();
+    private final RectF mTileDestRect = new RectF();
+    private final Rect mDirtyRect = new Rect(); // view pixels
+
+    /** Viewport **/
+    private float mPixelsPerMeter = DEFAULT_PIXELS_PER_METER;
+    private double mOriginX = 0, mOriginY = 0; // floor coordinates of the top left corner, in meters
+    private boolean mIsViewportSetByUser = false;
+    private ScaleGestureDetector mScaleGestureDetector;
+    private float mLastTouchX, mLastTouchY;
+    private int mLastPointerCount = 0;
+
+    private PositionSnapshot mSnapshot; // beacons and central
+
+    /** What is in the tiles, by snapshot row **/
+    private int mTiledBeaconCount = 0;
+    private long[] mTiledMacAddress = new long[16];
+    private double[] mTiledX = new double[16];
+    private double[] mTiledY = new double[16];
+    private boolean[] mIsTiledLocated = new boolean[16];
 
-    private ArrayList<BleBeacon> mBeaconList = new ArrayList<BleBeacon>(); // list of beacons
-    private boolean mIsCentralPositionSet = false;
-    private double[] mCentralPosition; // central position
+    /** What was drawn over the tiles, in view pixels **/
+    private float[] mDrawnRadius = new float[16]; // by snapshot row
+    private boolean mIsCentralDrawn = false;
+    private float mDrawnCentralX, mDrawnCentralY;
 
     /**
      * Create a new BeaconMapLayout
@@ -84,82 +135,443 @@ public class BeaconMapLayout extends LinearLayout {
      * Initialize the map
      */
     public void initialize() {
+        // a LinearLayout skips onDraw() unless told otherwise
+        setWillNotDraw(false);
+
         mBeaconIcon = BitmapFactory.decodeResource(getResources(),
                 R.drawable.peripheral);
 
         mCentralIcon = BitmapFactory.decodeResource(getResources(),
                 R.drawable.central);
+        mBeaconIconRect = new Rect(0, 0, mBeaconIcon.getWidth(), mBeaconIcon.getHeight());
+        mCentralIconRect = new Rect(0, 0, mCentralIcon.getWidth(), mCentralIcon.getHeight());
 
 
         mPaint.setColor(Color.parseColor(PAINT_COLOR));
         mPaint.setStyle(Paint.Style.STROKE);
         mPaint.setStrokeWidth(STROKE_COLOR);
-        mMapBitmap = Bitmap.createBitmap(BITMAP_WIDTH, BITMAP_HEIGHT, Bitmap.Config.ARGB_8888);
-        mCanvas = new Canvas(mMapBitmap);
+        mDotPaint.setColor(Color.parseColor(PAINT_COLOR));
+        mDotPaint.setStyle(Paint.Style.FILL);
+
+        mScaleGestureDetector = new ScaleGestureDetector(getContext(), mScaleGestureListener);
     }
 
     /**
-     * Add a new Beacon
+     * Set the Beacons and Central to draw
      *
-     * @param beacon
+     * @param snapshot the latest PositionSnapshot
      */
-    public void addBeacon(BleBeacon beacon) {
-        mBeaconList.add(beacon);
+    public void setPositionSnapshot(PositionSnapshot snapshot) {
+        mSnapshot = snapshot;
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        // tiles are drawn no smaller than MIN_TILE_SIZE, which bounds how many cover the view.
+        // API 18 has no LruCache.resize(), so a cache that is too small is replaced
+        int columns = width / MIN_TILE_SIZE + CACHED_TILE_MARGIN;
+        int rows = height / MIN_TILE_SIZE + CACHED_TILE_MARGIN;
+        int maxBytes = Math.max(MapTileCache.DEFAULT_MAX_BYTES, columns * rows * TILE_BYTES);
+        if (maxBytes > mTileCache.maxSize()) {
+            mTileCache.release();
+            mTileCache = new MapTileCache(maxBytes);
+        }
+        if (!mIsViewportSetByUser && mSnapshot != null) {
+            fitToBeacons(mSnapshot);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // tiles are redrawn if the view is attached again
+        mTileCache.release();
     }
 
     /**
-     * Position the central
-     *
-     * @param x x location
-     * @param y y location
+     * Redraw the parts of the map that changed since the last frame
+     */
+    public void draw() {
+        PositionSnapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            return;
+        }
+        boolean isTilesChanged = updateTiles(snapshot);
+        // the Beacons stay put, but the Central may walk off the edge of the fitted map
+        if (isTilesChanged || (!mIsViewportSetByUser && !isCentralInView(snapshot))) {
+            if (!mIsViewportSetByUser) {
+                fitToBeacons(snapshot);
+            }
+            invalidate();
+            return;
+        }
+
+        mDirtyRect.setEmpty();
+        // range circles that grew or shrank
+        ensureRadiusCapacity(snapshot.getBeaconCount());
+        for (int row = 0; row < snapshot.getBeaconCount(); row++) {
+            if (!snapshot.isLocated(row)) continue;
+            float radius = (float) snapshot.getDistance(row) * mPixelsPerMeter;
+            if (Math.abs(radius - mDrawnRadius[row]) >= MIN_RADIUS_CHANGE) {
+                float x = toViewX(snapshot.getXLocation(row));
+                float y = toViewY(snapshot.getYLocation(row));
+                addCircleToDirtyRect(x, y, mDrawnRadius[row]);
+                addCircleToDirtyRect(x, y, radius);
+            }
+        }
+        // the Central, where it was and where it is
+        if (snapshot.isCentralLocated()) {
+            float x = toViewX(snapshot.getCentralX());
+            float y = toViewY(snapshot.getCentralY());
+            if (!mIsCentralDrawn || x != mDrawnCentralX || y != mDrawnCentralY) {
+                if (mIsCentralDrawn) {
+                    addCentralToDirtyRect(mDrawnCentralX, mDrawnCentralY);
+                }
+                addCentralToDirtyRect(x, y);
+            }
+        } else if (mIsCentralDrawn) {
+            addCentralToDirtyRect(mDrawnCentralX, mDrawnCentralY);
+        }
+
+        if (!mDirtyRect.isEmpty()) {
+            invalidate(mDirtyRect);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        mScaleGestureDetector.onTouchEvent(event);
+        int pointerCount = event.getPointerCount();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_MOVE:
+                // a finger was added or lifted since the last move.  Don't jump
+                if (pointerCount == 1 && mLastPointerCount == 1 && !mScaleGestureDetector.isInProgress()) {
+                    mOriginX -= (event.getX() - mLastTouchX) / mPixelsPerMeter;
+                    mOriginY -= (event.getY() - mLastTouchY) / mPixelsPerMeter;
+                    mIsViewportSetByUser = true;
+                    invalidate();
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                pointerCount = 0;
+                break;
+        }
+        mLastTouchX = event.getX();
+        mLastTouchY = event.getY();
+        mLastPointerCount = pointerCount;
+        return true;
+    }
+
+    /**
+     * Zooms around the point between the fingers
      */
-    public void setCentralPosition(double x, double y) {
-        mIsCentralPositionSet = true;
-        mCentralPosition = new double[]{x, y};
+    private final ScaleGestureDetector.SimpleOnScaleGestureListener mScaleGestureListener = new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            float focusX = detector.getFocusX();
+            float focusY = detector.getFocusY();
+            double floorX = mOriginX + focusX / mPixelsPerMeter;
+            double floorY = mOriginY + focusY / mPixelsPerMeter;
+            mPixelsPerMeter = clampZoom(mPixelsPerMeter * detector.getScaleFactor());
+            mOriginX = floorX - focusX / mPixelsPerMeter;
+            mOriginY = floorY - focusY / mPixelsPerMeter;
+            mIsViewportSetByUser = true;
+            invalidate();
+            return true;
+        }
+    };
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        drawTiles(canvas);
+
+        PositionSnapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            return;
+        }
+        int width = getWidth();
+        int height = getHeight();
+        ensureRadiusCapacity(snapshot.getBeaconCount());
+        for (int row = 0; row < snapshot.getBeaconCount(); row++) {
+            mDrawnRadius[row] = 0;
+            if (!snapshot.isLocated(row)) continue;
+            float radius = (float) snapshot.getDistance(row) * mPixelsPerMeter;
+            float x = toViewX(snapshot.getXLocation(row));
+            float y = toViewY(snapshot.getYLocation(row));
+            // skip circles too small to see or entirely outside the view
+            if (radius < MIN_CIRCLE_RADIUS || x + radius < 0 || y + radius < 0 || x - radius > width || y - radius > height) {
+                continue;
+            }
+            canvas.drawCircle(x, y, radius, mPaint);
+            mDrawnRadius[row] = radius;
+        }
+        mIsCentralDrawn = snapshot.isCentralLocated();
+        if (mIsCentralDrawn) {
+            mDrawnCentralX = toViewX(snapshot.getCentralX());
+            mDrawnCentralY = toViewY(snapshot.getCentralY());
+            drawCentralPosition(canvas, mDrawnCentralX, mDrawnCentralY);
+        }
     }
 
     /**
-     * Draw the Beacon Position
-     *
-     * @param beacon
+     * Draw the tiles that cover the view, at the level of detail nearest the zoom
      */
-    private void drawBeaconPosition(BleBeacon beacon) {
-        Log.d(TAG, "Drawing point: " + beacon);
-        Rect sourceRect = new Rect(0, 0, mBeaconIcon.getWidth(), mBeaconIcon.getHeight());
-        Rect destRect = new Rect((int) (beacon.getXLocation() * M_PX_MULTIPLIER - 50 + X_OFFSET), (int) (beacon.getYLocation() * M_PX_MULTIPLIER - 50 + Y_OFFSET), (int) (beacon.getXLocation() * M_PX_MULTIPLIER + 50 + X_OFFSET), (int) (beacon.getYLocation() * M_PX_MULTIPLIER + 50 + Y_OFFSET));
-        mCanvas.drawBitmap(mBeaconIcon, sourceRect, destRect, null);
-        mCanvas.drawCircle((float) beacon.getXLocation() * M_PX_MULTIPLIER + X_OFFSET, (float) beacon.getYLocation() * M_PX_MULTIPLIER + Y_OFFSET, (float) beacon.getDistance() * M_PX_MULTIPLIER, mPaint);
+    private void drawTiles(Canvas canvas) {
+        int level = getLevel(mPixelsPerMeter);
+        double tileSize_m = TILE_SIZE / getLevelPixelsPerMeter(level);
+        int firstColumn = (int) Math.floor(mOriginX / tileSize_m);
+        int firstRow = (int) Math.floor(mOriginY / tileSize_m);
+        int lastColumn = (int) Math.floor((mOriginX + getWidth() / mPixelsPerMeter) / tileSize_m);
+        int lastRow = (int) Math.floor((mOriginY + getHeight() / mPixelsPerMeter) / tileSize_m);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Bitmap tile = getTile(level, column, row);
+                mTileDestRect.set(
+                        toViewX(column * tileSize_m),
+                        toViewY(row * tileSize_m),
+                        toViewX((column + 1) * tileSize_m),
+                        toViewY((row + 1) * tileSize_m)
+                );
+                canvas.drawBitmap(tile, mTileRect, mTileDestRect, null);
+            }
+        }
+    }
 
+    /**
+     * Get a tile from the cache, drawing it if it isn't there
+     */
+    private Bitmap getTile(int level, int column, int row) {
+        long key = MapTileCache.getKey(level, column, row);
+        Bitmap tile = mTileCache.get(key);
+        if (tile != null) {
+            return tile;
+        }
 
+        // tiles are opaque, so they don't need an alpha channel
+        tile = mTileCache.obtainFreeTile();
+        if (tile == null) {
+            tile = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.RGB_565);
+        }
+        mTileCanvas.setBitmap(tile);
+        mTileCanvas.drawColor(Color.WHITE);
+        PositionSnapshot snapshot = mSnapshot;
+        if (snapshot != null) {
+            float levelPixelsPerMeter = getLevelPixelsPerMeter(level);
+            boolean isDetailed = levelPixelsPerMeter >= DETAIL_PIXELS_PER_METER;
+            double left_m = column * (TILE_SIZE / (double) levelPixelsPerMeter);
+            double top_m = row * (TILE_SIZE / (double) levelPixelsPerMeter);
+            int reach = BEACON_ICON_SIZE / 2;
+            for (int beacon = 0; beacon < snapshot.getBeaconCount(); beacon++) {
+                if (!snapshot.isLocated(beacon)) continue;
+                float x = (float) ((snapshot.getXLocation(beacon) - left_m) * levelPixelsPerMeter);
+                float y = (float) ((snapshot.getYLocation(beacon) - top_m) * levelPixelsPerMeter);
+                // only Beacons that reach into this tile
+                if (x < -reach || y < -reach || x > TILE_SIZE + reach || y > TILE_SIZE + reach) continue;
+                if (isDetailed) {
+                    mDestRect.set((int) x - reach, (int) y - reach, (int) x + reach, (int) y + reach);
+                    mTileCanvas.drawBitmap(mBeaconIcon, mBeaconIconRect, mDestRect, null);
+                } else {
+                    mTileCanvas.drawCircle(x, y, BEACON_DOT_RADIUS, mDotPaint);
+                }
+            }
+        }
+        mTileCache.put(key, tile);
+        return tile;
     }
 
     /**
-     * Draw the Central onscreen
+     * Throw away the tiles under Beacons that appeared, moved or were lost
      *
-     * @param location
+     * @return <b>true</b> if any tile was thrown away
      */
-    public void drawCentralPosition(double[] location) {
-        Rect sourceRect = new Rect(0, 0, mCentralIcon.getWidth(), mCentralIcon.getHeight());
-        Rect destRect = new Rect((int) (location[0] * M_PX_MULTIPLIER - 36 + X_OFFSET), (int) (location[1] * M_PX_MULTIPLIER - 71 + Y_OFFSET), (int) (location[0] * M_PX_MULTIPLIER + 37 + X_OFFSET), (int) (location[1] * M_PX_MULTIPLIER + 72 + Y_OFFSET));
-        mCanvas.drawBitmap(mCentralIcon, sourceRect, destRect, null);
+    private boolean updateTiles(PositionSnapshot snapshot) {
+        int count = snapshot.getBeaconCount();
+        boolean isChanged = false;
+        if (count < mTiledBeaconCount) {
+            // the Beacons were cleared
+            mTileCache.evictAll();
+            mTiledBeaconCount = 0;
+            isChanged = true;
+        }
+        ensureTiledCapacity(count);
+        for (int row = 0; row < count; row++) {
+            boolean isLocated = snapshot.isLocated(row);
+            double x = snapshot.getXLocation(row);
+            double y = snapshot.getYLocation(row);
+            boolean wasLocated = false;
+            if (row < mTiledBeaconCount) {
+                if (mTiledMacAddress[row] != snapshot.getMacAddress(row)) {
+                    // rows were reused by other Beacons
+                    mTileCache.evictAll();
+                    mTiledBeaconCount = 0;
+                    updateTiles(snapshot);
+                    return true;
+                }
+                if (isLocated == mIsTiledLocated[row] && (!isLocated || (x == mTiledX[row] && y == mTiledY[row]))) {
+                    continue;
+                }
+                wasLocated = mIsTiledLocated[row];
+            }
+            if (wasLocated) {
+                removeTilesAround(mTiledX[row], mTiledY[row]);
+                isChanged = true;
+            }
+            if (isLocated) {
+                removeTilesAround(x, y);
+                isChanged = true;
+            }
+            mTiledMacAddress[row] = snapshot.getMacAddress(row);
+            mTiledX[row] = x;
+            mTiledY[row] = y;
+            mIsTiledLocated[row] = isLocated;
+        }
+        mTiledBeaconCount = count;
+        return isChanged;
     }
 
     /**
-     * Draw the frame
+     * Throw away the tiles, at every level, that a Beacon icon at a location reaches into
      */
-    public void draw() {
-        // clear canvas
-        mCanvas.drawColor(Color.WHITE);
-        // draw each beacon
-        for (BleBeacon beacon : mBeaconList) {
-            drawBeaconPosition(beacon);
+    private void removeTilesAround(double x, double y) {
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            float levelPixelsPerMeter = getLevelPixelsPerMeter(level);
+            double tileSize_m = TILE_SIZE / (double) levelPixelsPerMeter;
+            double reach_m = (BEACON_ICON_SIZE / 2 + 1) / levelPixelsPerMeter;
+            int firstColumn = (int) Math.floor((x - reach_m) / tileSize_m);
+            int lastColumn = (int) Math.floor((x + reach_m) / tileSize_m);
+            int firstRow = (int) Math.floor((y - reach_m) / tileSize_m);
+            int lastRow = (int) Math.floor((y + reach_m) / tileSize_m);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    mTileCache.remove(MapTileCache.getKey(level, column, row));
+                }
+            }
+        }
+    }
+
+    /**
+     * Zoom and pan so that every located Beacon and the Central are in view
+     */
+    private void fitToBeacons(PositionSnapshot snapshot) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int row = 0; row < snapshot.getBeaconCount(); row++) {
+            if (!snapshot.isLocated(row)) continue;
+            minX = Math.min(minX, snapshot.getXLocation(row));
+            maxX = Math.max(maxX, snapshot.getXLocation(row));
+            minY = Math.min(minY, snapshot.getYLocation(row));
+            maxY = Math.max(maxY, snapshot.getYLocation(row));
         }
-        // draw central position
-        if (mIsCentralPositionSet) {
-            drawCentralPosition(mCentralPosition);
+        if (snapshot.isCentralLocated()) {
+            minX = Math.min(minX, snapshot.getCentralX());
+            maxX = Math.max(maxX, snapshot.getCentralX());
+            minY = Math.min(minY, snapshot.getCentralY());
+            maxY = Math.max(maxY, snapshot.getCentralY());
         }
-        this.setBackgroundDrawable(new BitmapDrawable(mMapBitmap));
+        if (minX > maxX || getWidth() <= 0 || getHeight() <= 0) {
+            return;
+        }
+        double width_m = (maxX - minX) * (1 + 2 * FIT_MARGIN);
+        double height_m = (maxY - minY) * (1 + 2 * FIT_MARGIN);
+        float pixelsPerMeter = DEFAULT_PIXELS_PER_METER;
+        if (width_m > 0 || height_m > 0) {
+            pixelsPerMeter = (float) Math.min(getWidth() / width_m, getHeight() / height_m);
+        }
+        centerViewport((minX + maxX) / 2, (minY + maxY) / 2, pixelsPerMeter);
     }
 
-}
+    /**
+     * @return <b>true</b> unless the Central is located outside of the view
+     */
+    private boolean isCentralInView(PositionSnapshot snapshot) {
+        if (!snapshot.isCentralLocated()) {
+            return true;
+        }
+        float x = toViewX(snapshot.getCentralX());
+        float y = toViewY(snapshot.getCentralY());
+        return x >= 0 && x <= getWidth() && y >= 0 && y <= getHeight();
+    }
+
+    private void centerViewport(double centerX, double centerY, float pixelsPerMeter) {
+        mPixelsPerMeter = clampZoom(pixelsPerMeter);
+        mOriginX = centerX - getWidth() / 2.0 / mPixelsPerMeter;
+        mOriginY = centerY - getHeight() / 2.0 / mPixelsPerMeter;
+    }
+
+    private static float clampZoom(float pixelsPerMeter) {
+        return Math.max(MIN_PIXELS_PER_METER, Math.min(MAX_PIXELS_PER_METER, pixelsPerMeter));
+    }
+
+    /**
+     * The level of detail whose tiles are at least as sharp as the zoom, up to MAX_LEVEL
+     */
+    private static int getLevel(float pixelsPerMeter) {
+        int level = 0;
+        while (level < MAX_LEVEL && getLevelPixelsPerMeter(level) < pixelsPerMeter) {
+            level++;
+        }
+        return level;
+    }
+
+    private static float getLevelPixelsPerMeter(int level) {
+        return BASE_PIXELS_PER_METER * (1 << level);
+    }
 
+    private float toViewX(double x) {
+        return (float) ((x - mOriginX) * mPixelsPerMeter);
+    }
+
+    private float toViewY(double y) {
+        return (float) ((y - mOriginY) * mPixelsPerMeter);
+    }
+
+    private void ensureTiledCapacity(int beaconCount) {
+        if (beaconCount > mTiledMacAddress.length) {
+            int capacity = Math.max(beaconCount, mTiledMacAddress.length * 2);
+            mTiledMacAddress = Arrays.copyOf(mTiledMacAddress, capacity);
+            mTiledX = Arrays.copyOf(mTiledX, capacity);
+            mTiledY = Arrays.copyOf(mTiledY, capacity);
+            mIsTiledLocated = Arrays.copyOf(mIsTiledLocated, capacity);
+        }
+    }
+
+    private void ensureRadiusCapacity(int beaconCount) {
+        if (beaconCount > mDrawnRadius.length) {
+            mDrawnRadius = Arrays.copyOf(mDrawnRadius, Math.max(beaconCount, mDrawnRadius.length * 2));
+        }
+    }
+
+    private void addCircleToDirtyRect(float x, float y, float radius) {
+        float reach = radius + STROKE_COLOR;
+        mDirtyRect.union((int) (x - reach), (int) (y - reach), (int) (x + reach) + 1, (int) (y + reach) + 1);
+    }
+
+    private void addCentralToDirtyRect(float x, float y) {
+        int halfWidth = getCentralIconWidth() / 2 + 1;
+        int halfHeight = CENTRAL_ICON_HEIGHT / 2 + 1;
+        mDirtyRect.union((int) x - halfWidth, (int) y - halfHeight, (int) x + halfWidth + 1, (int) y + halfHeight + 1);
+    }
+
+    private int getCentralIconWidth() {
+        return CENTRAL_ICON_HEIGHT * mCentralIcon.getWidth() / Math.max(1, mCentralIcon.getHeight());
+    }
+
+    /**
+     * Draw the Central onscreen
+     *
+     * @param canvas the view's canvas
+     * @param x x location in view pixels
+     * @param y y location in view pixels
+     */
+    private void drawCentralPosition(Canvas canvas, float x, float y) {
+        int halfWidth = getCentralIconWidth() / 2;
+        int halfHeight = CENTRAL_ICON_HEIGHT / 2;
+        mDestRect.set((int) x - halfWidth, (int) y - halfHeight, (int) x + halfWidth, (int) y + halfHeight);
+        canvas.drawBitmap(mCentralIcon, mCentralIconRect, mDestRect, null);
+    }
+
+}
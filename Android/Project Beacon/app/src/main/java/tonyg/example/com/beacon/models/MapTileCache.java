@@ -0,0 +1,90 @@
+package tonyg.example.com.beacon.models;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps the most recently drawn map tiles, up to a fixed number of bytes.
+ *
+ * Tiles are addressed by their level of detail and their column and row at that level,
+ * packed into one key.  However large the venue, the cache never holds more than its
+ * byte budget of bitmaps.
+ *
+ * Tiles that are thrown out are kept, up to MAX_FREE_TILES, to draw new tiles on, so panning
+ * and zooming do not allocate a bitmap for every tile that comes into view.  The rest are
+ * recycled.  Only use a MapTileCache from the UI thread.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class MapTileCache extends LruCache<Long, Bitmap> {
+    public static final int DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+    public static final int MAX_FREE_TILES = 32;
+
+    private static final int COORDINATE_BITS = 28;
+    private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+
+    private final ArrayDeque<Bitmap> mFreeTiles = new ArrayDeque<>();
+
+    /**
+     * Create a MapTileCache
+     *
+     * @param maxBytes how many bytes of tile bitmaps to keep
+     */
+    public MapTileCache(int maxBytes) {
+        super(maxBytes);
+    }
+
+    @Override
+    protected int sizeOf(Long key, Bitmap tile) {
+        return tile.getByteCount();
+    }
+
+    @Override
+    protected void entryRemoved(boolean isEvicted, Long key, Bitmap oldTile, Bitmap newTile) {
+        if (oldTile == newTile) {
+            return;
+        }
+        if (mFreeTiles.size() < MAX_FREE_TILES) {
+            mFreeTiles.push(oldTile);
+        } else {
+            oldTile.recycle();
+        }
+    }
+
+    /**
+     * Take a bitmap that was thrown out of the cache, to draw a new tile on
+     *
+     * @return the bitmap, or <b>null</b> if there are none
+     */
+    public Bitmap obtainFreeTile() {
+        return mFreeTiles.poll();
+    }
+
+    /**
+     * Throw out every tile and recycle every bitmap
+     */
+    public void release() {
+        evictAll();
+        Bitmap tile;
+        while ((tile = mFreeTiles.poll()) != null) {
+            tile.recycle();
+        }
+    }
+
+    /**
+     * Pack a tile address into a key
+     *
+     * @param level the level of detail
+     * @param column the tile column.  May be negative
+     * @param row the tile row.  May be negative
+     * @return the key
+     */
+    public static long getKey(int level, int column, int row) {
+        return ((long) level << (2 * COORDINATE_BITS))
+                | ((column & COORDINATE_MASK) << COORDINATE_BITS)
+                | (row & COORDINATE_MASK);
+    }
+}
@@ -0,0 +1,141 @@
+package tonyg.example.com.beacon.sensors;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+/**
+ * A MotionSensor that reads the phone's accelerometer and gyroscope through SensorManager.
+ *
+ * Samples are delivered on a thread of their own, so a busy UI thread does not hold them
+ * back.
+ *
+ * Advertisements are stamped with SystemClock.elapsedRealtimeNanos(), but before API 24
+ * SensorEvent timestamps are not guaranteed to be on that clock; some devices count from
+ * another epoch, such as uptime.  Each sample is moved onto elapsedRealtimeNanos() by the
+ * smallest difference seen between its arrival and its timestamp, which is the offset
+ * between the clocks plus the shortest delivery delay.  This keeps the spacing of the sensor
+ * timestamps, which arrival times would lose when samples are delivered in batches.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class AndroidMotionSensor implements MotionSensor {
+    private final SensorManager mSensorManager;
+    private final Sensor mAccelerometer;
+    private final Sensor mGyroscope;
+    private volatile MotionListener mListener;
+    private volatile boolean mIsRunning = false;
+    private HandlerThread mThread;
+
+    /** Clock offset, only touched on the sensor thread once started **/
+    private boolean mHasClockOffset = false;
+    private long mClockOffset_ns; // elapsedRealtimeNanos() - SensorEvent.timestamp
+    private final long[] mLastTimestamp_ns = new long[SENSOR_GYROSCOPE + 1]; // by sensor, so time never runs backwards
+
+    /**
+     * Create an AndroidMotionSensor
+     *
+     * @param context the Activity or Application context
+     */
+    public AndroidMotionSensor(Context context) {
+        mSensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        mAccelerometer = mSensorManager != null ? mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER) : null;
+        mGyroscope = mSensorManager != null ? mSensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE) : null;
+    }
+
+    /**
+     * @return <b>true</b> if the phone has both an accelerometer and a gyroscope
+     */
+    public boolean isSupported() {
+        return mAccelerometer != null && mGyroscope != null;
+    }
+
+    @Override
+    public synchronized void start(MotionListener listener) throws Exception {
+        if (!isSupported()) {
+            throw new Exception("Accelerometer or gyroscope not available");
+        }
+        if (mIsRunning) {
+            throw new Exception("Already running");
+        }
+        mListener = listener;
+        mHasClockOffset = false;
+        mThread = new HandlerThread("AndroidMotionSensor");
+        mThread.start();
+        Handler handler = new Handler(mThread.getLooper());
+        mIsRunning = true;
+        if (!mSensorManager.registerListener(mSensorEventListener, mAccelerometer, SensorManager.SENSOR_DELAY_GAME, handler)
+                || !mSensorManager.registerListener(mSensorEventListener, mGyroscope, SensorManager.SENSOR_DELAY_GAME, handler)) {
+            stop();
+            throw new Exception("Could not register for sensor events");
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!mIsRunning) {
+            return;
+        }
+        mIsRunning = false;
+        mSensorManager.unregisterListener(mSensorEventListener);
+        mThread.quit();
+        mThread = null;
+        MotionListener listener = mListener;
+        if (listener != null) {
+            listener.onSensorStopped();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mIsRunning;
+    }
+
+    private final SensorEventListener mSensorEventListener = new SensorEventListener() {
+        /**
+         * New accelerometer or gyroscope sample
+         *
+         * @param event the sensor, its values and when they were measured
+         */
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            MotionListener listener = mListener;
+            if (listener == null || !mIsRunning) {
+                return;
+            }
+            int sensor;
+            switch (event.sensor.getType()) {
+                case Sensor.TYPE_ACCELEROMETER:
+                    sensor = SENSOR_ACCELEROMETER;
+                    break;
+                case Sensor.TYPE_GYROSCOPE:
+                    sensor = SENSOR_GYROSCOPE;
+                    break;
+                default:
+                    return;
+            }
+            long offset_ns = SystemClock.elapsedRealtimeNanos() - event.timestamp;
+            if (!mHasClockOffset || offset_ns < mClockOffset_ns) {
+                mClockOffset_ns = offset_ns;
+                mHasClockOffset = true;
+            }
+            long timestamp_ns = event.timestamp + mClockOffset_ns;
+            if (timestamp_ns < mLastTimestamp_ns[sensor]) {
+                timestamp_ns = mLastTimestamp_ns[sensor];
+            }
+            mLastTimestamp_ns[sensor] = timestamp_ns;
+            float[] values = event.values;
+            listener.onMotionSample(sensor, timestamp_ns, values[0], values[1], values[2]);
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        }
+    };
+}
@@ -0,0 +1,26 @@
+package tonyg.example.com.beacon.sensors;
+
+/**
+ * Receives samples from a MotionSensor
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public interface MotionListener {
+    /**
+     * A sensor was sampled
+     *
+     * @param sensor MotionSensor.SENSOR_ACCELEROMETER or MotionSensor.SENSOR_GYROSCOPE
+     * @param timestamp_ns when the sample was taken, in nanoseconds on the same clock as advertisements,
+     *                     SystemClock.elapsedRealtimeNanos() on Android
+     * @param x value along the device x axis
+     * @param y value along the device y axis
+     * @param z value along the device z axis
+     */
+    void onMotionSample(int sensor, long timestamp_ns, float x, float y, float z);
+
+    /**
+     * The sensors stopped, because they were stopped or the trace ran out
+     */
+    void onSensorStopped();
+}
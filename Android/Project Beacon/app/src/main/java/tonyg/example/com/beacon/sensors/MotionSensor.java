@@ -0,0 +1,37 @@
+package tonyg.example.com.beacon.sensors;
+
+/**
+ * A source of accelerometer and gyroscope samples.
+ *
+ * The app reads the phone's inertial sensors with AndroidMotionSensor.  Tests and benchmarks
+ * use SimulatedMotionSensor, which needs no device.
+ *
+ * Samples are in the device's coordinate frame, as Android reports them: acceleration in
+ * m/s^2 including gravity, and rotation rate in rad/s, counterclockwise positive.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public interface MotionSensor {
+    /** Sensors **/
+    int SENSOR_ACCELEROMETER = 1;
+    int SENSOR_GYROSCOPE = 2;
+
+    /**
+     * Start delivering samples
+     *
+     * @param listener receives the samples, on the sensor's own thread
+     * @throws Exception if the sensors could not be started
+     */
+    void start(MotionListener listener) throws Exception;
+
+    /**
+     * Stop delivering samples.  The listener is told through onSensorStopped()
+     */
+    void stop();
+
+    /**
+     * @return <b>true</b> while samples are being delivered
+     */
+    boolean isRunning();
+}
@@ -0,0 +1,34 @@
+package tonyg.example.com.beacon.sensors;
+
+import java.io.Closeable;
+
+/**
+ * A sequence of accelerometer and gyroscope samples in the order they were taken.
+ *
+ * A trace is read like a cursor, the same way as an AdvertisementTrace: next() moves to the
+ * following sample, and the getters describe the current one.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public interface MotionTrace extends Closeable {
+    /**
+     * Move to the next sample
+     *
+     * @return <b>false</b> at the end of the trace
+     */
+    boolean next();
+
+    /**
+     * @return MotionSensor.SENSOR_ACCELEROMETER or MotionSensor.SENSOR_GYROSCOPE
+     */
+    int getSensor();
+
+    long getTimestampNanos();
+
+    float getX();
+
+    float getY();
+
+    float getZ();
+}
@@ -0,0 +1,136 @@
+package tonyg.example.com.beacon.sensors;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A MotionSensor that plays back a MotionTrace instead of reading the phone's sensors.
+ *
+ * Like SimulatedBleRadio, the trace is played on a background thread, at the pace it was
+ * recorded, faster, or as fast as the listener can take it, and listeners receive the
+ * timestamps from the trace.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class SimulatedMotionSensor implements MotionSensor {
+    public static final double SPEED_REAL_TIME = 1;
+    public static final double SPEED_UNLIMITED = 0; // no pauses between samples
+
+    private final MotionTrace mTrace;
+    private volatile double mSpeed = SPEED_REAL_TIME;
+    private volatile boolean mIsRunning = false;
+    private volatile int mGeneration = 0; // of the current run, so an earlier playback thread can not end it
+    private Thread mThread;
+
+    /**
+     * Create a SimulatedMotionSensor.  The trace continues from where it left off on each start
+     *
+     * @param trace the samples to play back
+     */
+    public SimulatedMotionSensor(MotionTrace trace) {
+        mTrace = trace;
+    }
+
+    /**
+     * Set the playback speed
+     *
+     * @param speed multiple of real time, or SPEED_UNLIMITED
+     */
+    public void setSpeed(double speed) {
+        mSpeed = speed;
+    }
+
+    @Override
+    public synchronized void start(final MotionListener listener) throws Exception {
+        if (mIsRunning) {
+            throw new Exception("Already running");
+        }
+        mIsRunning = true;
+        final int generation = ++mGeneration;
+        final Thread previous = mThread;
+        mThread = new Thread("SimulatedMotionSensor") {
+            @Override
+            public void run() {
+                // a run stopped just before may still be playing.  Let it finish before
+                // reading the trace
+                if (previous != null) {
+                    try {
+                        previous.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                play(listener, generation);
+            }
+        };
+        mThread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        mIsRunning = false;
+        if (mThread != null) {
+            LockSupport.unpark(mThread);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mIsRunning;
+    }
+
+    /**
+     * Wait for the playback thread to finish
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void join() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    private void play(MotionListener listener, int generation) {
+        long startTime_ns = System.nanoTime();
+        long firstTimestamp_ns = 0;
+        boolean isFirst = true;
+
+        while (isCurrent(generation) && mTrace.next()) {
+            long timestamp_ns = mTrace.getTimestampNanos();
+            if (isFirst) {
+                firstTimestamp_ns = timestamp_ns;
+                isFirst = false;
+            }
+
+            double speed = mSpeed;
+            if (speed > 0) {
+                long due_ns = startTime_ns + (long) ((timestamp_ns - firstTimestamp_ns) / speed);
+                long wait_ns;
+                while (isCurrent(generation) && (wait_ns = due_ns - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(this, wait_ns);
+                }
+                if (!isCurrent(generation)) break;
+            }
+
+            listener.onMotionSample(mTrace.getSensor(), timestamp_ns, mTrace.getX(), mTrace.getY(), mTrace.getZ());
+        }
+
+        synchronized (this) {
+            if (mGeneration == generation) {
+                mIsRunning = false;
+            }
+        }
+        listener.onSensorStopped();
+    }
+
+    /**
+     * @return <b>true</b> if the run a playback thread was started for is still going
+     */
+    private boolean isCurrent(int generation) {
+        return mIsRunning && mGeneration == generation;
+    }
+}
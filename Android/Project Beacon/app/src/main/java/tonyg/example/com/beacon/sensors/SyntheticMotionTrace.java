@@ -0,0 +1,267 @@
+package tonyg.example.com.beacon.sensors;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates the accelerometer and gyroscope samples of a phone carried by someone walking.
+ *
+ * The walker follows a loop of waypoints at a steady pace, turning toward each waypoint no
+ * faster than a person does.  The phone is held in front of them, pitched up by a tilt angle.
+ * Each step lifts and drops the body once, which the accelerometer sees as a sine wave along
+ * gravity at the step frequency.  The gyroscope reports the turn rate about the vertical with
+ * a constant bias.  Both sensors add Gaussian noise, and are sampled at the same instants.
+ *
+ * The true position and heading of the walker can be read after every sample, to move the
+ * Central of a SyntheticAdvertisementTrace along with it and to measure tracking error.
+ * Given the same seed and waypoints, the trace is identical on every run.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class SyntheticMotionTrace implements MotionTrace {
+    public static final long DEFAULT_SAMPLE_INTERVAL_MS = 10; // 100 Hz, SENSOR_DELAY_GAME on most phones
+    public static final double DEFAULT_STEP_LENGTH_M = 0.7;
+    public static final double DEFAULT_STEP_FREQUENCY_HZ = 1.8;
+    public static final double DEFAULT_STEP_ACCELERATION = 2.5; // m/s^2, amplitude of the bounce
+    public static final double DEFAULT_TILT = 0.5; // radians, phone pitched up toward the face
+    public static final double DEFAULT_ACCELEROMETER_NOISE = 0.2; // m/s^2
+    public static final double DEFAULT_GYROSCOPE_NOISE = 0.01; // rad/s
+    public static final double DEFAULT_GYROSCOPE_BIAS = 0.01; // rad/s
+
+    private static final double GRAVITY = 9.81; // m/s^2
+    private static final long NANOS_PER_MS = 1000000L;
+    private static final double MAX_TURN_RATE = 1.5; // rad/s
+    private static final double TURN_GAIN = 4; // 1/s, how quickly the walker steers toward a waypoint
+    private static final double WAYPOINT_RADIUS_M = 0.5;
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private final Random mRandom;
+    private long mSampleInterval_ns = DEFAULT_SAMPLE_INTERVAL_MS * NANOS_PER_MS;
+    private long mDuration_ns = Long.MAX_VALUE;
+    private double mStepLength = DEFAULT_STEP_LENGTH_M;
+    private double mStepFrequency = DEFAULT_STEP_FREQUENCY_HZ;
+    private double mStepAcceleration = DEFAULT_STEP_ACCELERATION;
+    private double mTilt = DEFAULT_TILT;
+    private double mAccelerometerNoise = DEFAULT_ACCELEROMETER_NOISE;
+    private double mGyroscopeNoise = DEFAULT_GYROSCOPE_NOISE;
+    private double mGyroscopeBias = DEFAULT_GYROSCOPE_BIAS;
+
+    /** Waypoints **/
+    private int mWaypointCount = 0;
+    private double[] mWaypointX = new double[DEFAULT_CAPACITY];
+    private double[] mWaypointY = new double[DEFAULT_CAPACITY];
+
+    /** Walker **/
+    private boolean mIsStarted = false;
+    private int mNextWaypoint;
+    private double mX;
+    private double mY;
+    private double mHeading; // radians counterclockwise from the x axis
+    private double mTurnRate;
+    private double mStepPhase; // steps taken, the fraction is the part of the current step
+
+    /** Current sample **/
+    private long mTick = -1;
+    private int mSensor = MotionSensor.SENSOR_GYROSCOPE;
+    private float mSampleX;
+    private float mSampleY;
+    private float mSampleZ;
+
+    /**
+     * Create a SyntheticMotionTrace
+     *
+     * @param seed random seed.  The same seed replays the same trace
+     */
+    public SyntheticMotionTrace(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Set how the walker walks
+     *
+     * @param stepLength_m length of each step in meters
+     * @param stepFrequency_hz steps per second
+     * @param stepAcceleration amplitude of the vertical acceleration of each step, in m/s^2
+     */
+    public void setGait(double stepLength_m, double stepFrequency_hz, double stepAcceleration) {
+        mStepLength = stepLength_m;
+        mStepFrequency = stepFrequency_hz;
+        mStepAcceleration = stepAcceleration;
+    }
+
+    /**
+     * Set the quality of the sensors
+     *
+     * @param accelerometerNoise standard deviation of each acceleration axis, in m/s^2
+     * @param gyroscopeNoise standard deviation of each rotation rate axis, in rad/s
+     * @param gyroscopeBias constant error of the rotation rate about the device z axis, in rad/s
+     */
+    public void setSensorNoise(double accelerometerNoise, double gyroscopeNoise, double gyroscopeBias) {
+        mAccelerometerNoise = accelerometerNoise;
+        mGyroscopeNoise = gyroscopeNoise;
+        mGyroscopeBias = gyroscopeBias;
+    }
+
+    /**
+     * Set how far the phone is pitched up from lying flat
+     *
+     * @param tilt angle in radians
+     */
+    public void setTilt(double tilt) {
+        mTilt = tilt;
+    }
+
+    /**
+     * Set the sample rate of both sensors
+     *
+     * @param sampleInterval_ms time between samples in milliseconds
+     */
+    public void setSampleInterval(long sampleInterval_ms) {
+        mSampleInterval_ns = Math.max(1, sampleInterval_ms) * NANOS_PER_MS;
+    }
+
+    /**
+     * End the trace after a length of time
+     *
+     * @param duration_ms length of the trace in milliseconds
+     */
+    public void setDuration(long duration_ms) {
+        mDuration_ns = duration_ms * NANOS_PER_MS;
+    }
+
+    /**
+     * Add a waypoint.  The walker starts at the first one, and returns to it after the last.
+     * Waypoints can only be added before the trace is read
+     *
+     * @param x x location in meters
+     * @param y y location in meters
+     */
+    public void addWaypoint(double x, double y) {
+        if (mIsStarted) {
+            throw new IllegalStateException("Waypoints must be added before the trace is read");
+        }
+        if (mWaypointCount == mWaypointX.length) {
+            mWaypointX = Arrays.copyOf(mWaypointX, mWaypointCount * 2);
+            mWaypointY = Arrays.copyOf(mWaypointY, mWaypointCount * 2);
+        }
+        mWaypointX[mWaypointCount] = x;
+        mWaypointY[mWaypointCount] = y;
+        mWaypointCount++;
+    }
+
+    /**
+     * @return the true x location of the walker at the current sample, in meters
+     */
+    public double getTrueX() { return mX; }
+
+    /**
+     * @return the true y location of the walker at the current sample, in meters
+     */
+    public double getTrueY() { return mY; }
+
+    /**
+     * @return the true heading of the walker, in radians counterclockwise from the x axis
+     */
+    public double getTrueHeading() { return mHeading; }
+
+    /**
+     * @return how many steps the walker has taken
+     */
+    public int getStepCount() { return (int) mStepPhase; }
+
+    @Override
+    public boolean next() {
+        if (!mIsStarted) {
+            start();
+        }
+        if (mSensor == MotionSensor.SENSOR_ACCELEROMETER) {
+            // the gyroscope is sampled at the same instant
+            mSensor = MotionSensor.SENSOR_GYROSCOPE;
+            setSample(0, mTurnRate * Math.sin(mTilt), mTurnRate * Math.cos(mTilt) + mGyroscopeBias, mGyroscopeNoise);
+            return true;
+        }
+        if ((mTick + 1) * mSampleInterval_ns >= mDuration_ns) {
+            return false;
+        }
+        mTick++;
+        if (mTick > 0) {
+            walk(mSampleInterval_ns / 1e9);
+        }
+        mSensor = MotionSensor.SENSOR_ACCELEROMETER;
+        double up = GRAVITY + mStepAcceleration * Math.sin(2 * Math.PI * mStepPhase);
+        setSample(0, up * Math.sin(mTilt), up * Math.cos(mTilt), mAccelerometerNoise);
+        return true;
+    }
+
+    @Override
+    public int getSensor() { return mSensor; }
+
+    @Override
+    public long getTimestampNanos() { return mTick * mSampleInterval_ns; }
+
+    @Override
+    public float getX() { return mSampleX; }
+
+    @Override
+    public float getY() { return mSampleY; }
+
+    @Override
+    public float getZ() { return mSampleZ; }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * The walker starts on the first waypoint, facing the second
+     */
+    private void start() {
+        mIsStarted = true;
+        if (mWaypointCount == 0) {
+            addWaypointUnchecked(0, 0);
+        }
+        mX = mWaypointX[0];
+        mY = mWaypointY[0];
+        mNextWaypoint = 1 % mWaypointCount;
+        mHeading = mWaypointCount > 1 ? Math.atan2(mWaypointY[1] - mY, mWaypointX[1] - mX) : 0;
+    }
+
+    private void addWaypointUnchecked(double x, double y) {
+        mWaypointX[mWaypointCount] = x;
+        mWaypointY[mWaypointCount] = y;
+        mWaypointCount++;
+    }
+
+    /**
+     * Steer toward the next waypoint and move forward
+     */
+    private void walk(double dt) {
+        double speed = mStepLength * mStepFrequency;
+        if (mWaypointCount > 1) {
+            double dx = mWaypointX[mNextWaypoint] - mX;
+            double dy = mWaypointY[mNextWaypoint] - mY;
+            if (dx * dx + dy * dy < WAYPOINT_RADIUS_M * WAYPOINT_RADIUS_M) {
+                mNextWaypoint = (mNextWaypoint + 1) % mWaypointCount;
+                dx = mWaypointX[mNextWaypoint] - mX;
+                dy = mWaypointY[mNextWaypoint] - mY;
+            }
+            double turn = Math.atan2(dy, dx) - mHeading;
+            turn = Math.atan2(Math.sin(turn), Math.cos(turn));
+            mTurnRate = Math.max(-MAX_TURN_RATE, Math.min(MAX_TURN_RATE, TURN_GAIN * turn));
+        } else {
+            mTurnRate = 0;
+        }
+        mHeading += mTurnRate * dt;
+        mHeading = Math.atan2(Math.sin(mHeading), Math.cos(mHeading));
+        mX += speed * Math.cos(mHeading) * dt;
+        mY += speed * Math.sin(mHeading) * dt;
+        mStepPhase += mStepFrequency * dt;
+    }
+
+    private void setSample(double x, double y, double z, double noise) {
+        mSampleX = (float) (x + noise * mRandom.nextGaussian());
+        mSampleY = (float) (y + noise * mRandom.nextGaussian());
+        mSampleZ = (float) (z + noise * mRandom.nextGaussian());
+    }
+}
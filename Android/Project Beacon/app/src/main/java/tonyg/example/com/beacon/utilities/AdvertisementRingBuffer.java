@@ -0,0 +1,165 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free queue of advertisements from one producer thread to one consumer thread.
+ *
+ * Every slot is preallocated, including a copy of the scan record, so neither side allocates
+ * or blocks.  When the queue is full, new advertisements are dropped and counted rather than
+ * holding up the radio.
+ *
+ * The consumer reads the fields of the current advertisement in place, like an
+ * AdvertisementTrace.  The slot is handed back to the producer on the next poll().
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class AdvertisementRingBuffer {
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int DEFAULT_MAX_SCAN_RECORD_LENGTH = 62; // advertisement and scan response
+
+    private final int mCapacity;
+    private final int mMask;
+    private final int mMaxScanRecordLength;
+
+    /** Slots **/
+    private final long[] mMacAddress;
+    private final int[] mRssi;
+    private final long[] mTimestamp_ns;
+    private final byte[][] mScanRecord;
+    private final int[] mScanRecordLength; // -1 if the advertisement had no scan record
+
+    private final AtomicLong mHead = new AtomicLong(); // next slot to write
+    private final AtomicLong mTail = new AtomicLong(); // next slot to free
+    private volatile long mDroppedCount = 0; // only written by the producer
+
+    /** Producer state **/
+    private long mCachedTail = 0;
+
+    /** Consumer state **/
+    private long mCachedHead = 0;
+    private long mReadPosition = 0;
+    private boolean mIsHoldingSlot = false;
+    private int mSlot;
+
+    /**
+     * Create an AdvertisementRingBuffer
+     *
+     * @param capacity how many advertisements can wait.  Rounded up to a power of two
+     * @param maxScanRecordLength longer scan records are truncated
+     */
+    public AdvertisementRingBuffer(int capacity, int maxScanRecordLength) {
+        int roundedCapacity = Integer.highestOneBit(Math.max(1, capacity));
+        if (roundedCapacity < capacity) {
+            roundedCapacity <<= 1;
+        }
+        mCapacity = roundedCapacity;
+        mMask = roundedCapacity - 1;
+        mMaxScanRecordLength = maxScanRecordLength;
+        mMacAddress = new long[roundedCapacity];
+        mRssi = new int[roundedCapacity];
+        mTimestamp_ns = new long[roundedCapacity];
+        mScanRecord = new byte[roundedCapacity][maxScanRecordLength];
+        mScanRecordLength = new int[roundedCapacity];
+    }
+
+    /**
+     * Create an AdvertisementRingBuffer with DEFAULT_CAPACITY and DEFAULT_MAX_SCAN_RECORD_LENGTH
+     */
+    public AdvertisementRingBuffer() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_SCAN_RECORD_LENGTH);
+    }
+
+    public int getCapacity() { return mCapacity; }
+
+    /**
+     * @return how many advertisements were dropped because the queue was full
+     */
+    public long getDroppedCount() { return mDroppedCount; }
+
+    /**
+     * @return roughly how many advertisements are waiting
+     */
+    public int size() {
+        return (int) (mHead.get() - mTail.get());
+    }
+
+    /**
+     * Add an advertisement.  Only call from the producer thread
+     *
+     * @param macAddress the packed MAC address of the Peripheral
+     * @param rssi the RSSI of the advertisement
+     * @param scanRecord the raw advertisement data, or <b>null</b>.  Copied
+     * @param timestamp_ns when the advertisement was received, in nanoseconds
+     * @return <b>false</b> if the queue was full and the advertisement was dropped
+     */
+    public boolean offer(long macAddress, int rssi, byte[] scanRecord, long timestamp_ns) {
+        long head = mHead.get();
+        if (head - mCachedTail >= mCapacity) {
+            mCachedTail = mTail.get();
+            if (head - mCachedTail >= mCapacity) {
+                mDroppedCount++;
+                return false;
+            }
+        }
+
+        int slot = (int) head & mMask;
+        mMacAddress[slot] = macAddress;
+        mRssi[slot] = rssi;
+        mTimestamp_ns[slot] = timestamp_ns;
+
+        // zero whatever is left of a longer earlier record, so it ends the AD structures
+        byte[] slotRecord = mScanRecord[slot];
+        int previousLength = Math.max(0, mScanRecordLength[slot]);
+        int length = -1;
+        if (scanRecord != null) {
+            length = Math.min(scanRecord.length, mMaxScanRecordLength);
+            System.arraycopy(scanRecord, 0, slotRecord, 0, length);
+        }
+        for (int index = Math.max(0, length); index < previousLength; index++) {
+            slotRecord[index] = 0;
+        }
+        mScanRecordLength[slot] = length;
+
+        // publish the slot after its contents
+        mHead.lazySet(head + 1);
+        return true;
+    }
+
+    /**
+     * Move to the next advertisement, freeing the current one.  Only call from the consumer thread
+     *
+     * @return <b>false</b> if the queue is empty
+     */
+    public boolean poll() {
+        if (mIsHoldingSlot) {
+            mReadPosition++;
+            mTail.lazySet(mReadPosition);
+            mIsHoldingSlot = false;
+        }
+        if (mReadPosition >= mCachedHead) {
+            mCachedHead = mHead.get();
+            if (mReadPosition >= mCachedHead) {
+                return false;
+            }
+        }
+        mSlot = (int) mReadPosition & mMask;
+        mIsHoldingSlot = true;
+        return true;
+    }
+
+    public long getMacAddress() { return mMacAddress[mSlot]; }
+
+    public int getRssi() { return mRssi[mSlot]; }
+
+    public long getTimestampNanos() { return mTimestamp_ns[mSlot]; }
+
+    /**
+     * @return the scan record of the current advertisement, zero padded, or <b>null</b>.
+     * Only valid until the next poll()
+     */
+    public byte[] getScanRecord() {
+        return mScanRecordLength[mSlot] < 0 ? null : mScanRecord[mSlot];
+    }
+}
@@ -0,0 +1,296 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.util.Arrays;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+
+/**
+ * Narrows the Beacons selected in a BeaconTable to the set with the best geometry.
+ *
+ * How well ranges pin down a position depends on the directions the Beacons lie in as seen
+ * from the Central.  Beacons spread around the Central give a sharp fix.  Beacons that all lie
+ * in one direction, or along a line through the Central, give a fix that can slide along that
+ * direction.  This is measured by the geometric dilution of precision (GDOP), computed from the
+ * unit vectors towards each Beacon:
+ *
+ *   GDOP = sqrt(trace((H^T H)^-1))
+ *
+ * The selector picks the anchorCount Beacons with the smallest weighted GDOP, where each
+ * Beacon's unit vector is scaled by the weight of its range.  It seeds the search with the
+ * best triple, adds Beacons greedily and then swaps Beacons in and out while that improves the
+ * geometry.  The search stops after a fixed number of candidate sets and keeps the best set
+ * found so far, so the same Beacons give the same anchors on any device, however fast.  If
+ * even the best set is too close to degenerate, the solve is skipped altogether.
+ *
+ * Scratch space is kept between calls, so nothing is allocated once it has grown.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class AnchorSelector {
+    public static final double DEFAULT_MAX_GDOP = 10; // looser geometry than this is not worth solving
+    public static final int DEFAULT_MAX_EVALUATIONS = 2048; // every triple of 23 candidates, then swaps.  Tens of microseconds
+
+    private static final double MIN_RANGE = 1e-6; // a Beacon on top of the point gives no direction
+    private static final double SINGULAR_THRESHOLD = 1e-12;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final double mMaxGdop;
+    private final int mMaxEvaluations;
+    private double mGdop = Double.POSITIVE_INFINITY;
+    private int mEvaluationCount = 0;
+
+    /** Candidates: unit vector terms of H^T W H **/
+    private int mCandidateCount = 0;
+    private int[] mRow;
+    private double[] mXx;
+    private double[] mXy;
+    private double[] mYy;
+    private boolean[] mIsChosen;
+
+    /**
+     * Create an AnchorSelector with DEFAULT_MAX_GDOP and DEFAULT_MAX_EVALUATIONS
+     */
+    public AnchorSelector() {
+        this(DEFAULT_MAX_GDOP, DEFAULT_MAX_EVALUATIONS);
+    }
+
+    /**
+     * Create an AnchorSelector
+     *
+     * @param maxGdop sets with a larger GDOP are rejected
+     * @param maxEvaluations how many sets of Beacons one selection may compare before it stops
+     *                       searching.  Adding Beacons up to anchorCount always finishes
+     */
+    public AnchorSelector(double maxGdop, int maxEvaluations) {
+        mMaxGdop = maxGdop;
+        mMaxEvaluations = maxEvaluations;
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return the unweighted GDOP of the last selection, or infinity if it was degenerate
+     */
+    public double getGdop() { return mGdop; }
+
+    /**
+     * @return how many sets of Beacons the last selection compared
+     */
+    public int getEvaluationCount() { return mEvaluationCount; }
+
+    /**
+     * Narrow the selection of a BeaconTable, seen from its weighted centroid.  Use this when
+     * the Central has not been located yet
+     *
+     * @param beaconTable the Beacons, with a selection of candidates
+     * @param anchorCount how many Beacons to keep
+     * @return LeastSquaresLocator.STATUS_OK, or a status to return without solving
+     */
+    public int select(BeaconTable beaconTable, int anchorCount) {
+        int count = beaconTable.getSelectedCount();
+        double[] x = beaconTable.getSelectedX();
+        double[] y = beaconTable.getSelectedY();
+        double[] weight = beaconTable.getSelectedWeight();
+        double sumX = 0, sumY = 0, sumWeights = 0;
+        for (int index = 0; index < count; index++) {
+            sumX += weight[index] * x[index];
+            sumY += weight[index] * y[index];
+            sumWeights += weight[index];
+        }
+        if (sumWeights <= 0) {
+            mGdop = Double.POSITIVE_INFINITY;
+            return LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS;
+        }
+        return select(beaconTable, sumX / sumWeights, sumY / sumWeights, anchorCount);
+    }
+
+    /**
+     * Narrow the selection of a BeaconTable to the Beacons with the best geometry around a point
+     *
+     * @param beaconTable the Beacons, with a selection of candidates
+     * @param x the x location of the Central, in meters
+     * @param y the y location of the Central, in meters
+     * @param anchorCount how many Beacons to keep
+     * @return LeastSquaresLocator.STATUS_OK, or a status to return without solving
+     */
+    public int select(BeaconTable beaconTable, double x, double y, int anchorCount) {
+        mGdop = Double.POSITIVE_INFINITY;
+        mEvaluationCount = 0;
+        int count = beaconTable.getSelectedCount();
+        if (count < LeastSquaresLocator.MIN_BEACONS || anchorCount < LeastSquaresLocator.MIN_BEACONS) {
+            return LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS;
+        }
+        loadCandidates(beaconTable, x, y);
+
+        if (anchorCount >= count) {
+            // more Beacons never make the geometry worse, so keep them all
+            Arrays.fill(mIsChosen, 0, count, true);
+        } else {
+            chooseAnchors(anchorCount);
+            beaconTable.clearSelection();
+            for (int index = 0; index < count; index++) {
+                if (mIsChosen[index]) {
+                    beaconTable.select(mRow[index]);
+                }
+            }
+        }
+
+        mGdop = getChosenGdop(beaconTable, x, y);
+        if (!(mGdop <= mMaxGdop)) {
+            return LeastSquaresLocator.STATUS_DEGENERATE;
+        }
+        return LeastSquaresLocator.STATUS_OK;
+    }
+
+    /**
+     * Work out each candidate's contribution to H^T W H
+     */
+    private void loadCandidates(BeaconTable beaconTable, double x, double y) {
+        int count = beaconTable.getSelectedCount();
+        if (count > mRow.length) {
+            allocate(count);
+        }
+        int[] rows = beaconTable.getSelectedRows();
+        double[] beaconX = beaconTable.getSelectedX();
+        double[] beaconY = beaconTable.getSelectedY();
+        double[] weight = beaconTable.getSelectedWeight();
+        for (int index = 0; index < count; index++) {
+            double dx = beaconX[index] - x;
+            double dy = beaconY[index] - y;
+            double rangeSquared = dx * dx + dy * dy;
+            double scale = rangeSquared < MIN_RANGE * MIN_RANGE ? 0 : weight[index] / rangeSquared;
+            mRow[index] = rows[index];
+            mXx[index] = scale * dx * dx;
+            mXy[index] = scale * dx * dy;
+            mYy[index] = scale * dy * dy;
+            mIsChosen[index] = false;
+        }
+        mCandidateCount = count;
+    }
+
+    private void chooseAnchors(int anchorCount) {
+        int count = mCandidateCount;
+        int evaluations = 0;
+
+        // seed with the best triple
+        double bestCost = Double.POSITIVE_INFINITY;
+        int bestFirst = 0, bestSecond = 1, bestThird = 2;
+        search:
+        for (int first = 0; first < count - 2; first++) {
+            for (int second = first + 1; second < count - 1; second++) {
+                double xx = mXx[first] + mXx[second];
+                double xy = mXy[first] + mXy[second];
+                double yy = mYy[first] + mYy[second];
+                for (int third = second + 1; third < count; third++) {
+                    evaluations++;
+                    double cost = getCost(xx + mXx[third], xy + mXy[third], yy + mYy[third]);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestFirst = first;
+                        bestSecond = second;
+                        bestThird = third;
+                    }
+                }
+                if (evaluations >= mMaxEvaluations) {
+                    break search;
+                }
+            }
+        }
+        mIsChosen[bestFirst] = true;
+        mIsChosen[bestSecond] = true;
+        mIsChosen[bestThird] = true;
+        double xx = mXx[bestFirst] + mXx[bestSecond] + mXx[bestThird];
+        double xy = mXy[bestFirst] + mXy[bestSecond] + mXy[bestThird];
+        double yy = mYy[bestFirst] + mYy[bestSecond] + mYy[bestThird];
+
+        // add whichever Beacon helps most, until there are enough.  This always finishes,
+        // whatever the budget, so the selection has anchorCount Beacons
+        for (int chosenCount = 3; chosenCount < anchorCount; chosenCount++) {
+            int best = -1;
+            bestCost = Double.POSITIVE_INFINITY;
+            for (int index = 0; index < count; index++) {
+                if (mIsChosen[index]) continue;
+                evaluations++;
+                double cost = getCost(xx + mXx[index], xy + mXy[index], yy + mYy[index]);
+                if (best < 0 || cost < bestCost) {
+                    best = index;
+                    bestCost = cost;
+                }
+            }
+            mIsChosen[best] = true;
+            xx += mXx[best];
+            xy += mXy[best];
+            yy += mYy[best];
+        }
+
+        // swap Beacons in and out while that improves the geometry
+        double cost = getCost(xx, xy, yy);
+        boolean isImproved = true;
+        while (isImproved && evaluations < mMaxEvaluations) {
+            isImproved = false;
+            for (int out = 0; out < count && evaluations < mMaxEvaluations; out++) {
+                if (!mIsChosen[out]) continue;
+                double withoutXx = xx - mXx[out];
+                double withoutXy = xy - mXy[out];
+                double withoutYy = yy - mYy[out];
+                for (int in = 0; in < count; in++) {
+                    if (mIsChosen[in]) continue;
+                    evaluations++;
+                    double swappedCost = getCost(withoutXx + mXx[in], withoutXy + mXy[in], withoutYy + mYy[in]);
+                    if (swappedCost < cost) {
+                        mIsChosen[out] = false;
+                        mIsChosen[in] = true;
+                        xx = withoutXx + mXx[in];
+                        xy = withoutXy + mXy[in];
+                        yy = withoutYy + mYy[in];
+                        cost = swappedCost;
+                        isImproved = true;
+                        break;
+                    }
+                }
+            }
+        }
+        mEvaluationCount = evaluations;
+    }
+
+    /**
+     * Compute the unweighted GDOP of the chosen Beacons, which is independent of how the
+     * weights are scaled
+     */
+    private double getChosenGdop(BeaconTable beaconTable, double x, double y) {
+        double[] beaconX = beaconTable.getSelectedX();
+        double[] beaconY = beaconTable.getSelectedY();
+        int count = beaconTable.getSelectedCount();
+        double xx = 0, xy = 0, yy = 0;
+        for (int index = 0; index < count; index++) {
+            double dx = beaconX[index] - x;
+            double dy = beaconY[index] - y;
+            double rangeSquared = dx * dx + dy * dy;
+            if (rangeSquared < MIN_RANGE * MIN_RANGE) continue;
+            xx += dx * dx / rangeSquared;
+            xy += dx * dy / rangeSquared;
+            yy += dy * dy / rangeSquared;
+        }
+        return Math.sqrt(getCost(xx, xy, yy));
+    }
+
+    /**
+     * trace((H^T W H)^-1) of a 2x2 information matrix, or infinity if it is singular
+     */
+    private static double getCost(double xx, double xy, double yy) {
+        double trace = xx + yy;
+        double determinant = xx * yy - xy * xy;
+        if (determinant <= SINGULAR_THRESHOLD * trace * trace) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return trace / determinant;
+    }
+
+    private void allocate(int capacity) {
+        mRow = new int[capacity];
+        mXx = new double[capacity];
+        mXy = new double[capacity];
+        mYy = new double[capacity];
+        mIsChosen = new boolean[capacity];
+    }
+}
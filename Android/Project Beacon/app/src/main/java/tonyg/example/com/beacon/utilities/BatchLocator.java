@@ -0,0 +1,281 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+import tonyg.example.com.beacon.ble.BleBeacon;
+
+/**
+ * Locates the Central in every time window of a recorded scan, on all cores.
+ *
+ * Observations are passed as parallel arrays sorted by time: when each advertisement was
+ * received, from which Beacon, and how strong.  The recording is cut into fixed windows.  In
+ * each window the RSSI of every Beacon is averaged, turned into a distance, and solved with
+ * LeastSquaresLocator.  Windows do not depend on each other, so they are shared out in chunks
+ * between a pool of threads, each with its own scratch space, and the work scales with the
+ * number of cores.
+ *
+ * A window that can not be solved gets a LeastSquaresLocator status code instead of a
+ * position; nothing is thrown for it.
+ *
+ * The BeaconTable supplies the location and reference RSSI of each Beacon.  It is only read,
+ * and must not change while a batch runs.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class BatchLocator {
+    public static final long DEFAULT_WINDOW_NS = 1000000000L; // one second
+    public static final int STATUS_NO_OBSERVATIONS = 3; // nothing was heard in the window
+
+    private static final int CHUNKS_PER_THREAD = 8; // small enough chunks that no thread is left working alone
+    private static final double MIN_RSSI_VARIANCE = 1; // dBm^2, a Beacon heard once still has some noise
+    private static final double DEFAULT_RSSI_VARIANCE = RssiFilter.DEFAULT_MEASUREMENT_NOISE;
+
+    /**
+     * The fix for each window, in parallel arrays
+     */
+    public static class Fixes {
+        private int mCount = 0;
+        private long[] mWindowStart_ns = new long[0];
+        private int[] mStatus = new int[0];
+        private int[] mBeaconCount = new int[0];
+        private double[] mResult = new double[0]; // LeastSquaresLocator.RESULT_LENGTH per window
+
+        public int size() { return mCount; }
+
+        public long getWindowStartNanos(int window) { return mWindowStart_ns[window]; }
+
+        /**
+         * @param window the window number
+         * @return a LeastSquaresLocator status code, or STATUS_NO_OBSERVATIONS
+         */
+        public int getStatus(int window) { return mStatus[window]; }
+
+        /**
+         * @param window the window number
+         * @return how many located Beacons were heard in the window
+         */
+        public int getBeaconCount(int window) { return mBeaconCount[window]; }
+
+        /**
+         * Get part of the solver output of a window.  Only valid if its status is STATUS_OK
+         *
+         * @param window the window number
+         * @param index one of the LeastSquaresLocator.RESULT_ indices
+         * @return the value
+         */
+        public double getResult(int window, int index) { return mResult[window * LeastSquaresLocator.RESULT_LENGTH + index]; }
+
+        public double getXLocation(int window) { return getResult(window, LeastSquaresLocator.RESULT_X); }
+
+        public double getYLocation(int window) { return getResult(window, LeastSquaresLocator.RESULT_Y); }
+
+        private void setSize(int count) {
+            if (count > mStatus.length) {
+                mWindowStart_ns = new long[count];
+                mStatus = new int[count];
+                mBeaconCount = new int[count];
+                mResult = new double[count * LeastSquaresLocator.RESULT_LENGTH];
+            }
+            mCount = count;
+        }
+    }
+
+    private final ExecutorService mExecutor;
+    private final int mThreadCount;
+
+    /**
+     * Create a BatchLocator with one thread per core
+     */
+    public BatchLocator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a BatchLocator
+     *
+     * @param threadCount how many windows to solve at once
+     */
+    public BatchLocator(int threadCount) {
+        mThreadCount = Math.max(1, threadCount);
+        mExecutor = Executors.newFixedThreadPool(mThreadCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "BatchLocator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Stop the threads.  The BatchLocator can not be used afterwards
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Locate the Central in every window of a recording
+     *
+     * @param beaconTable the location and reference RSSI of each Beacon
+     * @param propagationConstant the radio propagation constant n
+     * @param timestamp_ns when each advertisement was received, in nanoseconds, in ascending order
+     * @param macAddress the packed MAC address each advertisement came from
+     * @param rssi the RSSI of each advertisement
+     * @param count number of advertisements to use from the start of each array
+     * @param window_ns how long each window is, in nanoseconds
+     * @param fixes receives one fix per window, from the window of the first advertisement
+     *              to the window of the last
+     * @throws InterruptedException if the thread was interrupted while waiting for the batch
+     */
+    public void locate(
+            final BeaconTable beaconTable,
+            final double propagationConstant,
+            final long[] timestamp_ns,
+            final long[] macAddress,
+            final int[] rssi,
+            int count,
+            final long window_ns,
+            final Fixes fixes
+    ) throws InterruptedException {
+        if (count == 0) {
+            fixes.setSize(0);
+            return;
+        }
+        final long start_ns = timestamp_ns[0];
+        long duration_ns = timestamp_ns[count - 1] - start_ns;
+        if (duration_ns < 0) {
+            throw new IllegalArgumentException("Observations must be sorted by time");
+        }
+        int windowCount = (int) (duration_ns / window_ns) + 1;
+        fixes.setSize(windowCount);
+
+        // where each window starts in the observations
+        final int[] windowOffset = new int[windowCount + 1];
+        int window = 0;
+        for (int index = 0; index < count; index++) {
+            int observationWindow = (int) ((timestamp_ns[index] - start_ns) / window_ns);
+            if (observationWindow < window) {
+                throw new IllegalArgumentException("Observations must be sorted by time");
+            }
+            while (window < observationWindow) {
+                windowOffset[++window] = index;
+            }
+        }
+        while (window < windowCount) {
+            windowOffset[++window] = count;
+        }
+
+        // share the windows out in chunks
+        int chunkCount = Math.min(windowCount, mThreadCount * CHUNKS_PER_THREAD);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunkCount);
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            final int firstWindow = (int) ((long) windowCount * chunk / chunkCount);
+            final int lastWindow = (int) ((long) windowCount * (chunk + 1) / chunkCount);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    WindowSolver solver = new WindowSolver(beaconTable.size());
+                    for (int window = firstWindow; window < lastWindow; window++) {
+                        fixes.mWindowStart_ns[window] = start_ns + window * window_ns;
+                        solver.solve(beaconTable, propagationConstant, macAddress, rssi,
+                                windowOffset[window], windowOffset[window + 1], fixes, window);
+                    }
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> future : mExecutor.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Batch positioning failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Scratch space for solving windows on one thread
+     */
+    private static class WindowSolver {
+        private final int[] mSampleCount; // per Beacon row
+        private final double[] mRssiSum;
+        private final double[] mRssiSquareSum;
+        private final int[] mHeardRows;
+        private final double[] mX;
+        private final double[] mY;
+        private final double[] mDistance;
+        private final double[] mWeight;
+        private final double[] mResult = new double[LeastSquaresLocator.RESULT_LENGTH];
+
+        WindowSolver(int beaconCount) {
+            mSampleCount = new int[beaconCount];
+            mRssiSum = new double[beaconCount];
+            mRssiSquareSum = new double[beaconCount];
+            mHeardRows = new int[beaconCount];
+            mX = new double[beaconCount];
+            mY = new double[beaconCount];
+            mDistance = new double[beaconCount];
+            mWeight = new double[beaconCount];
+        }
+
+        void solve(BeaconTable beaconTable, double propagationConstant, long[] macAddress, int[] rssi,
+                   int start, int end, Fixes fixes, int window) {
+            // average the RSSI of each located Beacon heard in the window
+            int heardCount = 0;
+            for (int index = start; index < end; index++) {
+                int row = beaconTable.indexOf(macAddress[index]);
+                if (row == BeaconTable.NOT_FOUND || row >= mSampleCount.length || !beaconTable.isLocated(row)) {
+                    continue;
+                }
+                if (mSampleCount[row] == 0) {
+                    mHeardRows[heardCount++] = row;
+                }
+                mSampleCount[row]++;
+                mRssiSum[row] += rssi[index];
+                mRssiSquareSum[row] += (double) rssi[index] * rssi[index];
+            }
+
+            for (int index = 0; index < heardCount; index++) {
+                int row = mHeardRows[index];
+                int samples = mSampleCount[row];
+                double meanRssi = mRssiSum[row] / samples;
+                double rssiVariance = samples > 1
+                        ? Math.max(MIN_RSSI_VARIANCE, (mRssiSquareSum[row] - samples * meanRssi * meanRssi) / (samples - 1))
+                        : DEFAULT_RSSI_VARIANCE;
+                double distance = BleBeacon.getDistanceFromRSSI(beaconTable.getReferenceRssi(row), propagationConstant, meanRssi);
+                mX[index] = beaconTable.getXLocation(row);
+                mY[index] = beaconTable.getYLocation(row);
+                mDistance[index] = distance;
+                // the mean of several samples is steadier than one
+                mWeight[index] = 1 / RssiFilter.getDistanceVariance(distance, propagationConstant, rssiVariance / samples);
+
+                mSampleCount[row] = 0;
+                mRssiSum[row] = 0;
+                mRssiSquareSum[row] = 0;
+            }
+
+            int status = heardCount == 0
+                    ? STATUS_NO_OBSERVATIONS
+                    : LeastSquaresLocator.solve(mX, mY, mDistance, mWeight, heardCount, mResult);
+            fixes.mStatus[window] = status;
+            fixes.mBeaconCount[window] = heardCount;
+            int offset = window * LeastSquaresLocator.RESULT_LENGTH;
+            if (status == LeastSquaresLocator.STATUS_OK) {
+                System.arraycopy(mResult, 0, fixes.mResult, offset, LeastSquaresLocator.RESULT_LENGTH);
+            } else {
+                Arrays.fill(fixes.mResult, offset, offset + LeastSquaresLocator.RESULT_LENGTH, Double.NaN);
+            }
+        }
+    }
+}
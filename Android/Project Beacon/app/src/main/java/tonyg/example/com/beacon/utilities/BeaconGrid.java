@@ -0,0 +1,290 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.util.Arrays;
+
+/**
+ * A spatial index over Beacon locations, for finding the Beacons nearest a point.
+ *
+ * The floor is divided into square cells.  Each occupied cell is found through a LongIntMap
+ * and holds a linked list of the Beacon rows inside it, so adding, moving and removing a
+ * Beacon are constant time.  findNearest() searches rings of cells outwards from the point
+ * and stops as soon as no unvisited cell can hold a nearer Beacon.  How long a search takes
+ * depends on how many Beacons are near the point, not on how many Beacons the venue has.
+ *
+ * Nothing is allocated once the index has grown to hold every row.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class BeaconGrid {
+    public static final double DEFAULT_CELL_SIZE_M = 8; // a few Beacons per cell in a typical venue
+
+    private static final int NONE = LongIntMap.NOT_FOUND; // end of a cell list
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final double mCellSize_m;
+    private final LongIntMap mCells = new LongIntMap(); // cell key -> first row in the cell
+    private int mSize = 0;
+
+    /** Rows **/
+    private boolean[] mIsIndexed;
+    private long[] mCellKey;
+    private int[] mNext;
+    private int[] mPrevious;
+    private double[] mX;
+    private double[] mY;
+
+    /** Bounds of every cell that has held a Beacon since the last clear() **/
+    private int mMinColumn;
+    private int mMaxColumn;
+    private int mMinRow;
+    private int mMaxRow;
+
+    /** Results of the last search, nearest first **/
+    private int mNearestCount = 0;
+    private int[] mNearestRow = new int[0];
+    private double[] mNearestDistanceSquared = new double[0];
+
+    /**
+     * Create a BeaconGrid with DEFAULT_CELL_SIZE_M cells
+     */
+    public BeaconGrid() {
+        this(DEFAULT_CELL_SIZE_M);
+    }
+
+    /**
+     * Create a BeaconGrid
+     *
+     * @param cellSize_m the width of each cell, in meters
+     */
+    public BeaconGrid(double cellSize_m) {
+        mCellSize_m = cellSize_m;
+        allocate(DEFAULT_CAPACITY);
+        clear();
+    }
+
+    /**
+     * Number of Beacons in the index
+     *
+     * @return the size
+     */
+    public int size() { return mSize; }
+
+    /**
+     * @param row the Beacon row
+     * @return <b>true</b> if the Beacon is in the index
+     */
+    public boolean contains(int row) {
+        return row < mIsIndexed.length && mIsIndexed[row];
+    }
+
+    /**
+     * Add a Beacon, or move it if it is already in the index
+     *
+     * @param row the Beacon row
+     * @param x the x location of the Beacon, in meters
+     * @param y the y location of the Beacon, in meters
+     */
+    public void put(int row, double x, double y) {
+        if (row >= mIsIndexed.length) {
+            grow(Math.max(row + 1, mIsIndexed.length * 2));
+        }
+        int column = getColumn(x);
+        int cellRow = getColumn(y);
+        long cellKey = getCellKey(column, cellRow);
+        if (mIsIndexed[row]) {
+            if (mCellKey[row] == cellKey) {
+                mX[row] = x;
+                mY[row] = y;
+                return;
+            }
+            unlink(row);
+        } else {
+            mIsIndexed[row] = true;
+            mSize++;
+        }
+
+        mX[row] = x;
+        mY[row] = y;
+        mCellKey[row] = cellKey;
+        int head = mCells.get(cellKey);
+        mPrevious[row] = NONE;
+        mNext[row] = head;
+        if (head != NONE) {
+            mPrevious[head] = row;
+        }
+        mCells.put(cellKey, row);
+
+        mMinColumn = Math.min(mMinColumn, column);
+        mMaxColumn = Math.max(mMaxColumn, column);
+        mMinRow = Math.min(mMinRow, cellRow);
+        mMaxRow = Math.max(mMaxRow, cellRow);
+    }
+
+    /**
+     * Remove a Beacon from the index
+     *
+     * @param row the Beacon row
+     */
+    public void remove(int row) {
+        if (!contains(row)) {
+            return;
+        }
+        unlink(row);
+        mIsIndexed[row] = false;
+        mSize--;
+    }
+
+    /**
+     * Remove every Beacon, keeping the allocated memory
+     */
+    public void clear() {
+        mCells.clear();
+        Arrays.fill(mIsIndexed, false);
+        mSize = 0;
+        mNearestCount = 0;
+        mMinColumn = Integer.MAX_VALUE;
+        mMaxColumn = Integer.MIN_VALUE;
+        mMinRow = Integer.MAX_VALUE;
+        mMaxRow = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Find the Beacons nearest a point.  Read the results with getNearestRows()
+     *
+     * @param x the x location of the point, in meters
+     * @param y the y location of the point, in meters
+     * @param count how many Beacons to find
+     * @return the number of Beacons found, which is less than count if the index is smaller
+     */
+    public int findNearest(double x, double y, int count) {
+        if (mNearestRow.length < count) {
+            mNearestRow = new int[count];
+            mNearestDistanceSquared = new double[count];
+        }
+        mNearestCount = 0;
+        if (mSize == 0 || count <= 0) {
+            return 0;
+        }
+
+        int column = getColumn(x);
+        int cellRow = getColumn(y);
+        // past this ring, every occupied cell has been visited
+        int lastRing = Math.max(
+                Math.max(column - mMinColumn, mMaxColumn - column),
+                Math.max(cellRow - mMinRow, mMaxRow - cellRow)
+        );
+
+        for (int ring = 0; ring <= lastRing; ring++) {
+            int firstRow = Math.max(cellRow - ring, mMinRow);
+            int lastRow = Math.min(cellRow + ring, mMaxRow);
+            int firstColumn = Math.max(column - ring, mMinColumn);
+            int lastColumn = Math.min(column + ring, mMaxColumn);
+            for (int searchRow = firstRow; searchRow <= lastRow; searchRow++) {
+                if (searchRow == cellRow - ring || searchRow == cellRow + ring) {
+                    // top or bottom edge of the ring
+                    for (int searchColumn = firstColumn; searchColumn <= lastColumn; searchColumn++) {
+                        searchCell(searchColumn, searchRow, x, y, count);
+                    }
+                } else {
+                    // left and right edges
+                    if (column - ring >= mMinColumn) {
+                        searchCell(column - ring, searchRow, x, y, count);
+                    }
+                    if (column + ring <= mMaxColumn) {
+                        searchCell(column + ring, searchRow, x, y, count);
+                    }
+                }
+            }
+
+            // every cell in the next ring is at least this far from the point
+            double ringDistance = ring * mCellSize_m;
+            if (mNearestCount == count && mNearestDistanceSquared[count - 1] <= ringDistance * ringDistance) {
+                break;
+            }
+        }
+        return mNearestCount;
+    }
+
+    /**
+     * @return the rows found by the last findNearest(), nearest first
+     */
+    public int[] getNearestRows() { return mNearestRow; }
+
+    /**
+     * @return the squared distances, in meters^2, from the point to each row found by the last findNearest()
+     */
+    public double[] getNearestDistanceSquared() { return mNearestDistanceSquared; }
+
+    private void searchCell(int column, int cellRow, double x, double y, int count) {
+        int row = mCells.get(getCellKey(column, cellRow));
+        while (row != NONE) {
+            double dx = mX[row] - x;
+            double dy = mY[row] - y;
+            offerNearest(row, dx * dx + dy * dy, count);
+            row = mNext[row];
+        }
+    }
+
+    /**
+     * Insert a row into the sorted results if it is among the nearest so far
+     */
+    private void offerNearest(int row, double distanceSquared, int count) {
+        int index;
+        if (mNearestCount < count) {
+            index = mNearestCount++;
+        } else if (distanceSquared < mNearestDistanceSquared[count - 1]) {
+            index = count - 1;
+        } else {
+            return;
+        }
+        while (index > 0 && mNearestDistanceSquared[index - 1] > distanceSquared) {
+            mNearestRow[index] = mNearestRow[index - 1];
+            mNearestDistanceSquared[index] = mNearestDistanceSquared[index - 1];
+            index--;
+        }
+        mNearestRow[index] = row;
+        mNearestDistanceSquared[index] = distanceSquared;
+    }
+
+    private void unlink(int row) {
+        int previous = mPrevious[row];
+        int next = mNext[row];
+        if (next != NONE) {
+            mPrevious[next] = previous;
+        }
+        if (previous != NONE) {
+            mNext[previous] = next;
+        } else if (next != NONE) {
+            mCells.put(mCellKey[row], next);
+        } else {
+            mCells.remove(mCellKey[row]);
+        }
+    }
+
+    private int getColumn(double position_m) {
+        return (int) Math.floor(position_m / mCellSize_m);
+    }
+
+    private static long getCellKey(int column, int cellRow) {
+        return ((long) column << 32) | (cellRow & 0xffffffffL);
+    }
+
+    private void allocate(int capacity) {
+        mIsIndexed = new boolean[capacity];
+        mCellKey = new long[capacity];
+        mNext = new int[capacity];
+        mPrevious = new int[capacity];
+        mX = new double[capacity];
+        mY = new double[capacity];
+    }
+
+    private void grow(int capacity) {
+        mIsIndexed = Arrays.copyOf(mIsIndexed, capacity);
+        mCellKey = Arrays.copyOf(mCellKey, capacity);
+        mNext = Arrays.copyOf(mNext, capacity);
+        mPrevious = Arrays.copyOf(mPrevious, capacity);
+        mX = Arrays.copyOf(mX, capacity);
+        mY = Arrays.copyOf(mY, capacity);
+    }
+}
@@ -2,11 +2,12 @@ package tonyg.example.com.beacon.utilities;
 
 import java.util.ArrayList;
 
+import tonyg.example.com.beacon.ble.BeaconTable;
 import tonyg.example.com.beacon.ble.BleBeacon;
 
 
 /**
- * Trilaterate a 4th position from 3 other positions
+ * Locate the Central from the positions of, and distances to, other Beacons
  *
  * @author Tony Gaitatzis backupbrain@gmail.com
  * @date 2016-03-06
@@ -16,60 +17,70 @@ public class BeaconLocator {
     public static final int J = 1;
 
     /**
-     * Trilaterate a position from 3 other known positions
+     * Trilaterate a position from 3 or more known positions.
+     *
+     * Every beacon in the list contributes to a least squares fit.
+     *
      * @param beaconList
-     * @return
+     * @return the x and y location of the Central
      * @throws Exception
      */
     public static double[] trilaterate(ArrayList<BleBeacon> beaconList) throws Exception {
 
-        if (beaconList.size() < 3) {
+        if (beaconList.size() < LeastSquaresLocator.MIN_BEACONS) {
             throw new Exception("Not enough points to perform a triangulation");
         }
 
-        BleBeacon p1 = beaconList.get(0);
-        BleBeacon p2 = beaconList.get(1);
-        BleBeacon p3 = beaconList.get(2);
-        double r1 = beaconList.get(0).getDistance();
-        double r2 = beaconList.get(1).getDistance();
-        double r3 = beaconList.get(2).getDistance();
-
-
-        //unit vector in a direction from point1 to point 2
-        double p2p1Distance = Math.sqrt(
-                Math.pow(p2.getXLocation() - p1.getXLocation(), 2) +
-                Math.pow(p2.getYLocation() - p1.getYLocation(), 2)
-        );
-        double exx = (p2.getXLocation() - p1.getXLocation()) / p2p1Distance;
-        double exy = (p2.getYLocation() - p1.getYLocation()) / p2p1Distance;
-
-        //signed magnitude of the x component
-        double i = exx * (p3.getXLocation() - p1.getXLocation()) + exy * (p3.getYLocation() - p1.getYLocation());
-
-        //the unit vector in the y direction.
-        double eyx = (p3.getXLocation() - p1.getXLocation() - i * exx) /
-                Math.sqrt(
-                        Math.pow(p3.getXLocation() - p1.getXLocation() - i * exx, 2) +
-                        Math.pow(p3.getYLocation() - p1.getYLocation() - i * exy, 2)
-                );
-        double eyy = (p3.getYLocation() - p1.getYLocation() - i * exy) /
-                Math.sqrt(
-                        Math.pow(p3.getXLocation() - p1.getXLocation() - i * exx, 2) +
-                        Math.pow(p3.getYLocation() - p1.getYLocation() - i * exy, 2)
-                );
+        int count = beaconList.size();
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] distance = new double[count];
+        for (int index = 0; index < count; index++) {
+            BleBeacon beacon = beaconList.get(index);
+            x[index] = beacon.getXLocation();
+            y[index] = beacon.getYLocation();
+            distance[index] = beacon.getDistance();
+        }
 
-        //the signed magnitude of the y component
-        double j = eyx * (p2.getXLocation() - p3.getYLocation()) + eyy * (p3.getYLocation() - p1.getYLocation());
+        double[] result = new double[LeastSquaresLocator.RESULT_LENGTH];
+        if (LeastSquaresLocator.solve(x, y, distance, null, count, result) != LeastSquaresLocator.STATUS_OK) {
+            throw new Exception("Beacons are too close to a line to perform a triangulation");
+        }
 
-        //coordinates
-        double x = (Math.pow(r1, 2) - Math.pow(r2,2) + Math.pow(p2p1Distance,2))/ (2 * p2p1Distance);
-        double y = (Math.pow(r1, 2) - Math.pow(r3,2) + Math.pow(i,2) + Math.pow(j ,2)) / (2 * j) - i * x / j;
+        return new double[] {result[LeastSquaresLocator.RESULT_X], result[LeastSquaresLocator.RESULT_Y]};
 
-        //result coordinates
-        double finalX = p1.getXLocation()+ x * exx + y*eyx;
-        double finalY = p1.getYLocation()+ x * exy + y*eyy;
+    }
 
-        return new double[] {finalX, finalY};
+    /**
+     * Trilaterate a position from every located Beacon in a BeaconTable, without allocating.
+     * Distances are weighted by the inverse of their variance.
+     *
+     * @param beaconTable the Beacons
+     * @param result array of at least LeastSquaresLocator.RESULT_LENGTH that receives the position
+     * @return a LeastSquaresLocator status code
+     */
+    public static int trilaterate(BeaconTable beaconTable, double[] result) {
+        beaconTable.selectLocated();
+        return trilaterateSelected(beaconTable, result);
+    }
 
+    /**
+     * Trilaterate a position from the Beacons already selected in a BeaconTable, without
+     * allocating.  Distances are weighted by the inverse of their variance.
+     *
+     * @param beaconTable the Beacons, with a selection
+     * @param result array of at least LeastSquaresLocator.RESULT_LENGTH that receives the position
+     * @return a LeastSquaresLocator status code
+     */
+    public static int trilaterateSelected(BeaconTable beaconTable, double[] result) {
+        int count = beaconTable.getSelectedCount();
+        return LeastSquaresLocator.solve(
+                beaconTable.getSelectedX(),
+                beaconTable.getSelectedY(),
+                beaconTable.getSelectedDistance(),
+                beaconTable.getSelectedWeight(),
+                count,
+                result
+        );
     }
 }
@@ -0,0 +1,282 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.util.Arrays;
+
+/**
+ * Locate the Central by matching a scan against a RadioMap, instead of from ranges.
+ *
+ * Indoors, walls and people bend and block the signal, so an RSSI is a poor measure of
+ * distance.  It is still repeatable: the same spot hears the same Beacons at about the same
+ * strength.  The locator finds the reference points whose RSSI is closest to the scan and
+ * averages their locations, weighing each point by how closely it matches (weighted k nearest
+ * neighbours).  A Beacon heard by only one side, the scan or the point, is compared against
+ * the not heard RSSI, so a point that hears Beacons the scan missed is charged for them.  If
+ * even the best match differs from the scan by more than the maximum signal difference, the
+ * Central is somewhere the map does not cover, and no fix is given.
+ *
+ * Add the RSSI of each Beacon heard with addObservation(), then call locate().  Results use the
+ * LeastSquaresLocator layout and status codes, so a fingerprint fix can go wherever a
+ * trilaterated one can.  Scratch space is kept between calls, so nothing is allocated once
+ * it has grown.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class FingerprintLocator {
+    public static final int DEFAULT_NEIGHBOUR_COUNT = 4;
+    public static final double DEFAULT_NOT_HEARD_RSSI = -100; // dBm, stands in for a Beacon a point or the scan did not hear
+    public static final double DEFAULT_MAX_SIGNAL_DIFFERENCE = 10; // dB RMS per Beacon.  Matches stay under this with RSSI noise up to about 6 dB
+    public static final int STATUS_NO_MATCH = LeastSquaresLocator.STATUS_DEGENERATE + 1;
+
+    private static final int QUERY_STRONGEST = 3; // candidates are the points listed under this many of the strongest Beacons heard
+    private static final double MIN_SIGNAL_DISTANCE = 1e-3; // dB, keeps the weight of an exact match finite
+    private static final double MIN_VARIANCE = 0.25; // meters^2, how finely the map can place the Central
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final RadioMap mRadioMap;
+    private final int mNeighbourCount;
+    private final double mNotHeardRssi;
+    private final double mMaxSignalDifference;
+
+    /** Query **/
+    private int mQueryCount = 0;
+    private int[] mQueryColumn = new int[DEFAULT_CAPACITY];
+    private double[] mQueryRssi = new double[DEFAULT_CAPACITY];
+
+    /** Candidates **/
+    private int mCandidateCount = 0;
+    private int[] mCandidates = new int[DEFAULT_CAPACITY];
+    private double[] mSignalDistance = new double[DEFAULT_CAPACITY]; // squared, dB^2
+    private int[] mComparedCount = new int[DEFAULT_CAPACITY]; // Beacons heard by the scan, the point or both
+    private int[] mCandidateStamp = new int[0]; // point -> query that last listed it
+    private int mStamp = 0;
+
+    /** Nearest neighbours **/
+    private int[] mNeighbour;
+    private double[] mNeighbourDistance;
+    private int[] mNeighbourComparedCount;
+
+    /**
+     * Create a FingerprintLocator
+     *
+     * @param radioMap the survey, indexed
+     */
+    public FingerprintLocator(RadioMap radioMap) {
+        this(radioMap, DEFAULT_NEIGHBOUR_COUNT, DEFAULT_NOT_HEARD_RSSI, DEFAULT_MAX_SIGNAL_DIFFERENCE);
+    }
+
+    /**
+     * Create a FingerprintLocator
+     *
+     * @param radioMap the survey, indexed
+     * @param neighbourCount how many reference points to average
+     * @param notHeardRssi the RSSI, in dBm, to compare against when a point or the scan did not hear a Beacon
+     * @param maxSignalDifference the RMS difference per Beacon, in dB, beyond which the best match is no match
+     */
+    public FingerprintLocator(RadioMap radioMap, int neighbourCount, double notHeardRssi, double maxSignalDifference) {
+        mRadioMap = radioMap;
+        mNeighbourCount = Math.max(1, neighbourCount);
+        mNotHeardRssi = notHeardRssi;
+        mMaxSignalDifference = maxSignalDifference;
+        mNeighbour = new int[mNeighbourCount];
+        mNeighbourDistance = new double[mNeighbourCount];
+        mNeighbourComparedCount = new int[mNeighbourCount];
+    }
+
+    public RadioMap getRadioMap() { return mRadioMap; }
+
+    /**
+     * Start a new scan
+     */
+    public void clearObservations() {
+        mQueryCount = 0;
+    }
+
+    /**
+     * Add a Beacon heard in the scan.  Beacons that are not in the map are ignored
+     *
+     * @param macAddress the packed MAC address
+     * @param rssi the RSSI, usually filtered, in dBm
+     * @return <b>false</b> if the Beacon is not in the map
+     */
+    public boolean addObservation(long macAddress, double rssi) {
+        int column = mRadioMap.getColumn(macAddress);
+        if (column == RadioMap.NOT_FOUND) {
+            return false;
+        }
+        if (mQueryCount == mQueryColumn.length) {
+            mQueryColumn = Arrays.copyOf(mQueryColumn, mQueryCount * 2);
+            mQueryRssi = Arrays.copyOf(mQueryRssi, mQueryCount * 2);
+        }
+        mQueryColumn[mQueryCount] = column;
+        mQueryRssi[mQueryCount] = rssi;
+        mQueryCount++;
+        return true;
+    }
+
+    /**
+     * Locate the Central from the Beacons added since clearObservations()
+     *
+     * @param result array of at least LeastSquaresLocator.RESULT_LENGTH that receives the
+     *               position.  RESULT_RESIDUAL is the RMS RSSI difference to the best match, in dBm
+     * @return LeastSquaresLocator.STATUS_OK, LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS if no
+     *         mapped Beacon was heard, or STATUS_NO_MATCH if the best match is too far from the scan
+     */
+    public int locate(double[] result) {
+        if (mQueryCount == 0 || mRadioMap.getPointCount() == 0) {
+            return LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS;
+        }
+        findCandidates();
+        measureSignalDistances();
+        int neighbourCount = findNeighbours();
+        double residual = Math.sqrt(mNeighbourDistance[0] / Math.max(1, mNeighbourComparedCount[0]));
+        if (!(residual <= mMaxSignalDifference)) {
+            return STATUS_NO_MATCH;
+        }
+
+        // average the neighbours, trusting closer matches more
+        double sumWeights = 0, sumX = 0, sumY = 0;
+        for (int index = 0; index < neighbourCount; index++) {
+            double weight = 1 / Math.max(Math.sqrt(mNeighbourDistance[index]), MIN_SIGNAL_DISTANCE);
+            sumWeights += weight;
+            sumX += weight * mRadioMap.getXLocation(mNeighbour[index]);
+            sumY += weight * mRadioMap.getYLocation(mNeighbour[index]);
+        }
+        double x = sumX / sumWeights;
+        double y = sumY / sumWeights;
+
+        // the spread of the neighbours says how sure the match is
+        double xx = 0, xy = 0, yy = 0;
+        for (int index = 0; index < neighbourCount; index++) {
+            double weight = 1 / Math.max(Math.sqrt(mNeighbourDistance[index]), MIN_SIGNAL_DISTANCE);
+            double dx = mRadioMap.getXLocation(mNeighbour[index]) - x;
+            double dy = mRadioMap.getYLocation(mNeighbour[index]) - y;
+            xx += weight * dx * dx;
+            xy += weight * dx * dy;
+            yy += weight * dy * dy;
+        }
+
+        result[LeastSquaresLocator.RESULT_X] = x;
+        result[LeastSquaresLocator.RESULT_Y] = y;
+        result[LeastSquaresLocator.RESULT_RESIDUAL] = residual;
+        result[LeastSquaresLocator.RESULT_COVARIANCE_XX] = xx / sumWeights + MIN_VARIANCE;
+        result[LeastSquaresLocator.RESULT_COVARIANCE_XY] = xy / sumWeights;
+        result[LeastSquaresLocator.RESULT_COVARIANCE_YY] = yy / sumWeights + MIN_VARIANCE;
+        return LeastSquaresLocator.STATUS_OK;
+    }
+
+    /**
+     * Collect the points listed under the strongest Beacons heard.  If too few are listed,
+     * every point is a candidate
+     */
+    private void findCandidates() {
+        int pointCount = mRadioMap.getPointCount();
+        if (mCandidateStamp.length < pointCount) {
+            mCandidateStamp = new int[pointCount];
+            mStamp = 0;
+        }
+        if (++mStamp == 0) {
+            // the stamp wrapped around, so old stamps could match again
+            Arrays.fill(mCandidateStamp, 0);
+            mStamp = 1;
+        }
+
+        mCandidateCount = 0;
+        int[] indexedPoints = mRadioMap.getIndexedPoints();
+        double previousRssi = Double.POSITIVE_INFINITY;
+        int previousQuery = -1;
+        for (int strongest = 0; strongest < QUERY_STRONGEST; strongest++) {
+            // the next strongest Beacon heard, without sorting the query
+            int query = -1;
+            for (int index = 0; index < mQueryCount; index++) {
+                double rssi = mQueryRssi[index];
+                boolean isWeakerThanPrevious = rssi < previousRssi || (rssi == previousRssi && index > previousQuery);
+                if (isWeakerThanPrevious && (query < 0 || rssi > mQueryRssi[query])) {
+                    query = index;
+                }
+            }
+            if (query < 0) {
+                break;
+            }
+            previousRssi = mQueryRssi[query];
+            previousQuery = query;
+
+            int column = mQueryColumn[query];
+            int end = mRadioMap.getIndexEnd(column);
+            for (int index = mRadioMap.getIndexStart(column); index < end; index++) {
+                int point = indexedPoints[index];
+                if (mCandidateStamp[point] != mStamp) {
+                    mCandidateStamp[point] = mStamp;
+                    addCandidate(point);
+                }
+            }
+        }
+
+        if (mCandidateCount < mNeighbourCount) {
+            mCandidateCount = 0;
+            for (int point = 0; point < pointCount; point++) {
+                addCandidate(point);
+            }
+        }
+    }
+
+    private void addCandidate(int point) {
+        if (mCandidateCount == mCandidates.length) {
+            mCandidates = Arrays.copyOf(mCandidates, mCandidateCount * 2);
+            mSignalDistance = Arrays.copyOf(mSignalDistance, mCandidateCount * 2);
+            mComparedCount = Arrays.copyOf(mComparedCount, mCandidateCount * 2);
+        }
+        mCandidates[mCandidateCount++] = point;
+    }
+
+    /**
+     * Compare every candidate with the scan, one Beacon column at a time.  Each candidate
+     * starts out charged for every Beacon it hears as if the scan missed them all, and the
+     * charge is taken back for each one the scan did hear
+     */
+    private void measureSignalDistances() {
+        for (int index = 0; index < mCandidateCount; index++) {
+            int point = mCandidates[index];
+            mSignalDistance[index] = mRadioMap.getSquaredDifference(point, mNotHeardRssi);
+            mComparedCount[index] = mRadioMap.getHeardCount(point) + mQueryCount;
+        }
+        for (int query = 0; query < mQueryCount; query++) {
+            byte[] column = mRadioMap.getColumnRssi(mQueryColumn[query]);
+            double rssi = mQueryRssi[query];
+            for (int index = 0; index < mCandidateCount; index++) {
+                int mappedRssi = column[mCandidates[index]];
+                if (mappedRssi == RadioMap.NOT_HEARD) {
+                    double difference = rssi - mNotHeardRssi;
+                    mSignalDistance[index] += difference * difference;
+                } else {
+                    double difference = rssi - mappedRssi;
+                    double missed = mappedRssi - mNotHeardRssi;
+                    mSignalDistance[index] += difference * difference - missed * missed;
+                    mComparedCount[index]--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Keep the candidates nearest the scan, nearest first
+     */
+    private int findNeighbours() {
+        int found = 0;
+        for (int index = 0; index < mCandidateCount; index++) {
+            double distance = mSignalDistance[index];
+            if (found == mNeighbourCount && distance >= mNeighbourDistance[found - 1]) continue;
+            int position = found < mNeighbourCount ? found++ : found - 1;
+            while (position > 0 && mNeighbourDistance[position - 1] > distance) {
+                mNeighbour[position] = mNeighbour[position - 1];
+                mNeighbourDistance[position] = mNeighbourDistance[position - 1];
+                mNeighbourComparedCount[position] = mNeighbourComparedCount[position - 1];
+                position--;
+            }
+            mNeighbour[position] = mCandidates[index];
+            mNeighbourDistance[position] = distance;
+            mNeighbourComparedCount[position] = mComparedCount[index];
+        }
+        return found;
+    }
+}
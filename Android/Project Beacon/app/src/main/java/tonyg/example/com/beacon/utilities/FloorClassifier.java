@@ -0,0 +1,163 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.util.Arrays;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+
+/**
+ * Decides which floor the Central is on, before its position is solved.
+ *
+ * A floor slab takes ten or more dB off a signal, so the Beacons on the Central's own floor
+ * are heard much more strongly than the ones above and below.  Each Beacon that knows its
+ * floor and was heard since the last update adds its received power, relative to its reference
+ * RSSI, to that floor's score, and the floor with the highest score wins.  Beacons left behind
+ * on another floor keep their last filtered RSSI, which is why only fresh ones are counted.
+ * One pass over the Beacons with a handful of floors costs far less than a solve, so it runs
+ * before every one.
+ *
+ * To keep the floor from flickering on a stairwell, another floor has to beat the current one
+ * by a margin on several updates in a row before the Central moves to it.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class FloorClassifier {
+    public static final int UNKNOWN_FLOOR = Integer.MIN_VALUE;
+    public static final double DEFAULT_SWITCH_MARGIN_DB = 3;
+    public static final int DEFAULT_SWITCH_UPDATES = 2;
+
+    private static final int DEFAULT_FLOOR_CAPACITY = 8;
+
+    private final double mSwitchRatio; // score ratio the margin stands for
+    private final int mSwitchUpdates;
+
+    private int mFloor = UNKNOWN_FLOOR;
+    private int mCandidateFloor = UNKNOWN_FLOOR;
+    private int mCandidateUpdates = 0;
+
+    private int[] mLastSampleCount = new int[DEFAULT_FLOOR_CAPACITY]; // per Beacon row, at the last update
+
+    /** Scores of the floors heard in the current update **/
+    private int mFloorCount = 0;
+    private int[] mFloors = new int[DEFAULT_FLOOR_CAPACITY];
+    private double[] mScores = new double[DEFAULT_FLOOR_CAPACITY];
+
+    /**
+     * Create a FloorClassifier
+     */
+    public FloorClassifier() {
+        this(DEFAULT_SWITCH_MARGIN_DB, DEFAULT_SWITCH_UPDATES);
+    }
+
+    /**
+     * Create a FloorClassifier
+     *
+     * @param switchMargin_db how much stronger, in dB, another floor must be heard to move to it
+     * @param switchUpdates how many updates in a row it must be stronger
+     */
+    public FloorClassifier(double switchMargin_db, int switchUpdates) {
+        mSwitchRatio = Math.pow(10, switchMargin_db / 10);
+        mSwitchUpdates = Math.max(1, switchUpdates);
+    }
+
+    /**
+     * @return the floor the Central is on, or UNKNOWN_FLOOR
+     */
+    public int getFloor() { return mFloor; }
+
+    /**
+     * @return <b>true</b> once a Beacon that knows its floor has been heard
+     */
+    public boolean hasFloor() { return mFloor != UNKNOWN_FLOOR; }
+
+    /**
+     * Forget the floor
+     */
+    public void reset() {
+        mFloor = UNKNOWN_FLOOR;
+        mCandidateFloor = UNKNOWN_FLOOR;
+        mCandidateUpdates = 0;
+        Arrays.fill(mLastSampleCount, 0);
+    }
+
+    /**
+     * Score the floors from the filtered RSSI of the Beacons heard since the last update, and
+     * move the Central to another floor if it has been clearly stronger for long enough
+     *
+     * @param beaconTable the Beacons and their floors
+     * @param rssiFilter the filtered RSSI of each Beacon
+     * @return the floor the Central is on, or UNKNOWN_FLOOR if no Beacon that knows its floor was heard
+     */
+    public int update(BeaconTable beaconTable, RssiFilter rssiFilter) {
+        mFloorCount = 0;
+        int size = beaconTable.size();
+        if (mLastSampleCount.length < size) {
+            mLastSampleCount = Arrays.copyOf(mLastSampleCount, Math.max(size, mLastSampleCount.length * 2));
+        }
+        for (int row = 0; row < size; row++) {
+            int flags = beaconTable.getFlags(row);
+            int sampleCount = rssiFilter.getSampleCount(row);
+            boolean isHeard = sampleCount != mLastSampleCount[row];
+            mLastSampleCount[row] = sampleCount;
+            if ((flags & BeaconTable.FLAG_FLOOR) == 0 || !isHeard || sampleCount == 0) {
+                continue;
+            }
+            // received power relative to the reference, so strong and weak transmitters compare fairly
+            double referenceRssi = (flags & BeaconTable.FLAG_REFERENCE_RSSI) != 0 ? beaconTable.getReferenceRssi(row) : 0;
+            addScore(beaconTable.getFloor(row), Math.pow(10, (rssiFilter.getRssi(row) - referenceRssi) / 10));
+        }
+        if (mFloorCount == 0) {
+            return mFloor;
+        }
+
+        int strongest = 0;
+        for (int index = 1; index < mFloorCount; index++) {
+            if (mScores[index] > mScores[strongest]) {
+                strongest = index;
+            }
+        }
+        int strongestFloor = mFloors[strongest];
+        if (mFloor == UNKNOWN_FLOOR) {
+            mFloor = strongestFloor;
+        } else if (strongestFloor != mFloor && mScores[strongest] > mSwitchRatio * getScore(mFloor)) {
+            if (strongestFloor == mCandidateFloor) {
+                mCandidateUpdates++;
+            } else {
+                mCandidateFloor = strongestFloor;
+                mCandidateUpdates = 1;
+            }
+            if (mCandidateUpdates >= mSwitchUpdates) {
+                mFloor = strongestFloor;
+                mCandidateUpdates = 0;
+            }
+        } else {
+            mCandidateUpdates = 0;
+        }
+        return mFloor;
+    }
+
+    private void addScore(int floor, double score) {
+        for (int index = 0; index < mFloorCount; index++) {
+            if (mFloors[index] == floor) {
+                mScores[index] += score;
+                return;
+            }
+        }
+        if (mFloorCount == mFloors.length) {
+            mFloors = Arrays.copyOf(mFloors, mFloorCount * 2);
+            mScores = Arrays.copyOf(mScores, mFloorCount * 2);
+        }
+        mFloors[mFloorCount] = floor;
+        mScores[mFloorCount] = score;
+        mFloorCount++;
+    }
+
+    private double getScore(int floor) {
+        for (int index = 0; index < mFloorCount; index++) {
+            if (mFloors[index] == floor) {
+                return mScores[index];
+            }
+        }
+        return 0;
+    }
+}
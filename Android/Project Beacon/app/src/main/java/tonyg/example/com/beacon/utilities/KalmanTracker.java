@@ -0,0 +1,241 @@
+package tonyg.example.com.beacon.utilities;
+
+/**
+ * Tracks the Central with a Kalman filter over position and velocity.
+ *
+ * Position fixes are applied as linear measurements.  Ranges to Beacons are applied one at a
+ * time as linearized (extended Kalman) measurements.  All matrices are preallocated, so
+ * updates do not allocate.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class KalmanTracker implements PositionTracker {
+    public static final double DEFAULT_ACCELERATION_NOISE = 0.5; // (m/s^2)^2, a walking person
+    public static final double DEFAULT_INITIAL_VELOCITY_VARIANCE = 1; // (m/s)^2
+
+    private static final int N = 4; // x, y, vx, vy
+    private static final double MIN_RANGE = 1e-6;
+
+    private final int mMotionModel;
+    private final double mAccelerationNoise;
+
+    private final double[] mState = new double[N];
+    private final double[] mCovariance = new double[N * N]; // row major
+    private final double[] mGain = new double[N * 2];
+    private final double[] mScratch = new double[N * N];
+    private final double[] mPredicted = new double[N + N * N]; // state then covariance, for getState
+    private boolean mIsInitialized = false;
+    private long mTimestamp_ms;
+
+    /**
+     * Create a KalmanTracker
+     *
+     * @param motionModel MOTION_STATIONARY or MOTION_CONSTANT_VELOCITY
+     */
+    public KalmanTracker(int motionModel) {
+        this(motionModel, DEFAULT_ACCELERATION_NOISE);
+    }
+
+    /**
+     * Create a KalmanTracker
+     *
+     * @param motionModel MOTION_STATIONARY or MOTION_CONSTANT_VELOCITY
+     * @param accelerationNoise how abruptly the Central may change speed, in (m/s^2)^2.
+     *                          For MOTION_STATIONARY, how far it may wander, in m^2/s
+     */
+    public KalmanTracker(int motionModel, double accelerationNoise) {
+        mMotionModel = motionModel;
+        mAccelerationNoise = accelerationNoise;
+    }
+
+    @Override
+    public void updateWithFix(long timestamp_ms, double x, double y, double covarianceXX, double covarianceXY, double covarianceYY) {
+        if (!mIsInitialized) {
+            initialize(timestamp_ms, x, y, covarianceXX, covarianceXY, covarianceYY);
+            return;
+        }
+        predict(timestamp_ms, mState, mCovariance);
+
+        double[] p = mCovariance;
+        // innovation covariance S = H P H^T + R, where H picks out the position
+        double s00 = p[0] + covarianceXX;
+        double s01 = p[1] + covarianceXY;
+        double s11 = p[N + 1] + covarianceYY;
+        double determinant = s00 * s11 - s01 * s01;
+        if (determinant <= 0) {
+            return;
+        }
+        double i00 = s11 / determinant;
+        double i01 = -s01 / determinant;
+        double i11 = s00 / determinant;
+
+        // gain K = P H^T S^-1
+        for (int row = 0; row < N; row++) {
+            double p0 = p[row * N];
+            double p1 = p[row * N + 1];
+            mGain[row * 2] = p0 * i00 + p1 * i01;
+            mGain[row * 2 + 1] = p0 * i01 + p1 * i11;
+        }
+
+        double innovationX = x - mState[0];
+        double innovationY = y - mState[1];
+        for (int row = 0; row < N; row++) {
+            mState[row] += mGain[row * 2] * innovationX + mGain[row * 2 + 1] * innovationY;
+        }
+
+        // P = (I - K H) P
+        for (int row = 0; row < N; row++) {
+            for (int column = 0; column < N; column++) {
+                mScratch[row * N + column] = p[row * N + column]
+                        - mGain[row * 2] * p[column]
+                        - mGain[row * 2 + 1] * p[N + column];
+            }
+        }
+        System.arraycopy(mScratch, 0, p, 0, N * N);
+        symmetrize(p);
+    }
+
+    @Override
+    public void updateWithRanges(long timestamp_ms, double[] beaconX, double[] beaconY, double[] distance, double[] variance, int count) {
+        if (!mIsInitialized) {
+            // ranges alone can not place a new track.  Wait for a fix
+            return;
+        }
+        predict(timestamp_ms, mState, mCovariance);
+
+        double[] p = mCovariance;
+        for (int beacon = 0; beacon < count; beacon++) {
+            double dx = mState[0] - beaconX[beacon];
+            double dy = mState[1] - beaconY[beacon];
+            double range = Math.sqrt(dx * dx + dy * dy);
+            if (range < MIN_RANGE) continue;
+            double hx = dx / range;
+            double hy = dy / range;
+
+            // S = H P H^T + r, K = P H^T / S
+            double s = variance[beacon];
+            for (int row = 0; row < N; row++) {
+                mGain[row] = p[row * N] * hx + p[row * N + 1] * hy;
+            }
+            s += mGain[0] * hx + mGain[1] * hy;
+            if (s <= 0) continue;
+
+            double innovation = distance[beacon] - range;
+            for (int row = 0; row < N; row++) {
+                mState[row] += mGain[row] / s * innovation;
+            }
+            // P = P - (P H^T)(H P) / S
+            for (int row = 0; row < N; row++) {
+                for (int column = 0; column < N; column++) {
+                    p[row * N + column] -= mGain[row] * mGain[column] / s;
+                }
+            }
+            symmetrize(p);
+        }
+    }
+
+    @Override
+    public boolean getState(long timestamp_ms, double[] state) {
+        if (!mIsInitialized) {
+            return false;
+        }
+        // predict into scratch space so reading the state does not move the track
+        System.arraycopy(mState, 0, mPredicted, 0, N);
+        System.arraycopy(mCovariance, 0, mPredicted, N, N * N);
+        double dt = Math.max(0, (timestamp_ms - mTimestamp_ms) / 1000.0);
+        if (dt > 0) {
+            propagate(dt, mPredicted, 0, mPredicted, N);
+        }
+        state[STATE_X] = mPredicted[0];
+        state[STATE_Y] = mPredicted[1];
+        state[STATE_VELOCITY_X] = mPredicted[2];
+        state[STATE_VELOCITY_Y] = mPredicted[3];
+        state[STATE_COVARIANCE_XX] = mPredicted[N];
+        state[STATE_COVARIANCE_XY] = mPredicted[N + 1];
+        state[STATE_COVARIANCE_YY] = mPredicted[N + N + 1];
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        mIsInitialized = false;
+    }
+
+    private void initialize(long timestamp_ms, double x, double y, double covarianceXX, double covarianceXY, double covarianceYY) {
+        for (int index = 0; index < N * N; index++) {
+            mCovariance[index] = 0;
+        }
+        mState[0] = x;
+        mState[1] = y;
+        mState[2] = 0;
+        mState[3] = 0;
+        mCovariance[0] = covarianceXX;
+        mCovariance[1] = covarianceXY;
+        mCovariance[N] = covarianceXY;
+        mCovariance[N + 1] = covarianceYY;
+        if (mMotionModel == MOTION_CONSTANT_VELOCITY) {
+            mCovariance[2 * N + 2] = DEFAULT_INITIAL_VELOCITY_VARIANCE;
+            mCovariance[3 * N + 3] = DEFAULT_INITIAL_VELOCITY_VARIANCE;
+        }
+        mTimestamp_ms = timestamp_ms;
+        mIsInitialized = true;
+    }
+
+    private void predict(long timestamp_ms, double[] state, double[] covariance) {
+        double dt = (timestamp_ms - mTimestamp_ms) / 1000.0;
+        if (dt > 0) {
+            propagate(dt, state, 0, covariance, 0);
+            mTimestamp_ms = timestamp_ms;
+        }
+    }
+
+    /**
+     * Move a state and covariance forward in time: x = F x, P = F P F^T + Q
+     */
+    private void propagate(double dt, double[] state, int stateOffset, double[] covariance, int offset) {
+        double q = mAccelerationNoise;
+        if (mMotionModel == MOTION_STATIONARY) {
+            covariance[offset] += q * dt;
+            covariance[offset + N + 1] += q * dt;
+            return;
+        }
+
+        state[stateOffset] += dt * state[stateOffset + 2];
+        state[stateOffset + 1] += dt * state[stateOffset + 3];
+
+        // P F^T then F (P F^T).  F adds dt times the velocity row/column to the position one
+        for (int row = 0; row < N; row++) {
+            covariance[offset + row * N] += dt * covariance[offset + row * N + 2];
+            covariance[offset + row * N + 1] += dt * covariance[offset + row * N + 3];
+        }
+        for (int column = 0; column < N; column++) {
+            covariance[offset + column] += dt * covariance[offset + 2 * N + column];
+            covariance[offset + N + column] += dt * covariance[offset + 3 * N + column];
+        }
+
+        // white noise acceleration
+        double dt2 = dt * dt;
+        double positionNoise = q * dt2 * dt / 3;
+        double crossNoise = q * dt2 / 2;
+        double velocityNoise = q * dt;
+        for (int axis = 0; axis < 2; axis++) {
+            int position = axis;
+            int velocity = axis + 2;
+            covariance[offset + position * N + position] += positionNoise;
+            covariance[offset + position * N + velocity] += crossNoise;
+            covariance[offset + velocity * N + position] += crossNoise;
+            covariance[offset + velocity * N + velocity] += velocityNoise;
+        }
+    }
+
+    private static void symmetrize(double[] p) {
+        for (int row = 0; row < N; row++) {
+            for (int column = row + 1; column < N; column++) {
+                double average = (p[row * N + column] + p[column * N + row]) / 2;
+                p[row * N + column] = average;
+                p[column * N + row] = average;
+            }
+        }
+    }
+}
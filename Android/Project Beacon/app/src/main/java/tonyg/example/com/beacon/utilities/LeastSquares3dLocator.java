@@ -0,0 +1,177 @@
+package tonyg.example.com.beacon.utilities;
+
+/**
+ * Locate a position in three dimensions from any number of beacons using weighted least squares.
+ *
+ * Beacons are usually mounted at about the same height, so their ranges say little about how
+ * high the Central is, and a flat solver folds the height difference into every horizontal
+ * range.  This solver takes the height of each beacon into account and adds a prior on the
+ * height of the Central (where a phone is usually held), weighted like one more range.  The
+ * prior keeps the height solvable when the beacons are level, and the ranges move it when they
+ * are not.
+ *
+ * It starts from a linearized estimate on the horizontal ranges implied by the prior height
+ * and refines all three coordinates with Gauss-Newton iterations.  Like LeastSquaresLocator it
+ * works on primitive arrays and only uses local variables.  The result starts with the
+ * LeastSquaresLocator layout, so it can be used wherever a flat fix can, and its covariance is
+ * (J^T W J)^-1 in the same way, with the prior counted as one more measurement.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class LeastSquares3dLocator {
+    /** Layout of the result array, after LeastSquaresLocator's **/
+    public static final int RESULT_Z = LeastSquaresLocator.RESULT_LENGTH;
+    public static final int RESULT_COVARIANCE_XZ = RESULT_Z + 1;
+    public static final int RESULT_COVARIANCE_YZ = RESULT_Z + 2;
+    public static final int RESULT_COVARIANCE_ZZ = RESULT_Z + 3;
+    public static final int RESULT_LENGTH = RESULT_Z + 4;
+
+    private static final int MAX_ITERATIONS = 10;
+    private static final double CONVERGENCE_THRESHOLD = 1e-4; // meters
+    private static final double SINGULAR_THRESHOLD = 1e-12; // of trace^3, so the test does not depend on units or weights
+    private static final double MIN_RANGE = 1e-6; // avoid dividing by zero on top of a beacon
+
+    /**
+     * Solve for the position of the Central
+     *
+     * @param x beacon x locations in meters
+     * @param y beacon y locations in meters
+     * @param z beacon z locations in meters
+     * @param distance measured distance to each beacon in meters
+     * @param weight weight of each range, usually 1/variance.  <b>null</b> weighs every beacon equally
+     * @param count number of beacons to use from the start of each array
+     * @param priorZ the expected height of the Central in meters
+     * @param priorZVariance how far the Central may be from that height, in meters^2
+     * @param result array of at least RESULT_LENGTH that receives the position and its quality
+     * @return a LeastSquaresLocator status code
+     */
+    public static int solve(double[] x, double[] y, double[] z, double[] distance, double[] weight, int count,
+                            double priorZ, double priorZVariance, double[] result) {
+        if (count < LeastSquaresLocator.MIN_BEACONS) {
+            return LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS;
+        }
+
+        // linearized estimate, as in LeastSquaresLocator, on the squared horizontal ranges
+        // left over at the prior height
+        double x0 = x[0];
+        double y0 = y[0];
+        double dz0 = z[0] - priorZ;
+        double h0 = distance[0] * distance[0] - dz0 * dz0;
+        double k0 = x0 * x0 + y0 * y0;
+        double ata00 = 0, ata01 = 0, ata11 = 0, atb0 = 0, atb1 = 0;
+        for (int i = 1; i < count; i++) {
+            double w = weight == null ? 1 : weight[i];
+            double dz = z[i] - priorZ;
+            double ax = 2 * (x[i] - x0);
+            double ay = 2 * (y[i] - y0);
+            double b = h0 - (distance[i] * distance[i] - dz * dz) + x[i] * x[i] + y[i] * y[i] - k0;
+            ata00 += w * ax * ax;
+            ata01 += w * ax * ay;
+            ata11 += w * ay * ay;
+            atb0 += w * ax * b;
+            atb1 += w * ay * b;
+        }
+        double determinant = ata00 * ata11 - ata01 * ata01;
+        if (LeastSquaresLocator.isSingular(determinant, ata00 + ata11)) {
+            return LeastSquaresLocator.STATUS_DEGENERATE;
+        }
+        double px = (ata11 * atb0 - ata01 * atb1) / determinant;
+        double py = (ata00 * atb1 - ata01 * atb0) / determinant;
+        double pz = priorZ;
+
+        // refine with Gauss-Newton on f_i(p) = |p - beacon_i| - r_i, plus (pz - priorZ) for the prior
+        double priorWeight = 1 / priorZVariance;
+        double jtj00 = 0, jtj01 = 0, jtj02 = 0, jtj11 = 0, jtj12 = 0, jtj22 = 0;
+        double c00 = 0, c01 = 0, c02 = 0, c11 = 0, c12 = 0, c22 = 0; // cofactors of J^T W J
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            jtj00 = 0;
+            jtj01 = 0;
+            jtj02 = 0;
+            jtj11 = 0;
+            jtj12 = 0;
+            jtj22 = priorWeight;
+            double jtf0 = 0, jtf1 = 0, jtf2 = priorWeight * (pz - priorZ);
+            for (int i = 0; i < count; i++) {
+                double w = weight == null ? 1 : weight[i];
+                double dx = px - x[i];
+                double dy = py - y[i];
+                double dz = pz - z[i];
+                double range = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                if (range < MIN_RANGE) range = MIN_RANGE;
+                double jx = dx / range;
+                double jy = dy / range;
+                double jz = dz / range;
+                double f = range - distance[i];
+                jtj00 += w * jx * jx;
+                jtj01 += w * jx * jy;
+                jtj02 += w * jx * jz;
+                jtj11 += w * jy * jy;
+                jtj12 += w * jy * jz;
+                jtj22 += w * jz * jz;
+                jtf0 += w * jx * f;
+                jtf1 += w * jy * f;
+                jtf2 += w * jz * f;
+            }
+
+            // the matrix is symmetric, so its inverse is the cofactors over the determinant
+            c00 = jtj11 * jtj22 - jtj12 * jtj12;
+            c01 = jtj02 * jtj12 - jtj01 * jtj22;
+            c02 = jtj01 * jtj12 - jtj02 * jtj11;
+            c11 = jtj00 * jtj22 - jtj02 * jtj02;
+            c12 = jtj01 * jtj02 - jtj00 * jtj12;
+            c22 = jtj00 * jtj11 - jtj01 * jtj01;
+            determinant = jtj00 * c00 + jtj01 * c01 + jtj02 * c02;
+            double trace = jtj00 + jtj11 + jtj22;
+            if (!(determinant > SINGULAR_THRESHOLD * trace * trace * trace)) {
+                return LeastSquaresLocator.STATUS_DEGENERATE;
+            }
+            double stepX = (c00 * jtf0 + c01 * jtf1 + c02 * jtf2) / determinant;
+            double stepY = (c01 * jtf0 + c11 * jtf1 + c12 * jtf2) / determinant;
+            double stepZ = (c02 * jtf0 + c12 * jtf1 + c22 * jtf2) / determinant;
+            px -= stepX;
+            py -= stepY;
+            pz -= stepZ;
+            if (stepX * stepX + stepY * stepY + stepZ * stepZ < CONVERGENCE_THRESHOLD * CONVERGENCE_THRESHOLD) {
+                break;
+            }
+        }
+
+        if (Double.isNaN(px) || Double.isNaN(py) || Double.isNaN(pz)
+                || Double.isInfinite(px) || Double.isInfinite(py) || Double.isInfinite(pz)) {
+            return LeastSquaresLocator.STATUS_DEGENERATE;
+        }
+
+        // weighted residual of the ranges at the solution
+        double sumSquares = 0;
+        double sumWeights = 0;
+        double priorSquares = priorWeight * (pz - priorZ) * (pz - priorZ);
+        for (int i = 0; i < count; i++) {
+            double w = weight == null ? 1 : weight[i];
+            double dx = px - x[i];
+            double dy = py - y[i];
+            double dz = pz - z[i];
+            double f = Math.sqrt(dx * dx + dy * dy + dz * dz) - distance[i];
+            sumSquares += w * f * f;
+            sumWeights += w;
+        }
+
+        // covariance = (J^T W J)^-1.  The prior counts as one more measurement, so there are
+        // count + 1 - 3 degrees of freedom; with more than one, inflate the covariance if the
+        // ranges and the prior disagree by more than their variances
+        double variance = count > LeastSquaresLocator.MIN_BEACONS
+                ? Math.max(1, (sumSquares + priorSquares) / (count - 2)) : 1;
+        variance /= determinant;
+        result[LeastSquaresLocator.RESULT_X] = px;
+        result[LeastSquaresLocator.RESULT_Y] = py;
+        result[LeastSquaresLocator.RESULT_RESIDUAL] = sumWeights > 0 ? Math.sqrt(sumSquares / sumWeights) : 0;
+        result[LeastSquaresLocator.RESULT_COVARIANCE_XX] = variance * c00;
+        result[LeastSquaresLocator.RESULT_COVARIANCE_XY] = variance * c01;
+        result[LeastSquaresLocator.RESULT_COVARIANCE_YY] = variance * c11;
+        result[RESULT_Z] = pz;
+        result[RESULT_COVARIANCE_XZ] = variance * c02;
+        result[RESULT_COVARIANCE_YZ] = variance * c12;
+        result[RESULT_COVARIANCE_ZZ] = variance * c22;
+        return LeastSquaresLocator.STATUS_OK;
+    }
+}
@@ -0,0 +1,149 @@
+package tonyg.example.com.beacon.utilities;
+
+/**
+ * Locate a position from any number of beacons using weighted least squares.
+ *
+ * The solver starts from a linearized estimate (every range circle subtracted from the first
+ * one) and refines it with Gauss-Newton iterations on the true range equations.  It works on
+ * primitive arrays and only uses local variables, so it is safe to call for every advertisement.
+ *
+ * The weights are taken to be 1/variance of each range, so the covariance of the position is
+ * (J^T W J)^-1.  Only when there are more ranges than a fix needs, and they disagree more than
+ * their variances allow, is the covariance inflated by the excess.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class LeastSquaresLocator {
+    /** Solver status codes **/
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_NOT_ENOUGH_BEACONS = 1;
+    public static final int STATUS_DEGENERATE = 2;
+
+    /** Layout of the result array **/
+    public static final int RESULT_X = 0;
+    public static final int RESULT_Y = 1;
+    public static final int RESULT_RESIDUAL = 2; // weighted RMS range error, meters
+    public static final int RESULT_COVARIANCE_XX = 3;
+    public static final int RESULT_COVARIANCE_XY = 4;
+    public static final int RESULT_COVARIANCE_YY = 5;
+    public static final int RESULT_LENGTH = 6;
+
+    public static final int MIN_BEACONS = 3;
+
+    private static final int MAX_ITERATIONS = 10;
+    private static final double CONVERGENCE_THRESHOLD = 1e-4; // meters
+    private static final double SINGULAR_THRESHOLD = 1e-12; // of trace^2, so the test does not depend on units or weights
+    private static final double MIN_RANGE = 1e-6; // avoid dividing by zero on top of a beacon
+
+    /**
+     * Solve for the position of the Central
+     *
+     * @param x beacon x locations in meters
+     * @param y beacon y locations in meters
+     * @param distance measured distance to each beacon in meters
+     * @param weight weight of each range, usually 1/variance.  <b>null</b> weighs every beacon equally
+     * @param count number of beacons to use from the start of each array
+     * @param result array of at least RESULT_LENGTH that receives the position and its quality
+     * @return STATUS_OK if a position was found
+     */
+    public static int solve(double[] x, double[] y, double[] distance, double[] weight, int count, double[] result) {
+        if (count < MIN_BEACONS) {
+            return STATUS_NOT_ENOUGH_BEACONS;
+        }
+
+        // linearized estimate: subtracting the first range equation from the others
+        // leaves a linear system A * p = b that we solve through its normal equations
+        double x0 = x[0];
+        double y0 = y[0];
+        double r0 = distance[0];
+        double k0 = x0 * x0 + y0 * y0;
+        double ata00 = 0, ata01 = 0, ata11 = 0, atb0 = 0, atb1 = 0;
+        for (int i = 1; i < count; i++) {
+            double w = weight == null ? 1 : weight[i];
+            double ax = 2 * (x[i] - x0);
+            double ay = 2 * (y[i] - y0);
+            double b = r0 * r0 - distance[i] * distance[i] + x[i] * x[i] + y[i] * y[i] - k0;
+            ata00 += w * ax * ax;
+            ata01 += w * ax * ay;
+            ata11 += w * ay * ay;
+            atb0 += w * ax * b;
+            atb1 += w * ay * b;
+        }
+        double determinant = ata00 * ata11 - ata01 * ata01;
+        if (isSingular(determinant, ata00 + ata11)) {
+            return STATUS_DEGENERATE;
+        }
+        double px = (ata11 * atb0 - ata01 * atb1) / determinant;
+        double py = (ata00 * atb1 - ata01 * atb0) / determinant;
+
+        // refine with Gauss-Newton on f_i(p) = |p - beacon_i| - r_i
+        double jtj00 = 0, jtj01 = 0, jtj11 = 0;
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            jtj00 = 0;
+            jtj01 = 0;
+            jtj11 = 0;
+            double jtf0 = 0, jtf1 = 0;
+            for (int i = 0; i < count; i++) {
+                double w = weight == null ? 1 : weight[i];
+                double dx = px - x[i];
+                double dy = py - y[i];
+                double range = Math.sqrt(dx * dx + dy * dy);
+                if (range < MIN_RANGE) range = MIN_RANGE;
+                double jx = dx / range;
+                double jy = dy / range;
+                double f = range - distance[i];
+                jtj00 += w * jx * jx;
+                jtj01 += w * jx * jy;
+                jtj11 += w * jy * jy;
+                jtf0 += w * jx * f;
+                jtf1 += w * jy * f;
+            }
+            determinant = jtj00 * jtj11 - jtj01 * jtj01;
+            if (isSingular(determinant, jtj00 + jtj11)) {
+                return STATUS_DEGENERATE;
+            }
+            double stepX = (jtj11 * jtf0 - jtj01 * jtf1) / determinant;
+            double stepY = (jtj00 * jtf1 - jtj01 * jtf0) / determinant;
+            px -= stepX;
+            py -= stepY;
+            if (stepX * stepX + stepY * stepY < CONVERGENCE_THRESHOLD * CONVERGENCE_THRESHOLD) {
+                break;
+            }
+        }
+
+        if (Double.isNaN(px) || Double.isNaN(py) || Double.isInfinite(px) || Double.isInfinite(py)) {
+            return STATUS_DEGENERATE;
+        }
+
+        // weighted residual at the solution
+        double sumSquares = 0;
+        double sumWeights = 0;
+        for (int i = 0; i < count; i++) {
+            double w = weight == null ? 1 : weight[i];
+            double dx = px - x[i];
+            double dy = py - y[i];
+            double f = Math.sqrt(dx * dx + dy * dy) - distance[i];
+            sumSquares += w * f * f;
+            sumWeights += w;
+        }
+
+        // covariance = (J^T W J)^-1.  With ranges to spare, inflate it if they disagree by
+        // more than their variances, but never shrink it below what the ranges promise
+        double variance = count > MIN_BEACONS ? Math.max(1, sumSquares / (count - 2)) : 1;
+        result[RESULT_X] = px;
+        result[RESULT_Y] = py;
+        result[RESULT_RESIDUAL] = sumWeights > 0 ? Math.sqrt(sumSquares / sumWeights) : 0;
+        result[RESULT_COVARIANCE_XX] = variance * jtj11 / determinant;
+        result[RESULT_COVARIANCE_XY] = -variance * jtj01 / determinant;
+        result[RESULT_COVARIANCE_YY] = variance * jtj00 / determinant;
+        return STATUS_OK;
+    }
+
+    /**
+     * @return <b>true</b> if a symmetric 2x2 matrix is too close to singular to invert
+     */
+    static boolean isSingular(double determinant, double trace) {
+        return !(determinant > SINGULAR_THRESHOLD * trace * trace);
+    }
+}
@@ -0,0 +1,195 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressed hash map from primitive long keys to int values.
+ *
+ * Keys and values live in flat arrays and collisions are resolved by linear probing, so
+ * lookups and updates never create objects.  Memory is only allocated when the map grows.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class LongIntMap {
+    public static final int NOT_FOUND = -1;
+
+    private static final long EMPTY_KEY = Long.MIN_VALUE; // reserved, can not be stored
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] mKeys;
+    private int[] mValues;
+    private int mMask;
+    private int mSize = 0;
+
+    /**
+     * Create a LongIntMap
+     */
+    public LongIntMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a LongIntMap
+     *
+     * @param expectedSize number of keys to hold before the map needs to grow
+     */
+    public LongIntMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Get the value stored for a key
+     *
+     * @param key the key
+     * @return the value, or NOT_FOUND if the key is not in the map
+     */
+    public int get(long key) {
+        int slot = hash(key) & mMask;
+        while (mKeys[slot] != EMPTY_KEY) {
+            if (mKeys[slot] == key) {
+                return mValues[slot];
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Check if a key is in the map
+     *
+     * @param key the key
+     * @return <b>true</b> if the key is stored
+     */
+    public boolean containsKey(long key) {
+        return get(key) != NOT_FOUND;
+    }
+
+    /**
+     * Store a value for a key, replacing any previous value
+     *
+     * @param key the key.  Long.MIN_VALUE is reserved
+     * @param value the value
+     */
+    public void put(long key, int value) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("Long.MIN_VALUE can not be used as a key");
+        }
+        if ((mSize + 1) * 2 > mKeys.length) {
+            rehash(mKeys.length * 2);
+        }
+        int slot = hash(key) & mMask;
+        while (mKeys[slot] != EMPTY_KEY) {
+            if (mKeys[slot] == key) {
+                mValues[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        mKeys[slot] = key;
+        mValues[slot] = value;
+        mSize++;
+    }
+
+    /**
+     * Remove a key from the map
+     *
+     * @param key the key
+     * @return the value that was stored, or NOT_FOUND
+     */
+    public int remove(long key) {
+        int slot = hash(key) & mMask;
+        while (mKeys[slot] != EMPTY_KEY) {
+            if (mKeys[slot] == key) {
+                int value = mValues[slot];
+                closeGap(slot);
+                mSize--;
+                return value;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Number of keys in the map
+     *
+     * @return the size
+     */
+    public int size() { return mSize; }
+
+    /**
+     * Remove every key from the map, keeping the allocated memory
+     */
+    public void clear() {
+        Arrays.fill(mKeys, EMPTY_KEY);
+        mSize = 0;
+    }
+
+    /**
+     * Shift later entries of a probe chain back into a freed slot so lookups still find them
+     *
+     * @param gap the freed slot
+     */
+    private void closeGap(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mMask;
+            long key = mKeys[slot];
+            if (key == EMPTY_KEY) {
+                break;
+            }
+            int home = hash(key) & mMask;
+            // move the entry only if its home slot is not between the gap and its current slot
+            boolean movable = (slot > gap) ? (home <= gap || home > slot) : (home <= gap && home > slot);
+            if (movable) {
+                mKeys[gap] = key;
+                mValues[gap] = mValues[slot];
+                gap = slot;
+            }
+        }
+        mKeys[gap] = EMPTY_KEY;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = mKeys;
+        int[] oldValues = mValues;
+        allocate(capacity);
+        for (int index = 0; index < oldKeys.length; index++) {
+            long key = oldKeys[index];
+            if (key != EMPTY_KEY) {
+                int slot = hash(key) & mMask;
+                while (mKeys[slot] != EMPTY_KEY) {
+                    slot = (slot + 1) & mMask;
+                }
+                mKeys[slot] = key;
+                mValues[slot] = oldValues[index];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        mMask = capacity - 1;
+        Arrays.fill(mKeys, EMPTY_KEY);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Scramble the key bits so sequential MAC addresses spread across the table
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,144 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free queue of motion samples from one producer thread to one consumer thread.
+ *
+ * The sensor counterpart of AdvertisementRingBuffer: every slot is preallocated, neither side
+ * allocates or blocks, and when the queue is full new samples are dropped and counted.  The
+ * consumer reads the current sample in place until the next poll().
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class MotionRingBuffer {
+    public static final int DEFAULT_CAPACITY = 512; // over 2 seconds of two sensors at 100 Hz
+
+    private final int mCapacity;
+    private final int mMask;
+
+    /** Slots **/
+    private final int[] mSensor;
+    private final long[] mTimestamp_ns;
+    private final float[] mX;
+    private final float[] mY;
+    private final float[] mZ;
+
+    private final AtomicLong mHead = new AtomicLong(); // next slot to write
+    private final AtomicLong mTail = new AtomicLong(); // next slot to free
+    private volatile long mDroppedCount = 0; // only written by the producer
+
+    /** Producer state **/
+    private long mCachedTail = 0;
+
+    /** Consumer state **/
+    private long mCachedHead = 0;
+    private long mReadPosition = 0;
+    private boolean mIsHoldingSlot = false;
+    private int mSlot;
+
+    /**
+     * Create a MotionRingBuffer
+     *
+     * @param capacity how many samples can wait.  Rounded up to a power of two
+     */
+    public MotionRingBuffer(int capacity) {
+        int roundedCapacity = Integer.highestOneBit(Math.max(1, capacity));
+        if (roundedCapacity < capacity) {
+            roundedCapacity <<= 1;
+        }
+        mCapacity = roundedCapacity;
+        mMask = roundedCapacity - 1;
+        mSensor = new int[roundedCapacity];
+        mTimestamp_ns = new long[roundedCapacity];
+        mX = new float[roundedCapacity];
+        mY = new float[roundedCapacity];
+        mZ = new float[roundedCapacity];
+    }
+
+    /**
+     * Create a MotionRingBuffer with DEFAULT_CAPACITY
+     */
+    public MotionRingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public int getCapacity() { return mCapacity; }
+
+    /**
+     * @return how many samples were dropped because the queue was full
+     */
+    public long getDroppedCount() { return mDroppedCount; }
+
+    /**
+     * @return roughly how many samples are waiting
+     */
+    public int size() {
+        return (int) (mHead.get() - mTail.get());
+    }
+
+    /**
+     * Add a sample.  Only call from the producer thread
+     *
+     * @param sensor MotionSensor.SENSOR_ACCELEROMETER or MotionSensor.SENSOR_GYROSCOPE
+     * @param timestamp_ns when the sample was taken, in nanoseconds
+     * @param x value along the device x axis
+     * @param y value along the device y axis
+     * @param z value along the device z axis
+     * @return <b>false</b> if the queue was full and the sample was dropped
+     */
+    public boolean offer(int sensor, long timestamp_ns, float x, float y, float z) {
+        long head = mHead.get();
+        if (head - mCachedTail >= mCapacity) {
+            mCachedTail = mTail.get();
+            if (head - mCachedTail >= mCapacity) {
+                mDroppedCount++;
+                return false;
+            }
+        }
+
+        int slot = (int) head & mMask;
+        mSensor[slot] = sensor;
+        mTimestamp_ns[slot] = timestamp_ns;
+        mX[slot] = x;
+        mY[slot] = y;
+        mZ[slot] = z;
+
+        // publish the slot after its contents
+        mHead.lazySet(head + 1);
+        return true;
+    }
+
+    /**
+     * Move to the next sample, freeing the current one.  Only call from the consumer thread
+     *
+     * @return <b>false</b> if the queue is empty
+     */
+    public boolean poll() {
+        if (mIsHoldingSlot) {
+            mReadPosition++;
+            mTail.lazySet(mReadPosition);
+            mIsHoldingSlot = false;
+        }
+        if (mReadPosition >= mCachedHead) {
+            mCachedHead = mHead.get();
+            if (mReadPosition >= mCachedHead) {
+                return false;
+            }
+        }
+        mSlot = (int) mReadPosition & mMask;
+        mIsHoldingSlot = true;
+        return true;
+    }
+
+    public int getSensor() { return mSensor[mSlot]; }
+
+    public long getTimestampNanos() { return mTimestamp_ns[mSlot]; }
+
+    public float getX() { return mX[mSlot]; }
+
+    public float getY() { return mY[mSlot]; }
+
+    public float getZ() { return mZ[mSlot]; }
+}
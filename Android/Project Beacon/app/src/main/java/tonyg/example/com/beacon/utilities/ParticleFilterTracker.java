@@ -0,0 +1,491 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tracks the Central with a particle filter.
+ *
+ * Each particle is a guess of the position and velocity of the Central.  Particles are moved by
+ * the motion model, weighted by how well they explain each measurement, and resampled when
+ * too few of them carry the weight.  Unlike the KalmanTracker, the particle cloud can follow
+ * the curved, lopsided uncertainty that ranges to only a few Beacons produce.
+ *
+ * Particles are stored in preallocated primitive arrays.  The predict and weigh steps touch
+ * each particle independently, so they are split into chunks that run across several threads.
+ * Each chunk but the last has a thread of its own, which waits parked between updates, and the
+ * calling thread runs the last chunk and waits for the others, so an update neither allocates
+ * nor queues anything.  Call shutdown() when the tracker is no longer needed.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class ParticleFilterTracker implements PositionTracker {
+    public static final int DEFAULT_PARTICLE_COUNT = 1000;
+    public static final double DEFAULT_ACCELERATION_NOISE = KalmanTracker.DEFAULT_ACCELERATION_NOISE;
+
+    private static final int MIN_PARTICLES_PER_CHUNK = 256;
+    private static final double RESAMPLE_THRESHOLD = 0.5; // of the particle count
+    private static final double MIN_VARIANCE = 1e-6;
+
+    /** Measurement handed to the chunks **/
+    private static final int MEASUREMENT_FIX = 0;
+    private static final int MEASUREMENT_RANGES = 1;
+
+    private final int mMotionModel;
+    private final double mAccelerationNoise;
+    private final int mParticleCount;
+
+    /** Particles **/
+    private double[] mX;
+    private double[] mY;
+    private double[] mVelocityX;
+    private double[] mVelocityY;
+    private double[] mWeight; // normalized
+    private double[] mLogLikelihood; // of the current measurement
+    /** Resampling destination, swapped with the particles **/
+    private double[] mNextX;
+    private double[] mNextY;
+    private double[] mNextVelocityX;
+    private double[] mNextVelocityY;
+
+    private final Chunk[] mChunks;
+    private final XorShiftRandom mResampleRandom;
+
+    /** Chunk threads, one for each chunk but the last **/
+    private final Thread[] mWorkers;
+    private final AtomicInteger mPendingChunks = new AtomicInteger();
+    private volatile int mGeneration = 0; // advanced by the calling thread to start a step
+    private volatile Thread mCaller; // woken by the last chunk to finish
+    private volatile boolean mIsShutdown = false;
+
+    /** Current step, read by the chunks **/
+    private double mDt;
+    private int mMeasurement;
+    private double mFixX, mFixY, mInverseXX, mInverseXY, mInverseYY;
+    private double[] mBeaconX, mBeaconY, mDistance, mVariance;
+    private int mBeaconCount;
+
+    private boolean mIsInitialized = false;
+    private long mTimestamp_ms;
+
+    /**
+     * Create a ParticleFilterTracker that uses every available core
+     *
+     * @param motionModel MOTION_STATIONARY or MOTION_CONSTANT_VELOCITY
+     */
+    public ParticleFilterTracker(int motionModel) {
+        this(motionModel, DEFAULT_ACCELERATION_NOISE, DEFAULT_PARTICLE_COUNT, Runtime.getRuntime().availableProcessors(), System.nanoTime());
+    }
+
+    /**
+     * Create a ParticleFilterTracker
+     *
+     * @param motionModel MOTION_STATIONARY or MOTION_CONSTANT_VELOCITY
+     * @param accelerationNoise how abruptly the Central may change speed, in (m/s^2)^2.
+     *                          For MOTION_STATIONARY, how far it may wander, in m^2/s
+     * @param particleCount number of particles
+     * @param threadCount number of threads the update is split across
+     * @param seed random seed, so runs can be repeated
+     */
+    public ParticleFilterTracker(int motionModel, double accelerationNoise, int particleCount, int threadCount, long seed) {
+        mMotionModel = motionModel;
+        mAccelerationNoise = accelerationNoise;
+        mParticleCount = Math.max(1, particleCount);
+
+        mX = new double[mParticleCount];
+        mY = new double[mParticleCount];
+        mVelocityX = new double[mParticleCount];
+        mVelocityY = new double[mParticleCount];
+        mWeight = new double[mParticleCount];
+        mLogLikelihood = new double[mParticleCount];
+        mNextX = new double[mParticleCount];
+        mNextY = new double[mParticleCount];
+        mNextVelocityX = new double[mParticleCount];
+        mNextVelocityY = new double[mParticleCount];
+
+        int chunkCount = Math.max(1, Math.min(threadCount, mParticleCount / MIN_PARTICLES_PER_CHUNK));
+        mChunks = new Chunk[chunkCount];
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            mChunks[chunk] = new Chunk(
+                    mParticleCount * chunk / chunkCount,
+                    mParticleCount * (chunk + 1) / chunkCount,
+                    seed + chunk);
+        }
+        mResampleRandom = new XorShiftRandom(seed - 1);
+
+        // the calling thread runs the last chunk itself
+        mWorkers = new Thread[chunkCount - 1];
+        for (int worker = 0; worker < mWorkers.length; worker++) {
+            mWorkers[worker] = new Thread(new Worker(mChunks[worker]), "ParticleFilterTracker");
+            mWorkers[worker].setDaemon(true);
+            mWorkers[worker].start();
+        }
+    }
+
+    @Override
+    public void updateWithFix(long timestamp_ms, double x, double y, double covarianceXX, double covarianceXY, double covarianceYY) {
+        covarianceXX = Math.max(covarianceXX, MIN_VARIANCE);
+        covarianceYY = Math.max(covarianceYY, MIN_VARIANCE);
+        if (!mIsInitialized) {
+            initialize(timestamp_ms, x, y, covarianceXX, covarianceXY, covarianceYY);
+            return;
+        }
+        double determinant = covarianceXX * covarianceYY - covarianceXY * covarianceXY;
+        if (determinant <= 0) {
+            return;
+        }
+        mMeasurement = MEASUREMENT_FIX;
+        mFixX = x;
+        mFixY = y;
+        mInverseXX = covarianceYY / determinant;
+        mInverseXY = -covarianceXY / determinant;
+        mInverseYY = covarianceXX / determinant;
+        step(timestamp_ms);
+    }
+
+    @Override
+    public void updateWithRanges(long timestamp_ms, double[] beaconX, double[] beaconY, double[] distance, double[] variance, int count) {
+        if (!mIsInitialized || count == 0) {
+            // ranges alone can not place a new track.  Wait for a fix
+            return;
+        }
+        mMeasurement = MEASUREMENT_RANGES;
+        mBeaconX = beaconX;
+        mBeaconY = beaconY;
+        mDistance = distance;
+        mVariance = variance;
+        mBeaconCount = count;
+        step(timestamp_ms);
+        mBeaconX = mBeaconY = mDistance = mVariance = null;
+    }
+
+    @Override
+    public boolean getState(long timestamp_ms, double[] state) {
+        if (!mIsInitialized) {
+            return false;
+        }
+        double dt = Math.max(0, (timestamp_ms - mTimestamp_ms) / 1000.0);
+
+        double meanX = 0, meanY = 0, meanVelocityX = 0, meanVelocityY = 0;
+        for (int particle = 0; particle < mParticleCount; particle++) {
+            double weight = mWeight[particle];
+            meanX += weight * (mX[particle] + dt * mVelocityX[particle]);
+            meanY += weight * (mY[particle] + dt * mVelocityY[particle]);
+            meanVelocityX += weight * mVelocityX[particle];
+            meanVelocityY += weight * mVelocityY[particle];
+        }
+
+        double xx = 0, xy = 0, yy = 0;
+        for (int particle = 0; particle < mParticleCount; particle++) {
+            double weight = mWeight[particle];
+            double dx = mX[particle] + dt * mVelocityX[particle] - meanX;
+            double dy = mY[particle] + dt * mVelocityY[particle] - meanY;
+            xx += weight * dx * dx;
+            xy += weight * dx * dy;
+            yy += weight * dy * dy;
+        }
+        double processNoise = mMotionModel == MOTION_STATIONARY
+                ? mAccelerationNoise * dt
+                : mAccelerationNoise * dt * dt * dt / 3;
+
+        state[STATE_X] = meanX;
+        state[STATE_Y] = meanY;
+        state[STATE_VELOCITY_X] = meanVelocityX;
+        state[STATE_VELOCITY_Y] = meanVelocityY;
+        state[STATE_COVARIANCE_XX] = xx + processNoise;
+        state[STATE_COVARIANCE_XY] = xy;
+        state[STATE_COVARIANCE_YY] = yy + processNoise;
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        mIsInitialized = false;
+    }
+
+    /**
+     * Stop the chunk threads.  Later updates run every chunk on the calling thread.  Only call
+     * from the thread that updates the tracker
+     */
+    public void shutdown() {
+        mIsShutdown = true;
+        for (Thread worker : mWorkers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Spread the particles over the uncertainty of the first fix
+     */
+    private void initialize(long timestamp_ms, double x, double y, double covarianceXX, double covarianceXY, double covarianceYY) {
+        // Cholesky factor of the covariance turns two standard normals into a correlated sample
+        double l00 = Math.sqrt(covarianceXX);
+        double l10 = covarianceXY / l00;
+        double l11 = Math.sqrt(Math.max(covarianceYY - l10 * l10, 0));
+        double velocityDeviation = mMotionModel == MOTION_CONSTANT_VELOCITY
+                ? Math.sqrt(KalmanTracker.DEFAULT_INITIAL_VELOCITY_VARIANCE)
+                : 0;
+        XorShiftRandom random = mResampleRandom;
+        for (int particle = 0; particle < mParticleCount; particle++) {
+            double u = random.nextGaussian();
+            double v = random.nextGaussian();
+            mX[particle] = x + l00 * u;
+            mY[particle] = y + l10 * u + l11 * v;
+            mVelocityX[particle] = velocityDeviation * random.nextGaussian();
+            mVelocityY[particle] = velocityDeviation * random.nextGaussian();
+        }
+        Arrays.fill(mWeight, 1.0 / mParticleCount);
+        mTimestamp_ms = timestamp_ms;
+        mIsInitialized = true;
+    }
+
+    /**
+     * Predict and weigh every particle, then resample
+     */
+    private void step(long timestamp_ms) {
+        mDt = Math.max(0, (timestamp_ms - mTimestamp_ms) / 1000.0);
+        if (timestamp_ms > mTimestamp_ms) {
+            mTimestamp_ms = timestamp_ms;
+        }
+
+        int last = mChunks.length - 1;
+        if (last == 0 || mIsShutdown) {
+            for (Chunk chunk : mChunks) {
+                chunk.run();
+            }
+        } else {
+            // the volatile write of the generation publishes the step to the chunk threads
+            mCaller = Thread.currentThread();
+            mPendingChunks.set(last);
+            mGeneration++;
+            for (Thread worker : mWorkers) {
+                LockSupport.unpark(worker);
+            }
+            mChunks[last].run();
+            while (mPendingChunks.get() > 0) {
+                LockSupport.park(this);
+            }
+        }
+
+        normalizeWeights();
+        resample();
+    }
+
+    /**
+     * Multiply each weight by the likelihood of the measurement, then scale the weights to sum to one
+     */
+    private void normalizeWeights() {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int particle = 0; particle < mParticleCount; particle++) {
+            if (mLogLikelihood[particle] > max) max = mLogLikelihood[particle];
+        }
+        double sum = 0;
+        for (int particle = 0; particle < mParticleCount; particle++) {
+            double weight = mWeight[particle] * Math.exp(mLogLikelihood[particle] - max);
+            mWeight[particle] = weight;
+            sum += weight;
+        }
+        if (sum <= 0) {
+            // every particle carried no weight.  Start over from equal weights
+            Arrays.fill(mWeight, 1.0 / mParticleCount);
+            return;
+        }
+        for (int particle = 0; particle < mParticleCount; particle++) {
+            mWeight[particle] /= sum;
+        }
+    }
+
+    /**
+     * Systematic resampling: one random offset, then evenly spaced picks along the cumulative weight.
+     * Skipped while the weight is still spread over enough particles.
+     */
+    private void resample() {
+        double squares = 0;
+        for (int particle = 0; particle < mParticleCount; particle++) {
+            squares += mWeight[particle] * mWeight[particle];
+        }
+        double effectiveCount = 1 / squares;
+        if (effectiveCount >= RESAMPLE_THRESHOLD * mParticleCount) {
+            return;
+        }
+
+        double spacing = 1.0 / mParticleCount;
+        double target = mResampleRandom.nextDouble() * spacing;
+        double cumulative = mWeight[0];
+        int source = 0;
+        for (int particle = 0; particle < mParticleCount; particle++) {
+            while (target > cumulative && source < mParticleCount - 1) {
+                source++;
+                cumulative += mWeight[source];
+            }
+            mNextX[particle] = mX[source];
+            mNextY[particle] = mY[source];
+            mNextVelocityX[particle] = mVelocityX[source];
+            mNextVelocityY[particle] = mVelocityY[source];
+            target += spacing;
+        }
+
+        double[] swap;
+        swap = mX; mX = mNextX; mNextX = swap;
+        swap = mY; mY = mNextY; mNextY = swap;
+        swap = mVelocityX; mVelocityX = mNextVelocityX; mNextVelocityX = swap;
+        swap = mVelocityY; mVelocityY = mNextVelocityY; mNextVelocityY = swap;
+        Arrays.fill(mWeight, spacing);
+    }
+
+    /**
+     * A contiguous range of particles, moved and weighed by one thread
+     */
+    private class Chunk implements Runnable {
+        private final int mStart;
+        private final int mEnd;
+        private final XorShiftRandom mRandom;
+
+        Chunk(int start, int end, long seed) {
+            mStart = start;
+            mEnd = end;
+            mRandom = new XorShiftRandom(seed);
+        }
+
+        @Override
+        public void run() {
+            predict();
+            if (mMeasurement == MEASUREMENT_FIX) {
+                weighFix();
+            } else {
+                weighRanges();
+            }
+        }
+
+        private void predict() {
+            double dt = mDt;
+            if (dt <= 0) return;
+            double[] x = mX, y = mY, velocityX = mVelocityX, velocityY = mVelocityY;
+            if (mMotionModel == MOTION_STATIONARY) {
+                double deviation = Math.sqrt(mAccelerationNoise * dt);
+                for (int particle = mStart; particle < mEnd; particle++) {
+                    x[particle] += deviation * mRandom.nextGaussian();
+                    y[particle] += deviation * mRandom.nextGaussian();
+                }
+            } else {
+                double deviation = Math.sqrt(mAccelerationNoise * dt);
+                for (int particle = mStart; particle < mEnd; particle++) {
+                    double dvx = deviation * mRandom.nextGaussian();
+                    double dvy = deviation * mRandom.nextGaussian();
+                    // the average velocity over the step moves the particle
+                    x[particle] += dt * (velocityX[particle] + dvx / 2);
+                    y[particle] += dt * (velocityY[particle] + dvy / 2);
+                    velocityX[particle] += dvx;
+                    velocityY[particle] += dvy;
+                }
+            }
+        }
+
+        private void weighFix() {
+            double[] x = mX, y = mY, weight = mLogLikelihood;
+            double fixX = mFixX, fixY = mFixY;
+            double inverseXX = mInverseXX, inverseXY = mInverseXY, inverseYY = mInverseYY;
+            for (int particle = mStart; particle < mEnd; particle++) {
+                double dx = x[particle] - fixX;
+                double dy = y[particle] - fixY;
+                weight[particle] = -0.5 * (dx * dx * inverseXX + 2 * dx * dy * inverseXY + dy * dy * inverseYY);
+            }
+        }
+
+        private void weighRanges() {
+            double[] x = mX, y = mY, weight = mLogLikelihood;
+            for (int particle = mStart; particle < mEnd; particle++) {
+                weight[particle] = 0;
+            }
+            // one Beacon at a time keeps the inner loop over contiguous particle arrays
+            for (int beacon = 0; beacon < mBeaconCount; beacon++) {
+                double beaconX = mBeaconX[beacon];
+                double beaconY = mBeaconY[beacon];
+                double distance = mDistance[beacon];
+                double halfPrecision = 0.5 / Math.max(mVariance[beacon], MIN_VARIANCE);
+                for (int particle = mStart; particle < mEnd; particle++) {
+                    double dx = x[particle] - beaconX;
+                    double dy = y[particle] - beaconY;
+                    double error = Math.sqrt(dx * dx + dy * dy) - distance;
+                    weight[particle] -= halfPrecision * error * error;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one chunk each time the calling thread starts a step, until shutdown()
+     */
+    private class Worker implements Runnable {
+        private final Chunk mChunk;
+
+        Worker(Chunk chunk) {
+            mChunk = chunk;
+        }
+
+        @Override
+        public void run() {
+            int generation = 0;
+            while (true) {
+                while (mGeneration == generation && !mIsShutdown) {
+                    LockSupport.park(this);
+                }
+                if (mGeneration == generation) {
+                    return;
+                }
+                generation = mGeneration;
+                try {
+                    mChunk.run();
+                } finally {
+                    if (mPendingChunks.decrementAndGet() == 0) {
+                        LockSupport.unpark(mCaller);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Small unsynchronized random number generator, one per thread
+     */
+    private static class XorShiftRandom {
+        private long mState;
+        private double mSpareGaussian;
+        private boolean mHasSpareGaussian = false;
+
+        XorShiftRandom(long seed) {
+            // mix the seed so neighbouring seeds give unrelated sequences
+            long state = seed + 0x9E3779B97F4A7C15L;
+            state = (state ^ (state >>> 30)) * 0xBF58476D1CE4E5B9L;
+            state = (state ^ (state >>> 27)) * 0x94D049BB133111EBL;
+            mState = (state ^ (state >>> 31)) | 1;
+        }
+
+        double nextDouble() {
+            mState ^= mState << 13;
+            mState ^= mState >>> 7;
+            mState ^= mState << 17;
+            return (mState >>> 11) * 0x1.0p-53;
+        }
+
+        double nextGaussian() {
+            if (mHasSpareGaussian) {
+                mHasSpareGaussian = false;
+                return mSpareGaussian;
+            }
+            // Marsaglia polar method, makes two samples at a time
+            double u, v, s;
+            do {
+                u = 2 * nextDouble() - 1;
+                v = 2 * nextDouble() - 1;
+                s = u * u + v * v;
+            } while (s >= 1 || s == 0);
+            double scale = Math.sqrt(-2 * Math.log(s) / s);
+            mSpareGaussian = v * scale;
+            mHasSpareGaussian = true;
+            return u * scale;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.util.Arrays;
+
+/**
+ * Learns the radio propagation of each Beacon from RSSI samples taken at known distances.
+ *
+ * The log-distance path loss model says a Beacon at distance d is heard at
+ *
+ *   rssi = referenceRssi + offset - 10 * n * log10(d)
+ *
+ * where n is the path loss exponent and offset corrects the reference RSSI the Beacon reports.
+ * Each Beacon keeps the running sums of a weighted linear regression of rssi - referenceRssi
+ * against -10 * log10(d), so a sample is folded in with a handful of multiplications.  Older
+ * samples slowly lose weight, so the fit follows changes in the room.  A prior pulls the fit
+ * towards the default exponent and no offset, which keeps it sensible while the samples are
+ * few or all at about the same distance.
+ *
+ * The sums are what should be saved between sessions.  Per Beacon state is kept in primitive
+ * arrays indexed by BeaconTable row, like RssiFilter.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class PathLossCalibrator {
+    public static final double DEFAULT_FORGETTING_FACTOR = 0.999; // about the last thousand samples count
+    public static final double DEFAULT_PRIOR_WEIGHT = 10; // samples the prior is worth
+    public static final double MIN_PATH_LOSS_EXPONENT = 1.5;
+    public static final double MAX_PATH_LOSS_EXPONENT = 6;
+
+    /** Layout of the saved statistics **/
+    public static final int STATISTIC_WEIGHT = 0;
+    public static final int STATISTIC_U = 1; // u = -10 * log10(distance)
+    public static final int STATISTIC_V = 2; // v = rssi - referenceRssi
+    public static final int STATISTIC_UU = 3;
+    public static final int STATISTIC_UV = 4;
+    public static final int STATISTIC_LENGTH = 5;
+
+    private static final double PRIOR_SPREAD_DB = 5; // typical spread of u, scales the prior on n
+    private static final double MIN_DISTANCE = 0.1; // meters, log10 goes to infinity below this
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final double mDefaultExponent;
+    private final double mForgettingFactor;
+    private final double mPriorWeight;
+
+    /** Per Beacon sums **/
+    private double[] mStatistics; // STATISTIC_LENGTH entries per Beacon
+    private double[] mExponent;
+    private double[] mOffset;
+
+    /**
+     * Create a PathLossCalibrator
+     *
+     * @param defaultExponent the path loss exponent before any samples are taken
+     */
+    public PathLossCalibrator(double defaultExponent) {
+        this(defaultExponent, DEFAULT_FORGETTING_FACTOR, DEFAULT_PRIOR_WEIGHT, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a PathLossCalibrator
+     *
+     * @param defaultExponent the path loss exponent before any samples are taken
+     * @param forgettingFactor how much weight earlier samples keep each time a sample is added, between 0 and 1
+     * @param priorWeight how many samples it takes to move the fit as far from the default as the data says
+     * @param capacity number of Beacons to hold before the calibrator needs to grow
+     */
+    public PathLossCalibrator(double defaultExponent, double forgettingFactor, double priorWeight, int capacity) {
+        mDefaultExponent = defaultExponent;
+        mForgettingFactor = forgettingFactor;
+        mPriorWeight = priorWeight;
+        allocate(Math.max(1, capacity));
+    }
+
+    /**
+     * Add an RSSI sample taken at a known distance from a Beacon
+     *
+     * @param row the Beacon row
+     * @param referenceRssi the reference RSSI the Beacon reports
+     * @param rssi the RSSI sample, or a filtered RSSI
+     * @param distance_m the true distance to the Beacon, in meters
+     * @param weight how much the sample counts, usually 1
+     */
+    public void update(int row, int referenceRssi, double rssi, double distance_m, double weight) {
+        if (row >= mExponent.length) {
+            allocate(Math.max(row + 1, mExponent.length * 2));
+        }
+        double u = -10 * Math.log10(Math.max(distance_m, MIN_DISTANCE));
+        double v = rssi - referenceRssi;
+        int offset = row * STATISTIC_LENGTH;
+        mStatistics[offset + STATISTIC_WEIGHT] = mForgettingFactor * mStatistics[offset + STATISTIC_WEIGHT] + weight;
+        mStatistics[offset + STATISTIC_U] = mForgettingFactor * mStatistics[offset + STATISTIC_U] + weight * u;
+        mStatistics[offset + STATISTIC_V] = mForgettingFactor * mStatistics[offset + STATISTIC_V] + weight * v;
+        mStatistics[offset + STATISTIC_UU] = mForgettingFactor * mStatistics[offset + STATISTIC_UU] + weight * u * u;
+        mStatistics[offset + STATISTIC_UV] = mForgettingFactor * mStatistics[offset + STATISTIC_UV] + weight * u * v;
+        fit(row);
+    }
+
+    /**
+     * Get the fitted path loss exponent of a Beacon
+     *
+     * @param row the Beacon row
+     * @return the exponent n, or the default if the Beacon has no samples
+     */
+    public double getPathLossExponent(int row) {
+        return row < mExponent.length ? mExponent[row] : mDefaultExponent;
+    }
+
+    /**
+     * Get the fitted correction to the reference RSSI of a Beacon
+     *
+     * @param row the Beacon row
+     * @return the offset in dBm, or 0 if the Beacon has no samples
+     */
+    public double getReferenceRssiOffset(int row) {
+        return row < mOffset.length ? mOffset[row] : 0;
+    }
+
+    /**
+     * Get the weight of the samples behind a fit, after forgetting
+     *
+     * @param row the Beacon row
+     * @return the sum of the sample weights
+     */
+    public double getSampleWeight(int row) {
+        return row < mExponent.length ? mStatistics[row * STATISTIC_LENGTH + STATISTIC_WEIGHT] : 0;
+    }
+
+    /**
+     * Copy the regression sums of a Beacon, to save them
+     *
+     * @param row the Beacon row
+     * @param statistics array of at least STATISTIC_LENGTH
+     */
+    public void getStatistics(int row, double[] statistics) {
+        if (row < mExponent.length) {
+            System.arraycopy(mStatistics, row * STATISTIC_LENGTH, statistics, 0, STATISTIC_LENGTH);
+        } else {
+            Arrays.fill(statistics, 0, STATISTIC_LENGTH, 0);
+        }
+    }
+
+    /**
+     * Replace the regression sums of a Beacon with saved ones
+     *
+     * @param row the Beacon row
+     * @param statistics array of at least STATISTIC_LENGTH, from getStatistics()
+     */
+    public void setStatistics(int row, double[] statistics) {
+        if (row >= mExponent.length) {
+            allocate(Math.max(row + 1, mExponent.length * 2));
+        }
+        System.arraycopy(statistics, 0, mStatistics, row * STATISTIC_LENGTH, STATISTIC_LENGTH);
+        fit(row);
+    }
+
+    /**
+     * Forget the samples of one Beacon
+     *
+     * @param row the Beacon row
+     */
+    public void reset(int row) {
+        if (row < mExponent.length) {
+            Arrays.fill(mStatistics, row * STATISTIC_LENGTH, (row + 1) * STATISTIC_LENGTH, 0);
+            mExponent[row] = mDefaultExponent;
+            mOffset[row] = 0;
+        }
+    }
+
+    /**
+     * Forget every Beacon
+     */
+    public void clear() {
+        Arrays.fill(mStatistics, 0);
+        Arrays.fill(mExponent, mDefaultExponent);
+        Arrays.fill(mOffset, 0);
+    }
+
+    /**
+     * Solve the regularized normal equations for the offset and exponent:
+     *
+     *   | w + p         su           | |offset|   | sv                   |
+     *   | su            suu + p*s^2  | |  n   | = | suv + p*s^2*default  |
+     */
+    private void fit(int row) {
+        int offset = row * STATISTIC_LENGTH;
+        double priorExponentWeight = mPriorWeight * PRIOR_SPREAD_DB * PRIOR_SPREAD_DB;
+        double a00 = mStatistics[offset + STATISTIC_WEIGHT] + mPriorWeight;
+        double a01 = mStatistics[offset + STATISTIC_U];
+        double a11 = mStatistics[offset + STATISTIC_UU] + priorExponentWeight;
+        double b0 = mStatistics[offset + STATISTIC_V];
+        double b1 = mStatistics[offset + STATISTIC_UV] + priorExponentWeight * mDefaultExponent;
+        double determinant = a00 * a11 - a01 * a01;
+        if (determinant <= 0) {
+            mExponent[row] = mDefaultExponent;
+            mOffset[row] = 0;
+            return;
+        }
+        double exponent = (a00 * b1 - a01 * b0) / determinant;
+        exponent = Math.max(MIN_PATH_LOSS_EXPONENT, Math.min(MAX_PATH_LOSS_EXPONENT, exponent));
+        mExponent[row] = exponent;
+        // refit the offset for the clamped exponent
+        mOffset[row] = (b0 - a01 * exponent) / a00;
+    }
+
+    private void allocate(int capacity) {
+        int oldCapacity = mExponent == null ? 0 : mExponent.length;
+        mStatistics = mStatistics == null ? new double[capacity * STATISTIC_LENGTH] : Arrays.copyOf(mStatistics, capacity * STATISTIC_LENGTH);
+        mExponent = mExponent == null ? new double[capacity] : Arrays.copyOf(mExponent, capacity);
+        mOffset = mOffset == null ? new double[capacity] : Arrays.copyOf(mOffset, capacity);
+        Arrays.fill(mExponent, oldCapacity, capacity, mDefaultExponent);
+    }
+}
@@ -0,0 +1,409 @@
+package tonyg.example.com.beacon.utilities;
+
+import tonyg.example.com.beacon.sensors.MotionSensor;
+
+/**
+ * Tracks the Central by pedestrian dead reckoning between Beacon fixes, with an extended
+ * Kalman filter over position, heading, step length and gyroscope bias.
+ *
+ * A StepDetector finds steps in the accelerometer samples.  Each step moves the Central one
+ * step length along its heading, and the gyroscope's rotation rate about gravity turns the
+ * heading in between.  The gyroscope alone only knows how far the Central has turned, not
+ * which way it faces, so the heading starts out unknown.  Fixes and ranges from the Beacons
+ * pull the position back, and through the correlations the steps build up, also learn the
+ * heading, the walker's step length and the gyroscope's bias.
+ *
+ * Beacon fixes arrive a few times a second, but the track moves with every sensor sample,
+ * so the position can be read at the sensor rate.  Between steps getState() carries the
+ * Central forward at its walking speed.  Fixes far outside the track's uncertainty are
+ * dropped as outliers, until enough of them in a row show the track itself is lost.
+ *
+ * Without motion samples it behaves like a KalmanTracker with the stationary model.  All
+ * matrices are preallocated, so updates do not allocate.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class PdrFusionTracker implements PositionTracker {
+    public static final double DEFAULT_STEP_LENGTH_M = 0.7;
+    public static final double MIN_STEP_LENGTH_M = 0.3;
+    public static final double MAX_STEP_LENGTH_M = 1.2;
+
+    /** Layout of the filter state **/
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int HEADING = 2; // radians counterclockwise from the x axis
+    private static final int STEP_LENGTH = 3; // meters
+    private static final int GYROSCOPE_BIAS = 4; // rad/s about the vertical
+    private static final int N = 5;
+
+    private static final double INITIAL_HEADING_VARIANCE = Math.PI * Math.PI; // any direction
+    private static final double INITIAL_STEP_LENGTH_VARIANCE = 0.01; // m^2
+    private static final double INITIAL_GYROSCOPE_BIAS_VARIANCE = 4e-4; // (rad/s)^2
+    private static final double HEADING_NOISE = 1e-3; // rad^2/s, gyroscope noise and the phone shifting in hand
+    private static final double GYROSCOPE_BIAS_NOISE = 1e-7; // (rad/s)^2/s
+    private static final double STEP_POSITION_NOISE = 0.01; // m^2 per step
+    private static final double STEP_LENGTH_NOISE = 1e-4; // m^2 per step
+    private static final double POSITION_NOISE = 0.05; // m^2/s, movement the steps miss
+    private static final double FIX_GATE = 13.8; // chi-square, 2 degrees of freedom, 99.9%
+    private static final int MAX_REJECTED_FIXES = 5;
+    private static final double MAX_GYROSCOPE_INTERVAL_S = 0.5;
+    private static final double MIN_RANGE = 1e-6;
+    private static final double MIN_COVARIANCE = 1e-30; // smaller correlations decay into slow denormals
+    private static final long NANOS_PER_MS = 1000000L;
+
+    private final StepDetector mStepDetector;
+
+    private final double[] mState = new double[N];
+    private final double[] mCovariance = new double[N * N]; // row major
+    private final double[] mGain = new double[N * 2];
+    private final double[] mScratch = new double[N * N];
+    private boolean mIsInitialized = false;
+    private long mTimestamp_ns; // when position noise was last added
+    private long mGyroscopeTimestamp_ns;
+    private boolean mHasGyroscopeSample = false;
+    private int mRejectedFixCount = 0;
+
+    /**
+     * Create a PdrFusionTracker
+     */
+    public PdrFusionTracker() {
+        this(new StepDetector());
+    }
+
+    /**
+     * Create a PdrFusionTracker
+     *
+     * @param stepDetector finds steps in the accelerometer samples
+     */
+    public PdrFusionTracker(StepDetector stepDetector) {
+        mStepDetector = stepDetector;
+    }
+
+    /**
+     * Add a motion sample.  Samples must arrive in the order they were taken
+     *
+     * @param sensor MotionSensor.SENSOR_ACCELEROMETER or MotionSensor.SENSOR_GYROSCOPE
+     * @param timestamp_ns when the sample was taken, in nanoseconds on the same clock as the fixes
+     * @param x value along the device x axis
+     * @param y value along the device y axis
+     * @param z value along the device z axis
+     * @return <b>true</b> if the track moved or turned
+     */
+    public boolean onMotionSample(int sensor, long timestamp_ns, float x, float y, float z) {
+        if (sensor == MotionSensor.SENSOR_ACCELEROMETER) {
+            if (!mStepDetector.update(timestamp_ns, x, y, z) || !mIsInitialized) {
+                return false;
+            }
+            predict(timestamp_ns);
+            step();
+            return true;
+        }
+        if (sensor != MotionSensor.SENSOR_GYROSCOPE) {
+            return false;
+        }
+
+        double dt = (timestamp_ns - mGyroscopeTimestamp_ns) / 1e9;
+        boolean isContinuous = mHasGyroscopeSample && dt > 0 && dt <= MAX_GYROSCOPE_INTERVAL_S;
+        mGyroscopeTimestamp_ns = timestamp_ns;
+        mHasGyroscopeSample = true;
+        if (!isContinuous || !mIsInitialized || !mStepDetector.hasGravity()) {
+            return false;
+        }
+        turn(mStepDetector.getVerticalComponent(x, y, z), dt);
+        return true;
+    }
+
+    /**
+     * @return the heading of the Central in radians counterclockwise from the x axis.  Only
+     *         meaningful once the Central has walked between a few fixes
+     */
+    public double getHeading() { return mState[HEADING]; }
+
+    /**
+     * @return the learned step length in meters
+     */
+    public double getStepLength() { return mState[STEP_LENGTH]; }
+
+    /**
+     * @return the learned gyroscope bias about the vertical, in rad/s
+     */
+    public double getGyroscopeBias() { return mState[GYROSCOPE_BIAS]; }
+
+    public int getStepCount() { return mStepDetector.getStepCount(); }
+
+    @Override
+    public void updateWithFix(long timestamp_ms, double x, double y, double covarianceXX, double covarianceXY, double covarianceYY) {
+        if (!mIsInitialized) {
+            initialize(timestamp_ms * NANOS_PER_MS, x, y, covarianceXX, covarianceXY, covarianceYY);
+            return;
+        }
+        predict(timestamp_ms * NANOS_PER_MS);
+
+        double[] p = mCovariance;
+        // innovation covariance S = H P H^T + R, where H picks out the position
+        double s00 = p[X * N + X] + covarianceXX;
+        double s01 = p[X * N + Y] + covarianceXY;
+        double s11 = p[Y * N + Y] + covarianceYY;
+        double determinant = s00 * s11 - s01 * s01;
+        if (determinant <= 0) {
+            return;
+        }
+        double i00 = s11 / determinant;
+        double i01 = -s01 / determinant;
+        double i11 = s00 / determinant;
+
+        double innovationX = x - mState[X];
+        double innovationY = y - mState[Y];
+        double distance2 = innovationX * (i00 * innovationX + i01 * innovationY)
+                + innovationY * (i01 * innovationX + i11 * innovationY);
+        if (distance2 > FIX_GATE) {
+            if (++mRejectedFixCount < MAX_REJECTED_FIXES) {
+                return;
+            }
+            // the fixes agree with each other but not with the track.  Start over from them,
+            // keeping what was learned about the walker and the gyroscope
+            relocate(x, y, covarianceXX, covarianceXY, covarianceYY);
+            return;
+        }
+        mRejectedFixCount = 0;
+
+        // gain K = P H^T S^-1
+        for (int row = 0; row < N; row++) {
+            double p0 = p[row * N + X];
+            double p1 = p[row * N + Y];
+            mGain[row * 2] = p0 * i00 + p1 * i01;
+            mGain[row * 2 + 1] = p0 * i01 + p1 * i11;
+        }
+        for (int row = 0; row < N; row++) {
+            mState[row] += mGain[row * 2] * innovationX + mGain[row * 2 + 1] * innovationY;
+        }
+
+        // P = (I - K H) P
+        for (int row = 0; row < N; row++) {
+            for (int column = 0; column < N; column++) {
+                mScratch[row * N + column] = p[row * N + column]
+                        - mGain[row * 2] * p[X * N + column]
+                        - mGain[row * 2 + 1] * p[Y * N + column];
+            }
+        }
+        System.arraycopy(mScratch, 0, p, 0, N * N);
+        symmetrize(p);
+        constrain();
+    }
+
+    @Override
+    public void updateWithRanges(long timestamp_ms, double[] beaconX, double[] beaconY, double[] distance, double[] variance, int count) {
+        if (!mIsInitialized) {
+            // ranges alone can not place a new track.  Wait for a fix
+            return;
+        }
+        predict(timestamp_ms * NANOS_PER_MS);
+
+        double[] p = mCovariance;
+        for (int beacon = 0; beacon < count; beacon++) {
+            double dx = mState[X] - beaconX[beacon];
+            double dy = mState[Y] - beaconY[beacon];
+            double range = Math.sqrt(dx * dx + dy * dy);
+            if (range < MIN_RANGE) continue;
+            double hx = dx / range;
+            double hy = dy / range;
+
+            // S = H P H^T + r, K = P H^T / S
+            double s = variance[beacon];
+            for (int row = 0; row < N; row++) {
+                mGain[row] = p[row * N + X] * hx + p[row * N + Y] * hy;
+            }
+            s += mGain[X] * hx + mGain[Y] * hy;
+            if (s <= 0) continue;
+
+            double innovation = distance[beacon] - range;
+            for (int row = 0; row < N; row++) {
+                mState[row] += mGain[row] / s * innovation;
+            }
+            // P = P - (P H^T)(H P) / S
+            for (int row = 0; row < N; row++) {
+                for (int column = 0; column < N; column++) {
+                    p[row * N + column] -= mGain[row] * mGain[column] / s;
+                }
+            }
+            symmetrize(p);
+        }
+        constrain();
+    }
+
+    @Override
+    public boolean getState(long timestamp_ms, double[] state) {
+        if (!mIsInitialized) {
+            return false;
+        }
+        // between steps, carry the Central forward at the pace of its last steps
+        double x = mState[X];
+        double y = mState[Y];
+        double velocityX = 0;
+        double velocityY = 0;
+        long stepInterval_ns = mStepDetector.getStepIntervalNanos();
+        long sinceStep_ns = timestamp_ms * NANOS_PER_MS - mStepDetector.getStepTimestampNanos();
+        if (stepInterval_ns > 0 && sinceStep_ns >= 0
+                && sinceStep_ns < StepDetector.MAX_STEP_INTERVAL_MS * NANOS_PER_MS) {
+            double speed = mState[STEP_LENGTH] / (stepInterval_ns / 1e9);
+            velocityX = speed * Math.cos(mState[HEADING]);
+            velocityY = speed * Math.sin(mState[HEADING]);
+            double dt = Math.min(sinceStep_ns, stepInterval_ns) / 1e9;
+            x += velocityX * dt;
+            y += velocityY * dt;
+        }
+        state[STATE_X] = x;
+        state[STATE_Y] = y;
+        state[STATE_VELOCITY_X] = velocityX;
+        state[STATE_VELOCITY_Y] = velocityY;
+        state[STATE_COVARIANCE_XX] = mCovariance[X * N + X];
+        state[STATE_COVARIANCE_XY] = mCovariance[X * N + Y];
+        state[STATE_COVARIANCE_YY] = mCovariance[Y * N + Y];
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        mIsInitialized = false;
+        mHasGyroscopeSample = false;
+        mRejectedFixCount = 0;
+        mStepDetector.reset();
+    }
+
+    private void initialize(long timestamp_ns, double x, double y, double covarianceXX, double covarianceXY, double covarianceYY) {
+        for (int index = 0; index < N * N; index++) {
+            mCovariance[index] = 0;
+        }
+        mState[HEADING] = 0;
+        mState[STEP_LENGTH] = DEFAULT_STEP_LENGTH_M;
+        mState[GYROSCOPE_BIAS] = 0;
+        mCovariance[HEADING * N + HEADING] = INITIAL_HEADING_VARIANCE;
+        mCovariance[STEP_LENGTH * N + STEP_LENGTH] = INITIAL_STEP_LENGTH_VARIANCE;
+        mCovariance[GYROSCOPE_BIAS * N + GYROSCOPE_BIAS] = INITIAL_GYROSCOPE_BIAS_VARIANCE;
+        relocate(x, y, covarianceXX, covarianceXY, covarianceYY);
+        mTimestamp_ns = timestamp_ns;
+        mIsInitialized = true;
+    }
+
+    /**
+     * Move the track to a fix, forgetting how its position was correlated with the rest of the
+     * state.  The heading is forgotten too, since a lost track has usually lost its heading
+     */
+    private void relocate(double x, double y, double covarianceXX, double covarianceXY, double covarianceYY) {
+        for (int index = 0; index < N; index++) {
+            mCovariance[X * N + index] = 0;
+            mCovariance[Y * N + index] = 0;
+            mCovariance[index * N + X] = 0;
+            mCovariance[index * N + Y] = 0;
+            mCovariance[HEADING * N + index] = 0;
+            mCovariance[index * N + HEADING] = 0;
+        }
+        mState[X] = x;
+        mState[Y] = y;
+        mCovariance[X * N + X] = covarianceXX;
+        mCovariance[X * N + Y] = covarianceXY;
+        mCovariance[Y * N + X] = covarianceXY;
+        mCovariance[Y * N + Y] = covarianceYY;
+        mCovariance[HEADING * N + HEADING] = INITIAL_HEADING_VARIANCE;
+        mRejectedFixCount = 0;
+    }
+
+    /**
+     * Let the position wander for the time since the last prediction, for movement the steps
+     * did not account for
+     */
+    private void predict(long timestamp_ns) {
+        double dt = (timestamp_ns - mTimestamp_ns) / 1e9;
+        if (dt > 0) {
+            mCovariance[X * N + X] += POSITION_NOISE * dt;
+            mCovariance[Y * N + Y] += POSITION_NOISE * dt;
+            mTimestamp_ns = timestamp_ns;
+        }
+    }
+
+    /**
+     * Turn the heading by the rotation rate about gravity, less the bias.
+     * F is the identity but for d(heading)/d(bias) = -dt
+     */
+    private void turn(double rotationRate, double dt) {
+        double[] p = mCovariance;
+        mState[HEADING] = wrapAngle(mState[HEADING] + (rotationRate - mState[GYROSCOPE_BIAS]) * dt);
+
+        // P F^T then F (P F^T)
+        for (int row = 0; row < N; row++) {
+            p[row * N + HEADING] -= dt * p[row * N + GYROSCOPE_BIAS];
+        }
+        for (int column = 0; column < N; column++) {
+            p[HEADING * N + column] -= dt * p[GYROSCOPE_BIAS * N + column];
+        }
+        p[HEADING * N + HEADING] += HEADING_NOISE * dt;
+        p[GYROSCOPE_BIAS * N + GYROSCOPE_BIAS] += GYROSCOPE_BIAS_NOISE * dt;
+
+        // no heading is less certain than any direction at all.  Scaling its row and column
+        // together keeps the covariance positive definite
+        double headingVariance = p[HEADING * N + HEADING];
+        if (headingVariance > INITIAL_HEADING_VARIANCE) {
+            double scale = Math.sqrt(INITIAL_HEADING_VARIANCE / headingVariance);
+            for (int index = 0; index < N; index++) {
+                p[HEADING * N + index] *= scale;
+                p[index * N + HEADING] *= scale;
+            }
+        }
+    }
+
+    /**
+     * Move one step length along the heading.  F adds the derivatives of the step with respect
+     * to heading and step length to the position rows
+     */
+    private void step() {
+        double[] p = mCovariance;
+        double cos = Math.cos(mState[HEADING]);
+        double sin = Math.sin(mState[HEADING]);
+        double length = mState[STEP_LENGTH];
+        mState[X] += length * cos;
+        mState[Y] += length * sin;
+
+        double xHeading = -length * sin, xLength = cos;
+        double yHeading = length * cos, yLength = sin;
+        for (int row = 0; row < N; row++) {
+            p[row * N + X] += xHeading * p[row * N + HEADING] + xLength * p[row * N + STEP_LENGTH];
+            p[row * N + Y] += yHeading * p[row * N + HEADING] + yLength * p[row * N + STEP_LENGTH];
+        }
+        for (int column = 0; column < N; column++) {
+            p[X * N + column] += xHeading * p[HEADING * N + column] + xLength * p[STEP_LENGTH * N + column];
+            p[Y * N + column] += yHeading * p[HEADING * N + column] + yLength * p[STEP_LENGTH * N + column];
+        }
+        p[X * N + X] += STEP_POSITION_NOISE;
+        p[Y * N + Y] += STEP_POSITION_NOISE;
+        p[STEP_LENGTH * N + STEP_LENGTH] += STEP_LENGTH_NOISE;
+    }
+
+    /**
+     * Keep the heading in range and the step length plausible after a measurement
+     */
+    private void constrain() {
+        mState[HEADING] = wrapAngle(mState[HEADING]);
+        mState[STEP_LENGTH] = Math.max(MIN_STEP_LENGTH_M, Math.min(MAX_STEP_LENGTH_M, mState[STEP_LENGTH]));
+    }
+
+    private static double wrapAngle(double angle) {
+        if (angle > Math.PI || angle <= -Math.PI) {
+            angle = Math.atan2(Math.sin(angle), Math.cos(angle));
+        }
+        return angle;
+    }
+
+    private static void symmetrize(double[] p) {
+        for (int row = 0; row < N; row++) {
+            for (int column = row + 1; column < N; column++) {
+                double average = (p[row * N + column] + p[column * N + row]) / 2;
+                if (Math.abs(average) < MIN_COVARIANCE) {
+                    average = 0;
+                }
+                p[row * N + column] = average;
+                p[column * N + row] = average;
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package tonyg.example.com.beacon.utilities;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+
+/**
+ * An immutable copy of the Beacons and the Central at one moment.
+ *
+ * The PositioningWorker owns the BeaconTable and the tracker.  It hands the UI a snapshot
+ * instead, which can be read on any thread for as long as it is needed.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public final class PositionSnapshot {
+    private final long mTimestamp_ns;
+    private final int mStatus;
+    private final boolean mIsCentralLocated;
+    private final double[] mCentralState = new double[PositionTracker.STATE_LENGTH];
+
+    /** Beacon columns **/
+    private final int mBeaconCount;
+    private final long[] mMacAddress;
+    private final int[] mRssi;
+    private final int[] mReferenceRssi;
+    private final double[] mX;
+    private final double[] mY;
+    private final double[] mDistance;
+    private final boolean[] mIsLocated;
+
+    /**
+     * Copy the Beacons and the Central
+     *
+     * @param timestamp_ns when the snapshot was taken, in nanoseconds
+     * @param status the LeastSquaresLocator status of the last position update
+     * @param beaconTable the Beacons
+     * @param centralState the PositionTracker state of the Central, or <b>null</b> if it has not been located
+     */
+    public PositionSnapshot(long timestamp_ns, int status, BeaconTable beaconTable, double[] centralState) {
+        mTimestamp_ns = timestamp_ns;
+        mStatus = status;
+        mIsCentralLocated = centralState != null;
+        if (centralState != null) {
+            System.arraycopy(centralState, 0, mCentralState, 0, PositionTracker.STATE_LENGTH);
+        }
+
+        int count = beaconTable.size();
+        mBeaconCount = count;
+        mMacAddress = new long[count];
+        mRssi = new int[count];
+        mReferenceRssi = new int[count];
+        mX = new double[count];
+        mY = new double[count];
+        mDistance = new double[count];
+        mIsLocated = new boolean[count];
+        for (int row = 0; row < count; row++) {
+            mMacAddress[row] = beaconTable.getMacAddress(row);
+            mRssi[row] = beaconTable.getRssi(row);
+            mReferenceRssi[row] = beaconTable.getReferenceRssi(row);
+            mX[row] = beaconTable.getXLocation(row);
+            mY[row] = beaconTable.getYLocation(row);
+            mDistance[row] = beaconTable.getDistance(row);
+            mIsLocated[row] = beaconTable.isLocated(row);
+        }
+    }
+
+    /**
+     * Copy the Central, and share the Beacons of an earlier snapshot.  Snapshots never change,
+     * so when only the Central has moved the Beacon columns need not be copied again
+     *
+     * @param previous the snapshot whose Beacons and status are still current
+     * @param timestamp_ns when the snapshot was taken, in nanoseconds
+     * @param centralState the PositionTracker state of the Central, or <b>null</b> if it has not been located
+     */
+    public PositionSnapshot(PositionSnapshot previous, long timestamp_ns, double[] centralState) {
+        mTimestamp_ns = timestamp_ns;
+        mStatus = previous.mStatus;
+        mIsCentralLocated = centralState != null;
+        if (centralState != null) {
+            System.arraycopy(centralState, 0, mCentralState, 0, PositionTracker.STATE_LENGTH);
+        }
+
+        mBeaconCount = previous.mBeaconCount;
+        mMacAddress = previous.mMacAddress;
+        mRssi = previous.mRssi;
+        mReferenceRssi = previous.mReferenceRssi;
+        mX = previous.mX;
+        mY = previous.mY;
+        mDistance = previous.mDistance;
+        mIsLocated = previous.mIsLocated;
+    }
+
+    public long getTimestampNanos() { return mTimestamp_ns; }
+
+    /**
+     * Check if this snapshot shares its Beacons with another, so nothing about them has changed
+     *
+     * @param other another snapshot, or <b>null</b>
+     * @return <b>true</b> if the Beacon columns are the same
+     */
+    public boolean hasSameBeacons(PositionSnapshot other) {
+        return other != null && other.mMacAddress == mMacAddress;
+    }
+
+    /**
+     * @return the LeastSquaresLocator status of the last position update
+     */
+    public int getStatus() { return mStatus; }
+
+    /**
+     * @return <b>true</b> if the Central has been located
+     */
+    public boolean isCentralLocated() { return mIsCentralLocated; }
+
+    /**
+     * Get part of the state of the Central
+     *
+     * @param index one of the PositionTracker.STATE_ indices
+     * @return the value
+     */
+    public double getCentralState(int index) { return mCentralState[index]; }
+
+    public double getCentralX() { return mCentralState[PositionTracker.STATE_X]; }
+
+    public double getCentralY() { return mCentralState[PositionTracker.STATE_Y]; }
+
+    public int getBeaconCount() { return mBeaconCount; }
+
+    public long getMacAddress(int row) { return mMacAddress[row]; }
+
+    public int getRssi(int row) { return mRssi[row]; }
+
+    public int getReferenceRssi(int row) { return mReferenceRssi[row]; }
+
+    public double getXLocation(int row) { return mX[row]; }
+
+    public double getYLocation(int row) { return mY[row]; }
+
+    public double getDistance(int row) { return mDistance[row]; }
+
+    public boolean isLocated(int row) { return mIsLocated[row]; }
+}
@@ -0,0 +1,64 @@
+package tonyg.example.com.beacon.utilities;
+
+/**
+ * Tracks the position and velocity of the Central over successive measurements.
+ *
+ * A tracker can be updated with whole position fixes from a solver, or directly with the
+ * ranges to individual Beacons.  Between measurements it predicts motion with its motion model.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public interface PositionTracker {
+    /** Motion models **/
+    int MOTION_STATIONARY = 0; // the Central wanders randomly around its last position
+    int MOTION_CONSTANT_VELOCITY = 1; // the Central keeps moving in the same direction
+
+    /** Layout of the state array **/
+    int STATE_X = 0;
+    int STATE_Y = 1;
+    int STATE_VELOCITY_X = 2;
+    int STATE_VELOCITY_Y = 3;
+    int STATE_COVARIANCE_XX = 4;
+    int STATE_COVARIANCE_XY = 5;
+    int STATE_COVARIANCE_YY = 6;
+    int STATE_LENGTH = 7;
+
+    /**
+     * Update the track with a position fix
+     *
+     * @param timestamp_ms when the fix was measured, in milliseconds
+     * @param x x position in meters
+     * @param y y position in meters
+     * @param covarianceXX variance of x in meters^2
+     * @param covarianceXY covariance of x and y in meters^2
+     * @param covarianceYY variance of y in meters^2
+     */
+    void updateWithFix(long timestamp_ms, double x, double y, double covarianceXX, double covarianceXY, double covarianceYY);
+
+    /**
+     * Update the track with the ranges to several Beacons
+     *
+     * @param timestamp_ms when the ranges were measured, in milliseconds
+     * @param beaconX Beacon x locations in meters
+     * @param beaconY Beacon y locations in meters
+     * @param distance distance to each Beacon in meters
+     * @param variance variance of each distance in meters^2
+     * @param count number of Beacons to use from the start of each array
+     */
+    void updateWithRanges(long timestamp_ms, double[] beaconX, double[] beaconY, double[] distance, double[] variance, int count);
+
+    /**
+     * Get the predicted state of the Central
+     *
+     * @param timestamp_ms the time to predict the state at, in milliseconds
+     * @param state array of at least STATE_LENGTH that receives the state
+     * @return <b>false</b> if the tracker has not received a measurement yet
+     */
+    boolean getState(long timestamp_ms, double[] state);
+
+    /**
+     * Forget the track
+     */
+    void reset();
+}
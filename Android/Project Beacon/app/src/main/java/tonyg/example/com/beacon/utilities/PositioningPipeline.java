@@ -0,0 +1,567 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.util.Arrays;
+
+import tonyg.example.com.beacon.ble.BeaconAdvertisement;
+import tonyg.example.com.beacon.ble.BeaconTable;
+import tonyg.example.com.beacon.ble.BleBeacon;
+
+/**
+ * Turns advertisements into a position for the Central.
+ *
+ * Each advertisement updates the Beacon's row in the BeaconTable, its filtered RSSI and its
+ * distance.  updatePosition() then solves for the Central and feeds the fix to the tracker.
+ * Once the Central is being tracked and many Beacons are located, only the Beacons nearest
+ * the tracked position are solved for, narrowed by an AnchorSelector to the ones with the
+ * best geometry.  Sets of Beacons too close to a line are rejected without solving.
+ *
+ * Beacons that have not been heard for longer than the maximum Beacon age are left out of
+ * fixes, so a Beacon the Central has walked away from does not hold it to its last range.
+ *
+ * Fixes from several Beacons also calibrate the path loss of each of those Beacons, so
+ * distances come from a learned propagation model rather than one constant.  Each Beacon is
+ * calibrated against a fix solved without it, so it never learns from its own range.
+ *
+ * On a site with several floors, a FloorClassifier decides which floor the Central is on from
+ * the Beacons heard, and only Beacons on that floor are solved for.  When every one of them
+ * knows its height the Central is located in three dimensions, so the height difference to
+ * ceiling mounted Beacons is no longer folded into the horizontal ranges.
+ *
+ * Given a RadioMap, the pipeline locates the Central by fingerprinting instead, and only
+ * trilaterates when the scan matches nothing in the map.
+ *
+ * With a PdrFusionTracker, motion samples move the track between fixes by dead reckoning,
+ * so the Central can be followed at the sensor rate rather than the fix rate.
+ * Nothing here depends on Android, so the same pipeline runs in the app and against a
+ * SimulatedBleRadio on a desktop.
+ *
+ * The pipeline is not thread safe.  Advertisements and position updates must not run at the
+ * same time.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class PositioningPipeline {
+    public static final long DEFAULT_POSITION_UPDATE_INTERVAL_MS = 250;
+    public static final int DEFAULT_ANCHOR_COUNT = 8; // Beacons solved for around the tracked position
+    public static final int ALL_ANCHORS = 0;
+    public static final double DEFAULT_BEACON_HEIGHT_ABOVE_CENTRAL_M = 1.5; // ceiling mounted Beacons, a phone in hand
+    public static final long DEFAULT_MAX_BEACON_AGE_MS = 10000; // several missed scan windows
+    public static final long NO_MAX_BEACON_AGE = 0;
+
+    private static final int CANDIDATES_PER_ANCHOR = 2; // nearest Beacons the AnchorSelector chooses from
+    private static final int MIN_CALIBRATION_BEACONS = LeastSquaresLocator.MIN_BEACONS + 1; // one left out, the rest still give a fix
+    private static final double MAX_CALIBRATION_VARIANCE = 0.25; // meters^2, fixes the ranges place more loosely than this do not calibrate
+    private static final double CENTRAL_HEIGHT_VARIANCE = 1; // meters^2, how far the Central may be from its expected height
+    private static final long NANOS_PER_MS = 1000000L;
+
+    /**
+     * Decides which Peripherals are Beacons and learns where new Beacons are
+     */
+    public interface Listener {
+        /**
+         * A Peripheral that does not broadcast its location was heard for the first time
+         *
+         * @param macAddress the packed MAC address
+         * @param scanRecord the raw advertisement data, or <b>null</b>
+         * @return <b>true</b> if the Peripheral is a Beacon that should be tracked
+         */
+        boolean isBeacon(long macAddress, byte[] scanRecord);
+
+        /**
+         * A Beacon was added to the BeaconTable
+         *
+         * @param row the Beacon row
+         * @param macAddress the packed MAC address
+         * @param isLocated <b>true</b> if the location came with the advertisement
+         */
+        void onBeaconAdded(int row, long macAddress, boolean isLocated);
+    }
+
+    private final BeaconTable mBeaconTable;
+    private final RssiFilter mRssiFilter;
+    private final PositionTracker mPositionTracker;
+    private final PdrFusionTracker mFusionTracker; // null if the tracker takes no motion samples
+    private final Listener mListener;
+
+    private double[] mCentralFix = new double[LeastSquares3dLocator.RESULT_LENGTH];
+    private boolean mHasCentralZ = false;
+    private double mCentralPriorZ;
+    private double[] mTrackedState = new double[PositionTracker.STATE_LENGTH];
+    private int mAnchorCount = DEFAULT_ANCHOR_COUNT;
+    private final AnchorSelector mAnchorSelector = new AnchorSelector();
+    private final PathLossCalibrator mPathLossCalibrator = new PathLossCalibrator(BleBeacon.RADIO_PROPAGATION_CONSTANT);
+    private boolean mIsCalibrating = true;
+
+    /** Leave one out fixes for calibration **/
+    private double[] mCalibrationFix = new double[LeastSquares3dLocator.RESULT_LENGTH];
+    private double[] mCalibrationX = new double[16];
+    private double[] mCalibrationY = new double[16];
+    private double[] mCalibrationZ = new double[16];
+    private double[] mCalibrationDistance = new double[16];
+    private double[] mCalibrationWeight = new double[16];
+    private int[] mCalibratedSampleCount = new int[16]; // per Beacon row, at its last calibration
+
+    private final FloorClassifier mFloorClassifier = new FloorClassifier();
+    private double mBeaconHeightAboveCentral = DEFAULT_BEACON_HEIGHT_ABOVE_CENTRAL_M;
+    private FingerprintLocator mFingerprintLocator; // null to trilaterate
+    private long mPositionUpdateInterval_ns = DEFAULT_POSITION_UPDATE_INTERVAL_MS * NANOS_PER_MS;
+    private long mMaxBeaconAge_ns = DEFAULT_MAX_BEACON_AGE_MS * NANOS_PER_MS;
+    private long mLastPositionUpdate_ns = 0;
+    private boolean mHasPositionUpdate = false;
+
+    /**
+     * Create a PositioningPipeline
+     *
+     * @param beaconTable where Beacon state is kept
+     * @param rssiFilter smooths the RSSI of each Beacon
+     * @param positionTracker smooths successive fixes
+     * @param listener decides which Peripherals are Beacons
+     */
+    public PositioningPipeline(BeaconTable beaconTable, RssiFilter rssiFilter, PositionTracker positionTracker, Listener listener) {
+        mBeaconTable = beaconTable;
+        mRssiFilter = rssiFilter;
+        mPositionTracker = positionTracker;
+        mFusionTracker = positionTracker instanceof PdrFusionTracker ? (PdrFusionTracker) positionTracker : null;
+        mListener = listener;
+    }
+
+    public BeaconTable getBeaconTable() { return mBeaconTable; }
+
+    /**
+     * @return the path loss model of each Beacon.  Only touch it from the thread that runs the pipeline
+     */
+    public PathLossCalibrator getPathLossCalibrator() { return mPathLossCalibrator; }
+
+    /**
+     * Set whether confident fixes calibrate the path loss of the Beacons they were solved from
+     *
+     * @param isCalibrating <b>false</b> to keep the current calibration
+     */
+    public void setCalibrating(boolean isCalibrating) {
+        mIsCalibrating = isCalibrating;
+    }
+
+    /**
+     * Set how often isPositionUpdateDue() allows a position update
+     *
+     * @param positionUpdateInterval_ms minimum time between position updates, in milliseconds
+     */
+    public void setPositionUpdateInterval(long positionUpdateInterval_ms) {
+        mPositionUpdateInterval_ns = positionUpdateInterval_ms * NANOS_PER_MS;
+    }
+
+    /**
+     * Set how long a Beacon may go unheard before it is left out of fixes
+     *
+     * @param maxBeaconAge_ms the maximum age in milliseconds, or NO_MAX_BEACON_AGE to use every Beacon ever heard
+     */
+    public void setMaxBeaconAge(long maxBeaconAge_ms) {
+        mMaxBeaconAge_ns = maxBeaconAge_ms * NANOS_PER_MS;
+    }
+
+    /**
+     * Set how many Beacons around the tracked position are solved for
+     *
+     * @param anchorCount at least LeastSquaresLocator.MIN_BEACONS, or ALL_ANCHORS to always solve for every located Beacon
+     */
+    public void setAnchorCount(int anchorCount) {
+        mAnchorCount = anchorCount;
+    }
+
+    /**
+     * Set how far below the Beacons the Central is expected to be.  The ranges only refine this,
+     * since Beacons at the same height can not tell above them from below them
+     *
+     * @param beaconHeightAboveCentral_m height of the Beacons above the Central, in meters
+     */
+    public void setBeaconHeightAboveCentral(double beaconHeightAboveCentral_m) {
+        mBeaconHeightAboveCentral = beaconHeightAboveCentral_m;
+    }
+
+    /**
+     * Locate the Central by fingerprinting
+     *
+     * @param radioMap an indexed survey of the venue, or <b>null</b> to trilaterate
+     */
+    public void setRadioMap(RadioMap radioMap) {
+        mFingerprintLocator = radioMap == null ? null : new FingerprintLocator(radioMap);
+    }
+
+    /**
+     * Forget every Beacon and the track
+     */
+    public void clear() {
+        mBeaconTable.clear();
+        mRssiFilter.clear();
+        mPathLossCalibrator.clear();
+        Arrays.fill(mCalibratedSampleCount, 0);
+        mPositionTracker.reset();
+        mFloorClassifier.reset();
+        mHasPositionUpdate = false;
+    }
+
+    /**
+     * Stop any threads the tracker runs.  Call from the thread that runs the pipeline, once
+     * it is no longer needed
+     */
+    public void shutdown() {
+        if (mPositionTracker instanceof ParticleFilterTracker) {
+            ((ParticleFilterTracker) mPositionTracker).shutdown();
+        }
+    }
+
+    /**
+     * Process an advertisement
+     *
+     * @param macAddress the packed MAC address of the Peripheral
+     * @param rssi the RSSI of the advertisement
+     * @param scanRecord the raw advertisement data, or <b>null</b>
+     * @param timestamp_ns when the advertisement was received, in nanoseconds
+     * @return the Beacon row, or BeaconTable.NOT_FOUND if the Peripheral is not a Beacon
+     */
+    public int onAdvertisement(long macAddress, int rssi, byte[] scanRecord, long timestamp_ns) {
+        int row = mBeaconTable.indexOf(macAddress);
+        if (row == BeaconTable.NOT_FOUND) {
+            row = addBeacon(macAddress, rssi, scanRecord);
+            if (row == BeaconTable.NOT_FOUND) {
+                return row;
+            }
+        }
+
+        // refresh the signal strength of beacons we already know about
+        mBeaconTable.setRssi(row, rssi);
+        mBeaconTable.setLastHeardNanos(row, timestamp_ns);
+        mRssiFilter.update(row, rssi);
+        updateDistance(row);
+        return row;
+    }
+
+    /**
+     * Process an accelerometer or gyroscope sample
+     *
+     * @param sensor MotionSensor.SENSOR_ACCELEROMETER or MotionSensor.SENSOR_GYROSCOPE
+     * @param timestamp_ns when the sample was taken, in nanoseconds
+     * @param x value along the device x axis
+     * @param y value along the device y axis
+     * @param z value along the device z axis
+     * @return <b>true</b> if the tracked Central moved or turned
+     */
+    public boolean onMotionSample(int sensor, long timestamp_ns, float x, float y, float z) {
+        return mFusionTracker != null && mFusionTracker.onMotionSample(sensor, timestamp_ns, x, y, z);
+    }
+
+    /**
+     * Convert the filtered RSSI of a Beacon into a distance and distance variance.
+     * Call after the reference RSSI of a Beacon changes
+     *
+     * @param row the Beacon row
+     */
+    public void updateDistance(int row) {
+        if ((mBeaconTable.getFlags(row) & BeaconTable.FLAG_REFERENCE_RSSI) != 0 && mRssiFilter.getSampleCount(row) > 0) {
+            double exponent = mPathLossCalibrator.getPathLossExponent(row);
+            double rssi = mRssiFilter.getRssi(row) - mPathLossCalibrator.getReferenceRssiOffset(row);
+            double distance = BleBeacon.getDistanceFromRSSI(mBeaconTable.getReferenceRssi(row), exponent, rssi);
+            mBeaconTable.setDistance(row, distance);
+            mBeaconTable.setDistanceVariance(row, RssiFilter.getDistanceVariance(distance, exponent, mRssiFilter.getVariance(row)));
+        }
+    }
+
+    /**
+     * Check if the update interval has elapsed since the last position update, and if so
+     * claim the update
+     *
+     * @param timestamp_ns the current time, in nanoseconds
+     * @return <b>true</b> if the caller should call updatePosition()
+     */
+    public boolean isPositionUpdateDue(long timestamp_ns) {
+        if (mHasPositionUpdate && timestamp_ns - mLastPositionUpdate_ns < mPositionUpdateInterval_ns) {
+            return false;
+        }
+        mHasPositionUpdate = true;
+        mLastPositionUpdate_ns = timestamp_ns;
+        return true;
+    }
+
+    /**
+     * Locate the Central from the radio map or the located Beacons, and update the track
+     *
+     * @param timestamp_ns the current time, in nanoseconds
+     * @return a LeastSquaresLocator status
+     */
+    public int updatePosition(long timestamp_ns) {
+        long timestamp_ms = timestamp_ns / NANOS_PER_MS;
+        mBeaconTable.setHeardSince(mMaxBeaconAge_ns == NO_MAX_BEACON_AGE ? Long.MIN_VALUE : timestamp_ns - mMaxBeaconAge_ns);
+        mFloorClassifier.update(mBeaconTable, mRssiFilter);
+        mHasCentralZ = false;
+        boolean isFingerprinted = false;
+        int status = LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS;
+        if (mFingerprintLocator != null) {
+            status = locateByFingerprint();
+            isFingerprinted = status == LeastSquaresLocator.STATUS_OK;
+        }
+        if (!isFingerprinted) {
+            status = trilaterate(timestamp_ms);
+        }
+        if (status == LeastSquaresLocator.STATUS_OK) {
+            if (mIsCalibrating && !isFingerprinted) {
+                calibrate();
+            }
+            mPositionTracker.updateWithFix(
+                    timestamp_ms,
+                    mCentralFix[LeastSquaresLocator.RESULT_X],
+                    mCentralFix[LeastSquaresLocator.RESULT_Y],
+                    mCentralFix[LeastSquaresLocator.RESULT_COVARIANCE_XX],
+                    mCentralFix[LeastSquaresLocator.RESULT_COVARIANCE_XY],
+                    mCentralFix[LeastSquaresLocator.RESULT_COVARIANCE_YY]
+            );
+        } else {
+            // too few Beacons for a fix, but their ranges can still nudge an existing track
+            mPositionTracker.updateWithRanges(
+                    timestamp_ms,
+                    mBeaconTable.getSelectedX(),
+                    mBeaconTable.getSelectedY(),
+                    mBeaconTable.getSelectedDistance(),
+                    mBeaconTable.getSelectedVariance(),
+                    mBeaconTable.getSelectedCount()
+            );
+        }
+        return status;
+    }
+
+    /**
+     * Get the latest solver output
+     *
+     * @return the LeastSquaresLocator result array, followed by the LeastSquares3dLocator
+     *         height if hasCentralZ().  Overwritten by the next updatePosition()
+     */
+    public double[] getCentralFix() { return mCentralFix; }
+
+    /**
+     * @return <b>true</b> if the latest fix was solved in three dimensions
+     */
+    public boolean hasCentralZ() { return mHasCentralZ; }
+
+    /**
+     * @return the floor the Central is on, or FloorClassifier.UNKNOWN_FLOOR if no Beacon
+     *         broadcasts its floor
+     */
+    public int getCentralFloor() { return mFloorClassifier.getFloor(); }
+
+    /**
+     * Get the tracked state of the Central
+     *
+     * @param timestamp_ns the time to predict the state at, in nanoseconds
+     * @param state array of at least PositionTracker.STATE_LENGTH
+     * @return <b>false</b> if the Central has not been located yet
+     */
+    public boolean getCentralState(long timestamp_ns, double[] state) {
+        return mPositionTracker.getState(timestamp_ns / NANOS_PER_MS, state);
+    }
+
+    /**
+     * Solve for the Central from the Beacons around it, or from every located Beacon, on the
+     * Central's floor if it is known
+     */
+    private int trilaterate(long timestamp_ms) {
+        boolean hasFloor = mFloorClassifier.hasFloor();
+        int floor = mFloorClassifier.getFloor();
+        int locatedCount = hasFloor ? mBeaconTable.getLocatedCount(floor) : mBeaconTable.getLocatedCount();
+        int status = LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS;
+        if (mAnchorCount != ALL_ANCHORS
+                && locatedCount > mAnchorCount
+                && mPositionTracker.getState(timestamp_ms, mTrackedState)) {
+            // far away Beacons add noise and cost, but little geometry.  Of the Beacons
+            // around the Central, keep the ones that surround it best
+            double trackedX = mTrackedState[PositionTracker.STATE_X];
+            double trackedY = mTrackedState[PositionTracker.STATE_Y];
+            if (hasFloor) {
+                mBeaconTable.selectNearest(trackedX, trackedY, floor, mAnchorCount * CANDIDATES_PER_ANCHOR);
+            } else {
+                mBeaconTable.selectNearest(trackedX, trackedY, mAnchorCount * CANDIDATES_PER_ANCHOR);
+            }
+            status = mAnchorSelector.select(mBeaconTable, trackedX, trackedY, mAnchorCount);
+            if (status == LeastSquaresLocator.STATUS_OK) {
+                status = solveSelected();
+            }
+        }
+        if (status != LeastSquaresLocator.STATUS_OK) {
+            // no track yet, or the nearest Beacons are badly placed.  Skip the solve if
+            // every located Beacon together still can not give a fix
+            locatedCount = hasFloor ? mBeaconTable.selectLocated(floor) : mBeaconTable.selectLocated();
+            status = mAnchorSelector.select(mBeaconTable, locatedCount);
+            if (status == LeastSquaresLocator.STATUS_OK) {
+                status = solveSelected();
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Solve in three dimensions if every selected Beacon knows its height
+     */
+    private int solveSelected() {
+        int count = mBeaconTable.getSelectedCount();
+        if (mBeaconTable.getSelectedZCount() < count) {
+            return BeaconLocator.trilaterateSelected(mBeaconTable, mCentralFix);
+        }
+        double[] beaconZ = mBeaconTable.getSelectedZ();
+        double sumZ = 0;
+        for (int index = 0; index < count; index++) {
+            sumZ += beaconZ[index];
+        }
+        mCentralPriorZ = sumZ / count - mBeaconHeightAboveCentral;
+        int status = LeastSquares3dLocator.solve(
+                mBeaconTable.getSelectedX(),
+                mBeaconTable.getSelectedY(),
+                beaconZ,
+                mBeaconTable.getSelectedDistance(),
+                mBeaconTable.getSelectedWeight(),
+                count,
+                mCentralPriorZ,
+                CENTRAL_HEIGHT_VARIANCE,
+                mCentralFix
+        );
+        mHasCentralZ = status == LeastSquaresLocator.STATUS_OK;
+        return status;
+    }
+
+    /**
+     * Match the filtered RSSI of every Beacon heard within the maximum Beacon age against the radio map
+     */
+    private int locateByFingerprint() {
+        mFingerprintLocator.clearObservations();
+        int count = mBeaconTable.size();
+        for (int row = 0; row < count; row++) {
+            if (mRssiFilter.getSampleCount(row) > 0 && mBeaconTable.isHeardSince(row)) {
+                mFingerprintLocator.addObservation(mBeaconTable.getMacAddress(row), mRssiFilter.getRssi(row));
+            }
+        }
+        return mFingerprintLocator.locate(mCentralFix);
+    }
+
+    /**
+     * Fit each Beacon's path loss to its distance from a fix solved from the other Beacons.
+     * A fix that included its own range would be pulled towards that range, so a wrong path
+     * loss would confirm itself.  Only fixes that the other ranges place within
+     * MAX_CALIBRATION_VARIANCE calibrate, whatever their residual, so a Beacon whose path loss
+     * is far off can still be corrected.  A Beacon only calibrates once per filtered RSSI, so
+     * one that has not been heard since is not fitted again against wherever the Central is now
+     */
+    private void calibrate() {
+        int count = mBeaconTable.getSelectedCount();
+        if (count < MIN_CALIBRATION_BEACONS) {
+            return;
+        }
+        ensureCalibrationCapacity(count);
+        int[] rows = mBeaconTable.getSelectedRows();
+        double[] x = mBeaconTable.getSelectedX();
+        double[] y = mBeaconTable.getSelectedY();
+        double[] z = mBeaconTable.getSelectedZ();
+        double[] distance = mBeaconTable.getSelectedDistance();
+        double[] weight = mBeaconTable.getSelectedWeight();
+        for (int left = 0; left < count; left++) {
+            int row = rows[left];
+            int sampleCount = mRssiFilter.getSampleCount(row);
+            if (sampleCount == 0 || sampleCount == mCalibratedSampleCount[row]) continue;
+            mCalibratedSampleCount[row] = sampleCount;
+            int others = 0;
+            for (int index = 0; index < count; index++) {
+                if (index == left) continue;
+                mCalibrationX[others] = x[index];
+                mCalibrationY[others] = y[index];
+                mCalibrationZ[others] = z[index];
+                mCalibrationDistance[others] = distance[index];
+                mCalibrationWeight[others] = weight[index];
+                others++;
+            }
+            int status = mHasCentralZ
+                    ? LeastSquares3dLocator.solve(mCalibrationX, mCalibrationY, mCalibrationZ, mCalibrationDistance,
+                            mCalibrationWeight, others, mCentralPriorZ, CENTRAL_HEIGHT_VARIANCE, mCalibrationFix)
+                    : LeastSquaresLocator.solve(mCalibrationX, mCalibrationY, mCalibrationDistance,
+                            mCalibrationWeight, others, mCalibrationFix);
+            if (status != LeastSquaresLocator.STATUS_OK) continue;
+            double centralX = mCalibrationFix[LeastSquaresLocator.RESULT_X];
+            double centralY = mCalibrationFix[LeastSquaresLocator.RESULT_Y];
+            double centralZ = mHasCentralZ ? mCalibrationFix[LeastSquares3dLocator.RESULT_Z] : 0;
+            if (!(getRangeVariance(centralX, centralY, centralZ, others) <= MAX_CALIBRATION_VARIANCE)) continue;
+
+            double trueDistance = Math.hypot(x[left] - centralX, y[left] - centralY);
+            if (mHasCentralZ) {
+                trueDistance = Math.hypot(trueDistance, z[left] - centralZ);
+            }
+            mPathLossCalibrator.update(row, mBeaconTable.getReferenceRssi(row), mRssiFilter.getRssi(row), trueDistance, 1);
+        }
+    }
+
+    /**
+     * How far the ranges of the calibration Beacons, given their variances alone, leave a
+     * position uncertain.  This is the trace of (J^T W J)^-1 over the horizontal coordinates,
+     * without the residual, which a wrong path loss would inflate
+     *
+     * @return the position variance in meters^2, or infinity if the Beacons are in a line
+     */
+    private double getRangeVariance(double centralX, double centralY, double centralZ, int count) {
+        double jtj00 = 0, jtj01 = 0, jtj11 = 0;
+        for (int index = 0; index < count; index++) {
+            double dx = centralX - mCalibrationX[index];
+            double dy = centralY - mCalibrationY[index];
+            double dz = mHasCentralZ ? centralZ - mCalibrationZ[index] : 0;
+            double rangeSquared = Math.max(dx * dx + dy * dy + dz * dz, Double.MIN_NORMAL);
+            double w = mCalibrationWeight[index] / rangeSquared;
+            jtj00 += w * dx * dx;
+            jtj01 += w * dx * dy;
+            jtj11 += w * dy * dy;
+        }
+        double determinant = jtj00 * jtj11 - jtj01 * jtj01;
+        if (LeastSquaresLocator.isSingular(determinant, jtj00 + jtj11)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return (jtj00 + jtj11) / determinant;
+    }
+
+    private void ensureCalibrationCapacity(int count) {
+        int size = mBeaconTable.size();
+        if (size > mCalibratedSampleCount.length) {
+            mCalibratedSampleCount = Arrays.copyOf(mCalibratedSampleCount, Math.max(size, mCalibratedSampleCount.length * 2));
+        }
+        if (count > mCalibrationX.length) {
+            int capacity = Math.max(count, mCalibrationX.length * 2);
+            mCalibrationX = Arrays.copyOf(mCalibrationX, capacity);
+            mCalibrationY = Arrays.copyOf(mCalibrationY, capacity);
+            mCalibrationZ = Arrays.copyOf(mCalibrationZ, capacity);
+            mCalibrationDistance = Arrays.copyOf(mCalibrationDistance, capacity);
+            mCalibrationWeight = Arrays.copyOf(mCalibrationWeight, capacity);
+        }
+    }
+
+    /**
+     * Start tracking a newly discovered Beacon.
+     *
+     * Beacons that broadcast their reference RSSI and location are ready to use right away.
+     * Others are left for the listener to locate.
+     */
+    private int addBeacon(long macAddress, int rssi, byte[] scanRecord) {
+        int payload = BeaconAdvertisement.findPayload(scanRecord);
+        if (payload == BeaconAdvertisement.NOT_FOUND && !mListener.isBeacon(macAddress, scanRecord)) {
+            return BeaconTable.NOT_FOUND;
+        }
+
+        int row = mBeaconTable.add(macAddress);
+        mBeaconTable.setRssi(row, rssi);
+
+        boolean isLocated = payload != BeaconAdvertisement.NOT_FOUND;
+        if (isLocated) {
+            // everything we need is in the advertisement.  No need to connect
+            mBeaconTable.setReferenceRssi(row, BeaconAdvertisement.getReferenceRssi(scanRecord, payload));
+            mBeaconTable.setXLocation(row, BeaconAdvertisement.getXLocationCentimeters(scanRecord, payload) / 100.0); // centimeters to meters
+            mBeaconTable.setYLocation(row, BeaconAdvertisement.getYLocationCentimeters(scanRecord, payload) / 100.0);
+            if (BeaconAdvertisement.hasZLocation(scanRecord, payload)) {
+                mBeaconTable.setZLocation(row, BeaconAdvertisement.getZLocationCentimeters(scanRecord, payload) / 100.0);
+                mBeaconTable.setFloor(row, BeaconAdvertisement.getFloor(scanRecord, payload));
+            }
+        }
+        mListener.onBeaconAdded(row, macAddress, isLocated);
+        return row;
+    }
+}
@@ -0,0 +1,262 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+
+/**
+ * Runs a PositioningPipeline on its own thread.
+ *
+ * The radio's thread offers advertisements through an AdvertisementRingBuffer, without
+ * locking or allocating.  The worker filters them, locates the Central when an update is due,
+ * and hands the listener an immutable PositionSnapshot.  Nothing the UI does can slow down
+ * positioning, and positioning never runs on the UI thread.
+ *
+ * Motion samples arrive the same way through a MotionRingBuffer.  When they move the tracked
+ * Central, the worker hands out a snapshot that only copies the Central, so the position can
+ * be followed at the sensor rate without copying every Beacon each time.
+ *
+ * The worker owns the pipeline and its BeaconTable.  Other threads change them by posting
+ * commands, which run on the worker between advertisements.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class PositioningWorker {
+    public static final long IDLE_WAIT_MS = 100; // how long to sleep if nobody wakes the worker
+
+    private static final long NO_POSITION_UPDATE = Long.MIN_VALUE;
+
+    /**
+     * Receives snapshots, on the worker thread
+     */
+    public interface Listener {
+        /**
+         * The Central moved or the Beacons changed
+         *
+         * @param snapshot the new state
+         */
+        void onPositionSnapshot(PositionSnapshot snapshot);
+    }
+
+    private final PositioningPipeline mPipeline;
+    private final AdvertisementRingBuffer mRingBuffer;
+    private final MotionRingBuffer mMotionRingBuffer;
+    private final Listener mListener;
+    private final ConcurrentLinkedQueue<Runnable> mCommands = new ConcurrentLinkedQueue<Runnable>();
+    private final double[] mCentralState = new double[PositionTracker.STATE_LENGTH];
+    private final Thread mThread;
+    private volatile boolean mIsRunning = false;
+    private volatile boolean mIsLocating = true;
+    private volatile long mRequestedPositionUpdate_ns = NO_POSITION_UPDATE;
+
+    /** Worker state **/
+    private int mStatus = LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS;
+    private long mLastTimestamp_ns = 0;
+    private PositionSnapshot mLastSnapshot;
+
+    /**
+     * Create a PositioningWorker
+     *
+     * @param pipeline the pipeline to run.  Only touch it through post() from now on
+     * @param ringBuffer carries advertisements to the worker
+     * @param listener receives snapshots
+     */
+    public PositioningWorker(PositioningPipeline pipeline, AdvertisementRingBuffer ringBuffer, Listener listener) {
+        this(pipeline, ringBuffer, new MotionRingBuffer(), listener);
+    }
+
+    /**
+     * Create a PositioningWorker
+     *
+     * @param pipeline the pipeline to run.  Only touch it through post() from now on
+     * @param ringBuffer carries advertisements to the worker
+     * @param motionRingBuffer carries motion samples to the worker
+     * @param listener receives snapshots
+     */
+    public PositioningWorker(PositioningPipeline pipeline, AdvertisementRingBuffer ringBuffer, MotionRingBuffer motionRingBuffer, Listener listener) {
+        mPipeline = pipeline;
+        mRingBuffer = ringBuffer;
+        mMotionRingBuffer = motionRingBuffer;
+        mListener = listener;
+        mThread = new Thread("PositioningWorker") {
+            @Override
+            public void run() {
+                work();
+            }
+        };
+        mThread.setDaemon(true);
+    }
+
+    /**
+     * Start the worker thread
+     */
+    public void start() {
+        mIsRunning = true;
+        mThread.start();
+    }
+
+    /**
+     * Stop the worker thread, and with it any threads the pipeline runs.  Commands and
+     * advertisements that are still waiting are dropped
+     */
+    public void shutdown() {
+        mIsRunning = false;
+        LockSupport.unpark(mThread);
+    }
+
+    /**
+     * Queue an advertisement.  Only call from the radio's thread
+     *
+     * @param macAddress the packed MAC address of the Peripheral
+     * @param rssi the RSSI of the advertisement
+     * @param scanRecord the raw advertisement data, or <b>null</b>.  Copied
+     * @param timestamp_ns when the advertisement was received, in nanoseconds
+     * @return <b>false</b> if the worker has fallen behind and the advertisement was dropped
+     */
+    public boolean offer(long macAddress, int rssi, byte[] scanRecord, long timestamp_ns) {
+        boolean isQueued = mRingBuffer.offer(macAddress, rssi, scanRecord, timestamp_ns);
+        if (mRingBuffer.size() > mRingBuffer.getCapacity() / 2) {
+            wakeUp();
+        }
+        return isQueued;
+    }
+
+    /**
+     * Queue a motion sample.  Only call from the sensor's thread.  Each sample can move the
+     * Central, so the worker is woken for every one
+     *
+     * @param sensor MotionSensor.SENSOR_ACCELEROMETER or MotionSensor.SENSOR_GYROSCOPE
+     * @param timestamp_ns when the sample was taken, in nanoseconds
+     * @param x value along the device x axis
+     * @param y value along the device y axis
+     * @param z value along the device z axis
+     * @return <b>false</b> if the worker has fallen behind and the sample was dropped
+     */
+    public boolean offerMotion(int sensor, long timestamp_ns, float x, float y, float z) {
+        boolean isQueued = mMotionRingBuffer.offer(sensor, timestamp_ns, x, y, z);
+        wakeUp();
+        return isQueued;
+    }
+
+    /**
+     * Have the worker process what is waiting now.  Call at the end of each batch
+     */
+    public void wakeUp() {
+        LockSupport.unpark(mThread);
+    }
+
+    /**
+     * Run a command on the worker thread, between advertisements.  A snapshot follows it
+     *
+     * @param command the command
+     */
+    public void post(Runnable command) {
+        mCommands.add(command);
+        wakeUp();
+    }
+
+    /**
+     * Set whether the Central is located whenever a position update is due
+     *
+     * @param isLocating <b>false</b> to only locate when asked with requestPositionUpdate()
+     */
+    public void setLocating(boolean isLocating) {
+        mIsLocating = isLocating;
+    }
+
+    /**
+     * Locate the Central now, whether or not an update is due
+     *
+     * @param timestamp_ns the current time, in nanoseconds
+     */
+    public void requestPositionUpdate(long timestamp_ns) {
+        mRequestedPositionUpdate_ns = timestamp_ns;
+        wakeUp();
+    }
+
+    private void work() {
+        BeaconTable beaconTable = mPipeline.getBeaconTable();
+        while (mIsRunning) {
+            boolean isChanged = runCommands();
+            int beaconCount = beaconTable.size();
+
+            boolean isBeaconHeard = false;
+            while (mRingBuffer.poll()) {
+                long timestamp_ns = mRingBuffer.getTimestampNanos();
+                int row = mPipeline.onAdvertisement(mRingBuffer.getMacAddress(), mRingBuffer.getRssi(), mRingBuffer.getScanRecord(), timestamp_ns);
+                if (row != BeaconTable.NOT_FOUND) {
+                    isBeaconHeard = true;
+                    mLastTimestamp_ns = timestamp_ns;
+                }
+            }
+
+            boolean isCentralMoved = false;
+            while (mMotionRingBuffer.poll()) {
+                long timestamp_ns = mMotionRingBuffer.getTimestampNanos();
+                if (mPipeline.onMotionSample(mMotionRingBuffer.getSensor(), timestamp_ns,
+                        mMotionRingBuffer.getX(), mMotionRingBuffer.getY(), mMotionRingBuffer.getZ())) {
+                    isCentralMoved = true;
+                    mLastTimestamp_ns = Math.max(mLastTimestamp_ns, timestamp_ns);
+                }
+            }
+
+            long requestedPositionUpdate_ns = mRequestedPositionUpdate_ns;
+            if (requestedPositionUpdate_ns != NO_POSITION_UPDATE) {
+                mRequestedPositionUpdate_ns = NO_POSITION_UPDATE;
+                mLastTimestamp_ns = Math.max(mLastTimestamp_ns, requestedPositionUpdate_ns);
+                mStatus = mPipeline.updatePosition(mLastTimestamp_ns);
+                isChanged = true;
+            } else if (isBeaconHeard && mIsLocating && mPipeline.isPositionUpdateDue(mLastTimestamp_ns)) {
+                mStatus = mPipeline.updatePosition(mLastTimestamp_ns);
+                isChanged = true;
+            }
+
+            if (isChanged || beaconTable.size() != beaconCount) {
+                publishSnapshot(beaconTable);
+            } else if (isCentralMoved) {
+                publishCentral(beaconTable);
+            }
+            if (!isBeaconHeard && !isChanged && !isCentralMoved && mIsRunning) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(IDLE_WAIT_MS));
+            }
+        }
+        mPipeline.shutdown();
+    }
+
+    private boolean runCommands() {
+        boolean isChanged = false;
+        Runnable command;
+        while ((command = mCommands.poll()) != null) {
+            command.run();
+            isChanged = true;
+        }
+        return isChanged;
+    }
+
+    private void publishSnapshot(BeaconTable beaconTable) {
+        boolean isCentralLocated = mPipeline.getCentralState(mLastTimestamp_ns, mCentralState);
+        mLastSnapshot = new PositionSnapshot(
+                mLastTimestamp_ns,
+                mStatus,
+                beaconTable,
+                isCentralLocated ? mCentralState : null
+        );
+        mListener.onPositionSnapshot(mLastSnapshot);
+    }
+
+    /**
+     * Only the Central moved since the last snapshot, so share its Beacons
+     */
+    private void publishCentral(BeaconTable beaconTable) {
+        if (mLastSnapshot == null) {
+            publishSnapshot(beaconTable);
+            return;
+        }
+        boolean isCentralLocated = mPipeline.getCentralState(mLastTimestamp_ns, mCentralState);
+        mLastSnapshot = new PositionSnapshot(mLastSnapshot, mLastTimestamp_ns, isCentralLocated ? mCentralState : null);
+        mListener.onPositionSnapshot(mLastSnapshot);
+    }
+}
@@ -0,0 +1,324 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A survey of the RSSI of every Beacon at known reference points, for fingerprinting.
+ *
+ * The map is stored by column: one array of x locations, one of y locations, and one byte
+ * array per Beacon holding its RSSI at every reference point.  Comparing a scan against the
+ * map then reads only the columns of the Beacons the scan heard, each from start to end.
+ * An RSSI takes one byte, so tens of thousands of points with a hundred Beacons fit in a few
+ * megabytes.
+ *
+ * After the survey, buildIndex() lists each point under the Beacons it hears most strongly.
+ * A scan is then only compared against the points listed under its own strongest Beacons,
+ * rather than against the whole map.  It also sums the RSSI each point hears, so a scan can be
+ * charged for the Beacons a point hears that the scan missed without reading their columns.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class RadioMap {
+    public static final String FILE_NAME = "radio_map.bin";
+    public static final int NOT_FOUND = LongIntMap.NOT_FOUND;
+    public static final byte NOT_HEARD = Byte.MIN_VALUE; // the Beacon was not heard at the point
+    public static final int INDEXED_BEACONS_PER_POINT = 3; // each point is listed under its strongest Beacons
+
+    /** File layout **/
+    private static final int MAGIC = 0x42434e46; // "BCNF"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MIN_RSSI = NOT_HEARD + 1;
+    private static final int MAX_RSSI = 0;
+
+    private final LongIntMap mColumnIndex = new LongIntMap(); // MAC address -> column
+    private int mBeaconCount = 0;
+    private int mPointCount = 0;
+    private int mPointCapacity;
+
+    /** Columns **/
+    private long[] mMacAddress;
+    private double[] mX;
+    private double[] mY;
+    private byte[][] mRssi; // [column][point]
+
+    /** Index: the points listed under column c are mIndexedPoints[mIndexStart[c]] up to mIndexStart[c + 1] **/
+    private int[] mIndexStart = new int[1];
+    private int[] mIndexedPoints = new int[0];
+
+    /** Sums over the Beacons heard at each point, built with the index **/
+    private int[] mHeardCount = new int[0];
+    private long[] mRssiSum = new long[0];
+    private long[] mRssiSquareSum = new long[0];
+
+    /**
+     * Create an empty RadioMap
+     */
+    public RadioMap() {
+        this(DEFAULT_CAPACITY, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty RadioMap
+     *
+     * @param beaconCapacity number of Beacons to hold before the map needs to grow
+     * @param pointCapacity number of reference points to hold before the map needs to grow
+     */
+    public RadioMap(int beaconCapacity, int pointCapacity) {
+        mPointCapacity = Math.max(1, pointCapacity);
+        mMacAddress = new long[Math.max(1, beaconCapacity)];
+        mRssi = new byte[Math.max(1, beaconCapacity)][];
+        mX = new double[mPointCapacity];
+        mY = new double[mPointCapacity];
+    }
+
+    public int getBeaconCount() { return mBeaconCount; }
+
+    public int getPointCount() { return mPointCount; }
+
+    /**
+     * Find the column of a Beacon
+     *
+     * @param macAddress the packed MAC address
+     * @return the column, or NOT_FOUND
+     */
+    public int getColumn(long macAddress) {
+        return mColumnIndex.get(macAddress);
+    }
+
+    /**
+     * Add a Beacon, or find it if it is already in the map.  It is not heard at any point yet
+     *
+     * @param macAddress the packed MAC address
+     * @return the column of the Beacon
+     */
+    public int addBeacon(long macAddress) {
+        int column = mColumnIndex.get(macAddress);
+        if (column != NOT_FOUND) {
+            return column;
+        }
+        if (mBeaconCount == mMacAddress.length) {
+            mMacAddress = Arrays.copyOf(mMacAddress, mBeaconCount * 2);
+            mRssi = Arrays.copyOf(mRssi, mBeaconCount * 2);
+        }
+        column = mBeaconCount++;
+        mMacAddress[column] = macAddress;
+        mRssi[column] = new byte[mPointCapacity];
+        Arrays.fill(mRssi[column], NOT_HEARD);
+        mColumnIndex.put(macAddress, column);
+        return column;
+    }
+
+    public long getMacAddress(int column) { return mMacAddress[column]; }
+
+    /**
+     * Add a reference point.  No Beacon is heard at it yet
+     *
+     * @param x the x location of the point, in meters
+     * @param y the y location of the point, in meters
+     * @return the point number
+     */
+    public int addPoint(double x, double y) {
+        if (mPointCount == mPointCapacity) {
+            growPoints(mPointCapacity * 2);
+        }
+        int point = mPointCount++;
+        mX[point] = x;
+        mY[point] = y;
+        for (int column = 0; column < mBeaconCount; column++) {
+            mRssi[column][point] = NOT_HEARD;
+        }
+        return point;
+    }
+
+    public double getXLocation(int point) { return mX[point]; }
+
+    public double getYLocation(int point) { return mY[point]; }
+
+    /**
+     * Record the RSSI of a Beacon at a reference point, usually the average of several scans
+     *
+     * @param point the point number
+     * @param column the Beacon column
+     * @param rssi the RSSI in dBm, between -127 and 0
+     */
+    public void setRssi(int point, int column, double rssi) {
+        long rounded = Math.round(rssi);
+        mRssi[column][point] = (byte) Math.max(MIN_RSSI, Math.min(MAX_RSSI, rounded));
+    }
+
+    /**
+     * Get the RSSI of a Beacon at a reference point
+     *
+     * @param point the point number
+     * @param column the Beacon column
+     * @return the RSSI in dBm, or NOT_HEARD
+     */
+    public int getRssi(int point, int column) { return mRssi[column][point]; }
+
+    /**
+     * Get the RSSI of a Beacon at every reference point
+     *
+     * @param column the Beacon column
+     * @return the RSSI in dBm at each point, or NOT_HEARD.  Do not modify
+     */
+    public byte[] getColumnRssi(int column) { return mRssi[column]; }
+
+    /**
+     * List every point under the Beacons it hears most strongly.  Call after the survey
+     */
+    public void buildIndex() {
+        int indexed = Math.min(INDEXED_BEACONS_PER_POINT, mBeaconCount);
+        int[] strongest = new int[indexed];
+        int[] pointStrongest = new int[mPointCount * indexed];
+        int[] listSize = new int[mBeaconCount];
+        mHeardCount = new int[mPointCount];
+        mRssiSum = new long[mPointCount];
+        mRssiSquareSum = new long[mPointCount];
+
+        // find the strongest Beacons at each point
+        for (int point = 0; point < mPointCount; point++) {
+            int found = 0;
+            for (int column = 0; column < mBeaconCount; column++) {
+                int rssi = mRssi[column][point];
+                if (rssi == NOT_HEARD) continue;
+                mHeardCount[point]++;
+                mRssiSum[point] += rssi;
+                mRssiSquareSum[point] += rssi * rssi;
+                if (found == indexed && rssi <= mRssi[strongest[indexed - 1]][point]) continue;
+                int index = found < indexed ? found++ : indexed - 1;
+                while (index > 0 && mRssi[strongest[index - 1]][point] < rssi) {
+                    strongest[index] = strongest[index - 1];
+                    index--;
+                }
+                strongest[index] = column;
+            }
+            for (int index = 0; index < indexed; index++) {
+                int column = index < found ? strongest[index] : NOT_FOUND;
+                pointStrongest[point * indexed + index] = column;
+                if (column != NOT_FOUND) listSize[column]++;
+            }
+        }
+
+        // lay the lists out one after another
+        mIndexStart = new int[mBeaconCount + 1];
+        for (int column = 0; column < mBeaconCount; column++) {
+            mIndexStart[column + 1] = mIndexStart[column] + listSize[column];
+        }
+        mIndexedPoints = new int[mIndexStart[mBeaconCount]];
+        int[] next = Arrays.copyOf(mIndexStart, mBeaconCount);
+        for (int point = 0; point < mPointCount; point++) {
+            for (int index = 0; index < indexed; index++) {
+                int column = pointStrongest[point * indexed + index];
+                if (column != NOT_FOUND) {
+                    mIndexedPoints[next[column]++] = point;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param column the Beacon column
+     * @return where the points listed under the Beacon start in getIndexedPoints()
+     */
+    public int getIndexStart(int column) {
+        return column + 1 < mIndexStart.length ? mIndexStart[column] : 0;
+    }
+
+    /**
+     * @param column the Beacon column
+     * @return where the points listed under the Beacon end in getIndexedPoints()
+     */
+    public int getIndexEnd(int column) {
+        return column + 1 < mIndexStart.length ? mIndexStart[column + 1] : 0;
+    }
+
+    /**
+     * @return the points listed under every Beacon, in ascending order within each list
+     */
+    public int[] getIndexedPoints() { return mIndexedPoints; }
+
+    /**
+     * @param point the point number
+     * @return how many Beacons were heard at the point.  Built by buildIndex()
+     */
+    public int getHeardCount(int point) { return mHeardCount[point]; }
+
+    /**
+     * Sum the squared difference between each Beacon heard at a point and one RSSI.  Built by
+     * buildIndex()
+     *
+     * @param point the point number
+     * @param rssi the RSSI to compare against, in dBm
+     * @return the sum, in dB^2
+     */
+    public double getSquaredDifference(int point, double rssi) {
+        return mRssiSquareSum[point] - 2 * rssi * mRssiSum[point] + mHeardCount[point] * rssi * rssi;
+    }
+
+    /**
+     * Write the map
+     *
+     * @param output where to write
+     * @throws IOException if the map can not be written
+     */
+    public void write(DataOutputStream output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(mBeaconCount);
+        output.writeInt(mPointCount);
+        for (int column = 0; column < mBeaconCount; column++) {
+            output.writeLong(mMacAddress[column]);
+        }
+        for (int point = 0; point < mPointCount; point++) {
+            output.writeInt((int) Math.round(mX[point] * 100)); // meters to centimeters
+            output.writeInt((int) Math.round(mY[point] * 100));
+        }
+        for (int column = 0; column < mBeaconCount; column++) {
+            output.write(mRssi[column], 0, mPointCount);
+        }
+    }
+
+    /**
+     * Read a map written by write(), and index it
+     *
+     * @param input where to read from
+     * @return the RadioMap
+     * @throws IOException if the map can not be read or is in another format
+     */
+    public static RadioMap read(DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+            throw new IOException("Not a radio map, or written in another format");
+        }
+        int beaconCount = input.readInt();
+        int pointCount = input.readInt();
+        RadioMap radioMap = new RadioMap(beaconCount, pointCount);
+        for (int column = 0; column < beaconCount; column++) {
+            radioMap.addBeacon(input.readLong());
+        }
+        for (int point = 0; point < pointCount; point++) {
+            double x = input.readInt() / 100.0; // centimeters to meters
+            double y = input.readInt() / 100.0;
+            radioMap.addPoint(x, y);
+        }
+        for (int column = 0; column < beaconCount; column++) {
+            input.readFully(radioMap.mRssi[column], 0, pointCount);
+        }
+        radioMap.buildIndex();
+        return radioMap;
+    }
+
+    private void growPoints(int capacity) {
+        mPointCapacity = capacity;
+        mX = Arrays.copyOf(mX, capacity);
+        mY = Arrays.copyOf(mY, capacity);
+        for (int column = 0; column < mBeaconCount; column++) {
+            mRssi[column] = Arrays.copyOf(mRssi[column], capacity);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package tonyg.example.com.beacon.utilities;
+
+import java.util.Arrays;
+
+/**
+ * Smooths the RSSI of each Beacon over successive advertisements.
+ *
+ * The state of every Beacon is kept in primitive arrays indexed by its BeaconTable row, so
+ * filtering a sample does not allocate.  Three filters are available:
+ *
+ *   MODE_KALMAN  a scalar Kalman filter that treats the RSSI as a slow random walk
+ *   MODE_EWMA    an exponentially weighted moving average and variance
+ *   MODE_MEDIAN  the median of the last few samples, which ignores isolated spikes
+ *
+ * Each produces a filtered RSSI and its variance, in dBm and dBm squared.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class RssiFilter {
+    public static final int MODE_NONE = 0;
+    public static final int MODE_KALMAN = 1;
+    public static final int MODE_EWMA = 2;
+    public static final int MODE_MEDIAN = 3;
+
+    public static final double DEFAULT_PROCESS_NOISE = 0.5; // dBm^2 of drift per sample
+    public static final double DEFAULT_MEASUREMENT_NOISE = 16; // dBm^2, about 4 dBm of noise
+    public static final double DEFAULT_SMOOTHING_FACTOR = 0.25;
+    public static final int DEFAULT_WINDOW_SIZE = 5;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final double LN_10 = Math.log(10);
+
+    private final int mMode;
+    private double mProcessNoise = DEFAULT_PROCESS_NOISE;
+    private double mMeasurementNoise = DEFAULT_MEASUREMENT_NOISE;
+    private double mSmoothingFactor = DEFAULT_SMOOTHING_FACTOR;
+    private final int mWindowSize;
+
+    /** Per Beacon state **/
+    private double[] mEstimate;
+    private double[] mVariance;
+    private int[] mSampleCount;
+    private int[] mWindow; // mWindowSize ring buffer entries per Beacon
+    private int[] mWindowHead;
+    private final int[] mSortBuffer; // shared scratch space for the median
+
+    /**
+     * Create an RssiFilter
+     *
+     * @param mode one of MODE_KALMAN, MODE_EWMA, MODE_MEDIAN or MODE_NONE
+     */
+    public RssiFilter(int mode) {
+        this(mode, DEFAULT_WINDOW_SIZE, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an RssiFilter
+     *
+     * @param mode one of MODE_KALMAN, MODE_EWMA, MODE_MEDIAN or MODE_NONE
+     * @param windowSize number of samples the median is taken over
+     * @param capacity number of Beacons to hold before the filter needs to grow
+     */
+    public RssiFilter(int mode, int windowSize, int capacity) {
+        mMode = mode;
+        mWindowSize = Math.max(1, windowSize);
+        mSortBuffer = new int[mWindowSize];
+        allocate(Math.max(1, capacity));
+    }
+
+    /**
+     * Set the Kalman filter noise
+     *
+     * @param processNoise how far the true RSSI may drift between samples, in dBm^2
+     * @param measurementNoise the noise of a single sample, in dBm^2
+     */
+    public void setKalmanNoise(double processNoise, double measurementNoise) {
+        mProcessNoise = processNoise;
+        mMeasurementNoise = measurementNoise;
+    }
+
+    /**
+     * Set the weight of a new sample in the moving average
+     *
+     * @param smoothingFactor between 0 and 1.  Higher values follow changes faster
+     */
+    public void setSmoothingFactor(double smoothingFactor) {
+        mSmoothingFactor = smoothingFactor;
+    }
+
+    /**
+     * Add an RSSI sample
+     *
+     * @param row the Beacon row
+     * @param rssi the RSSI sample
+     * @return the filtered RSSI
+     */
+    public double update(int row, int rssi) {
+        if (row >= mEstimate.length) {
+            allocate(Math.max(row + 1, mEstimate.length * 2));
+        }
+        int count = mSampleCount[row]++;
+        if (count == 0) {
+            mEstimate[row] = rssi;
+            mVariance[row] = mMeasurementNoise;
+            mWindowHead[row] = 0;
+        }
+
+        switch (mMode) {
+            case MODE_KALMAN:
+                if (count > 0) {
+                    double predictedVariance = mVariance[row] + mProcessNoise;
+                    double gain = predictedVariance / (predictedVariance + mMeasurementNoise);
+                    mEstimate[row] += gain * (rssi - mEstimate[row]);
+                    mVariance[row] = (1 - gain) * predictedVariance;
+                }
+                break;
+            case MODE_EWMA:
+                if (count > 0) {
+                    double difference = rssi - mEstimate[row];
+                    mEstimate[row] += mSmoothingFactor * difference;
+                    mVariance[row] = (1 - mSmoothingFactor) * (mVariance[row] + mSmoothingFactor * difference * difference);
+                }
+                break;
+            case MODE_MEDIAN:
+                updateMedian(row, rssi, count + 1);
+                break;
+            default:
+                mEstimate[row] = rssi;
+                mVariance[row] = mMeasurementNoise;
+        }
+        return mEstimate[row];
+    }
+
+    /**
+     * Get the filtered RSSI
+     *
+     * @param row the Beacon row
+     * @return filtered RSSI in dBm
+     */
+    public double getRssi(int row) { return mEstimate[row]; }
+
+    /**
+     * Get the variance of the filtered RSSI
+     *
+     * @param row the Beacon row
+     * @return variance in dBm^2
+     */
+    public double getVariance(int row) {
+        if (mMode == MODE_EWMA) {
+            // the moving average tracks the sample variance.  The average itself varies less
+            return mVariance[row] * mSmoothingFactor / (2 - mSmoothingFactor);
+        }
+        return mVariance[row];
+    }
+
+    /**
+     * Get the number of samples a Beacon has received
+     *
+     * @param row the Beacon row
+     * @return number of samples
+     */
+    public int getSampleCount(int row) {
+        return row < mSampleCount.length ? mSampleCount[row] : 0;
+    }
+
+    /**
+     * Forget the samples of one Beacon
+     *
+     * @param row the Beacon row
+     */
+    public void reset(int row) {
+        if (row < mSampleCount.length) {
+            mSampleCount[row] = 0;
+        }
+    }
+
+    /**
+     * Forget every Beacon
+     */
+    public void clear() {
+        Arrays.fill(mSampleCount, 0);
+    }
+
+    /**
+     * Get the variance of a distance calculated from a filtered RSSI.
+     *
+     * The distance grows exponentially with the RSSI, so its standard deviation is the RSSI
+     * standard deviation scaled by the slope d * ln(10) / (10 * n).
+     *
+     * @param distance the distance calculated from the filtered RSSI, in meters
+     * @param propagationConstant the radio propagation constant n
+     * @param rssiVariance the variance of the filtered RSSI, in dBm^2
+     * @return distance variance in meters^2
+     */
+    public static double getDistanceVariance(double distance, double propagationConstant, double rssiVariance) {
+        double slope = distance * LN_10 / (10 * propagationConstant);
+        return slope * slope * rssiVariance;
+    }
+
+    /**
+     * Store a sample in the ring buffer and take the median and variance of the window
+     */
+    private void updateMedian(int row, int rssi, int count) {
+        int start = row * mWindowSize;
+        mWindow[start + mWindowHead[row]] = rssi;
+        mWindowHead[row] = (mWindowHead[row] + 1) % mWindowSize;
+
+        int size = Math.min(count, mWindowSize);
+        double sum = 0;
+        for (int index = 0; index < size; index++) {
+            int value = mWindow[start + index];
+            // insertion sort, the window is small
+            int position = index;
+            while (position > 0 && mSortBuffer[position - 1] > value) {
+                mSortBuffer[position] = mSortBuffer[position - 1];
+                position--;
+            }
+            mSortBuffer[position] = value;
+            sum += value;
+        }
+        double median = (size % 2 == 1)
+                ? mSortBuffer[size / 2]
+                : (mSortBuffer[size / 2 - 1] + mSortBuffer[size / 2]) / 2.0;
+        mEstimate[row] = median;
+
+        if (size > 1) {
+            double mean = sum / size;
+            double squares = 0;
+            for (int index = 0; index < size; index++) {
+                double difference = mSortBuffer[index] - mean;
+                squares += difference * difference;
+            }
+            // variance of the median is roughly pi/2 times the variance of the mean
+            mVariance[row] = Math.PI / 2 * squares / (size - 1) / size;
+        } else {
+            mVariance[row] = mMeasurementNoise;
+        }
+    }
+
+    private void allocate(int capacity) {
+        if (mEstimate == null) {
+            mEstimate = new double[capacity];
+            mVariance = new double[capacity];
+            mSampleCount = new int[capacity];
+            mWindow = new int[capacity * mWindowSize];
+            mWindowHead = new int[capacity];
+        } else {
+            mEstimate = Arrays.copyOf(mEstimate, capacity);
+            mVariance = Arrays.copyOf(mVariance, capacity);
+            mSampleCount = Arrays.copyOf(mSampleCount, capacity);
+            mWindow = Arrays.copyOf(mWindow, capacity * mWindowSize);
+            mWindowHead = Arrays.copyOf(mWindowHead, capacity);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package tonyg.example.com.beacon.utilities;
+
+/**
+ * Detects steps in the accelerometer samples of a phone carried by someone walking.
+ *
+ * Gravity is tracked with a slow low-pass filter on the acceleration, which also tells which
+ * way is up however the phone is held.  Each step lifts the body, so the acceleration along
+ * gravity, smoothed to remove jitter, peaks once per step.  A step is counted when it rises
+ * above a threshold, and the detector is only armed again once it has fallen back below
+ * zero and a minimum time has passed, so one stride can not count twice.
+ *
+ * Only the latest sample is kept, so each update is a few multiplications.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class StepDetector {
+    public static final double DEFAULT_STEP_THRESHOLD = 1.0; // m/s^2 above gravity
+    public static final long MIN_STEP_INTERVAL_MS = 250; // faster than anyone runs
+    public static final long MAX_STEP_INTERVAL_MS = 1500; // slower than this, the walker had stopped
+
+    private static final long NANOS_PER_MS = 1000000L;
+    private static final double GRAVITY_TIME_CONSTANT_S = 1;
+    private static final double SMOOTHING_TIME_CONSTANT_S = 0.05; // keeps the 1-3 Hz of walking
+    private static final double MAX_SAMPLE_INTERVAL_S = 0.5; // longer gaps restart the filters
+
+    private final double mStepThreshold;
+
+    private boolean mHasSample = false;
+    private long mTimestamp_ns;
+    private double mGravityX;
+    private double mGravityY;
+    private double mGravityZ;
+    private double mGravity; // magnitude
+    private double mVerticalAcceleration; // smoothed, gravity removed
+
+    private boolean mIsArmed = false;
+    private boolean mHasStep = false;
+    private long mStepTimestamp_ns;
+    private long mStepInterval_ns;
+    private int mStepCount = 0;
+
+    /**
+     * Create a StepDetector
+     */
+    public StepDetector() {
+        this(DEFAULT_STEP_THRESHOLD);
+    }
+
+    /**
+     * Create a StepDetector
+     *
+     * @param stepThreshold how far above gravity the acceleration must rise to count a step, in m/s^2
+     */
+    public StepDetector(double stepThreshold) {
+        mStepThreshold = stepThreshold;
+    }
+
+    /**
+     * Add an accelerometer sample
+     *
+     * @param timestamp_ns when the sample was taken, in nanoseconds
+     * @param x acceleration along the device x axis, in m/s^2
+     * @param y acceleration along the device y axis, in m/s^2
+     * @param z acceleration along the device z axis, in m/s^2
+     * @return <b>true</b> if the sample completes a step
+     */
+    public boolean update(long timestamp_ns, float x, float y, float z) {
+        double dt = (timestamp_ns - mTimestamp_ns) / 1e9;
+        if (!mHasSample || dt <= 0 || dt > MAX_SAMPLE_INTERVAL_S) {
+            mHasSample = true;
+            mTimestamp_ns = timestamp_ns;
+            mGravityX = x;
+            mGravityY = y;
+            mGravityZ = z;
+            mGravity = Math.sqrt(x * x + y * y + z * z);
+            mVerticalAcceleration = 0;
+            mIsArmed = false;
+            return false;
+        }
+        mTimestamp_ns = timestamp_ns;
+
+        double alpha = dt / (GRAVITY_TIME_CONSTANT_S + dt);
+        mGravityX += alpha * (x - mGravityX);
+        mGravityY += alpha * (y - mGravityY);
+        mGravityZ += alpha * (z - mGravityZ);
+        mGravity = Math.sqrt(mGravityX * mGravityX + mGravityY * mGravityY + mGravityZ * mGravityZ);
+        if (mGravity == 0) {
+            return false;
+        }
+
+        double vertical = (x * mGravityX + y * mGravityY + z * mGravityZ) / mGravity - mGravity;
+        mVerticalAcceleration += dt / (SMOOTHING_TIME_CONSTANT_S + dt) * (vertical - mVerticalAcceleration);
+
+        if (!mIsArmed) {
+            mIsArmed = mVerticalAcceleration < 0
+                    && (!mHasStep || timestamp_ns - mStepTimestamp_ns >= MIN_STEP_INTERVAL_MS * NANOS_PER_MS);
+            return false;
+        }
+        if (mVerticalAcceleration < mStepThreshold) {
+            return false;
+        }
+        mIsArmed = false;
+        long interval_ns = timestamp_ns - mStepTimestamp_ns;
+        mStepInterval_ns = mHasStep && interval_ns <= MAX_STEP_INTERVAL_MS * NANOS_PER_MS ? interval_ns : 0;
+        mStepTimestamp_ns = timestamp_ns;
+        mHasStep = true;
+        mStepCount++;
+        return true;
+    }
+
+    /**
+     * Get the component of a vector in the device frame along gravity, such as the rotation
+     * rate about the vertical
+     *
+     * @param x component along the device x axis
+     * @param y component along the device y axis
+     * @param z component along the device z axis
+     * @return the component pointing up, or 0 before the first sample
+     */
+    public double getVerticalComponent(float x, float y, float z) {
+        if (mGravity == 0) {
+            return 0;
+        }
+        return (x * mGravityX + y * mGravityY + z * mGravityZ) / mGravity;
+    }
+
+    /**
+     * @return <b>true</b> once a sample has been added
+     */
+    public boolean hasGravity() { return mHasSample && mGravity > 0; }
+
+    public int getStepCount() { return mStepCount; }
+
+    /**
+     * @return when the last step was detected, in nanoseconds
+     */
+    public long getStepTimestampNanos() { return mStepTimestamp_ns; }
+
+    /**
+     * @return time between the last two steps in nanoseconds, or 0 if the last step was the
+     *         first after standing still
+     */
+    public long getStepIntervalNanos() { return mStepInterval_ns; }
+
+    /**
+     * Forget the steps and the direction of gravity
+     */
+    public void reset() {
+        mHasSample = false;
+        mGravity = 0;
+        mIsArmed = false;
+        mHasStep = false;
+        mStepInterval_ns = 0;
+        mStepCount = 0;
+    }
+}
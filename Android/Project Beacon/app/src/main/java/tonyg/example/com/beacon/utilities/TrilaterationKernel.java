@@ -0,0 +1,95 @@
+package tonyg.example.com.beacon.utilities;
+
+/**
+ * Locate a position from exactly three beacons in closed form.
+ *
+ * Subtracting the first range circle from the other two leaves two straight lines (the radical
+ * axes), and the position is where they cross.  The beacons are moved so the first sits at the
+ * origin before anything is squared, which keeps large coordinates from cancelling each other
+ * out.  There are no loops, no square roots on the way to the position, and a single test for
+ * bad geometry, so a call costs a few dozen multiplications.
+ *
+ * Three beacons too close to a line do not pin the position down, and neither do two beacons
+ * in the same place.  Both are reported as LeastSquaresLocator.STATUS_DEGENERATE instead of
+ * being thrown, and the result is left alone.
+ *
+ * With exact ranges the answer is the same as LeastSquaresLocator's.  With noisy ranges it is
+ * the point that is equally far, in power, from all three circles, which LeastSquaresLocator
+ * would only use as its starting point.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class TrilaterationKernel {
+    /** Layout of the result array, the same as the start of LeastSquaresLocator's **/
+    public static final int RESULT_X = LeastSquaresLocator.RESULT_X;
+    public static final int RESULT_Y = LeastSquaresLocator.RESULT_Y;
+    public static final int RESULT_RESIDUAL = LeastSquaresLocator.RESULT_RESIDUAL; // RMS range error, meters
+    public static final int RESULT_LENGTH = 3;
+
+    /**
+     * Smallest sine of the angle between the two edges from the first beacon.  Below this the
+     * three beacons are treated as lying on a line: a range error of one centimeter would move
+     * the position by more than ten meters.
+     */
+    public static final double MIN_SINE = 1e-3;
+
+    /**
+     * Solve for the position of the Central
+     *
+     * @param x1 first beacon x location in meters
+     * @param y1 first beacon y location in meters
+     * @param r1 measured distance to the first beacon in meters
+     * @param x2 second beacon x location in meters
+     * @param y2 second beacon y location in meters
+     * @param r2 measured distance to the second beacon in meters
+     * @param x3 third beacon x location in meters
+     * @param y3 third beacon y location in meters
+     * @param r3 measured distance to the third beacon in meters
+     * @param result array of at least RESULT_LENGTH that receives the position
+     * @return LeastSquaresLocator.STATUS_OK, or STATUS_DEGENERATE if the beacons are too close
+     *         to a line or their locations are not finite
+     */
+    public static int solve(
+            double x1, double y1, double r1,
+            double x2, double y2, double r2,
+            double x3, double y3, double r3,
+            double[] result
+    ) {
+        // edges from the first beacon
+        double ax = x2 - x1;
+        double ay = y2 - y1;
+        double bx = x3 - x1;
+        double by = y3 - y1;
+        double a2 = ax * ax + ay * ay;
+        double b2 = bx * bx + by * by;
+        double determinant = ax * by - ay * bx; // |a| |b| sin(angle)
+
+        // compared squared, so no square root is needed.  Written so that NaN fails as well
+        if (!(determinant * determinant > MIN_SINE * MIN_SINE * a2 * b2)) {
+            return LeastSquaresLocator.STATUS_DEGENERATE;
+        }
+
+        // 2 a.p = |a|^2 + r1^2 - r2^2 and 2 b.p = |b|^2 + r1^2 - r3^2, relative to the first beacon
+        double r1Squared = r1 * r1;
+        double ca = 0.5 * (a2 + r1Squared - r2 * r2);
+        double cb = 0.5 * (b2 + r1Squared - r3 * r3);
+        double inverse = 1 / determinant;
+        double px = (ca * by - cb * ay) * inverse;
+        double py = (cb * ax - ca * bx) * inverse;
+
+        // how far the position is from each circle
+        double f1 = Math.sqrt(px * px + py * py) - r1;
+        double dx = px - ax;
+        double dy = py - ay;
+        double f2 = Math.sqrt(dx * dx + dy * dy) - r2;
+        dx = px - bx;
+        dy = py - by;
+        double f3 = Math.sqrt(dx * dx + dy * dy) - r3;
+
+        result[RESULT_X] = px + x1;
+        result[RESULT_Y] = py + y1;
+        result[RESULT_RESIDUAL] = Math.sqrt((f1 * f1 + f2 * f2 + f3 * f3) / 3);
+        return LeastSquaresLocator.STATUS_OK;
+    }
+}
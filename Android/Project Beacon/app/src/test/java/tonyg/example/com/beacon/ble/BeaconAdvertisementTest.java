@@ -0,0 +1,170 @@
+package tonyg.example.com.beacon.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes Beacon advertisements with BeaconAdvertisement.write() and reads them back, and checks
+ * that scan records which are cut short, claim more than they hold, or come from another
+ * manufacturer are not read.
+ */
+public class BeaconAdvertisementTest {
+    private static final int SCAN_RECORD_LENGTH = 62; // advertisement and scan response, as Android delivers them
+    private static final byte[] FLAGS = {2, 0x01, 0x06};
+    private static final String NAME = "MyBeacon";
+
+    @Test
+    public void version2_readsBack() throws Exception {
+        byte[] scanRecord = new byte[SCAN_RECORD_LENGTH];
+        int offset = writeFlagsAndName(scanRecord);
+        int end = BeaconAdvertisement.write(scanRecord, offset, -59, -1250, 32000, 275, -2);
+        assertEquals(offset + BeaconAdvertisement.STRUCTURE_LENGTH, end);
+
+        int payload = BeaconAdvertisement.findPayload(scanRecord);
+        assertTrue(payload != BeaconAdvertisement.NOT_FOUND);
+        assertEquals(-59, BeaconAdvertisement.getReferenceRssi(scanRecord, payload));
+        assertEquals(-1250, BeaconAdvertisement.getXLocationCentimeters(scanRecord, payload));
+        assertEquals(32000, BeaconAdvertisement.getYLocationCentimeters(scanRecord, payload));
+        assertTrue(BeaconAdvertisement.hasZLocation(scanRecord, payload));
+        assertEquals(275, BeaconAdvertisement.getZLocationCentimeters(scanRecord, payload));
+        assertEquals(-2, BeaconAdvertisement.getFloor(scanRecord, payload));
+        assertTrue(BeaconAdvertisement.hasLocalName(scanRecord, NAME));
+    }
+
+    @Test
+    public void version1_readsBackOnFloorZero() throws Exception {
+        byte[] scanRecord = new byte[SCAN_RECORD_LENGTH];
+        int offset = writeFlagsAndName(scanRecord);
+        BeaconAdvertisement.write(scanRecord, offset, -70, 500, -600);
+
+        int payload = BeaconAdvertisement.findPayload(scanRecord);
+        assertTrue(payload != BeaconAdvertisement.NOT_FOUND);
+        assertEquals(-70, BeaconAdvertisement.getReferenceRssi(scanRecord, payload));
+        assertEquals(500, BeaconAdvertisement.getXLocationCentimeters(scanRecord, payload));
+        assertEquals(-600, BeaconAdvertisement.getYLocationCentimeters(scanRecord, payload));
+        assertFalse(BeaconAdvertisement.hasZLocation(scanRecord, payload));
+        assertEquals(0, BeaconAdvertisement.getZLocationCentimeters(scanRecord, payload));
+        assertEquals(0, BeaconAdvertisement.getFloor(scanRecord, payload));
+    }
+
+    @Test
+    public void exactLengthScanRecord_isRead() throws Exception {
+        // no padding at all after the last structure
+        byte[] scanRecord = new byte[BeaconAdvertisement.STRUCTURE_LENGTH];
+        BeaconAdvertisement.write(scanRecord, 0, -59, 100, 200, 300, 1);
+        int payload = BeaconAdvertisement.findPayload(scanRecord);
+        assertEquals(4, payload); // after the length, type and manufacturer id
+        assertEquals(1, BeaconAdvertisement.getFloor(scanRecord, payload));
+    }
+
+    @Test
+    public void truncatedStructure_isNotRead() throws Exception {
+        byte[] scanRecord = new byte[BeaconAdvertisement.STRUCTURE_LENGTH];
+        BeaconAdvertisement.write(scanRecord, 0, -59, 100, 200, 300, 1);
+        for (int length = 0; length < scanRecord.length; length++) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(scanRecord, 0, truncated, 0, length);
+            assertEquals(BeaconAdvertisement.NOT_FOUND, BeaconAdvertisement.findPayload(truncated));
+        }
+        assertEquals(BeaconAdvertisement.NOT_FOUND, BeaconAdvertisement.findPayload(null));
+        assertFalse(BeaconAdvertisement.hasLocalName(null, NAME));
+    }
+
+    @Test
+    public void structureLongerThanTheScanRecord_isNotRead() throws Exception {
+        byte[] scanRecord = new byte[SCAN_RECORD_LENGTH];
+        int offset = writeFlagsAndName(scanRecord);
+        BeaconAdvertisement.write(scanRecord, offset, -59, 100, 200, 300, 1);
+        // a length byte that runs past the end of the buffer
+        scanRecord[offset] = (byte) (SCAN_RECORD_LENGTH - offset);
+        assertEquals(BeaconAdvertisement.NOT_FOUND, BeaconAdvertisement.findPayload(scanRecord));
+        scanRecord[offset] = (byte) 0xff;
+        assertEquals(BeaconAdvertisement.NOT_FOUND, BeaconAdvertisement.findPayload(scanRecord));
+        // and one before it that swallows the Beacon structure
+        scanRecord[offset] = (byte) (BeaconAdvertisement.STRUCTURE_LENGTH - 1);
+        scanRecord[0] = (byte) (SCAN_RECORD_LENGTH - 1);
+        assertEquals(BeaconAdvertisement.NOT_FOUND, BeaconAdvertisement.findPayload(scanRecord));
+        assertFalse(BeaconAdvertisement.hasLocalName(scanRecord, NAME));
+    }
+
+    @Test
+    public void structureLongerThanThePayload_isRead() throws Exception {
+        byte[] scanRecord = new byte[SCAN_RECORD_LENGTH];
+        BeaconAdvertisement.write(scanRecord, 0, -59, 100, 200, 300, 1);
+        // a later format version 2 Beacon may add fields after the floor
+        scanRecord[0] += 3;
+        int payload = BeaconAdvertisement.findPayload(scanRecord);
+        assertEquals(4, payload);
+        assertEquals(300, BeaconAdvertisement.getZLocationCentimeters(scanRecord, payload));
+    }
+
+    @Test
+    public void version2StructureTooShortForItsFields_isNotRead() throws Exception {
+        byte[] scanRecord = new byte[SCAN_RECORD_LENGTH];
+        BeaconAdvertisement.write(scanRecord, 0, -59, 100, 200);
+        scanRecord[4] = (byte) BeaconAdvertisement.FORMAT_VERSION;
+        assertEquals(BeaconAdvertisement.NOT_FOUND, BeaconAdvertisement.findPayload(scanRecord));
+    }
+
+    @Test
+    public void otherManufacturersAndVersions_areNotRead() throws Exception {
+        byte[] scanRecord = new byte[SCAN_RECORD_LENGTH];
+        BeaconAdvertisement.write(scanRecord, 0, -59, 100, 200, 300, 1);
+        scanRecord[2] = 0x4c; // Apple, 0x004c
+        scanRecord[3] = 0x00;
+        assertEquals(BeaconAdvertisement.NOT_FOUND, BeaconAdvertisement.findPayload(scanRecord));
+
+        BeaconAdvertisement.write(scanRecord, 0, -59, 100, 200, 300, 1);
+        scanRecord[4] = (byte) (BeaconAdvertisement.FORMAT_VERSION + 1);
+        assertEquals(BeaconAdvertisement.NOT_FOUND, BeaconAdvertisement.findPayload(scanRecord));
+
+        // another manufacturer's data first does not hide the Beacon's
+        int offset = BeaconAdvertisement.write(scanRecord, 0, -59, 100, 200, 300, 1);
+        scanRecord[2] = 0x4c;
+        scanRecord[3] = 0x00;
+        BeaconAdvertisement.write(scanRecord, offset, -61, 400, 500, 600, 2);
+        int payload = BeaconAdvertisement.findPayload(scanRecord);
+        assertEquals(offset + 4, payload);
+        assertEquals(-61, BeaconAdvertisement.getReferenceRssi(scanRecord, payload));
+    }
+
+    @Test
+    public void zeroPadding_endsTheScanRecord() throws Exception {
+        byte[] scanRecord = new byte[SCAN_RECORD_LENGTH];
+        assertEquals(BeaconAdvertisement.NOT_FOUND, BeaconAdvertisement.findPayload(scanRecord));
+        assertFalse(BeaconAdvertisement.hasLocalName(scanRecord, NAME));
+
+        // nothing after the first zero length is read, even a Beacon structure
+        int offset = writeFlagsAndName(scanRecord);
+        BeaconAdvertisement.write(scanRecord, offset + 1, -59, 100, 200, 300, 1);
+        assertEquals(BeaconAdvertisement.NOT_FOUND, BeaconAdvertisement.findPayload(scanRecord));
+        assertTrue(BeaconAdvertisement.hasLocalName(scanRecord, NAME));
+    }
+
+    @Test
+    public void localName_mustMatchExactly() throws Exception {
+        byte[] scanRecord = new byte[SCAN_RECORD_LENGTH];
+        writeFlagsAndName(scanRecord);
+        assertTrue(BeaconAdvertisement.hasLocalName(scanRecord, NAME));
+        assertFalse(BeaconAdvertisement.hasLocalName(scanRecord, "MyBeaco"));
+        assertFalse(BeaconAdvertisement.hasLocalName(scanRecord, "MyBeacon2"));
+        assertFalse(BeaconAdvertisement.hasLocalName(scanRecord, "MyBeacom"));
+    }
+
+    /**
+     * Write the flags and the complete local name, as a Beacon puts them before its data
+     *
+     * @return the offset after them
+     */
+    private static int writeFlagsAndName(byte[] scanRecord) {
+        System.arraycopy(FLAGS, 0, scanRecord, 0, FLAGS.length);
+        int offset = FLAGS.length;
+        scanRecord[offset] = (byte) (1 + NAME.length());
+        scanRecord[offset + 1] = 0x09;
+        for (int character = 0; character < NAME.length(); character++) {
+            scanRecord[offset + 2 + character] = (byte) NAME.charAt(character);
+        }
+        return offset + 2 + NAME.length();
+    }
+}
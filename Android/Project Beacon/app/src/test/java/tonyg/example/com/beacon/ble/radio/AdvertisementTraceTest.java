@@ -0,0 +1,135 @@
+package tonyg.example.com.beacon.ble.radio;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Records advertisements with AdvertisementRecorder and reads them back with
+ * AdvertisementTraceReader.
+ */
+public class AdvertisementTraceTest {
+    private static final long SEED = 42;
+    private static final int ADVERTISEMENTS = 5000;
+    private static final int SMALL_BUFFER_SIZE = 1024; // so the recorder flushes many times
+    private static final long MAC_ADDRESS = 0xfedcba987654L;
+
+    @Test
+    public void recordedAdvertisements_readBack() throws Exception {
+        Random random = new Random(SEED);
+        long[] macAddress = new long[ADVERTISEMENTS];
+        int[] rssi = new int[ADVERTISEMENTS];
+        byte[][] scanRecord = new byte[ADVERTISEMENTS][];
+        File file = File.createTempFile("advertisements", ".bin");
+        try {
+            AdvertisementRecorder recorder = new AdvertisementRecorder(file, null, SMALL_BUFFER_SIZE);
+            for (int index = 0; index < ADVERTISEMENTS; index++) {
+                macAddress[index] = MAC_ADDRESS + random.nextInt(50);
+                rssi[index] = -30 - random.nextInt(70);
+                if (index % 10 != 0) {
+                    // advertisement data followed by zero padding, as a live scan delivers it
+                    scanRecord[index] = new byte[62];
+                    int length = 1 + random.nextInt(31);
+                    for (int offset = 0; offset < length; offset++) {
+                        scanRecord[index][offset] = (byte) (1 + random.nextInt(255));
+                    }
+                }
+                recorder.onAdvertisement(macAddress[index], rssi[index], scanRecord[index], index * 1000L);
+            }
+            recorder.close();
+
+            AdvertisementTraceReader reader = new AdvertisementTraceReader(file);
+            for (int pass = 0; pass < 2; pass++) {
+                for (int index = 0; index < ADVERTISEMENTS; index++) {
+                    assertTrue(reader.next());
+                    assertEquals(index * 1000L, reader.getTimestampNanos());
+                    assertEquals(macAddress[index], reader.getMacAddress());
+                    assertEquals(rssi[index], reader.getRssi());
+                    byte[] readRecord = reader.getScanRecord();
+                    if (scanRecord[index] == null) {
+                        assertNull(readRecord);
+                    } else {
+                        for (int offset = 0; offset < scanRecord[index].length; offset++) {
+                            assertEquals(scanRecord[index][offset], readRecord[offset]);
+                        }
+                    }
+                }
+                assertFalse(reader.next());
+                reader.rewind();
+            }
+            reader.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void longScanRecords_areCutShort() throws Exception {
+        File file = File.createTempFile("advertisements", ".bin");
+        try {
+            byte[] scanRecord = new byte[AdvertisementRecorder.MAX_SCAN_RECORD_LENGTH + 10];
+            for (int offset = 0; offset < scanRecord.length; offset++) {
+                scanRecord[offset] = (byte) (offset + 1);
+            }
+            AdvertisementRecorder recorder = new AdvertisementRecorder(file, null);
+            recorder.record(MAC_ADDRESS, -60, scanRecord, 1);
+            recorder.record(MAC_ADDRESS, -61, new byte[] {5, 6}, 2);
+            recorder.close();
+
+            AdvertisementTraceReader reader = new AdvertisementTraceReader(file);
+            assertTrue(reader.next());
+            assertEquals(AdvertisementRecorder.MAX_SCAN_RECORD_LENGTH, reader.getScanRecord().length);
+            assertEquals(scanRecord[AdvertisementRecorder.MAX_SCAN_RECORD_LENGTH - 1], reader.getScanRecord()[AdvertisementRecorder.MAX_SCAN_RECORD_LENGTH - 1]);
+            // the shorter record that follows is padded with zeros, not the end of the longer one
+            assertTrue(reader.next());
+            assertEquals(5, reader.getScanRecord()[0]);
+            assertEquals(6, reader.getScanRecord()[1]);
+            assertEquals(0, reader.getScanRecord()[2]);
+            assertFalse(reader.next());
+            reader.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void recordCutShortByACrash_endsTheTrace() throws Exception {
+        File file = File.createTempFile("advertisements", ".bin");
+        try {
+            AdvertisementRecorder recorder = new AdvertisementRecorder(file, null);
+            recorder.record(MAC_ADDRESS, -60, new byte[] {1, 2, 3}, 1);
+            recorder.record(MAC_ADDRESS, -60, new byte[] {1, 2, 3}, 2);
+            recorder.close();
+            RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+            truncated.setLength(truncated.length() - 1);
+            truncated.close();
+
+            AdvertisementTraceReader reader = new AdvertisementTraceReader(file);
+            assertTrue(reader.next());
+            assertEquals(1, reader.getTimestampNanos());
+            assertFalse(reader.next());
+            reader.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFiles_areRejected() throws Exception {
+        File file = File.createTempFile("advertisements", ".bin");
+        try {
+            FileOutputStream output = new FileOutputStream(file);
+            output.write(new byte[] {'n', 'o', 't', ' ', 'a', ' ', 't', 'r', 'a', 'c', 'e'});
+            output.close();
+            new AdvertisementTraceReader(file);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package tonyg.example.com.beacon.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks AdvertisementRingBuffer when empty, when full, across many wraps of its slots, and
+ * between a producer and a consumer thread.
+ */
+public class AdvertisementRingBufferTest {
+    private static final int CAPACITY = 8;
+    private static final int MAX_SCAN_RECORD_LENGTH = 4;
+    private static final long MAC_ADDRESS = 0x0000c0ffee000000L;
+    private static final int ADVERTISEMENTS = 1000000;
+
+    @Test
+    public void capacity_isRoundedUpToAPowerOfTwo() throws Exception {
+        assertEquals(8, new AdvertisementRingBuffer(5, MAX_SCAN_RECORD_LENGTH).getCapacity());
+        assertEquals(8, new AdvertisementRingBuffer(8, MAX_SCAN_RECORD_LENGTH).getCapacity());
+        assertEquals(1, new AdvertisementRingBuffer(0, MAX_SCAN_RECORD_LENGTH).getCapacity());
+    }
+
+    @Test
+    public void emptyBuffer_hasNothingToPoll() throws Exception {
+        AdvertisementRingBuffer buffer = new AdvertisementRingBuffer(CAPACITY, MAX_SCAN_RECORD_LENGTH);
+        assertFalse(buffer.poll());
+        assertEquals(0, buffer.size());
+
+        assertTrue(buffer.offer(MAC_ADDRESS, -60, null, 1));
+        assertTrue(buffer.poll());
+        assertFalse(buffer.poll());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void fullBuffer_dropsAndCounts() throws Exception {
+        AdvertisementRingBuffer buffer = new AdvertisementRingBuffer(CAPACITY, MAX_SCAN_RECORD_LENGTH);
+        for (int index = 0; index < CAPACITY; index++) {
+            assertTrue(buffer.offer(MAC_ADDRESS + index, -index, null, index));
+        }
+        assertEquals(CAPACITY, buffer.size());
+        assertFalse(buffer.offer(MAC_ADDRESS, 0, null, 0));
+        assertFalse(buffer.offer(MAC_ADDRESS, 0, null, 0));
+        assertEquals(2, buffer.getDroppedCount());
+
+        // the slot being read is not free until the next poll
+        assertTrue(buffer.poll());
+        assertEquals(MAC_ADDRESS, buffer.getMacAddress());
+        assertFalse(buffer.offer(MAC_ADDRESS, 0, null, 0));
+        assertTrue(buffer.poll());
+        assertTrue(buffer.offer(MAC_ADDRESS + CAPACITY, -CAPACITY, null, CAPACITY));
+        assertEquals(3, buffer.getDroppedCount());
+
+        for (int index = 1; index <= CAPACITY; index++) {
+            if (index > 1) {
+                assertTrue(buffer.poll());
+            }
+            assertEquals(MAC_ADDRESS + index, buffer.getMacAddress());
+            assertEquals(-index, buffer.getRssi());
+            assertEquals(index, buffer.getTimestampNanos());
+        }
+        assertFalse(buffer.poll());
+    }
+
+    @Test
+    public void manyWraps_keepTheOrder() throws Exception {
+        AdvertisementRingBuffer buffer = new AdvertisementRingBuffer(CAPACITY, MAX_SCAN_RECORD_LENGTH);
+        long next = 0;
+        long expected = 0;
+        for (int round = 0; round < 1000; round++) {
+            // uneven bursts, so the head and tail wrap at different places
+            int burst = 1 + round % CAPACITY;
+            for (int index = 0; index < burst; index++) {
+                assertTrue(buffer.offer(MAC_ADDRESS + next, (int) -(next % 100), null, next));
+                next++;
+            }
+            while (buffer.poll()) {
+                assertEquals(MAC_ADDRESS + expected, buffer.getMacAddress());
+                assertEquals(expected, buffer.getTimestampNanos());
+                expected++;
+            }
+        }
+        assertEquals(next, expected);
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void scanRecords_areCopiedTruncatedAndPadded() throws Exception {
+        AdvertisementRingBuffer buffer = new AdvertisementRingBuffer(1, MAX_SCAN_RECORD_LENGTH);
+        byte[] scanRecord = {1, 2, 3, 4, 5, 6};
+        assertTrue(buffer.offer(MAC_ADDRESS, -60, scanRecord, 0));
+        scanRecord[0] = 9;
+        assertTrue(buffer.poll());
+        assertEquals(MAX_SCAN_RECORD_LENGTH, buffer.getScanRecord().length);
+        assertEquals(1, buffer.getScanRecord()[0]);
+        assertEquals(4, buffer.getScanRecord()[3]);
+
+        // a shorter record reuses the slot, and what is left of the longer one is zeroed
+        assertFalse(buffer.offer(MAC_ADDRESS, -60, new byte[] {7}, 1));
+        assertFalse(buffer.poll());
+        assertTrue(buffer.offer(MAC_ADDRESS, -60, new byte[] {7}, 1));
+        assertTrue(buffer.poll());
+        assertEquals(7, buffer.getScanRecord()[0]);
+        assertEquals(0, buffer.getScanRecord()[1]);
+        assertEquals(0, buffer.getScanRecord()[3]);
+
+        assertFalse(buffer.poll());
+        assertTrue(buffer.offer(MAC_ADDRESS, -60, null, 2));
+        assertTrue(buffer.poll());
+        assertNull(buffer.getScanRecord());
+    }
+
+    @Test
+    public void producerAndConsumerThreads_loseNothingUncounted() throws Exception {
+        final AdvertisementRingBuffer buffer = new AdvertisementRingBuffer(CAPACITY, MAX_SCAN_RECORD_LENGTH);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] scanRecord = new byte[MAX_SCAN_RECORD_LENGTH];
+                for (int index = 0; index < ADVERTISEMENTS; index++) {
+                    scanRecord[0] = (byte) index;
+                    buffer.offer(MAC_ADDRESS + index, -60, scanRecord, index);
+                }
+            }
+        });
+        producer.start();
+
+        long received = 0;
+        long previous = -1;
+        while (producer.isAlive() || buffer.size() > 0) {
+            while (buffer.poll()) {
+                long timestamp_ns = buffer.getTimestampNanos();
+                // every field of the slot belongs to the same advertisement
+                assertEquals(MAC_ADDRESS + timestamp_ns, buffer.getMacAddress());
+                assertEquals((byte) timestamp_ns, buffer.getScanRecord()[0]);
+                assertTrue(timestamp_ns > previous);
+                previous = timestamp_ns;
+                received++;
+            }
+        }
+        producer.join();
+        assertFalse(buffer.poll());
+        assertEquals(ADVERTISEMENTS, received + buffer.getDroppedCount());
+    }
+}
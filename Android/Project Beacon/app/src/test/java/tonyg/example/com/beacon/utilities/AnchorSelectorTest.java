@@ -0,0 +1,160 @@
+package tonyg.example.com.beacon.utilities;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the anchors AnchorSelector chooses against a search of every set of Beacons, that
+ * Beacons it can not solve from are rejected, and that it keeps to its evaluation budget.
+ */
+public class AnchorSelectorTest {
+    private static final long SEED = 42;
+    private static final int TRIALS = 2000;
+    private static final long MAC_ADDRESS = 0x0000c0ffee000000L;
+    private static final double VENUE_SIZE_M = 40;
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    public void smallSets_matchExhaustiveSearch() throws Exception {
+        Random random = new Random(SEED);
+        AnchorSelector selector = new AnchorSelector(Double.POSITIVE_INFINITY, AnchorSelector.DEFAULT_MAX_EVALUATIONS);
+        for (int trial = 0; trial < TRIALS; trial++) {
+            int count = 4 + random.nextInt(5);
+            int anchorCount = 3 + random.nextInt(count - 3);
+            BeaconTable beaconTable = randomBeacons(random, count);
+            double px = random.nextDouble() * VENUE_SIZE_M;
+            double py = random.nextDouble() * VENUE_SIZE_M;
+            double[] xx = new double[count], xy = new double[count], yy = new double[count];
+            terms(beaconTable, px, py, xx, xy, yy);
+            double best = exhaustive(xx, xy, yy, count, anchorCount, 0, 0, 0, 0);
+
+            assertEquals(LeastSquaresLocator.STATUS_OK, selector.select(beaconTable, px, py, anchorCount));
+            assertEquals(anchorCount, beaconTable.getSelectedCount());
+            double sumXx = 0, sumXy = 0, sumYy = 0;
+            int[] rows = beaconTable.getSelectedRows();
+            for (int index = 0; index < anchorCount; index++) {
+                sumXx += xx[rows[index]];
+                sumXy += xy[rows[index]];
+                sumYy += yy[rows[index]];
+            }
+            assertEquals(best, cost(sumXx, sumXy, sumYy), best * TOLERANCE);
+        }
+    }
+
+    @Test
+    public void collinearBeacons_areDegenerate() throws Exception {
+        AnchorSelector selector = new AnchorSelector();
+        BeaconTable beaconTable = new BeaconTable();
+        for (int index = 0; index < 8; index++) {
+            int row = beaconTable.add(MAC_ADDRESS + index);
+            beaconTable.setReferenceRssi(row, -59);
+            beaconTable.setXLocation(row, 3 * index);
+            beaconTable.setYLocation(row, 2 * index);
+        }
+        for (int anchorCount = 3; anchorCount <= 8; anchorCount++) {
+            // seen from their centroid, on the line, every Beacon lies one way or the other
+            assertEquals(LeastSquaresLocator.STATUS_DEGENERATE, selector.select(selectAll(beaconTable), anchorCount));
+            assertEquals(Double.POSITIVE_INFINITY, selector.getGdop(), 0);
+        }
+        // seen from beside the line they are fine
+        assertEquals(LeastSquaresLocator.STATUS_OK, selector.select(selectAll(beaconTable), 10, 0, 4));
+        assertTrue(selector.getGdop() < AnchorSelector.DEFAULT_MAX_GDOP);
+    }
+
+    @Test
+    public void tooFewBeacons_areRejected() throws Exception {
+        AnchorSelector selector = new AnchorSelector();
+        BeaconTable beaconTable = randomBeacons(new Random(SEED), 2);
+        assertEquals(LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS, selector.select(beaconTable, 0, 0, 4));
+        beaconTable = randomBeacons(new Random(SEED), 6);
+        assertEquals(LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS, selector.select(beaconTable, 0, 0, 2));
+    }
+
+    @Test
+    public void evaluations_stayWithinTheBudget() throws Exception {
+        Random random = new Random(SEED);
+        int[] budgets = {1, 50, 500, AnchorSelector.DEFAULT_MAX_EVALUATIONS};
+        for (int trial = 0; trial < TRIALS / 10; trial++) {
+            int count = 10 + random.nextInt(40);
+            int anchorCount = 3 + random.nextInt(6);
+            BeaconTable beaconTable = randomBeacons(random, count);
+            double px = random.nextDouble() * VENUE_SIZE_M;
+            double py = random.nextDouble() * VENUE_SIZE_M;
+            for (int budget : budgets) {
+                AnchorSelector selector = new AnchorSelector(Double.POSITIVE_INFINITY, budget);
+                assertEquals(LeastSquaresLocator.STATUS_OK, selector.select(selectAll(beaconTable), px, py, anchorCount));
+                assertEquals(anchorCount, beaconTable.getSelectedCount());
+                // a search stops at the end of the pass that spends the budget, and adding
+                // Beacons up to anchorCount always finishes
+                int allowance = count + (anchorCount - 3) * count;
+                assertTrue("evaluations " + selector.getEvaluationCount() + " of " + budget,
+                        selector.getEvaluationCount() <= budget + allowance);
+            }
+        }
+    }
+
+    /**
+     * Beacons scattered across the venue, every one of them selected
+     */
+    private static BeaconTable randomBeacons(Random random, int count) {
+        BeaconTable beaconTable = new BeaconTable();
+        for (int index = 0; index < count; index++) {
+            int row = beaconTable.add(MAC_ADDRESS + index);
+            beaconTable.setReferenceRssi(row, -59);
+            beaconTable.setXLocation(row, random.nextDouble() * VENUE_SIZE_M);
+            beaconTable.setYLocation(row, random.nextDouble() * VENUE_SIZE_M);
+            beaconTable.setDistanceVariance(row, 0.1 + random.nextDouble() * 4);
+        }
+        return selectAll(beaconTable);
+    }
+
+    private static BeaconTable selectAll(BeaconTable beaconTable) {
+        beaconTable.clearSelection();
+        for (int row = 0; row < beaconTable.size(); row++) {
+            beaconTable.select(row);
+        }
+        return beaconTable;
+    }
+
+    /**
+     * Each Beacon's weighted contribution to H^T W H, by row
+     */
+    private static void terms(BeaconTable beaconTable, double px, double py, double[] xx, double[] xy, double[] yy) {
+        double[] weight = beaconTable.getSelectedWeight();
+        for (int index = 0; index < beaconTable.getSelectedCount(); index++) {
+            int row = beaconTable.getSelectedRows()[index];
+            double dx = beaconTable.getXLocation(row) - px;
+            double dy = beaconTable.getYLocation(row) - py;
+            double rangeSquared = dx * dx + dy * dy;
+            xx[row] = weight[index] * dx * dx / rangeSquared;
+            xy[row] = weight[index] * dx * dy / rangeSquared;
+            yy[row] = weight[index] * dy * dy / rangeSquared;
+        }
+    }
+
+    /**
+     * @return the smallest trace((H^T W H)^-1) of any remaining Beacons from index on
+     */
+    private static double exhaustive(double[] xx, double[] xy, double[] yy, int count, int remaining,
+                                     int index, double sumXx, double sumXy, double sumYy) {
+        if (remaining == 0) {
+            return cost(sumXx, sumXy, sumYy);
+        }
+        if (count - index < remaining) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.min(
+                exhaustive(xx, xy, yy, count, remaining - 1, index + 1, sumXx + xx[index], sumXy + xy[index], sumYy + yy[index]),
+                exhaustive(xx, xy, yy, count, remaining, index + 1, sumXx, sumXy, sumYy));
+    }
+
+    private static double cost(double xx, double xy, double yy) {
+        double determinant = xx * yy - xy * xy;
+        return determinant > 0 ? (xx + yy) / determinant : Double.POSITIVE_INFINITY;
+    }
+}
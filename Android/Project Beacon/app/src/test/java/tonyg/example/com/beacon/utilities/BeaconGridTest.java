@@ -0,0 +1,122 @@
+package tonyg.example.com.beacon.utilities;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks BeaconGrid.findNearest() against a search of every Beacon while Beacons are added,
+ * moved and removed, including Beacons at negative locations and far outside the others.
+ */
+public class BeaconGridTest {
+    private static final long SEED = 42;
+    private static final int TRIALS = 2000;
+    private static final int ROW_COUNT = 300;
+    private static final double VENUE_SIZE_M = 200;
+    private static final double TOLERANCE_M2 = 1e-9;
+
+    @Test
+    public void findNearest_matchesBruteForce() throws Exception {
+        Random random = new Random(SEED);
+        BeaconGrid grid = new BeaconGrid();
+        double[] x = new double[ROW_COUNT];
+        double[] y = new double[ROW_COUNT];
+        boolean[] isIndexed = new boolean[ROW_COUNT];
+        int size = 0;
+        for (int trial = 0; trial < TRIALS; trial++) {
+            // add, move or remove a few Beacons between searches
+            for (int change = 0; change < 5; change++) {
+                int row = random.nextInt(ROW_COUNT);
+                if (isIndexed[row] && random.nextInt(4) == 0) {
+                    grid.remove(row);
+                    isIndexed[row] = false;
+                    size--;
+                } else {
+                    x[row] = (random.nextDouble() - 0.25) * VENUE_SIZE_M;
+                    y[row] = (random.nextDouble() - 0.25) * VENUE_SIZE_M;
+                    grid.put(row, x[row], y[row]);
+                    if (!isIndexed[row]) {
+                        isIndexed[row] = true;
+                        size++;
+                    }
+                }
+            }
+            assertEquals(size, grid.size());
+
+            double px = (random.nextDouble() - 0.5) * 2 * VENUE_SIZE_M;
+            double py = (random.nextDouble() - 0.5) * 2 * VENUE_SIZE_M;
+            int count = 1 + random.nextInt(12);
+            double[] expected = bruteForce(x, y, isIndexed, px, py);
+            int found = grid.findNearest(px, py, count);
+
+            assertEquals(Math.min(count, size), found);
+            int[] rows = grid.getNearestRows();
+            double[] distanceSquared = grid.getNearestDistanceSquared();
+            for (int index = 0; index < found; index++) {
+                int row = rows[index];
+                assertTrue(isIndexed[row]);
+                double dx = x[row] - px;
+                double dy = y[row] - py;
+                assertEquals(dx * dx + dy * dy, distanceSquared[index], TOLERANCE_M2);
+                assertEquals(expected[index], distanceSquared[index], TOLERANCE_M2);
+            }
+        }
+    }
+
+    @Test
+    public void emptyGrid_findsNothing() throws Exception {
+        BeaconGrid grid = new BeaconGrid();
+        assertEquals(0, grid.findNearest(0, 0, 4));
+
+        grid.put(3, 1, 1);
+        assertTrue(grid.contains(3));
+        assertFalse(grid.contains(2));
+        assertFalse(grid.contains(1000));
+        assertEquals(1, grid.findNearest(0, 0, 4));
+        assertEquals(3, grid.getNearestRows()[0]);
+
+        grid.remove(3);
+        grid.remove(3);
+        assertEquals(0, grid.size());
+        assertEquals(0, grid.findNearest(0, 0, 4));
+
+        grid.put(1000, -50, 70);
+        grid.clear();
+        assertEquals(0, grid.size());
+        assertFalse(grid.contains(1000));
+        assertEquals(0, grid.findNearest(0, 0, 4));
+    }
+
+    @Test
+    public void movingWithinACell_updatesTheDistance() throws Exception {
+        BeaconGrid grid = new BeaconGrid(BeaconGrid.DEFAULT_CELL_SIZE_M);
+        grid.put(0, 1, 1);
+        grid.put(1, 2, 2);
+        grid.put(0, 3, 3);
+        assertEquals(2, grid.size());
+        assertEquals(1, grid.findNearest(0, 0, 1));
+        assertEquals(1, grid.getNearestRows()[0]);
+        assertEquals(8, grid.getNearestDistanceSquared()[0], TOLERANCE_M2);
+    }
+
+    /**
+     * @return the sorted squared distances from the point to every indexed Beacon
+     */
+    private static double[] bruteForce(double[] x, double[] y, boolean[] isIndexed, double px, double py) {
+        double[] distanceSquared = new double[x.length];
+        int count = 0;
+        for (int row = 0; row < x.length; row++) {
+            if (isIndexed[row]) {
+                double dx = x[row] - px;
+                double dy = y[row] - py;
+                distanceSquared[count++] = dx * dx + dy * dy;
+            }
+        }
+        double[] sorted = Arrays.copyOf(distanceSquared, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
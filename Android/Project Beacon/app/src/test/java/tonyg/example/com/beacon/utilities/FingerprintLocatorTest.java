@@ -0,0 +1,162 @@
+package tonyg.example.com.beacon.utilities;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Surveys a room with a path loss model into a RadioMap, then checks FingerprintLocator on
+ * scans taken at the reference points, between them with noise, and where the map does not
+ * reach.
+ */
+public class FingerprintLocatorTest {
+    private static final long SEED = 42;
+    private static final int TRIALS = 1000;
+    private static final long MAC_ADDRESS = 0x0000c0ffee000000L;
+    private static final double ROOM_SIZE_M = 20;
+    private static final double POINT_SPACING_M = 1;
+    private static final double REFERENCE_RSSI = -59; // dBm at 1 meter
+    private static final double PATH_LOSS_EXPONENT = 2.5;
+    private static final double MIN_RSSI = -95; // quieter Beacons are not heard
+
+    /** Nine Beacons on a grid across the room **/
+    private static final double[] BEACON_X = {2, 10, 18, 2, 10, 18, 2, 10, 18};
+    private static final double[] BEACON_Y = {2, 2, 2, 10, 10, 10, 18, 18, 18};
+
+    @Test
+    public void scanAtAReferencePoint_findsThatPoint() throws Exception {
+        RadioMap radioMap = survey();
+        FingerprintLocator locator = new FingerprintLocator(radioMap);
+        double[] result = new double[LeastSquaresLocator.RESULT_LENGTH];
+        for (int point = 0; point < radioMap.getPointCount(); point += 7) {
+            double px = radioMap.getXLocation(point);
+            double py = radioMap.getYLocation(point);
+            scan(locator, px, py, 0, null);
+
+            assertEquals(LeastSquaresLocator.STATUS_OK, locator.locate(result));
+            assertEquals(0, result[LeastSquaresLocator.RESULT_RESIDUAL], 0.5);
+            double error = Math.hypot(result[LeastSquaresLocator.RESULT_X] - px, result[LeastSquaresLocator.RESULT_Y] - py);
+            assertTrue("error " + error + " at " + px + ", " + py, error < POINT_SPACING_M);
+        }
+    }
+
+    @Test
+    public void noisyScans_stayNearTheCentral() throws Exception {
+        Random random = new Random(SEED);
+        FingerprintLocator locator = new FingerprintLocator(survey());
+        double[] result = new double[LeastSquaresLocator.RESULT_LENGTH];
+        double noise = 4; // dB
+        double error = 0;
+        for (int trial = 0; trial < TRIALS; trial++) {
+            double px = 1 + random.nextDouble() * (ROOM_SIZE_M - 2);
+            double py = 1 + random.nextDouble() * (ROOM_SIZE_M - 2);
+            scan(locator, px, py, noise, random);
+
+            assertEquals(LeastSquaresLocator.STATUS_OK, locator.locate(result));
+            assertTrue(result[LeastSquaresLocator.RESULT_COVARIANCE_XX] > 0);
+            assertTrue(result[LeastSquaresLocator.RESULT_COVARIANCE_YY] > 0);
+            error += Math.hypot(result[LeastSquaresLocator.RESULT_X] - px, result[LeastSquaresLocator.RESULT_Y] - py);
+        }
+        error /= TRIALS;
+        assertTrue("mean error " + error, error < 2);
+    }
+
+    @Test
+    public void scanUnlikeAnyPoint_isNotMatched() throws Exception {
+        FingerprintLocator locator = new FingerprintLocator(survey());
+        double[] result = new double[LeastSquaresLocator.RESULT_LENGTH];
+        // no spot in the room hears every Beacon this loudly
+        locator.clearObservations();
+        for (int column = 0; column < BEACON_X.length; column++) {
+            assertTrue(locator.addObservation(MAC_ADDRESS + column, -45));
+        }
+        assertEquals(FingerprintLocator.STATUS_NO_MATCH, locator.locate(result));
+    }
+
+    @Test
+    public void scanWithoutMappedBeacons_isRejected() throws Exception {
+        FingerprintLocator locator = new FingerprintLocator(survey());
+        double[] result = new double[LeastSquaresLocator.RESULT_LENGTH];
+        locator.clearObservations();
+        assertEquals(LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS, locator.locate(result));
+        assertFalse(locator.addObservation(MAC_ADDRESS + BEACON_X.length, -60));
+        assertEquals(LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS, locator.locate(result));
+    }
+
+    @Test
+    public void radioMap_readsBackWhatWasWritten() throws Exception {
+        RadioMap radioMap = survey();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        radioMap.write(new DataOutputStream(bytes));
+        RadioMap copy = RadioMap.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(radioMap.getBeaconCount(), copy.getBeaconCount());
+        assertEquals(radioMap.getPointCount(), copy.getPointCount());
+        for (int column = 0; column < radioMap.getBeaconCount(); column++) {
+            assertEquals(radioMap.getMacAddress(column), copy.getMacAddress(column));
+            assertEquals(column, copy.getColumn(MAC_ADDRESS + column));
+            assertEquals(radioMap.getIndexEnd(column) - radioMap.getIndexStart(column), copy.getIndexEnd(column) - copy.getIndexStart(column));
+        }
+        for (int point = 0; point < radioMap.getPointCount(); point++) {
+            assertEquals(radioMap.getXLocation(point), copy.getXLocation(point), 0.005);
+            assertEquals(radioMap.getYLocation(point), copy.getYLocation(point), 0.005);
+            assertEquals(radioMap.getHeardCount(point), copy.getHeardCount(point));
+            for (int column = 0; column < radioMap.getBeaconCount(); column++) {
+                assertEquals(radioMap.getRssi(point, column), copy.getRssi(point, column));
+            }
+        }
+        assertEquals(RadioMap.NOT_FOUND, copy.getColumn(MAC_ADDRESS + BEACON_X.length));
+    }
+
+    /**
+     * Survey a reference point every POINT_SPACING_M across the room
+     */
+    private static RadioMap survey() {
+        RadioMap radioMap = new RadioMap();
+        for (int column = 0; column < BEACON_X.length; column++) {
+            assertEquals(column, radioMap.addBeacon(MAC_ADDRESS + column));
+        }
+        for (double y = 0; y <= ROOM_SIZE_M; y += POINT_SPACING_M) {
+            for (double x = 0; x <= ROOM_SIZE_M; x += POINT_SPACING_M) {
+                int point = radioMap.addPoint(x, y);
+                for (int column = 0; column < BEACON_X.length; column++) {
+                    double rssi = rssi(column, x, y);
+                    if (rssi >= MIN_RSSI) {
+                        radioMap.setRssi(point, column, rssi);
+                    }
+                }
+            }
+        }
+        radioMap.buildIndex();
+        return radioMap;
+    }
+
+    /**
+     * Hand the locator the Beacons heard at a point
+     *
+     * @param random source of the noise, or <b>null</b> if noise is 0
+     */
+    private static void scan(FingerprintLocator locator, double x, double y, double noise, Random random) {
+        locator.clearObservations();
+        for (int column = 0; column < BEACON_X.length; column++) {
+            double rssi = rssi(column, x, y);
+            if (noise > 0) {
+                rssi += random.nextGaussian() * noise;
+            }
+            if (rssi >= MIN_RSSI) {
+                locator.addObservation(MAC_ADDRESS + column, rssi);
+            }
+        }
+    }
+
+    private static double rssi(int column, double x, double y) {
+        double distance = Math.max(0.1, Math.hypot(x - BEACON_X[column], y - BEACON_Y[column]));
+        return REFERENCE_RSSI - 10 * PATH_LOSS_EXPONENT * Math.log10(distance);
+    }
+}
@@ -0,0 +1,144 @@
+package tonyg.example.com.beacon.utilities;
+
+import org.junit.Test;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that FloorClassifier picks the loudest floor, moves to another only when it is louder
+ * by the switch margin on enough updates in a row, and ignores Beacons not heard lately.
+ */
+public class FloorClassifierTest {
+    private static final long MAC_ADDRESS = 0x0000c0ffee000000L;
+    private static final int REFERENCE_RSSI = -59;
+
+    /** One Beacon on each floor, in rows 0, 1 and 2 **/
+    private static final int[] FLOORS = {0, 1, 2};
+
+    @Test
+    public void firstUpdate_picksTheLoudestFloor() throws Exception {
+        BeaconTable beaconTable = beacons();
+        RssiFilter rssiFilter = new RssiFilter(RssiFilter.MODE_NONE);
+        FloorClassifier classifier = new FloorClassifier();
+        assertFalse(classifier.hasFloor());
+
+        hear(rssiFilter, -80, -65, -90);
+        assertEquals(1, classifier.update(beaconTable, rssiFilter));
+        assertTrue(classifier.hasFloor());
+    }
+
+    @Test
+    public void floorWithinTheMargin_doesNotWin() throws Exception {
+        BeaconTable beaconTable = beacons();
+        RssiFilter rssiFilter = new RssiFilter(RssiFilter.MODE_NONE);
+        FloorClassifier classifier = new FloorClassifier(3, 2);
+
+        hear(rssiFilter, -70, -80, -90);
+        assertEquals(0, classifier.update(beaconTable, rssiFilter));
+        // louder, but by less than the margin, for as long as it likes
+        for (int update = 0; update < 10; update++) {
+            hear(rssiFilter, -70, -68, -90);
+            assertEquals(0, classifier.update(beaconTable, rssiFilter));
+        }
+    }
+
+    @Test
+    public void floorBeyondTheMargin_winsAfterEnoughUpdates() throws Exception {
+        BeaconTable beaconTable = beacons();
+        RssiFilter rssiFilter = new RssiFilter(RssiFilter.MODE_NONE);
+        FloorClassifier classifier = new FloorClassifier(3, 3);
+
+        hear(rssiFilter, -70, -80, -90);
+        assertEquals(0, classifier.update(beaconTable, rssiFilter));
+        hear(rssiFilter, -75, -65, -90);
+        assertEquals(0, classifier.update(beaconTable, rssiFilter));
+        hear(rssiFilter, -75, -65, -90);
+        assertEquals(0, classifier.update(beaconTable, rssiFilter));
+        hear(rssiFilter, -75, -65, -90);
+        assertEquals(1, classifier.update(beaconTable, rssiFilter));
+        // and holds it
+        hear(rssiFilter, -70, -69, -90);
+        assertEquals(1, classifier.update(beaconTable, rssiFilter));
+    }
+
+    @Test
+    public void brokenRun_startsCountingAgain() throws Exception {
+        BeaconTable beaconTable = beacons();
+        RssiFilter rssiFilter = new RssiFilter(RssiFilter.MODE_NONE);
+        FloorClassifier classifier = new FloorClassifier(3, 2);
+
+        hear(rssiFilter, -70, -80, -90);
+        assertEquals(0, classifier.update(beaconTable, rssiFilter));
+        // on a stairwell the floors take turns being loudest
+        for (int update = 0; update < 10; update++) {
+            hear(rssiFilter, -75, -65, -90);
+            assertEquals(0, classifier.update(beaconTable, rssiFilter));
+            hear(rssiFilter, -70, -80, -90);
+            assertEquals(0, classifier.update(beaconTable, rssiFilter));
+        }
+        // a different floor in between does not add to the run either
+        hear(rssiFilter, -75, -65, -90);
+        assertEquals(0, classifier.update(beaconTable, rssiFilter));
+        hear(rssiFilter, -75, -90, -60);
+        assertEquals(0, classifier.update(beaconTable, rssiFilter));
+        hear(rssiFilter, -75, -65, -90);
+        assertEquals(0, classifier.update(beaconTable, rssiFilter));
+        hear(rssiFilter, -75, -65, -90);
+        assertEquals(1, classifier.update(beaconTable, rssiFilter));
+    }
+
+    @Test
+    public void beaconsNotHeardSinceTheLastUpdate_areNotCounted() throws Exception {
+        BeaconTable beaconTable = beacons();
+        RssiFilter rssiFilter = new RssiFilter(RssiFilter.MODE_NONE);
+        FloorClassifier classifier = new FloorClassifier(3, 1);
+
+        hear(rssiFilter, -70, -50, -90);
+        assertEquals(1, classifier.update(beaconTable, rssiFilter));
+        // the Central took the stairs down and only hears floor 0 now, while floor 1 keeps its
+        // last loud RSSI in the filter
+        rssiFilter.update(0, -65);
+        assertEquals(0, classifier.update(beaconTable, rssiFilter));
+        assertEquals(0, classifier.update(beaconTable, rssiFilter));
+    }
+
+    @Test
+    public void beaconsWithoutAFloor_leaveItUnknown() throws Exception {
+        BeaconTable beaconTable = new BeaconTable();
+        int row = beaconTable.add(MAC_ADDRESS);
+        beaconTable.setReferenceRssi(row, REFERENCE_RSSI);
+        RssiFilter rssiFilter = new RssiFilter(RssiFilter.MODE_NONE);
+        FloorClassifier classifier = new FloorClassifier();
+
+        rssiFilter.update(row, -60);
+        assertEquals(FloorClassifier.UNKNOWN_FLOOR, classifier.update(beaconTable, rssiFilter));
+        assertFalse(classifier.hasFloor());
+
+        beaconTable = beacons();
+        hear(rssiFilter, -70, -80, -90);
+        assertEquals(0, classifier.update(beaconTable, rssiFilter));
+        classifier.reset();
+        assertEquals(FloorClassifier.UNKNOWN_FLOOR, classifier.getFloor());
+    }
+
+    private static BeaconTable beacons() {
+        BeaconTable beaconTable = new BeaconTable();
+        for (int index = 0; index < FLOORS.length; index++) {
+            int row = beaconTable.add(MAC_ADDRESS + index);
+            beaconTable.setReferenceRssi(row, REFERENCE_RSSI);
+            beaconTable.setFloor(row, FLOORS[index]);
+        }
+        return beaconTable;
+    }
+
+    /**
+     * Hear every Beacon once
+     */
+    private static void hear(RssiFilter rssiFilter, int... rssi) {
+        for (int row = 0; row < rssi.length; row++) {
+            rssiFilter.update(row, rssi[row]);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package tonyg.example.com.beacon.utilities;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks LeastSquares3dLocator on exact and noisy ranges from Beacons at different heights and
+ * at one height, where the height prior has to hold the Central up, and on Beacons it can not
+ * solve from.
+ */
+public class LeastSquares3dLocatorTest {
+    private static final long SEED = 42;
+    private static final int TRIALS = 2000;
+    private static final double ROOM_SIZE_M = 20;
+    private static final double CEILING_M = 3;
+    private static final double HAND_HEIGHT_M = 1.2; // where a phone is usually held
+    private static final double TOLERANCE_M = 1e-3;
+
+    /** Eight Beacons around the walls of the room **/
+    private static final double[] ROOM_X = {0, 10, 20, 20, 20, 10, 0, 0};
+    private static final double[] ROOM_Y = {0, 0, 0, 10, 20, 20, 20, 10};
+    /** high and low on alternate walls, or all under the ceiling **/
+    private static final double[] STAGGERED_Z = {0.5, 3, 0.5, 3, 0.5, 3, 0.5, 3};
+    private static final double[] LEVEL_Z = {CEILING_M, CEILING_M, CEILING_M, CEILING_M, CEILING_M, CEILING_M, CEILING_M, CEILING_M};
+
+    @Test
+    public void exactRanges_findTheCentral() throws Exception {
+        Random random = new Random(SEED);
+        double[] result = new double[LeastSquares3dLocator.RESULT_LENGTH];
+        for (int trial = 0; trial < TRIALS; trial++) {
+            double px = random.nextDouble() * ROOM_SIZE_M;
+            double py = random.nextDouble() * ROOM_SIZE_M;
+            double pz = 0.5 + random.nextDouble() * 2;
+            double[] distance = ranges(STAGGERED_Z, px, py, pz, 0, random);
+
+            // a prior too weak to pull the Central off its ranges
+            assertEquals(LeastSquaresLocator.STATUS_OK, LeastSquares3dLocator.solve(ROOM_X, ROOM_Y, STAGGERED_Z, distance, null, ROOM_X.length, HAND_HEIGHT_M, 1e6, result));
+            assertEquals(px, result[LeastSquaresLocator.RESULT_X], TOLERANCE_M);
+            assertEquals(py, result[LeastSquaresLocator.RESULT_Y], TOLERANCE_M);
+            assertEquals(pz, result[LeastSquares3dLocator.RESULT_Z], TOLERANCE_M);
+            assertEquals(0, result[LeastSquaresLocator.RESULT_RESIDUAL], TOLERANCE_M);
+        }
+    }
+
+    @Test
+    public void levelBeacons_keepThePriorHeight() throws Exception {
+        Random random = new Random(SEED);
+        double[] result = new double[LeastSquares3dLocator.RESULT_LENGTH];
+        for (int trial = 0; trial < TRIALS; trial++) {
+            double px = random.nextDouble() * ROOM_SIZE_M;
+            double py = random.nextDouble() * ROOM_SIZE_M;
+            double[] distance = ranges(LEVEL_Z, px, py, HAND_HEIGHT_M, 0, random);
+
+            // the ranges fit the Central as well above the Beacons as below them
+            assertEquals(LeastSquaresLocator.STATUS_OK, LeastSquares3dLocator.solve(ROOM_X, ROOM_Y, LEVEL_Z, distance, null, ROOM_X.length, HAND_HEIGHT_M, 0.25, result));
+            assertEquals(px, result[LeastSquaresLocator.RESULT_X], TOLERANCE_M);
+            assertEquals(py, result[LeastSquaresLocator.RESULT_Y], TOLERANCE_M);
+            assertEquals(HAND_HEIGHT_M, result[LeastSquares3dLocator.RESULT_Z], TOLERANCE_M);
+            assertTrue(result[LeastSquares3dLocator.RESULT_COVARIANCE_ZZ] > 0);
+            assertTrue(result[LeastSquares3dLocator.RESULT_COVARIANCE_ZZ] <= 0.25);
+        }
+    }
+
+    @Test
+    public void noisyRanges_stayNearTheCentral() throws Exception {
+        Random random = new Random(SEED);
+        double[] result = new double[LeastSquares3dLocator.RESULT_LENGTH];
+        double noise = 0.3;
+        double error = 0;
+        for (int trial = 0; trial < TRIALS; trial++) {
+            double px = 2 + random.nextDouble() * (ROOM_SIZE_M - 4);
+            double py = 2 + random.nextDouble() * (ROOM_SIZE_M - 4);
+            double[] distance = ranges(LEVEL_Z, px, py, HAND_HEIGHT_M, noise, random);
+
+            assertEquals(LeastSquaresLocator.STATUS_OK, LeastSquares3dLocator.solve(ROOM_X, ROOM_Y, LEVEL_Z, distance, null, ROOM_X.length, HAND_HEIGHT_M, 0.25, result));
+            double trialError = Math.hypot(result[LeastSquaresLocator.RESULT_X] - px, result[LeastSquaresLocator.RESULT_Y] - py);
+            assertTrue("error " + trialError, trialError < 4 * noise);
+            assertEquals(HAND_HEIGHT_M, result[LeastSquares3dLocator.RESULT_Z], 1.5);
+            error += trialError;
+        }
+        error /= TRIALS;
+        assertTrue("mean error " + error, error < noise);
+    }
+
+    @Test
+    public void collinearBeacons_areDegenerate() throws Exception {
+        double[] result = new double[LeastSquares3dLocator.RESULT_LENGTH];
+        double[] x = {0, 5, 10, 15};
+        double[] y = {0, 0, 0, 0};
+        double[] z = {CEILING_M, CEILING_M, CEILING_M, CEILING_M};
+        double[] distance = {5, 5, 7, 9};
+
+        assertEquals(LeastSquaresLocator.STATUS_DEGENERATE, LeastSquares3dLocator.solve(x, y, z, distance, null, 4, HAND_HEIGHT_M, 0.25, result));
+        // the same Beacon heard three times
+        double[] sameX = {3, 3, 3};
+        double[] sameY = {4, 4, 4};
+        assertEquals(LeastSquaresLocator.STATUS_DEGENERATE, LeastSquares3dLocator.solve(sameX, sameY, z, distance, null, 3, HAND_HEIGHT_M, 0.25, result));
+    }
+
+    @Test
+    public void tooFewBeacons_areRejected() throws Exception {
+        double[] result = new double[LeastSquares3dLocator.RESULT_LENGTH];
+        assertEquals(LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS, LeastSquares3dLocator.solve(ROOM_X, ROOM_Y, LEVEL_Z, new double[] {5, 5}, null, 2, HAND_HEIGHT_M, 0.25, result));
+    }
+
+    /**
+     * Ranges from a point to each Beacon in the room
+     *
+     * @param random source of the noise, or <b>null</b> if noise is 0
+     */
+    private static double[] ranges(double[] z, double px, double py, double pz, double noise, Random random) {
+        double[] distance = new double[ROOM_X.length];
+        for (int index = 0; index < distance.length; index++) {
+            double dx = px - ROOM_X[index];
+            double dy = py - ROOM_Y[index];
+            double dz = pz - z[index];
+            distance[index] = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            if (noise > 0) {
+                distance[index] += random.nextGaussian() * noise;
+            }
+        }
+        return distance;
+    }
+}
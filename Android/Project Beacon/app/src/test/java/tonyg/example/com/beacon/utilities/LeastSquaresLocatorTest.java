@@ -0,0 +1,160 @@
+package tonyg.example.com.beacon.utilities;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks LeastSquaresLocator on exact and noisy ranges, on Beacons it can not solve from,
+ * and checks that the covariance it reports matches the scatter of its fixes.
+ */
+public class LeastSquaresLocatorTest {
+    private static final long SEED = 42;
+    private static final int TRIALS = 2000;
+    private static final double ROOM_SIZE_M = 20;
+    private static final double TOLERANCE_M = 1e-3;
+
+    /** Eight Beacons around the walls of the room **/
+    private static final double[] ROOM_X = {0, 10, 20, 20, 20, 10, 0, 0};
+    private static final double[] ROOM_Y = {0, 0, 0, 10, 20, 20, 20, 10};
+
+    @Test
+    public void exactRanges_findTheCentral() throws Exception {
+        Random random = new Random(SEED);
+        double[] result = new double[LeastSquaresLocator.RESULT_LENGTH];
+        for (int trial = 0; trial < TRIALS; trial++) {
+            double px = random.nextDouble() * ROOM_SIZE_M;
+            double py = random.nextDouble() * ROOM_SIZE_M;
+            int count = 4 + random.nextInt(ROOM_X.length - 3); // the first three Beacons are on one wall
+            double[] distance = ranges(px, py, 0, random);
+
+            assertEquals(LeastSquaresLocator.STATUS_OK, LeastSquaresLocator.solve(ROOM_X, ROOM_Y, distance, null, count, result));
+            assertEquals(px, result[LeastSquaresLocator.RESULT_X], TOLERANCE_M);
+            assertEquals(py, result[LeastSquaresLocator.RESULT_Y], TOLERANCE_M);
+            assertEquals(0, result[LeastSquaresLocator.RESULT_RESIDUAL], TOLERANCE_M);
+        }
+    }
+
+    @Test
+    public void noisyRanges_stayNearTheCentral() throws Exception {
+        Random random = new Random(SEED);
+        double[] result = new double[LeastSquaresLocator.RESULT_LENGTH];
+        double noise = 0.3;
+        double error = 0;
+        for (int trial = 0; trial < TRIALS; trial++) {
+            double px = 2 + random.nextDouble() * (ROOM_SIZE_M - 4);
+            double py = 2 + random.nextDouble() * (ROOM_SIZE_M - 4);
+            double[] distance = ranges(px, py, noise, random);
+
+            assertEquals(LeastSquaresLocator.STATUS_OK, LeastSquaresLocator.solve(ROOM_X, ROOM_Y, distance, null, ROOM_X.length, result));
+            double trialError = Math.hypot(result[LeastSquaresLocator.RESULT_X] - px, result[LeastSquaresLocator.RESULT_Y] - py);
+            assertTrue("error " + trialError, trialError < 4 * noise);
+            assertEquals(noise, result[LeastSquaresLocator.RESULT_RESIDUAL], noise);
+            error += trialError;
+        }
+        error /= TRIALS;
+        assertTrue("mean error " + error, error < noise);
+    }
+
+    @Test
+    public void collinearBeacons_areDegenerate() throws Exception {
+        double[] result = new double[LeastSquaresLocator.RESULT_LENGTH];
+        double[] x = {0, 5, 10, 15};
+        double[] y = {0, 0, 0, 0};
+        double[] diagonalX = {0, 1, 2, 3};
+        double[] diagonalY = {0, 2, 4, 6};
+        double[] distance = {5, 5, 7, 9};
+
+        assertEquals(LeastSquaresLocator.STATUS_DEGENERATE, LeastSquaresLocator.solve(x, y, distance, null, 4, result));
+        assertEquals(LeastSquaresLocator.STATUS_DEGENERATE, LeastSquaresLocator.solve(diagonalX, diagonalY, distance, null, 4, result));
+        // the same Beacon heard three times
+        double[] sameX = {3, 3, 3};
+        double[] sameY = {4, 4, 4};
+        assertEquals(LeastSquaresLocator.STATUS_DEGENERATE, LeastSquaresLocator.solve(sameX, sameY, distance, null, 3, result));
+    }
+
+    @Test
+    public void tooFewBeacons_areRejected() throws Exception {
+        double[] result = new double[LeastSquaresLocator.RESULT_LENGTH];
+        assertEquals(LeastSquaresLocator.STATUS_NOT_ENOUGH_BEACONS, LeastSquaresLocator.solve(ROOM_X, ROOM_Y, new double[] {5, 5}, null, 2, result));
+    }
+
+    @Test
+    public void exactRanges_reportTheCovarianceOfTheWeights() throws Exception {
+        double[] result = new double[LeastSquaresLocator.RESULT_LENGTH];
+        double px = 10;
+        double py = 10;
+        double[] distance = ranges(px, py, 0, null);
+        double[] weight = new double[ROOM_X.length];
+
+        // (J^T W J)^-1 with every weight 1: the unit vectors to the eight Beacons sum to 4 I
+        for (int index = 0; index < weight.length; index++) {
+            weight[index] = 1;
+        }
+        assertEquals(LeastSquaresLocator.STATUS_OK, LeastSquaresLocator.solve(ROOM_X, ROOM_Y, distance, weight, ROOM_X.length, result));
+        assertEquals(0.25, result[LeastSquaresLocator.RESULT_COVARIANCE_XX], 1e-6);
+        assertEquals(0, result[LeastSquaresLocator.RESULT_COVARIANCE_XY], 1e-6);
+        assertEquals(0.25, result[LeastSquaresLocator.RESULT_COVARIANCE_YY], 1e-6);
+
+        // a million times the weight is a millionth of the variance, however small
+        for (int index = 0; index < weight.length; index++) {
+            weight[index] = 1e6;
+        }
+        assertEquals(LeastSquaresLocator.STATUS_OK, LeastSquaresLocator.solve(ROOM_X, ROOM_Y, distance, weight, ROOM_X.length, result));
+        assertEquals(0.25e-6, result[LeastSquaresLocator.RESULT_COVARIANCE_XX], 1e-12);
+        assertEquals(0.25e-6, result[LeastSquaresLocator.RESULT_COVARIANCE_YY], 1e-12);
+    }
+
+    @Test
+    public void noisyRanges_reportTheirScatter() throws Exception {
+        Random random = new Random(SEED);
+        double[] result = new double[LeastSquaresLocator.RESULT_LENGTH];
+        double noise = 0.3;
+        double[] weight = new double[ROOM_X.length];
+        for (int index = 0; index < weight.length; index++) {
+            weight[index] = 1 / (noise * noise);
+        }
+        double px = 7;
+        double py = 12;
+        double sumX = 0, sumY = 0, sumXX = 0, sumYY = 0;
+        double reportedXX = 0, reportedYY = 0;
+        for (int trial = 0; trial < TRIALS; trial++) {
+            double[] distance = ranges(px, py, noise, random);
+            assertEquals(LeastSquaresLocator.STATUS_OK, LeastSquaresLocator.solve(ROOM_X, ROOM_Y, distance, weight, ROOM_X.length, result));
+            double dx = result[LeastSquaresLocator.RESULT_X] - px;
+            double dy = result[LeastSquaresLocator.RESULT_Y] - py;
+            sumX += dx;
+            sumY += dy;
+            sumXX += dx * dx;
+            sumYY += dy * dy;
+            reportedXX += result[LeastSquaresLocator.RESULT_COVARIANCE_XX];
+            reportedYY += result[LeastSquaresLocator.RESULT_COVARIANCE_YY];
+        }
+        double scatterXX = sumXX / TRIALS - (sumX / TRIALS) * (sumX / TRIALS);
+        double scatterYY = sumYY / TRIALS - (sumY / TRIALS) * (sumY / TRIALS);
+        reportedXX /= TRIALS;
+        reportedYY /= TRIALS;
+
+        // never overconfident, and inflated by the residual only a little
+        assertTrue("x " + reportedXX + " against " + scatterXX, reportedXX > 0.85 * scatterXX && reportedXX < 1.5 * scatterXX);
+        assertTrue("y " + reportedYY + " against " + scatterYY, reportedYY > 0.85 * scatterYY && reportedYY < 1.5 * scatterYY);
+    }
+
+    /**
+     * Ranges from a point to each Beacon in the room
+     *
+     * @param random source of the noise, or <b>null</b> if noise is 0
+     */
+    private static double[] ranges(double px, double py, double noise, Random random) {
+        double[] distance = new double[ROOM_X.length];
+        for (int index = 0; index < distance.length; index++) {
+            distance[index] = Math.hypot(px - ROOM_X[index], py - ROOM_Y[index]);
+            if (noise > 0) {
+                distance[index] += random.nextGaussian() * noise;
+            }
+        }
+        return distance;
+    }
+}
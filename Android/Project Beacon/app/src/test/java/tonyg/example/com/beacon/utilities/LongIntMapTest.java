@@ -0,0 +1,101 @@
+package tonyg.example.com.beacon.utilities;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks LongIntMap against a HashMap through long runs of random puts and removes, so probe
+ * chains collide, wrap around the end of the table, and are closed up again.
+ */
+public class LongIntMapTest {
+    private static final long SEED = 42;
+    private static final int OPERATIONS = 200000;
+    private static final long MAC_ADDRESS = 0x0000c0ffee000000L;
+
+    @Test
+    public void randomPutsAndRemoves_matchHashMap() throws Exception {
+        Random random = new Random(SEED);
+        // few keys in a small table, so most of them share probe chains
+        LongIntMap map = new LongIntMap(4);
+        HashMap<Long, Integer> reference = new HashMap<Long, Integer>();
+        int keyCount = 24;
+        for (int operation = 0; operation < OPERATIONS; operation++) {
+            long key = MAC_ADDRESS + random.nextInt(keyCount);
+            if (random.nextInt(3) == 0) {
+                Integer expected = reference.remove(key);
+                assertEquals(expected == null ? LongIntMap.NOT_FOUND : expected, map.remove(key));
+            } else {
+                int value = random.nextInt(1000);
+                reference.put(key, value);
+                map.put(key, value);
+            }
+            assertEquals(reference.size(), map.size());
+            if (operation % 64 == 0) {
+                for (int index = 0; index < keyCount; index++) {
+                    Integer expected = reference.get(MAC_ADDRESS + index);
+                    assertEquals(expected == null ? LongIntMap.NOT_FOUND : expected, map.get(MAC_ADDRESS + index));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void removingFromTheMiddleOfAChain_keepsTheRestFindable() throws Exception {
+        LongIntMap map = new LongIntMap();
+        int keyCount = 7; // under half of the 16 slots, so the table never grows
+        for (int index = 0; index < keyCount; index++) {
+            map.put(MAC_ADDRESS + index, index);
+        }
+        for (int removed = 0; removed < keyCount; removed++) {
+            assertEquals(removed, map.remove(MAC_ADDRESS + removed));
+            assertEquals(LongIntMap.NOT_FOUND, map.remove(MAC_ADDRESS + removed));
+            assertFalse(map.containsKey(MAC_ADDRESS + removed));
+            for (int index = removed + 1; index < keyCount; index++) {
+                assertEquals(index, map.get(MAC_ADDRESS + index));
+            }
+            assertEquals(keyCount - removed - 1, map.size());
+        }
+    }
+
+    @Test
+    public void growing_keepsEveryKey() throws Exception {
+        LongIntMap map = new LongIntMap();
+        int keyCount = 10000;
+        for (int index = 0; index < keyCount; index++) {
+            map.put(MAC_ADDRESS + index, index);
+            map.put(MAC_ADDRESS + index, -index); // replaced, not added
+        }
+        assertEquals(keyCount, map.size());
+        for (int index = 0; index < keyCount; index++) {
+            assertEquals(-index, map.get(MAC_ADDRESS + index));
+        }
+        assertEquals(LongIntMap.NOT_FOUND, map.get(MAC_ADDRESS + keyCount));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(MAC_ADDRESS));
+        map.put(MAC_ADDRESS, 1);
+        assertEquals(1, map.get(MAC_ADDRESS));
+    }
+
+    @Test
+    public void extremeKeys_areStored() throws Exception {
+        LongIntMap map = new LongIntMap();
+        map.put(0, 1);
+        map.put(-1, 2);
+        map.put(Long.MAX_VALUE, 3);
+        assertEquals(1, map.get(0));
+        assertEquals(2, map.get(-1));
+        assertEquals(3, map.get(Long.MAX_VALUE));
+        assertEquals(LongIntMap.NOT_FOUND, map.get(Long.MIN_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reservedKey_isRejected() throws Exception {
+        new LongIntMap().put(Long.MIN_VALUE, 1);
+    }
+}
@@ -0,0 +1,82 @@
+package tonyg.example.com.beacon.utilities;
+
+import org.junit.Test;
+
+import tonyg.example.com.beacon.sensors.MotionSensor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks MotionRingBuffer when empty, when full, and across many wraps of its slots.
+ */
+public class MotionRingBufferTest {
+    private static final int CAPACITY = 8;
+
+    @Test
+    public void emptyBuffer_hasNothingToPoll() throws Exception {
+        MotionRingBuffer buffer = new MotionRingBuffer(CAPACITY);
+        assertEquals(CAPACITY, buffer.getCapacity());
+        assertFalse(buffer.poll());
+        assertEquals(0, buffer.size());
+
+        assertTrue(buffer.offer(MotionSensor.SENSOR_GYROSCOPE, 1, 0.1f, 0.2f, 0.3f));
+        assertTrue(buffer.poll());
+        assertEquals(MotionSensor.SENSOR_GYROSCOPE, buffer.getSensor());
+        assertEquals(0.1f, buffer.getX(), 0);
+        assertEquals(0.2f, buffer.getY(), 0);
+        assertEquals(0.3f, buffer.getZ(), 0);
+        assertFalse(buffer.poll());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void fullBuffer_dropsAndCounts() throws Exception {
+        MotionRingBuffer buffer = new MotionRingBuffer(CAPACITY);
+        for (int index = 0; index < CAPACITY; index++) {
+            assertTrue(buffer.offer(MotionSensor.SENSOR_ACCELEROMETER, index, index, 0, 0));
+        }
+        assertFalse(buffer.offer(MotionSensor.SENSOR_ACCELEROMETER, CAPACITY, 0, 0, 0));
+        assertEquals(1, buffer.getDroppedCount());
+
+        // the slot being read is not free until the next poll
+        assertTrue(buffer.poll());
+        assertFalse(buffer.offer(MotionSensor.SENSOR_ACCELEROMETER, CAPACITY, 0, 0, 0));
+        assertTrue(buffer.poll());
+        assertTrue(buffer.offer(MotionSensor.SENSOR_ACCELEROMETER, CAPACITY, CAPACITY, 0, 0));
+        assertEquals(2, buffer.getDroppedCount());
+
+        for (int index = 1; index <= CAPACITY; index++) {
+            if (index > 1) {
+                assertTrue(buffer.poll());
+            }
+            assertEquals(index, buffer.getTimestampNanos());
+            assertEquals(index, buffer.getX(), 0);
+        }
+        assertFalse(buffer.poll());
+    }
+
+    @Test
+    public void manyWraps_keepTheOrder() throws Exception {
+        MotionRingBuffer buffer = new MotionRingBuffer(CAPACITY);
+        long next = 0;
+        long expected = 0;
+        for (int round = 0; round < 1000; round++) {
+            // uneven bursts, so the head and tail wrap at different places
+            int burst = 1 + round % CAPACITY;
+            for (int index = 0; index < burst; index++) {
+                int sensor = next % 2 == 0 ? MotionSensor.SENSOR_ACCELEROMETER : MotionSensor.SENSOR_GYROSCOPE;
+                assertTrue(buffer.offer(sensor, next, next % 100, 0, 0));
+                next++;
+            }
+            while (buffer.poll()) {
+                int sensor = expected % 2 == 0 ? MotionSensor.SENSOR_ACCELEROMETER : MotionSensor.SENSOR_GYROSCOPE;
+                assertEquals(sensor, buffer.getSensor());
+                assertEquals(expected, buffer.getTimestampNanos());
+                assertEquals(expected % 100, buffer.getX(), 0);
+                expected++;
+            }
+        }
+        assertEquals(next, expected);
+        assertEquals(0, buffer.getDroppedCount());
+    }
+}
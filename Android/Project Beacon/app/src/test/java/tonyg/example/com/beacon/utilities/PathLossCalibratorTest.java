@@ -0,0 +1,127 @@
+package tonyg.example.com.beacon.utilities;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds PathLossCalibrator samples from the log-distance model and checks the exponent and
+ * offset it learns, that fits out of range are clamped, and that its saved sums restore the fit.
+ */
+public class PathLossCalibratorTest {
+    private static final long SEED = 42;
+    private static final int SAMPLES = 5000;
+    private static final double DEFAULT_EXPONENT = 3.5;
+    private static final int REFERENCE_RSSI = -59; // dBm at 1 meter
+    private static final double MAX_DISTANCE_M = 20;
+    private static final double TOLERANCE = 1e-2;
+
+    @Test
+    public void noSamples_giveTheDefault() throws Exception {
+        PathLossCalibrator calibrator = new PathLossCalibrator(DEFAULT_EXPONENT);
+        assertEquals(DEFAULT_EXPONENT, calibrator.getPathLossExponent(0), 0);
+        assertEquals(0, calibrator.getReferenceRssiOffset(0), 0);
+        assertEquals(0, calibrator.getSampleWeight(0), 0);
+        // a row the calibrator has not grown to yet
+        assertEquals(DEFAULT_EXPONENT, calibrator.getPathLossExponent(1000), 0);
+        assertEquals(0, calibrator.getReferenceRssiOffset(1000), 0);
+
+        // a row grown into by another row's samples
+        calibrator.update(40, REFERENCE_RSSI, -80, 5, 1);
+        assertEquals(DEFAULT_EXPONENT, calibrator.getPathLossExponent(39), 0);
+
+        // and a row that forgot its samples
+        calibrator.reset(40);
+        assertEquals(DEFAULT_EXPONENT, calibrator.getPathLossExponent(40), 0);
+        assertEquals(0, calibrator.getReferenceRssiOffset(40), 0);
+        assertEquals(0, calibrator.getSampleWeight(40), 0);
+    }
+
+    @Test
+    public void exactSamples_recoverTheExponentAndOffset() throws Exception {
+        Random random = new Random(SEED);
+        double[] exponents = {2, 2.7, 4.2};
+        double[] offsets = {-6, 0, 3.5};
+        // no forgetting and next to no prior, so only the samples speak
+        PathLossCalibrator calibrator = new PathLossCalibrator(DEFAULT_EXPONENT, 1, 1e-6, 1);
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            int row = sample % exponents.length;
+            double distance = 0.5 + random.nextDouble() * MAX_DISTANCE_M;
+            calibrator.update(row, REFERENCE_RSSI, rssi(exponents[row], offsets[row], distance), distance, 1);
+        }
+        for (int row = 0; row < exponents.length; row++) {
+            assertEquals(exponents[row], calibrator.getPathLossExponent(row), TOLERANCE);
+            assertEquals(offsets[row], calibrator.getReferenceRssiOffset(row), TOLERANCE);
+        }
+    }
+
+    @Test
+    public void noisySamples_stayNearTheExponentAndOffset() throws Exception {
+        Random random = new Random(SEED);
+        double exponent = 2.5;
+        double offset = -3;
+        double noise = 4; // dB
+        PathLossCalibrator calibrator = new PathLossCalibrator(DEFAULT_EXPONENT);
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            double distance = 0.5 + random.nextDouble() * MAX_DISTANCE_M;
+            double rssi = rssi(exponent, offset, distance) + random.nextGaussian() * noise;
+            calibrator.update(0, REFERENCE_RSSI, rssi, distance, 1);
+        }
+        assertEquals(exponent, calibrator.getPathLossExponent(0), 0.2);
+        assertEquals(offset, calibrator.getReferenceRssiOffset(0), 2);
+        // forgetting holds the weight at about 1 / (1 - forgetting factor)
+        assertEquals(1 / (1 - PathLossCalibrator.DEFAULT_FORGETTING_FACTOR), calibrator.getSampleWeight(0), 10);
+    }
+
+    @Test
+    public void outOfRangeFits_areClamped() throws Exception {
+        Random random = new Random(SEED);
+        PathLossCalibrator calibrator = new PathLossCalibrator(DEFAULT_EXPONENT, 1, 1e-6, 2);
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            double distance = 0.5 + random.nextDouble() * MAX_DISTANCE_M;
+            calibrator.update(0, REFERENCE_RSSI, rssi(10, 0, distance), distance, 1);
+            calibrator.update(1, REFERENCE_RSSI, rssi(0.5, 0, distance), distance, 1);
+        }
+        assertEquals(PathLossCalibrator.MAX_PATH_LOSS_EXPONENT, calibrator.getPathLossExponent(0), 0);
+        assertEquals(PathLossCalibrator.MIN_PATH_LOSS_EXPONENT, calibrator.getPathLossExponent(1), 0);
+        // the offset is refit for the clamped exponent, so it no longer comes out as 0
+        assertTrue(calibrator.getReferenceRssiOffset(0) < -1);
+        assertTrue(calibrator.getReferenceRssiOffset(1) > 1);
+    }
+
+    @Test
+    public void savedStatistics_restoreTheFit() throws Exception {
+        Random random = new Random(SEED);
+        PathLossCalibrator calibrator = new PathLossCalibrator(DEFAULT_EXPONENT);
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            double distance = 0.5 + random.nextDouble() * MAX_DISTANCE_M;
+            calibrator.update(3, REFERENCE_RSSI, rssi(2.2, 1, distance) + random.nextGaussian() * 4, distance, 1);
+        }
+        double[] statistics = new double[PathLossCalibrator.STATISTIC_LENGTH];
+        calibrator.getStatistics(3, statistics);
+
+        // into another row of a calibrator that has to grow to hold it
+        PathLossCalibrator restored = new PathLossCalibrator(DEFAULT_EXPONENT);
+        restored.setStatistics(100, statistics);
+        assertEquals(calibrator.getPathLossExponent(3), restored.getPathLossExponent(100), 1e-12);
+        assertEquals(calibrator.getReferenceRssiOffset(3), restored.getReferenceRssiOffset(100), 1e-12);
+        assertEquals(calibrator.getSampleWeight(3), restored.getSampleWeight(100), 1e-12);
+
+        double[] copy = new double[PathLossCalibrator.STATISTIC_LENGTH];
+        restored.getStatistics(100, copy);
+        assertArrayEquals(statistics, copy, 0);
+
+        // a row without samples saves as zeros
+        restored.getStatistics(1000, copy);
+        assertArrayEquals(new double[PathLossCalibrator.STATISTIC_LENGTH], copy, 0);
+    }
+
+    /**
+     * RSSI heard at a distance under the log-distance model
+     */
+    private static double rssi(double exponent, double offset, double distance) {
+        return REFERENCE_RSSI + offset - 10 * exponent * Math.log10(distance);
+    }
+}
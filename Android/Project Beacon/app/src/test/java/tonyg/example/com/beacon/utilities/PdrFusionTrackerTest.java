@@ -0,0 +1,157 @@
+package tonyg.example.com.beacon.utilities;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import tonyg.example.com.beacon.sensors.MotionSensor;
+import tonyg.example.com.beacon.sensors.SyntheticMotionTrace;
+
+import static org.junit.Assert.*;
+
+/**
+ * Walks PdrFusionTracker around a room with a SyntheticMotionTrace and noisy fixes, and
+ * checks it against the truth and against KalmanTracker.
+ */
+public class PdrFusionTrackerTest {
+    private static final long SEED = 42;
+    private static final long DURATION_MS = 300000;
+    private static final long FIX_INTERVAL_MS = 250;
+    private static final long SETTLE_MS = 20000; // time to learn the heading
+    private static final double FIX_NOISE_M = 1.5;
+    private static final long NANOS_PER_MS = 1000000L;
+
+    @Test
+    public void walkingWithNoisyFixes_beatsKalmanTracker() throws Exception {
+        for (long seed = SEED; seed < SEED + 3; seed++) {
+            SyntheticMotionTrace trace = walkAroundRoom(seed);
+            PdrFusionTracker fusionTracker = new PdrFusionTracker();
+            KalmanTracker kalmanTracker = new KalmanTracker(PositionTracker.MOTION_CONSTANT_VELOCITY);
+            double[] errors = track(trace, seed, fusionTracker, kalmanTracker);
+
+            assertTrue("fused error " + errors[0], errors[0] < 0.8);
+            assertTrue("fused error " + errors[0] + " against " + errors[1], errors[0] < 0.75 * errors[1]);
+            assertEquals(SyntheticMotionTrace.DEFAULT_STEP_LENGTH_M, fusionTracker.getStepLength(), 0.05);
+            assertEquals(SyntheticMotionTrace.DEFAULT_GYROSCOPE_BIAS, fusionTracker.getGyroscopeBias(), 0.005);
+            double headingError = fusionTracker.getHeading() - trace.getTrueHeading();
+            assertEquals(0, Math.atan2(Math.sin(headingError), Math.cos(headingError)), 0.2);
+        }
+    }
+
+    @Test
+    public void everyStep_isDetected_howeverThePhoneIsHeld() throws Exception {
+        double[] tilts = {0, 0.5, 1.2};
+        for (int index = 0; index < tilts.length; index++) {
+            SyntheticMotionTrace trace = walkAroundRoom(SEED);
+            trace.setTilt(tilts[index]);
+            trace.setDuration(60000);
+            StepDetector stepDetector = new StepDetector();
+            while (trace.next()) {
+                if (trace.getSensor() == MotionSensor.SENSOR_ACCELEROMETER) {
+                    stepDetector.update(trace.getTimestampNanos(), trace.getX(), trace.getY(), trace.getZ());
+                }
+            }
+            assertEquals(trace.getStepCount(), stepDetector.getStepCount(), 1);
+        }
+    }
+
+    @Test
+    public void standingStill_staysPut() throws Exception {
+        SyntheticMotionTrace trace = new SyntheticMotionTrace(SEED);
+        trace.addWaypoint(5, 5);
+        trace.setGait(SyntheticMotionTrace.DEFAULT_STEP_LENGTH_M, 0, 0);
+        trace.setDuration(60000);
+        PdrFusionTracker fusionTracker = new PdrFusionTracker();
+        double[] errors = track(trace, SEED, fusionTracker, new KalmanTracker(PositionTracker.MOTION_STATIONARY));
+
+        assertEquals(0, fusionTracker.getStepCount());
+        assertTrue("error " + errors[0], errors[0] < 0.5);
+        double[] state = new double[PositionTracker.STATE_LENGTH];
+        assertTrue(fusionTracker.getState(60000, state));
+        assertEquals(0, state[PositionTracker.STATE_VELOCITY_X], 0);
+        assertEquals(0, state[PositionTracker.STATE_VELOCITY_Y], 0);
+    }
+
+    @Test
+    public void motionBeforeTheFirstFix_isIgnored() throws Exception {
+        SyntheticMotionTrace trace = walkAroundRoom(SEED);
+        trace.setDuration(10000);
+        PdrFusionTracker fusionTracker = new PdrFusionTracker();
+        while (trace.next()) {
+            assertFalse(fusionTracker.onMotionSample(trace.getSensor(), trace.getTimestampNanos(), trace.getX(), trace.getY(), trace.getZ()));
+        }
+        assertFalse(fusionTracker.getState(10000, new double[PositionTracker.STATE_LENGTH]));
+        assertTrue(fusionTracker.getStepCount() > 0);
+    }
+
+    @Test
+    public void outlyingFixes_areRejected_untilTheTrackIsLost() throws Exception {
+        PdrFusionTracker fusionTracker = new PdrFusionTracker();
+        double[] state = new double[PositionTracker.STATE_LENGTH];
+        fusionTracker.updateWithFix(0, 5, 5, 1, 0, 1);
+        fusionTracker.updateWithFix(100, 30, 30, 1, 0, 1);
+        assertTrue(fusionTracker.getState(100, state));
+        assertEquals(5, state[PositionTracker.STATE_X], 0.01);
+        assertEquals(5, state[PositionTracker.STATE_Y], 0.01);
+
+        for (int fix = 2; fix <= 5; fix++) {
+            fusionTracker.updateWithFix(fix * 100, 30, 30, 1, 0, 1);
+        }
+        assertTrue(fusionTracker.getState(500, state));
+        assertEquals(30, state[PositionTracker.STATE_X], 0.01);
+        assertEquals(30, state[PositionTracker.STATE_Y], 0.01);
+    }
+
+    /**
+     * A loop around a 20 by 16 meter room
+     */
+    private static SyntheticMotionTrace walkAroundRoom(long seed) {
+        SyntheticMotionTrace trace = new SyntheticMotionTrace(seed);
+        trace.addWaypoint(2, 2);
+        trace.addWaypoint(18, 2);
+        trace.addWaypoint(18, 14);
+        trace.addWaypoint(2, 14);
+        trace.setDuration(DURATION_MS);
+        return trace;
+    }
+
+    /**
+     * Play the trace into both trackers with noisy fixes of the true position, and measure
+     * how far each is from the truth once the fusion tracker has settled
+     *
+     * @return the mean error of the fusion tracker and of the other tracker, in meters
+     */
+    private static double[] track(SyntheticMotionTrace trace, long seed, PdrFusionTracker fusionTracker, PositionTracker positionTracker) {
+        Random random = new Random(seed);
+        double variance = FIX_NOISE_M * FIX_NOISE_M;
+        double[] state = new double[PositionTracker.STATE_LENGTH];
+        double[] errors = new double[2];
+        long nextFix_ms = 0;
+        int count = 0;
+        while (trace.next()) {
+            long timestamp_ns = trace.getTimestampNanos();
+            fusionTracker.onMotionSample(trace.getSensor(), timestamp_ns, trace.getX(), trace.getY(), trace.getZ());
+            if (trace.getSensor() != MotionSensor.SENSOR_GYROSCOPE) {
+                continue;
+            }
+            long timestamp_ms = timestamp_ns / NANOS_PER_MS;
+            if (timestamp_ms >= nextFix_ms) {
+                nextFix_ms += FIX_INTERVAL_MS;
+                double x = trace.getTrueX() + random.nextGaussian() * FIX_NOISE_M;
+                double y = trace.getTrueY() + random.nextGaussian() * FIX_NOISE_M;
+                fusionTracker.updateWithFix(timestamp_ms, x, y, variance, 0, variance);
+                positionTracker.updateWithFix(timestamp_ms, x, y, variance, 0, variance);
+            }
+            if (timestamp_ms >= SETTLE_MS) {
+                fusionTracker.getState(timestamp_ms, state);
+                errors[0] += Math.hypot(state[PositionTracker.STATE_X] - trace.getTrueX(), state[PositionTracker.STATE_Y] - trace.getTrueY());
+                positionTracker.getState(timestamp_ms, state);
+                errors[1] += Math.hypot(state[PositionTracker.STATE_X] - trace.getTrueX(), state[PositionTracker.STATE_Y] - trace.getTrueY());
+                count++;
+            }
+        }
+        errors[0] /= count;
+        errors[1] /= count;
+        return errors;
+    }
+}
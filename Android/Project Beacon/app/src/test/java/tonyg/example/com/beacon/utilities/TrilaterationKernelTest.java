@@ -0,0 +1,188 @@
+package tonyg.example.com.beacon.utilities;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks TrilaterationKernel against LeastSquaresLocator and against properties any answer
+ * must have, on many random sets of three beacons.
+ */
+public class TrilaterationKernelTest {
+    private static final long SEED = 42;
+    private static final int TRIALS = 10000;
+    private static final double ROOM_SIZE_M = 50;
+    private static final double MIN_SINE = 0.1; // random triangles flatter than this are skipped
+    private static final double TOLERANCE_M = 1e-6;
+
+    @Test
+    public void exactRanges_matchReferenceSolver() throws Exception {
+        Random random = new Random(SEED);
+        double[] kernel = new double[TrilaterationKernel.RESULT_LENGTH];
+        double[] reference = new double[LeastSquaresLocator.RESULT_LENGTH];
+        for (int trial = 0; trial < TRIALS; trial++) {
+            double[] beacons = randomTriangle(random);
+            double px = random.nextDouble() * ROOM_SIZE_M;
+            double py = random.nextDouble() * ROOM_SIZE_M;
+            double[] x = {beacons[0], beacons[2], beacons[4]};
+            double[] y = {beacons[1], beacons[3], beacons[5]};
+            double[] distance = new double[3];
+            for (int i = 0; i < 3; i++) {
+                distance[i] = Math.hypot(px - x[i], py - y[i]);
+            }
+
+            assertEquals(LeastSquaresLocator.STATUS_OK, solve(x, y, distance, kernel));
+            assertEquals(LeastSquaresLocator.STATUS_OK, LeastSquaresLocator.solve(x, y, distance, null, 3, reference));
+            assertEquals(px, kernel[TrilaterationKernel.RESULT_X], TOLERANCE_M);
+            assertEquals(py, kernel[TrilaterationKernel.RESULT_Y], TOLERANCE_M);
+            assertEquals(reference[LeastSquaresLocator.RESULT_X], kernel[TrilaterationKernel.RESULT_X], TOLERANCE_M);
+            assertEquals(reference[LeastSquaresLocator.RESULT_Y], kernel[TrilaterationKernel.RESULT_Y], TOLERANCE_M);
+            assertEquals(0, kernel[TrilaterationKernel.RESULT_RESIDUAL], TOLERANCE_M);
+        }
+    }
+
+    @Test
+    public void noisyRanges_staysNearReferenceSolver() throws Exception {
+        Random random = new Random(SEED);
+        double[] kernel = new double[TrilaterationKernel.RESULT_LENGTH];
+        double[] reference = new double[LeastSquaresLocator.RESULT_LENGTH];
+        double noise = 0.1;
+        for (int trial = 0; trial < TRIALS; trial++) {
+            double[] beacons = randomTriangle(random);
+            double[] x = {beacons[0], beacons[2], beacons[4]};
+            double[] y = {beacons[1], beacons[3], beacons[5]};
+            // inside the triangle, where three ranges are well conditioned
+            double a = random.nextDouble();
+            double b = random.nextDouble() * (1 - a);
+            double px = x[0] + a * (x[1] - x[0]) + b * (x[2] - x[0]);
+            double py = y[0] + a * (y[1] - y[0]) + b * (y[2] - y[0]);
+            double[] distance = new double[3];
+            for (int i = 0; i < 3; i++) {
+                distance[i] = Math.hypot(px - x[i], py - y[i]) + (random.nextDouble() * 2 - 1) * noise;
+            }
+
+            assertEquals(LeastSquaresLocator.STATUS_OK, solve(x, y, distance, kernel));
+            if (LeastSquaresLocator.solve(x, y, distance, null, 3, reference) != LeastSquaresLocator.STATUS_OK) {
+                continue;
+            }
+            // both answers are within range error / sine of the truth
+            double bound = 4 * noise / MIN_SINE;
+            assertEquals(reference[LeastSquaresLocator.RESULT_X], kernel[TrilaterationKernel.RESULT_X], bound);
+            assertEquals(reference[LeastSquaresLocator.RESULT_Y], kernel[TrilaterationKernel.RESULT_Y], bound);
+            assertTrue(kernel[TrilaterationKernel.RESULT_RESIDUAL] <= bound);
+        }
+    }
+
+    @Test
+    public void orderOfBeacons_doesNotMatter() throws Exception {
+        Random random = new Random(SEED);
+        double[] first = new double[TrilaterationKernel.RESULT_LENGTH];
+        double[] second = new double[TrilaterationKernel.RESULT_LENGTH];
+        for (int trial = 0; trial < TRIALS; trial++) {
+            double[] b = randomTriangle(random);
+            double r1 = random.nextDouble() * ROOM_SIZE_M;
+            double r2 = random.nextDouble() * ROOM_SIZE_M;
+            double r3 = random.nextDouble() * ROOM_SIZE_M;
+            assertEquals(LeastSquaresLocator.STATUS_OK,
+                    TrilaterationKernel.solve(b[0], b[1], r1, b[2], b[3], r2, b[4], b[5], r3, first));
+            assertEquals(LeastSquaresLocator.STATUS_OK,
+                    TrilaterationKernel.solve(b[4], b[5], r3, b[0], b[1], r1, b[2], b[3], r2, second));
+            double tolerance = 1e-9 * (1 + Math.abs(first[TrilaterationKernel.RESULT_X]) + Math.abs(first[TrilaterationKernel.RESULT_Y]));
+            assertEquals(first[TrilaterationKernel.RESULT_X], second[TrilaterationKernel.RESULT_X], tolerance);
+            assertEquals(first[TrilaterationKernel.RESULT_Y], second[TrilaterationKernel.RESULT_Y], tolerance);
+        }
+    }
+
+    @Test
+    public void farFromOrigin_keepsPrecision() throws Exception {
+        Random random = new Random(SEED);
+        double[] result = new double[TrilaterationKernel.RESULT_LENGTH];
+        double offset = 1e6; // meters, like a site on a projected map grid
+        for (int trial = 0; trial < TRIALS; trial++) {
+            double[] b = randomTriangle(random);
+            double px = random.nextDouble() * ROOM_SIZE_M;
+            double py = random.nextDouble() * ROOM_SIZE_M;
+            double r1 = Math.hypot(px - b[0], py - b[1]);
+            double r2 = Math.hypot(px - b[2], py - b[3]);
+            double r3 = Math.hypot(px - b[4], py - b[5]);
+            assertEquals(LeastSquaresLocator.STATUS_OK, TrilaterationKernel.solve(
+                    b[0] + offset, b[1] + offset, r1,
+                    b[2] + offset, b[3] + offset, r2,
+                    b[4] + offset, b[5] + offset, r3,
+                    result));
+            assertEquals(px + offset, result[TrilaterationKernel.RESULT_X], 1e-4);
+            assertEquals(py + offset, result[TrilaterationKernel.RESULT_Y], 1e-4);
+        }
+    }
+
+    @Test
+    public void collinearBeacons_areDegenerate() throws Exception {
+        Random random = new Random(SEED);
+        double[] result = {1, 2, 3};
+        for (int trial = 0; trial < TRIALS; trial++) {
+            double x1 = random.nextDouble() * ROOM_SIZE_M;
+            double y1 = random.nextDouble() * ROOM_SIZE_M;
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double dx = Math.cos(angle);
+            double dy = Math.sin(angle);
+            double t2 = random.nextDouble() * ROOM_SIZE_M;
+            double t3 = -random.nextDouble() * ROOM_SIZE_M;
+            // nudged off the line by less than the threshold allows
+            double nudge = random.nextDouble() * TrilaterationKernel.MIN_SINE * 0.5 * Math.abs(t3);
+            int status = TrilaterationKernel.solve(
+                    x1, y1, 10,
+                    x1 + t2 * dx, y1 + t2 * dy, 10,
+                    x1 + t3 * dx - nudge * dy, y1 + t3 * dy + nudge * dx, 10,
+                    result);
+            assertEquals(LeastSquaresLocator.STATUS_DEGENERATE, status);
+        }
+        // the result is left alone
+        assertArrayEquals(new double[] {1, 2, 3}, result, 0);
+    }
+
+    @Test
+    public void sharedOrInvalidLocations_areDegenerate() throws Exception {
+        double[] result = new double[TrilaterationKernel.RESULT_LENGTH];
+        assertEquals(LeastSquaresLocator.STATUS_DEGENERATE,
+                TrilaterationKernel.solve(0, 0, 1, 0, 0, 1, 5, 5, 1, result));
+        assertEquals(LeastSquaresLocator.STATUS_DEGENERATE,
+                TrilaterationKernel.solve(0, 0, 1, 5, 0, 1, 0, 0, 1, result));
+        assertEquals(LeastSquaresLocator.STATUS_DEGENERATE,
+                TrilaterationKernel.solve(0, 0, 1, 0, 0, 1, 0, 0, 1, result));
+        assertEquals(LeastSquaresLocator.STATUS_DEGENERATE,
+                TrilaterationKernel.solve(Double.NaN, 0, 1, 5, 0, 1, 0, 5, 1, result));
+        assertEquals(LeastSquaresLocator.STATUS_DEGENERATE,
+                TrilaterationKernel.solve(0, 0, 1, Double.POSITIVE_INFINITY, 0, 1, 0, 5, 1, result));
+    }
+
+    /**
+     * Three beacons in the room that are not too close to a line: x1, y1, x2, y2, x3, y3
+     */
+    private static double[] randomTriangle(Random random) {
+        while (true) {
+            double[] b = new double[6];
+            for (int i = 0; i < b.length; i++) {
+                b[i] = random.nextDouble() * ROOM_SIZE_M;
+            }
+            double ax = b[2] - b[0], ay = b[3] - b[1];
+            double bx = b[4] - b[0], by = b[5] - b[1];
+            double cx = b[4] - b[2], cy = b[5] - b[3];
+            double doubleArea = Math.abs(ax * by - ay * bx);
+            double a = Math.hypot(ax, ay), c = Math.hypot(bx, by), e = Math.hypot(cx, cy);
+            // every corner's sine is at least MIN_SINE
+            if (doubleArea > MIN_SINE * a * c && doubleArea > MIN_SINE * a * e && doubleArea > MIN_SINE * c * e) {
+                return b;
+            }
+        }
+    }
+
+    private static int solve(double[] x, double[] y, double[] distance, double[] result) {
+        return TrilaterationKernel.solve(
+                x[0], y[0], distance[0],
+                x[1], y[1], distance[1],
+                x[2], y[2], distance[2],
+                result);
+    }
+}
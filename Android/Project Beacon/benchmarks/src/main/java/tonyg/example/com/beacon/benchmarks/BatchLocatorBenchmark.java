@@ -0,0 +1,106 @@
+package tonyg.example.com.beacon.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+import tonyg.example.com.beacon.ble.BleBeacon;
+import tonyg.example.com.beacon.utilities.BatchLocator;
+
+/**
+ * Measures solving a recorded scan window by window on several threads.  One operation is
+ * the whole recording: a Central walking around BenchmarkData's room for ten minutes while
+ * every Beacon advertises ten times a second.  Compare the thread counts to see how the
+ * batch scales.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchLocatorBenchmark {
+    private static final int BEACON_COUNT = 16;
+    private static final long DURATION_NS = 10L * 60 * 1000000000L;
+    private static final long ADVERTISING_INTERVAL_NS = 100000000L; // per Beacon
+    private static final long WINDOW_NS = 250000000L;
+    private static final double WALKING_SPEED_M_PER_S = 1;
+
+    @Param({"1", "2", "4", "8"})
+    public int threadCount;
+
+    private BeaconTable mBeaconTable;
+    private BatchLocator mBatchLocator;
+    private BatchLocator.Fixes mFixes = new BatchLocator.Fixes();
+    private long[] mTimestamp_ns;
+    private long[] mMacAddress;
+    private int[] mRssi;
+    private int mCount;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        mBeaconTable = new BeaconTable(BEACON_COUNT);
+        double[] beaconX = new double[BEACON_COUNT];
+        double[] beaconY = new double[BEACON_COUNT];
+        for (int beacon = 0; beacon < BEACON_COUNT; beacon++) {
+            beaconX[beacon] = random.nextDouble() * BenchmarkData.ROOM_SIZE_M;
+            beaconY[beacon] = random.nextDouble() * BenchmarkData.ROOM_SIZE_M;
+            int row = mBeaconTable.add(BenchmarkData.macAddress(beacon));
+            mBeaconTable.setReferenceRssi(row, BenchmarkData.REFERENCE_RSSI);
+            mBeaconTable.setXLocation(row, beaconX[beacon]);
+            mBeaconTable.setYLocation(row, beaconY[beacon]);
+        }
+
+        // every Beacon advertises once per interval, in a random order
+        int advertisementCount = (int) (DURATION_NS / ADVERTISING_INTERVAL_NS) * BEACON_COUNT;
+        mTimestamp_ns = new long[advertisementCount];
+        mMacAddress = new long[advertisementCount];
+        mRssi = new int[advertisementCount];
+        long spacing_ns = ADVERTISING_INTERVAL_NS / BEACON_COUNT;
+        for (int index = 0; index < advertisementCount; index++) {
+            long timestamp_ns = index * spacing_ns;
+            int beacon = random.nextInt(BEACON_COUNT);
+            double t = timestamp_ns / 1e9;
+            // walk in a circle around the middle of the room
+            double angle = t * WALKING_SPEED_M_PER_S / (BenchmarkData.ROOM_SIZE_M / 4);
+            double centralX = BenchmarkData.ROOM_SIZE_M / 2 * (1 + 0.5 * Math.cos(angle));
+            double centralY = BenchmarkData.ROOM_SIZE_M / 2 * (1 + 0.5 * Math.sin(angle));
+            double distance = Math.max(0.1, Math.hypot(beaconX[beacon] - centralX, beaconY[beacon] - centralY));
+            double expectedRssi = BenchmarkData.REFERENCE_RSSI - 10 * BleBeacon.RADIO_PROPAGATION_CONSTANT * Math.log10(distance);
+            mTimestamp_ns[index] = timestamp_ns;
+            mMacAddress[index] = BenchmarkData.macAddress(beacon);
+            mRssi[index] = (int) Math.round(expectedRssi + random.nextGaussian() * BenchmarkData.RSSI_NOISE_DBM);
+        }
+        mCount = advertisementCount;
+        mBatchLocator = new BatchLocator(threadCount);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mBatchLocator.shutdown();
+    }
+
+    @Benchmark
+    public int locate() throws InterruptedException {
+        mBatchLocator.locate(mBeaconTable, BleBeacon.RADIO_PROPAGATION_CONSTANT,
+                mTimestamp_ns, mMacAddress, mRssi, mCount, WINDOW_NS, mFixes);
+        return mFixes.size();
+    }
+}
@@ -0,0 +1,87 @@
+package tonyg.example.com.beacon.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+import tonyg.example.com.beacon.utilities.AnchorSelector;
+
+/**
+ * Measures choosing the Beacons to solve for in a venue with thousands of Beacons: the
+ * nearest few around the Central through the BeaconGrid, against every located Beacon, and
+ * narrowing twice as many nearest Beacons down to the best geometry with an AnchorSelector.
+ * Beacons are spread at the same density as in BenchmarkData's room, so a larger count
+ * means a larger venue.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeaconGridBenchmark {
+    private static final int BEACONS_PER_ROOM = 32;
+    private static final int QUERY_COUNT = 1024; // power of two, so the index wraps with a mask
+
+    @Param({"256", "4096", "65536"})
+    public int beaconCount;
+
+    @Param({"8"})
+    public int anchorCount;
+
+    private BeaconTable mBeaconTable;
+    private AnchorSelector mAnchorSelector = new AnchorSelector();
+    private double[] mQueryX = new double[QUERY_COUNT];
+    private double[] mQueryY = new double[QUERY_COUNT];
+    private int mNext = 0;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        double venueSize_m = BenchmarkData.ROOM_SIZE_M * Math.sqrt((double) beaconCount / BEACONS_PER_ROOM);
+        mBeaconTable = new BeaconTable(beaconCount);
+        for (int beacon = 0; beacon < beaconCount; beacon++) {
+            int row = mBeaconTable.add(BenchmarkData.macAddress(beacon));
+            mBeaconTable.setReferenceRssi(row, BenchmarkData.REFERENCE_RSSI);
+            mBeaconTable.setXLocation(row, random.nextDouble() * venueSize_m);
+            mBeaconTable.setYLocation(row, random.nextDouble() * venueSize_m);
+        }
+        for (int query = 0; query < QUERY_COUNT; query++) {
+            mQueryX[query] = random.nextDouble() * venueSize_m;
+            mQueryY[query] = random.nextDouble() * venueSize_m;
+        }
+    }
+
+    @Benchmark
+    public int selectNearest() {
+        int query = mNext++ & (QUERY_COUNT - 1);
+        return mBeaconTable.selectNearest(mQueryX[query], mQueryY[query], anchorCount);
+    }
+
+    @Benchmark
+    public int selectAnchors() {
+        int query = mNext++ & (QUERY_COUNT - 1);
+        mBeaconTable.selectNearest(mQueryX[query], mQueryY[query], 2 * anchorCount);
+        return mAnchorSelector.select(mBeaconTable, mQueryX[query], mQueryY[query], anchorCount);
+    }
+
+    @Benchmark
+    public int selectLocated() {
+        return mBeaconTable.selectLocated();
+    }
+}
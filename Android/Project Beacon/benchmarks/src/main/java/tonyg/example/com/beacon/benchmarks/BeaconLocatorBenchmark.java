@@ -0,0 +1,79 @@
+package tonyg.example.com.beacon.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+import tonyg.example.com.beacon.ble.BleBeacon;
+import tonyg.example.com.beacon.utilities.BeaconLocator;
+import tonyg.example.com.beacon.utilities.LeastSquaresLocator;
+
+/**
+ * Measures locating the Central from a set of Beacons.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeaconLocatorBenchmark {
+    @Param({"3", "8", "32"})
+    public int beaconCount;
+
+    private BeaconTable mBeaconTable;
+    private ArrayList<BleBeacon> mBeaconList;
+    private double[] mResult = new double[LeastSquaresLocator.RESULT_LENGTH];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        mBeaconTable = new BeaconTable(beaconCount);
+        mBeaconList = new ArrayList<>(beaconCount);
+        for (int beacon = 0; beacon < beaconCount; beacon++) {
+            double x = random.nextDouble() * BenchmarkData.ROOM_SIZE_M;
+            double y = random.nextDouble() * BenchmarkData.ROOM_SIZE_M;
+            double distance = Math.hypot(x - BenchmarkData.CENTRAL_X_M, y - BenchmarkData.CENTRAL_Y_M)
+                    + random.nextGaussian() * 0.5;
+            distance = Math.max(distance, 0.1);
+
+            int row = mBeaconTable.add(BenchmarkData.macAddress(beacon));
+            mBeaconTable.setReferenceRssi(row, BenchmarkData.REFERENCE_RSSI);
+            mBeaconTable.setXLocation(row, x);
+            mBeaconTable.setYLocation(row, y);
+            mBeaconTable.setDistance(row, distance);
+            mBeaconTable.setDistanceVariance(row, 0.25);
+
+            BleBeacon bleBeacon = new BleBeacon(null, 0);
+            bleBeacon.setLocation(x, y);
+            bleBeacon.setDistance(distance);
+            mBeaconList.add(bleBeacon);
+        }
+    }
+
+    @Benchmark
+    public int trilaterateTable() {
+        return BeaconLocator.trilaterate(mBeaconTable, mResult);
+    }
+
+    @Benchmark
+    public double[] trilaterateList() throws Exception {
+        return BeaconLocator.trilaterate(mBeaconList);
+    }
+}
@@ -0,0 +1,86 @@
+package tonyg.example.com.beacon.benchmarks;
+
+import java.util.Random;
+
+import tonyg.example.com.beacon.ble.BeaconAdvertisement;
+import tonyg.example.com.beacon.ble.BeaconTable;
+import tonyg.example.com.beacon.ble.BleBeacon;
+import tonyg.example.com.beacon.utilities.PositioningPipeline;
+
+/**
+ * Repeatable Beacon layouts and advertisements shared by the benchmarks
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class BenchmarkData {
+    public static final long SEED = 42;
+    public static final double ROOM_SIZE_M = 20;
+    public static final double CENTRAL_X_M = 8;
+    public static final double CENTRAL_Y_M = 11;
+    public static final int REFERENCE_RSSI = -59;
+    public static final double RSSI_NOISE_DBM = 4;
+    public static final long ADVERTISEMENT_SPACING_NS = 1000000L; // pretend advertisements arrive 1 ms apart
+
+    /**
+     * Tracks only Beacons that broadcast their location
+     */
+    public static final PositioningPipeline.Listener BROADCASTING_BEACONS_ONLY = new PositioningPipeline.Listener() {
+        @Override
+        public boolean isBeacon(long macAddress, byte[] scanRecord) {
+            return false;
+        }
+
+        @Override
+        public void onBeaconAdded(int row, long macAddress, boolean isLocated) {
+        }
+    };
+
+    private static final byte[] FLAGS_AD = { 0x02, 0x01, 0x06 };
+    private static final int SCAN_RECORD_LENGTH = 62; // advertisement and scan response, as Android reports it
+
+    /**
+     * A MAC address for the n-th Beacon
+     */
+    public static long macAddress(int beacon) {
+        return 0xC0FFEE000000L | beacon;
+    }
+
+    /**
+     * A stream of advertisements from Beacons spread around a room, in the order they arrive
+     */
+    public static class Advertisements {
+        public final String[] macAddress;
+        public final int[] rssi;
+        public final byte[][] scanRecord;
+
+        public Advertisements(int beaconCount, int advertisementCount) {
+            Random random = new Random(SEED);
+            double[] beaconX = new double[beaconCount];
+            double[] beaconY = new double[beaconCount];
+            byte[][] beaconScanRecord = new byte[beaconCount][];
+            for (int beacon = 0; beacon < beaconCount; beacon++) {
+                beaconX[beacon] = random.nextDouble() * ROOM_SIZE_M;
+                beaconY[beacon] = random.nextDouble() * ROOM_SIZE_M;
+                byte[] record = new byte[SCAN_RECORD_LENGTH];
+                System.arraycopy(FLAGS_AD, 0, record, 0, FLAGS_AD.length);
+                BeaconAdvertisement.write(record, FLAGS_AD.length, REFERENCE_RSSI,
+                        (int) Math.round(beaconX[beacon] * 100), (int) Math.round(beaconY[beacon] * 100));
+                beaconScanRecord[beacon] = record;
+            }
+
+            macAddress = new String[advertisementCount];
+            rssi = new int[advertisementCount];
+            scanRecord = new byte[advertisementCount][];
+            for (int index = 0; index < advertisementCount; index++) {
+                int beacon = random.nextInt(beaconCount);
+                double distance = Math.max(0.1, Math.hypot(beaconX[beacon] - CENTRAL_X_M, beaconY[beacon] - CENTRAL_Y_M));
+                double expectedRssi = REFERENCE_RSSI - 10 * BleBeacon.RADIO_PROPAGATION_CONSTANT * Math.log10(distance);
+                macAddress[index] = BeaconTable.formatMacAddress(macAddress(beacon));
+                rssi[index] = (int) Math.round(expectedRssi + random.nextGaussian() * RSSI_NOISE_DBM);
+                // Android hands over a new array for every advertisement
+                scanRecord[index] = beaconScanRecord[beacon].clone();
+            }
+        }
+    }
+}
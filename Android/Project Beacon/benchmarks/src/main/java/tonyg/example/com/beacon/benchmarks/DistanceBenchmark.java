@@ -0,0 +1,45 @@
+package tonyg.example.com.beacon.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import tonyg.example.com.beacon.ble.BleBeacon;
+
+/**
+ * Measures converting an RSSI into a distance.
+ *
+ * The RSSI changes on every call so the JIT can not fold the result into a constant.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+    private int mRssi = BenchmarkData.REFERENCE_RSSI;
+
+    @Benchmark
+    public double integerRssi() {
+        mRssi = mRssi > -100 ? mRssi - 1 : BenchmarkData.REFERENCE_RSSI;
+        return BleBeacon.getDistanceFromRSSI(BenchmarkData.REFERENCE_RSSI, BleBeacon.RADIO_PROPAGATION_CONSTANT, mRssi);
+    }
+
+    @Benchmark
+    public double filteredRssi() {
+        mRssi = mRssi > -100 ? mRssi - 1 : BenchmarkData.REFERENCE_RSSI;
+        return BleBeacon.getDistanceFromRSSI(BenchmarkData.REFERENCE_RSSI, BleBeacon.RADIO_PROPAGATION_CONSTANT, mRssi + 0.5);
+    }
+}
@@ -0,0 +1,119 @@
+package tonyg.example.com.beacon.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tonyg.example.com.beacon.ble.BleBeacon;
+import tonyg.example.com.beacon.utilities.FingerprintLocator;
+import tonyg.example.com.beacon.utilities.LeastSquaresLocator;
+import tonyg.example.com.beacon.utilities.RadioMap;
+
+/**
+ * Measures matching a scan against a surveyed radio map.  Reference points are 1 meter apart
+ * on a square floor with a Beacon every 10 meters, and each Beacon is heard within 25 meters.
+ * One operation is one scan of the Beacons around a random spot.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FingerprintBenchmark {
+    private static final double POINT_SPACING_M = 1;
+    private static final double BEACON_SPACING_M = 10;
+    private static final double HEARING_RANGE_M = 25;
+    private static final int QUERY_COUNT = 256; // power of two, so the index wraps with a mask
+
+    @Param({"10000", "40000"})
+    public int pointCount;
+
+    private FingerprintLocator mFingerprintLocator;
+    private long[][] mQueryMacAddress = new long[QUERY_COUNT][];
+    private double[][] mQueryRssi = new double[QUERY_COUNT][];
+    private double[] mResult = new double[LeastSquaresLocator.RESULT_LENGTH];
+    private int mNext = 0;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        int pointsPerSide = (int) Math.sqrt(pointCount);
+        double floorSize_m = pointsPerSide * POINT_SPACING_M;
+        int beaconsPerSide = (int) Math.ceil(floorSize_m / BEACON_SPACING_M);
+        int beaconCount = beaconsPerSide * beaconsPerSide;
+        double[] beaconX = new double[beaconCount];
+        double[] beaconY = new double[beaconCount];
+
+        RadioMap radioMap = new RadioMap(beaconCount, pointsPerSide * pointsPerSide);
+        for (int beacon = 0; beacon < beaconCount; beacon++) {
+            beaconX[beacon] = (beacon % beaconsPerSide + 0.5) * BEACON_SPACING_M;
+            beaconY[beacon] = (beacon / beaconsPerSide + 0.5) * BEACON_SPACING_M;
+            radioMap.addBeacon(BenchmarkData.macAddress(beacon));
+        }
+        for (int row = 0; row < pointsPerSide; row++) {
+            for (int column = 0; column < pointsPerSide; column++) {
+                double x = column * POINT_SPACING_M;
+                double y = row * POINT_SPACING_M;
+                int point = radioMap.addPoint(x, y);
+                for (int beacon = 0; beacon < beaconCount; beacon++) {
+                    double distance = Math.hypot(x - beaconX[beacon], y - beaconY[beacon]);
+                    if (distance <= HEARING_RANGE_M) {
+                        radioMap.setRssi(point, beacon, getRssi(distance));
+                    }
+                }
+            }
+        }
+        radioMap.buildIndex();
+        mFingerprintLocator = new FingerprintLocator(radioMap);
+
+        for (int query = 0; query < QUERY_COUNT; query++) {
+            double x = random.nextDouble() * floorSize_m;
+            double y = random.nextDouble() * floorSize_m;
+            int heard = 0;
+            long[] macAddress = new long[beaconCount];
+            double[] rssi = new double[beaconCount];
+            for (int beacon = 0; beacon < beaconCount; beacon++) {
+                double distance = Math.hypot(x - beaconX[beacon], y - beaconY[beacon]);
+                if (distance <= HEARING_RANGE_M) {
+                    macAddress[heard] = BenchmarkData.macAddress(beacon);
+                    rssi[heard] = getRssi(distance) + random.nextGaussian() * BenchmarkData.RSSI_NOISE_DBM;
+                    heard++;
+                }
+            }
+            mQueryMacAddress[query] = Arrays.copyOf(macAddress, heard);
+            mQueryRssi[query] = Arrays.copyOf(rssi, heard);
+        }
+    }
+
+    @Benchmark
+    public int locate() {
+        int query = mNext++ & (QUERY_COUNT - 1);
+        long[] macAddress = mQueryMacAddress[query];
+        double[] rssi = mQueryRssi[query];
+        mFingerprintLocator.clearObservations();
+        for (int index = 0; index < macAddress.length; index++) {
+            mFingerprintLocator.addObservation(macAddress[index], rssi[index]);
+        }
+        return mFingerprintLocator.locate(mResult);
+    }
+
+    private static double getRssi(double distance_m) {
+        return BenchmarkData.REFERENCE_RSSI - 10 * BleBeacon.RADIO_PROPAGATION_CONSTANT * Math.log10(Math.max(distance_m, 0.5));
+    }
+}
@@ -0,0 +1,119 @@
+package tonyg.example.com.beacon.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+import tonyg.example.com.beacon.ble.BleBeacon;
+import tonyg.example.com.beacon.utilities.BeaconLocator;
+import tonyg.example.com.beacon.utilities.FloorClassifier;
+import tonyg.example.com.beacon.utilities.LeastSquares3dLocator;
+import tonyg.example.com.beacon.utilities.LeastSquaresLocator;
+import tonyg.example.com.beacon.utilities.RssiFilter;
+
+/**
+ * Measures the multi-floor stages: deciding the floor from every Beacon heard, and solving
+ * for the Central on that floor in three dimensions or flat.  Each floor of BenchmarkData's
+ * room has its own ceiling mounted Beacons, and the Central is on the middle floor.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FloorBenchmark {
+    private static final double FLOOR_HEIGHT_M = 4;
+    private static final double BEACON_HEIGHT_M = 2.8; // above its floor
+    private static final double CENTRAL_HEIGHT_M = 1.3; // above its floor
+    private static final double FLOOR_LOSS_DB = 15; // per floor slab between Beacon and Central
+
+    @Param({"1", "4"})
+    public int floorCount;
+
+    @Param({"8", "32"})
+    public int beaconsPerFloor;
+
+    private BeaconTable mBeaconTable;
+    private RssiFilter mRssiFilter;
+    private FloorClassifier mFloorClassifier = new FloorClassifier();
+    private double[] mResult = new double[LeastSquares3dLocator.RESULT_LENGTH];
+    private int mCentralFloor;
+    private int mSampleRow = 0;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        int beaconCount = floorCount * beaconsPerFloor;
+        mBeaconTable = new BeaconTable(beaconCount);
+        mRssiFilter = new RssiFilter(RssiFilter.MODE_KALMAN, RssiFilter.DEFAULT_WINDOW_SIZE, beaconCount);
+        mCentralFloor = floorCount / 2;
+        double centralZ = mCentralFloor * FLOOR_HEIGHT_M + CENTRAL_HEIGHT_M;
+        for (int beacon = 0; beacon < beaconCount; beacon++) {
+            int floor = beacon / beaconsPerFloor;
+            double x = random.nextDouble() * BenchmarkData.ROOM_SIZE_M;
+            double y = random.nextDouble() * BenchmarkData.ROOM_SIZE_M;
+            double z = floor * FLOOR_HEIGHT_M + BEACON_HEIGHT_M;
+            double distance = Math.sqrt(Math.pow(x - BenchmarkData.CENTRAL_X_M, 2)
+                    + Math.pow(y - BenchmarkData.CENTRAL_Y_M, 2) + Math.pow(z - centralZ, 2));
+            double rssi = BenchmarkData.REFERENCE_RSSI - 10 * BleBeacon.RADIO_PROPAGATION_CONSTANT * Math.log10(distance)
+                    - FLOOR_LOSS_DB * Math.abs(floor - mCentralFloor)
+                    + random.nextGaussian() * BenchmarkData.RSSI_NOISE_DBM;
+
+            int row = mBeaconTable.add(BenchmarkData.macAddress(beacon));
+            mBeaconTable.setReferenceRssi(row, BenchmarkData.REFERENCE_RSSI);
+            mBeaconTable.setXLocation(row, x);
+            mBeaconTable.setYLocation(row, y);
+            mBeaconTable.setZLocation(row, z);
+            mBeaconTable.setFloor(row, floor);
+            mBeaconTable.setDistance(row, BleBeacon.getDistanceFromRSSI(BenchmarkData.REFERENCE_RSSI,
+                    BleBeacon.RADIO_PROPAGATION_CONSTANT, rssi));
+            mBeaconTable.setDistanceVariance(row, 0.25);
+            mRssiFilter.update(row, (int) Math.round(rssi));
+        }
+        mBeaconTable.selectLocated(mCentralFloor);
+    }
+
+    @Benchmark
+    public int classifyFloor() {
+        // one new sample between updates, as between position updates in a scan
+        int row = mSampleRow++ % mBeaconTable.size();
+        mRssiFilter.update(row, (int) Math.round(mRssiFilter.getRssi(row)));
+        return mFloorClassifier.update(mBeaconTable, mRssiFilter);
+    }
+
+    @Benchmark
+    public int trilaterate3d() {
+        return LeastSquares3dLocator.solve(
+                mBeaconTable.getSelectedX(),
+                mBeaconTable.getSelectedY(),
+                mBeaconTable.getSelectedZ(),
+                mBeaconTable.getSelectedDistance(),
+                mBeaconTable.getSelectedWeight(),
+                mBeaconTable.getSelectedCount(),
+                mCentralFloor * FLOOR_HEIGHT_M + CENTRAL_HEIGHT_M,
+                1,
+                mResult
+        );
+    }
+
+    @Benchmark
+    public int trilaterate2d() {
+        return BeaconLocator.trilaterateSelected(mBeaconTable, mResult);
+    }
+}
@@ -0,0 +1,122 @@
+package tonyg.example.com.beacon.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tonyg.example.com.beacon.sensors.SyntheticMotionTrace;
+import tonyg.example.com.beacon.utilities.KalmanTracker;
+import tonyg.example.com.beacon.utilities.PdrFusionTracker;
+import tonyg.example.com.beacon.utilities.PositionTracker;
+
+/**
+ * Measures the dead reckoning tracker: one motion sample, which runs at the sensor rate, and
+ * one Beacon fix, against the KalmanTracker it replaces.  The samples are a walk around
+ * BenchmarkData's room, replayed in a loop with the clock kept running.  The fixes are of a
+ * Central standing still.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FusionBenchmark {
+    private static final int SAMPLE_COUNT = 8192; // power of two, so the index wraps with a mask
+    private static final int FIX_COUNT = 1024;
+    private static final long FIX_INTERVAL_MS = 250;
+    private static final double FIX_NOISE_M = 1.5;
+
+    private int[] mSensor = new int[SAMPLE_COUNT];
+    private long[] mTimestamp_ns = new long[SAMPLE_COUNT];
+    private float[] mX = new float[SAMPLE_COUNT];
+    private float[] mY = new float[SAMPLE_COUNT];
+    private float[] mZ = new float[SAMPLE_COUNT];
+    private long mTraceLength_ns;
+    private double[] mFixX = new double[FIX_COUNT];
+    private double[] mFixY = new double[FIX_COUNT];
+
+    private PdrFusionTracker mFusionTracker = new PdrFusionTracker();
+    private KalmanTracker mKalmanTracker = new KalmanTracker(PositionTracker.MOTION_CONSTANT_VELOCITY);
+    private double[] mState = new double[PositionTracker.STATE_LENGTH];
+    private long mNextSample = 0;
+    private long mNextFix = 1;
+
+    @Setup
+    public void setUp() {
+        SyntheticMotionTrace trace = new SyntheticMotionTrace(BenchmarkData.SEED);
+        double margin = BenchmarkData.ROOM_SIZE_M / 5;
+        double far = BenchmarkData.ROOM_SIZE_M - margin;
+        trace.addWaypoint(margin, margin);
+        trace.addWaypoint(far, margin);
+        trace.addWaypoint(far, far);
+        trace.addWaypoint(margin, far);
+        Random random = new Random(BenchmarkData.SEED);
+        for (int sample = 0; sample < SAMPLE_COUNT && trace.next(); sample++) {
+            mSensor[sample] = trace.getSensor();
+            mTimestamp_ns[sample] = trace.getTimestampNanos();
+            mX[sample] = trace.getX();
+            mY[sample] = trace.getY();
+            mZ[sample] = trace.getZ();
+        }
+        mTraceLength_ns = mTimestamp_ns[SAMPLE_COUNT - 1] + SyntheticMotionTrace.DEFAULT_SAMPLE_INTERVAL_MS * 1000000L;
+        for (int fix = 0; fix < FIX_COUNT; fix++) {
+            mFixX[fix] = BenchmarkData.CENTRAL_X_M + random.nextGaussian() * FIX_NOISE_M;
+            mFixY[fix] = BenchmarkData.CENTRAL_Y_M + random.nextGaussian() * FIX_NOISE_M;
+        }
+
+        double variance = FIX_NOISE_M * FIX_NOISE_M;
+        mFusionTracker.updateWithFix(0, mFixX[0], mFixY[0], variance, 0, variance);
+        mKalmanTracker.updateWithFix(0, mFixX[0], mFixY[0], variance, 0, variance);
+    }
+
+    @Benchmark
+    public boolean motionSample() {
+        long next = mNextSample++;
+        int sample = (int) next & (SAMPLE_COUNT - 1);
+        long timestamp_ns = mTimestamp_ns[sample] + next / SAMPLE_COUNT * mTraceLength_ns;
+        return mFusionTracker.onMotionSample(mSensor[sample], timestamp_ns, mX[sample], mY[sample], mZ[sample]);
+    }
+
+    @Benchmark
+    public double[] motionSampleAndState() {
+        long next = mNextSample++;
+        int sample = (int) next & (SAMPLE_COUNT - 1);
+        long timestamp_ns = mTimestamp_ns[sample] + next / SAMPLE_COUNT * mTraceLength_ns;
+        mFusionTracker.onMotionSample(mSensor[sample], timestamp_ns, mX[sample], mY[sample], mZ[sample]);
+        mFusionTracker.getState(timestamp_ns / 1000000L, mState);
+        return mState;
+    }
+
+    @Benchmark
+    public double[] fusionFix() {
+        return fix(mFusionTracker);
+    }
+
+    @Benchmark
+    public double[] kalmanFix() {
+        return fix(mKalmanTracker);
+    }
+
+    private double[] fix(PositionTracker positionTracker) {
+        long next = mNextFix++;
+        int fix = (int) (next % FIX_COUNT);
+        double variance = FIX_NOISE_M * FIX_NOISE_M;
+        positionTracker.updateWithFix(next * FIX_INTERVAL_MS, mFixX[fix], mFixY[fix], variance, 0, variance);
+        positionTracker.getState(next * FIX_INTERVAL_MS, mState);
+        return mState;
+    }
+}
@@ -0,0 +1,84 @@
+package tonyg.example.com.beacon.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+import tonyg.example.com.beacon.utilities.KalmanTracker;
+import tonyg.example.com.beacon.utilities.LeastSquaresLocator;
+import tonyg.example.com.beacon.utilities.PositionTracker;
+import tonyg.example.com.beacon.utilities.PositioningPipeline;
+import tonyg.example.com.beacon.utilities.RssiFilter;
+
+/**
+ * Measures the work the app does for each advertisement: AndroidBleRadio packs the MAC
+ * address, then the PositioningPipeline looks up the Beacon, reads its broadcast location
+ * when it is new, filters the RSSI and converts it into a distance.  One operation is one
+ * advertisement.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestBenchmark {
+    private static final int ADVERTISEMENT_COUNT = 4096; // power of two, so the index wraps with a mask
+    private static final int ADVERTISEMENTS_PER_POSITION_UPDATE = 16;
+
+    @Param({"8", "64"})
+    public int beaconCount;
+
+    @Param({"1", "2", "3"}) // RssiFilter.MODE_KALMAN, MODE_EWMA, MODE_MEDIAN
+    public int filterMode;
+
+    private BenchmarkData.Advertisements mAdvertisements;
+    private PositioningPipeline mPipeline;
+    private int mNext = 0;
+
+    @Setup
+    public void setUp() {
+        mAdvertisements = new BenchmarkData.Advertisements(beaconCount, ADVERTISEMENT_COUNT);
+        mPipeline = new PositioningPipeline(
+                new BeaconTable(),
+                new RssiFilter(filterMode),
+                new KalmanTracker(PositionTracker.MOTION_CONSTANT_VELOCITY),
+                BenchmarkData.BROADCASTING_BEACONS_ONLY
+        );
+    }
+
+    @Benchmark
+    public int ingest() {
+        int index = mNext++ & (ADVERTISEMENT_COUNT - 1);
+        return onBlePeripheralDiscovered(mAdvertisements.macAddress[index], mAdvertisements.rssi[index], mAdvertisements.scanRecord[index]);
+    }
+
+    @Benchmark
+    public int ingestAndLocate() {
+        int index = mNext++ & (ADVERTISEMENT_COUNT - 1);
+        onBlePeripheralDiscovered(mAdvertisements.macAddress[index], mAdvertisements.rssi[index], mAdvertisements.scanRecord[index]);
+        if (index % ADVERTISEMENTS_PER_POSITION_UPDATE == 0) {
+            return mPipeline.updatePosition(index * BenchmarkData.ADVERTISEMENT_SPACING_NS);
+        }
+        return LeastSquaresLocator.STATUS_OK;
+    }
+
+    private int onBlePeripheralDiscovered(String address, int rssi, byte[] scanRecord) {
+        long macAddress = BeaconTable.parseMacAddress(address);
+        return mPipeline.onAdvertisement(macAddress, rssi, scanRecord, mNext * BenchmarkData.ADVERTISEMENT_SPACING_NS);
+    }
+}
@@ -0,0 +1,159 @@
+package tonyg.example.com.beacon.benchmarks;
+
+import java.io.File;
+import java.util.Arrays;
+
+import tonyg.example.com.beacon.ble.BeaconTable;
+import tonyg.example.com.beacon.ble.radio.AdvertisementListener;
+import tonyg.example.com.beacon.ble.radio.AdvertisementTrace;
+import tonyg.example.com.beacon.ble.radio.AdvertisementTraceReader;
+import tonyg.example.com.beacon.ble.radio.BleRadio;
+import tonyg.example.com.beacon.ble.radio.SimulatedBleRadio;
+import tonyg.example.com.beacon.ble.radio.SyntheticAdvertisementTrace;
+import tonyg.example.com.beacon.utilities.KalmanTracker;
+import tonyg.example.com.beacon.utilities.PositionTracker;
+import tonyg.example.com.beacon.utilities.PositioningPipeline;
+import tonyg.example.com.beacon.utilities.RssiFilter;
+
+/**
+ * Plays a room full of synthetic Beacons through a SimulatedBleRadio into the positioning
+ * pipeline, the way MainActivity wires them, and reports throughput and latency.
+ *
+ * Arguments: beacon count, advertising interval in ms, duration in seconds, playback speed
+ * (1 for real time, 0 for as fast as possible).  Or, to replay a trace recorded by the app:
+ * the trace file and playback speed.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+public class PipelineLoadTest {
+    private static final double METERS_PER_BEACON = 2; // Beacon spacing on the simulated floor
+
+    private final PositioningPipeline mPipeline;
+    private final double mSpeed;
+    private long[] mLatency_ns;
+    private int mAdvertisementCount = 0;
+    private int mPositionUpdateCount = 0;
+    private long mMaxLag_ns = 0;
+    private long mStartTime_ns;
+    private long mFirstTimestamp_ns = -1;
+    private long mLastTimestamp_ns = 0;
+    private boolean mIsBeaconInBatch = false; // a Beacon was heard since the last batch
+
+    public PipelineLoadTest(double speed, int expectedAdvertisements) {
+        mSpeed = speed;
+        mLatency_ns = new long[Math.max(16, expectedAdvertisements)];
+        mPipeline = new PositioningPipeline(
+                new BeaconTable(),
+                new RssiFilter(RssiFilter.MODE_KALMAN),
+                new KalmanTracker(PositionTracker.MOTION_CONSTANT_VELOCITY),
+                BenchmarkData.BROADCASTING_BEACONS_ONLY
+        );
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && new File(args[0]).isFile()) {
+            double speed = args.length > 1 ? Double.parseDouble(args[1]) : SimulatedBleRadio.SPEED_UNLIMITED;
+            AdvertisementTraceReader trace = new AdvertisementTraceReader(new File(args[0]));
+            try {
+                run(trace, speed, 0, 0, Double.NaN, Double.NaN);
+            } finally {
+                trace.close();
+            }
+            return;
+        }
+
+        int beaconCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        long advertisingInterval_ms = args.length > 1 ? Long.parseLong(args[1]) : SyntheticAdvertisementTrace.DEFAULT_ADVERTISING_INTERVAL_MS;
+        long duration_s = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        double speed = args.length > 3 ? Double.parseDouble(args[3]) : SimulatedBleRadio.SPEED_UNLIMITED;
+
+        double floorSize = Math.sqrt(beaconCount) * METERS_PER_BEACON;
+        SyntheticAdvertisementTrace trace = new SyntheticAdvertisementTrace(BenchmarkData.SEED);
+        trace.addRandomBeacons(beaconCount, floorSize, floorSize, BenchmarkData.REFERENCE_RSSI, advertisingInterval_ms);
+        trace.setCentralPosition(floorSize / 2, floorSize / 2);
+        trace.setDuration(duration_s * 1000);
+
+        int expectedAdvertisements = (int) Math.min(Integer.MAX_VALUE - 8, beaconCount * duration_s * 1000 / Math.max(1, advertisingInterval_ms));
+        run(trace, speed, beaconCount, expectedAdvertisements, floorSize / 2, floorSize / 2);
+    }
+
+    private static void run(AdvertisementTrace trace, double speed, int beaconCount, int expectedAdvertisements, double centralX, double centralY) throws Exception {
+        PipelineLoadTest loadTest = new PipelineLoadTest(speed, expectedAdvertisements);
+        SimulatedBleRadio radio = new SimulatedBleRadio(trace);
+        radio.setSpeed(speed);
+
+        long start_ns = System.nanoTime();
+        loadTest.mStartTime_ns = start_ns;
+        radio.startScan(loadTest.mListener, BleRadio.SCAN_PERIOD_CONTINUOUS);
+        radio.join();
+        long elapsed_ns = System.nanoTime() - start_ns;
+
+        loadTest.report(beaconCount, elapsed_ns, centralX, centralY);
+    }
+
+    private final AdvertisementListener mListener = new AdvertisementListener() {
+        @Override
+        public void onAdvertisement(long macAddress, int rssi, byte[] scanRecord, long timestamp_ns) {
+            long received_ns = System.nanoTime();
+            if (mFirstTimestamp_ns < 0) {
+                mFirstTimestamp_ns = timestamp_ns;
+            }
+            if (mSpeed > 0) {
+                // how far behind the schedule of the trace delivery has fallen
+                long due_ns = mStartTime_ns + (long) ((timestamp_ns - mFirstTimestamp_ns) / mSpeed);
+                mMaxLag_ns = Math.max(mMaxLag_ns, received_ns - due_ns);
+            }
+
+            mLastTimestamp_ns = timestamp_ns;
+            int row = mPipeline.onAdvertisement(macAddress, rssi, scanRecord, timestamp_ns);
+            if (row != BeaconTable.NOT_FOUND) {
+                mIsBeaconInBatch = true;
+            }
+
+            if (mAdvertisementCount == mLatency_ns.length) {
+                mLatency_ns = Arrays.copyOf(mLatency_ns, mAdvertisementCount * 2);
+            }
+            mLatency_ns[mAdvertisementCount++] = System.nanoTime() - received_ns;
+        }
+
+        @Override
+        public void onBatchComplete(long timestamp_ns) {
+            if (mIsBeaconInBatch && mPipeline.isPositionUpdateDue(timestamp_ns)) {
+                mPipeline.updatePosition(timestamp_ns);
+                mPositionUpdateCount++;
+            }
+            mIsBeaconInBatch = false;
+        }
+
+        @Override
+        public void onScanStopped() {
+        }
+    };
+
+    private void report(int beaconCount, long elapsed_ns, double centralX, double centralY) {
+        Arrays.sort(mLatency_ns, 0, mAdvertisementCount);
+        double[] state = new double[PositionTracker.STATE_LENGTH];
+
+        System.out.println("beacons:            " + (beaconCount > 0 ? beaconCount : mPipeline.getBeaconTable().size()));
+        System.out.println("advertisements:     " + mAdvertisementCount);
+        System.out.println("position updates:   " + mPositionUpdateCount);
+        System.out.printf("wall time:          %.3f s%n", elapsed_ns / 1e9);
+        System.out.printf("throughput:         %.0f advertisements/s%n", mAdvertisementCount / (elapsed_ns / 1e9));
+        System.out.printf("latency p50:        %d ns%n", percentile(0.50));
+        System.out.printf("latency p99:        %d ns%n", percentile(0.99));
+        System.out.printf("latency max:        %d ns%n", percentile(1));
+        if (mSpeed > 0) {
+            System.out.printf("max delivery lag:   %.3f ms%n", mMaxLag_ns / 1e6);
+        }
+        if (!Double.isNaN(centralX) && mPipeline.getCentralState(mLastTimestamp_ns, state)) {
+            System.out.printf("position error:     %.2f m%n", Math.hypot(state[PositionTracker.STATE_X] - centralX, state[PositionTracker.STATE_Y] - centralY));
+        }
+    }
+
+    private long percentile(double fraction) {
+        if (mAdvertisementCount == 0) return 0;
+        int index = (int) Math.min(mAdvertisementCount - 1, Math.round(fraction * (mAdvertisementCount - 1)));
+        return mLatency_ns[index];
+    }
+}
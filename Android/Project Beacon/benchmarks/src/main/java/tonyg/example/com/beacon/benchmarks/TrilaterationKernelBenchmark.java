@@ -0,0 +1,100 @@
+package tonyg.example.com.beacon.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tonyg.example.com.beacon.ble.BleBeacon;
+import tonyg.example.com.beacon.utilities.BeaconLocator;
+import tonyg.example.com.beacon.utilities.LeastSquaresLocator;
+import tonyg.example.com.beacon.utilities.TrilaterationKernel;
+
+/**
+ * Measures locating the Central from exactly three Beacons: the closed form kernel against
+ * the least squares solver, and against the list of BleBeacons the app started with.  Every
+ * operation solves a different triple, so branch prediction can not learn the answer.
+ *
+ * @author Tony Gaitatzis backupbrain@gmail.com
+ * @date 2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrilaterationKernelBenchmark {
+    private static final int QUERY_COUNT = 1024; // power of two, so the index wraps with a mask
+
+    private double[][] mX = new double[QUERY_COUNT][3];
+    private double[][] mY = new double[QUERY_COUNT][3];
+    private double[][] mDistance = new double[QUERY_COUNT][3];
+    private ArrayList<ArrayList<BleBeacon>> mBeaconLists = new ArrayList<>(QUERY_COUNT);
+    private double[] mResult = new double[LeastSquaresLocator.RESULT_LENGTH];
+    private int mNext = 0;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        for (int query = 0; query < QUERY_COUNT; query++) {
+            ArrayList<BleBeacon> beaconList = new ArrayList<>(3);
+            for (int beacon = 0; beacon < 3; beacon++) {
+                double x = random.nextDouble() * BenchmarkData.ROOM_SIZE_M;
+                double y = random.nextDouble() * BenchmarkData.ROOM_SIZE_M;
+                double distance = Math.hypot(x - BenchmarkData.CENTRAL_X_M, y - BenchmarkData.CENTRAL_Y_M)
+                        + random.nextGaussian() * 0.5;
+                distance = Math.max(distance, 0.1);
+                mX[query][beacon] = x;
+                mY[query][beacon] = y;
+                mDistance[query][beacon] = distance;
+
+                BleBeacon bleBeacon = new BleBeacon(null, 0);
+                bleBeacon.setLocation(x, y);
+                bleBeacon.setDistance(distance);
+                beaconList.add(bleBeacon);
+            }
+            mBeaconLists.add(beaconList);
+        }
+    }
+
+    @Benchmark
+    public int kernel() {
+        int query = mNext++ & (QUERY_COUNT - 1);
+        double[] x = mX[query];
+        double[] y = mY[query];
+        double[] distance = mDistance[query];
+        return TrilaterationKernel.solve(
+                x[0], y[0], distance[0],
+                x[1], y[1], distance[1],
+                x[2], y[2], distance[2],
+                mResult);
+    }
+
+    @Benchmark
+    public int leastSquares() {
+        int query = mNext++ & (QUERY_COUNT - 1);
+        return LeastSquaresLocator.solve(mX[query], mY[query], mDistance[query], null, 3, mResult);
+    }
+
+    @Benchmark
+    public double[] list() {
+        int query = mNext++ & (QUERY_COUNT - 1);
+        try {
+            return BeaconLocator.trilaterate(mBeaconLists.get(query));
+        } catch (Exception e) {
+            // a random triple can lie along a line
+            return null;
+        }
+    }
+}
@@ -6,14 +6,33 @@ static const char* serviceUuid = "0000180c-0000-1000-8000-00805f9b34fb";
 static const char* rssiCharacteristicUuid = "00002a56-0000-1000-8000-00805f9b34fa";
 static const char* xCharacteristicUuid = "00002a56-0000-1000-8000-00805f9b34fb";
 static const char* yCharacteristicUuid = "00002a56-0000-1000-8000-00805f9b34fc";
+static const char* zCharacteristicUuid = "00002a56-0000-1000-8000-00805f9b34fd";
+static const char* floorCharacteristicUuid = "00002a56-0000-1000-8000-00805f9b34fe";
 
 // critical beacon info
 static const int referenceRssi = -57; // // Average 47-67
 static const int xLocationInCentimeters = 185;
 static const int yLocationInCentimeters = 59;
+static const int zLocationInCentimeters = 250; // height above the site's zero, not above this floor
+static const int floorNumber = 0; // ground floor is 0, basements are negative
 
 static const int characteristicTransmissionLength = sizeof(int);
 
+// beacon info is also broadcast as manufacturer data, so Centrals
+// can locate themselves without connecting.  Multi-byte values are little-endian.
+// With the flags, name and service UUID this fills 30 of the 31 advertisement bytes
+static const unsigned int manufacturerId = 0xFFFF; // reserved for testing
+static const unsigned char advertisementFormatVersion = 2;
+static const unsigned char manufacturerData[] = {
+  manufacturerId & 0xff, (manufacturerId >> 8) & 0xff,
+  advertisementFormatVersion,
+  (unsigned char) (signed char) referenceRssi,
+  xLocationInCentimeters & 0xff, (xLocationInCentimeters >> 8) & 0xff,
+  yLocationInCentimeters & 0xff, (yLocationInCentimeters >> 8) & 0xff,
+  zLocationInCentimeters & 0xff, (zLocationInCentimeters >> 8) & 0xff,
+  (unsigned char) (signed char) floorNumber
+};
+
 BLEService service(serviceUuid);
 
 BLEIntCharacteristic rssiCharacteristic(
@@ -28,6 +47,14 @@ BLEIntCharacteristic yCharacteristic(
   yCharacteristicUuid,
   BLERead
 );
+BLEIntCharacteristic zCharacteristic(
+  zCharacteristicUuid,
+  BLERead
+);
+BLEIntCharacteristic floorCharacteristic(
+  floorCharacteristicUuid,
+  BLERead
+);
 
 BLEPeripheral blePeripheral; // initialize bluetooth 
 
@@ -41,6 +68,7 @@ void setup() {
   blePeripheral.setLocalName(bluetoothDeviceName); // set the broadcast name
   
   blePeripheral.setAdvertisedServiceUuid(service.uuid());
+  blePeripheral.setManufacturerData(manufacturerData, sizeof(manufacturerData));
   blePeripheral.addAttribute(service);
   blePeripheral.addAttribute(rssiCharacteristic);
   rssiCharacteristic.setValue(referenceRssi);
@@ -48,6 +76,10 @@ void setup() {
   xCharacteristic.setValue(xLocationInCentimeters);
   blePeripheral.addAttribute(yCharacteristic);
   yCharacteristic.setValue(yLocationInCentimeters);
+  blePeripheral.addAttribute(zCharacteristic);
+  zCharacteristic.setValue(zLocationInCentimeters);
+  blePeripheral.addAttribute(floorCharacteristic);
+  floorCharacteristic.setValue(floorNumber);
 
   Serial.println("Starting Bluetooth Broadcast");
   blePeripheral.begin(); // start broadcasting